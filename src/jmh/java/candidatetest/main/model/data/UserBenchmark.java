@@ -0,0 +1,75 @@
+package candidatetest.main.model.data;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Benchmarks of the {@link User} methods called on every authenticated request
+ */
+@State(Scope.Benchmark)
+public class UserBenchmark {
+
+	/**
+	 * The user being checked
+	 */
+	private User user;
+	/**
+	 * The user as JSON
+	 */
+	private String json;
+
+	/**
+	 * Prepare a representative user
+	 * @throws IOException Thrown if the user cannot be serialized
+	 */
+	@Setup
+	public void setup() throws IOException {
+		user = new User("jbloggs", "Joe Bloggs", "$2a$10$MCCU16p7aq5iHpmhaL09COMC9/ccSneMrFZx60hExsV7jmCK68jcG", new String[] { "USER", "REPORTS" });
+		json = User.serialize(user);
+	}
+
+	/**
+	 * Build the granted authorities as done on every authentication
+	 * @return The authorities
+	 */
+	@Benchmark
+	public List<GrantedAuthority> listAuthorities() {
+		return user.listAuthorities();
+	}
+
+	/**
+	 * Check for roles the user does not have, the worst case
+	 * @return The result of the check
+	 */
+	@Benchmark
+	public Boolean hasAnyRole() {
+		return user.hasAnyRole("ADMIN", "SUPPORT");
+	}
+
+	/**
+	 * Convert the user to JSON
+	 * @return The JSON
+	 * @throws IOException Thrown if serialization fails
+	 */
+	@Benchmark
+	public String serialize() throws IOException {
+		return User.serialize(user);
+	}
+
+	/**
+	 * Convert JSON to a user
+	 * @return The user
+	 * @throws IOException Thrown if deserialization fails
+	 */
+	@Benchmark
+	public User deserialize() throws IOException {
+		return User.deserialize(json);
+	}
+
+}
@@ -0,0 +1,97 @@
+package candidatetest.main.repository;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+import candidatetest.main.model.data.AbstractModel;
+
+/**
+ * A model declaring one field of every supported {@link DataField.FieldType}, used to
+ * benchmark the per-type serialization paths
+ */
+public class BenchmarkModel extends AbstractModel {
+
+	/**
+	 * An enumeration used for the enumeration field
+	 */
+	public enum Colour { /** Red */ RED, /** Green */ GREEN, /** Blue */ BLUE }
+
+	/** Text field */				private String text = "The quick brown fox";
+	/** 64 bit integer field */		private long longValue = 1234567890123L;
+	/** 32 bit integer field */		private int integerValue = 123456;
+	/** 16 bit integer field */		private short shortValue = 1234;
+	/** 8 bit integer field */		private byte byteValue = 12;
+	/** 64 bit floating field */	private double doubleValue = 1234.5678;
+	/** 32 bit floating field */	private float floatValue = 12.34f;
+	/** Decimal field */			private BigDecimal decimal = new BigDecimal("1234.5678");
+	/** True/False field */			private boolean flag = true;
+	/** Date field */				private OffsetDateTime date = OffsetDateTime.parse("2018-02-15T13:58:32.543Z");
+	/** Enumeration field */		private Colour colour = Colour.GREEN;
+
+	/**
+	 * Get the text field
+	 * @return The text field
+	 */
+	public String getText() { return text; }
+
+	/**
+	 * Get the 64 bit integer field
+	 * @return The 64 bit integer field
+	 */
+	public long getLongValue() { return longValue; }
+
+	/**
+	 * Get the 32 bit integer field
+	 * @return The 32 bit integer field
+	 */
+	public int getIntegerValue() { return integerValue; }
+
+	/**
+	 * Get the 16 bit integer field
+	 * @return The 16 bit integer field
+	 */
+	public short getShortValue() { return shortValue; }
+
+	/**
+	 * Get the 8 bit integer field
+	 * @return The 8 bit integer field
+	 */
+	public byte getByteValue() { return byteValue; }
+
+	/**
+	 * Get the 64 bit floating point field
+	 * @return The 64 bit floating point field
+	 */
+	public double getDoubleValue() { return doubleValue; }
+
+	/**
+	 * Get the 32 bit floating point field
+	 * @return The 32 bit floating point field
+	 */
+	public float getFloatValue() { return floatValue; }
+
+	/**
+	 * Get the decimal field
+	 * @return The decimal field
+	 */
+	public BigDecimal getDecimal() { return decimal; }
+
+	/**
+	 * Get the true/false field
+	 * @return The true/false field
+	 */
+	public boolean getFlag() { return flag; }
+
+	/**
+	 * Get the date field
+	 * @return The date field
+	 */
+	public OffsetDateTime getDate() { return date; }
+
+	/**
+	 * Get the enumeration field
+	 * @return The enumeration field
+	 */
+	public Colour getColour() { return colour; }
+
+}
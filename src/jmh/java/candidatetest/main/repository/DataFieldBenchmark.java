@@ -0,0 +1,87 @@
+package candidatetest.main.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import candidatetest.main.repository.DataField.FieldType;
+
+/**
+ * Benchmarks of the {@link DataField} per-type value conversion
+ */
+@State(Scope.Benchmark)
+public class DataFieldBenchmark {
+
+	/**
+	 * The field type being converted
+	 */
+	@Param({ "TEXT", "LONG", "INTEGER", "SHORT", "BYTE", "DOUBLE", "FLOAT", "DECIMAL", "BOOLEAN", "DATE", "ENUM" })
+	public FieldType type;
+
+	/**
+	 * The field of the benchmark model with the requested type
+	 */
+	private DataField field;
+	/**
+	 * The value held by the model
+	 */
+	private Object value;
+	/**
+	 * The value as it is read back from the store
+	 */
+	private Object stored;
+
+	/**
+	 * Find the field of the requested type and prepare its values
+	 * @throws Exception Thrown if the model could not be reflected
+	 */
+	@Setup
+	public void setup() throws Exception {
+		BenchmarkModel model = new BenchmarkModel();
+		for (DataField f : DataField.readFields(BenchmarkModel.class)) {
+			if (f.getType() == type) {
+				field = f;
+			}
+		}
+		value = field.getGetter().invoke(model);
+		switch (type) {
+			case DATE:
+				stored = value.toString();
+				break;
+			case DECIMAL:
+				Map<String, Object> decimal = new HashMap<String, Object>();
+				decimal.put("decimal", value.toString());
+				decimal.put("value", Double.valueOf(value.toString()));
+				stored = decimal;
+				break;
+			default:
+				stored = field.serialize(value);
+		}
+	}
+
+	/**
+	 * Convert a model value into its stored form
+	 * @return The stored form
+	 * @throws Exception Thrown if the conversion fails
+	 */
+	@Benchmark
+	public Object serialize() throws Exception {
+		return field.serialize(value);
+	}
+
+	/**
+	 * Convert a stored value into its model form
+	 * @return The model form
+	 * @throws Exception Thrown if the conversion fails
+	 */
+	@Benchmark
+	public Object deserialize() throws Exception {
+		return field.deserialize(stored);
+	}
+
+}
@@ -0,0 +1,72 @@
+package candidatetest.main.repository;
+
+import java.beans.IntrospectionException;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import candidatetest.main.model.data.User;
+
+/**
+ * Benchmarks of the conversion between entities and ElasticSearch source maps performed
+ * by {@link ElasticRepositoryImpl} on every read and write
+ */
+@State(Scope.Benchmark)
+public class EntityMappingBenchmark {
+
+	/**
+	 * The repository performing the mapping
+	 */
+	private OfflineUserRepository repository;
+	/**
+	 * The entity to convert
+	 */
+	private User user;
+	/**
+	 * The source map to convert
+	 */
+	private Map<String, Object> source;
+
+	/**
+	 * Prepare the repository and a representative user
+	 */
+	@Setup
+	public void setup() {
+		repository = new OfflineUserRepository();
+		user = new User("jbloggs", "Joe Bloggs", "$2a$10$MCCU16p7aq5iHpmhaL09COMC9/ccSneMrFZx60hExsV7jmCK68jcG", new String[] { "USER", "ADMIN" });
+		source = repository.mapFromEntity(user);
+	}
+
+	/**
+	 * Convert an entity into a source map
+	 * @return The source map
+	 */
+	@Benchmark
+	public Map<String, Object> mapFromEntity() {
+		return repository.mapFromEntity(user);
+	}
+
+	/**
+	 * Convert a source map into an entity
+	 * @return The entity
+	 */
+	@Benchmark
+	public User entityFromMap() {
+		return repository.entityFromMap(source);
+	}
+
+	/**
+	 * Reflect the fields of the user model as done when a repository is created
+	 * @return The reflected fields
+	 * @throws IntrospectionException Thrown if reflection fails
+	 */
+	@Benchmark
+	public List<DataField> readFields() throws IntrospectionException {
+		return DataField.readFields(User.class);
+	}
+
+}
@@ -0,0 +1,26 @@
+package candidatetest.main.repository;
+
+import candidatetest.main.metrics.MetricsRegistry;
+import candidatetest.main.model.data.User;
+
+/**
+ * A user repository which never connects to ElasticSearch, so that the entity mapping
+ * can be benchmarked in isolation
+ */
+public class OfflineUserRepository extends ElasticRepositoryImpl<User> {
+
+	/**
+	 * Construct a repository without a client
+	 */
+	public OfflineUserRepository() {
+		super(new User.Factory(), null, new MetricsRegistry(), new IndexSettings("benchmark", 1, 0));
+	}
+
+	/**
+	 * Skip the index and mapping creation
+	 * @see candidatetest.main.repository.ElasticRepositoryImpl#initialise()
+	 */
+	@Override
+	protected void initialise() {}
+
+}
@@ -0,0 +1,58 @@
+package candidatetest.main.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the password verification performed on every authentication
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PasswordEncoderBenchmark {
+
+	/**
+	 * The BCrypt cost of the stored hash
+	 */
+	@Param({ "4", "10" })
+	public int strength;
+
+	/**
+	 * The encoder under test
+	 */
+	private PasswordEncoderImpl encoder;
+	/**
+	 * The stored hash
+	 */
+	private String cipherText;
+
+	/**
+	 * Prepare the encoder and a hash of the requested cost
+	 */
+	@Setup
+	public void setup() {
+		encoder = new PasswordEncoderImpl(strength);
+		PropertyAccessorFactory.forDirectFieldAccess(encoder).setPropertyValue("encoder", new BCryptPasswordEncoder(strength));
+		cipherText = encoder.encode("password123");
+	}
+
+	/**
+	 * Verify a correct password
+	 * @return The result of the verification
+	 */
+	@Benchmark
+	public Boolean matches() {
+		return encoder.matches("password123", cipherText);
+	}
+
+}
@@ -0,0 +1,151 @@
+package candidatetest.loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.http.HttpServerTransport;
+import org.elasticsearch.index.reindex.ReindexPlugin;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeValidationException;
+import org.elasticsearch.painless.PainlessPlugin;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.transport.Netty4Plugin;
+import org.elasticsearch.transport.TransportService;
+
+/**
+ * A single ElasticSearch node running inside this JVM on the local transport, with its data in a
+ * temporary directory which is removed when the node is closed.  This is a stand-in for the
+ * cluster when running load tests without Docker.  The node optionally listens on the network,
+ * serving the transport protocol and HTTP on ephemeral ports, for clients outside the node
+ */
+public class EmbeddedElasticsearch implements Closeable {
+
+	/**
+	 * A node which accepts classpath plugins, as the public constructors only load installed plugins
+	 */
+	private static class PluginNode extends Node {
+		/**
+		 * Construct a new node
+		 * @param settings The node settings
+		 * @param plugins The plugins to load from the classpath
+		 */
+		PluginNode(Settings settings, Collection<Class<? extends Plugin>> plugins) {
+			super(new Environment(settings), plugins);
+		}
+	}
+
+	/**
+	 * The temporary home directory of the node
+	 */
+	private final Path home;
+	/**
+	 * The running node
+	 */
+	private final Node node;
+
+	/**
+	 * Start a new node on the local transport and wait for it to become available
+	 * @throws IOException Thrown if the home directory cannot be created
+	 * @throws NodeValidationException Thrown if the node fails to start
+	 */
+	public EmbeddedElasticsearch() throws IOException, NodeValidationException {
+		this(false);
+	}
+
+	/**
+	 * Start a new node and wait for it to become available
+	 * @param network Whether the node listens on the network, see {@link #transportAddress()} and {@link #httpAddress()}
+	 * @throws IOException Thrown if the home directory cannot be created
+	 * @throws NodeValidationException Thrown if the node fails to start
+	 */
+	public EmbeddedElasticsearch(boolean network) throws IOException, NodeValidationException {
+		this.home = Files.createTempDirectory("candidatetest-es");
+		Settings settings = Settings.builder()
+			.put("path.home", home.toString())
+			.put("cluster.name", "candidatetest-loadtest")
+			.put("node.name", "loadtest")
+			.put("transport.type", network ? "netty4" : "local")
+			.put("http.enabled", network)
+			.put("http.type", "netty4")
+			.put("network.host", "127.0.0.1")
+			.put("transport.tcp.port", "0")
+			.put("http.port", "0")
+			.build();
+		Collection<Class<? extends Plugin>> plugins = Arrays.<Class<? extends Plugin>>asList(ReindexPlugin.class, Netty4Plugin.class, PainlessPlugin.class);
+		this.node = new PluginNode(settings, plugins).start();
+		node.client().admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+	}
+
+	/**
+	 * Get a client connected to the node
+	 * @return The node client
+	 */
+	public Client client() {
+		return node.client();
+	}
+
+	/**
+	 * Get the address the node serves the transport protocol on
+	 * @return The address for a transport client
+	 * @throws IllegalStateException Thrown if the node was started on the local transport
+	 */
+	public TransportAddress transportAddress() {
+		checkNetwork();
+		return node.injector().getInstance(TransportService.class).boundAddress().publishAddress();
+	}
+
+	/**
+	 * Get the address the node serves HTTP on
+	 * @return The {@code host:port} of the HTTP endpoint
+	 * @throws IllegalStateException Thrown if the node was started on the local transport
+	 */
+	public String httpAddress() {
+		checkNetwork();
+		TransportAddress address = node.injector().getInstance(HttpServerTransport.class).boundAddress().publishAddress();
+		return address.getAddress() + ":" + address.getPort();
+	}
+
+	/**
+	 * Check that the node listens on the network
+	 * @throws IllegalStateException Thrown if the node was started on the local transport
+	 */
+	private void checkNetwork() {
+		if (!node.settings().getAsBoolean("http.enabled", false)) {
+			throw new IllegalStateException("The node was started on the local transport");
+		}
+	}
+
+	/**
+	 * Stop the node and delete its data
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		node.close();
+		Files.walkFileTree(home, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+}
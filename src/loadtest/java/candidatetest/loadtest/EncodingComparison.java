@@ -0,0 +1,177 @@
+package candidatetest.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.SearchHit;
+
+import candidatetest.main.metrics.MetricsRegistry;
+import candidatetest.main.model.data.User;
+import candidatetest.main.repository.BulkLoadSession;
+import candidatetest.main.repository.IndexSettings;
+import candidatetest.main.repository.UserRepositoryImpl;
+
+/**
+ * Loads the same synthetic users with each document encoding of {@link UserRepositoryImpl}, then reports
+ * the load throughput, the size of each index once merged and the time to scroll back and parse every document.<br><br>
+ * Options are passed as {@code --name=value}:
+ * <ul>
+ * <li>{@code documents} - users loaded per encoding per round (100000)</li>
+ * <li>{@code batch} - users per bulk request (1000)</li>
+ * <li>{@code rounds} - rounds, rotating which encoding is loaded first (3)</li>
+ * </ul>
+ * The fastest load and read of each encoding are reported, with the size from the fastest load
+ */
+public class EncodingComparison {
+
+	/**
+	 * The outcome of loading and reading one encoding
+	 */
+	private static class Result {
+
+		/**
+		 * The name of the encoding
+		 */
+		private final String name;
+		/**
+		 * Whether default values are elided
+		 */
+		private final boolean elideDefaults;
+		/**
+		 * The content type of written documents
+		 */
+		private final XContentType contentType;
+		/**
+		 * The time taken to load, refresh and merge the index in milliseconds
+		 */
+		private long loadMillis = Long.MAX_VALUE;
+		/**
+		 * The time taken to scroll and parse every document in milliseconds
+		 */
+		private long readMillis = Long.MAX_VALUE;
+		/**
+		 * The size of the merged index in bytes
+		 */
+		private long sizeBytes;
+
+		/**
+		 * Construct a result for an encoding
+		 * @param name The name of the encoding
+		 * @param elideDefaults Whether default values are elided
+		 * @param contentType The content type of written documents
+		 */
+		private Result(String name, boolean elideDefaults, XContentType contentType) {
+			this.name = name;
+			this.elideDefaults = elideDefaults;
+			this.contentType = contentType;
+		}
+
+	}
+
+	/**
+	 * Run the comparison
+	 * @param args The options in the form {@code --name=value}
+	 * @throws Exception Thrown if the stand-in fails to start
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+			options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+		}
+		int documents = Integer.parseInt(options.getOrDefault("documents", "100000"));
+		int batch = Integer.parseInt(options.getOrDefault("batch", "1000"));
+		int rounds = Integer.parseInt(options.getOrDefault("rounds", "3"));
+
+		List<User> users = new ArrayList<User>(documents);
+		Random random = new Random(42);
+		for (int i = 0; i < documents; i++) {
+			users.add(MappingComparison.syntheticUser(random, i));
+		}
+
+		List<Result> results = new ArrayList<Result>();
+		results.add(new Result("json", false, XContentType.JSON));
+		results.add(new Result("json-elide", true, XContentType.JSON));
+		results.add(new Result("smile-elide", true, XContentType.SMILE));
+		results.add(new Result("cbor-elide", true, XContentType.CBOR));
+		try (EmbeddedElasticsearch elastic = new EmbeddedElasticsearch()) {
+			Client client = elastic.client();
+			for (int round = 0; round < rounds; round++) {
+				for (int i = 0; i < results.size(); i++) {
+					Result result = results.get((round + i) % results.size());
+					IndexSettings settings = new IndexSettings("encoding" + round + i, 1, 0);
+					UserRepositoryImpl repository = new UserRepositoryImpl(client, new MetricsRegistry(), settings);
+					repository.setEncoding(result.elideDefaults, result.contentType);
+					load(client, repository, users, batch, result);
+					read(client, repository.getIndex(), result);
+					client.admin().indices().prepareDelete(settings.getPrefix() + "-*").get();
+				}
+			}
+		}
+
+		System.out.println();
+		System.out.println(String.format("%-12s %10s %10s %12s %10s %10s", "encoding", "documents", "docs/s", "size bytes", "bytes/doc", "read ms"));
+		for (Result result : results) {
+			System.out.println(String.format("%-12s %10d %10.0f %12d %10.1f %10d", result.name, documents,
+					documents * 1000.0 / Math.max(1, result.loadMillis), result.sizeBytes,
+					(double) result.sizeBytes / documents, result.readMillis));
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Load the users in a bulk-load session and record the result if it was the fastest
+	 * @param client The ElasticSearch client
+	 * @param repository The repository to load
+	 * @param users The users to load
+	 * @param batch The number of users per bulk request
+	 * @param result The result to update
+	 * @throws InterruptedException Thrown if interrupted while loading
+	 */
+	private static void load(Client client, UserRepositoryImpl repository, List<User> users, int batch, Result result) throws InterruptedException {
+		BulkLoadSession<User> session = repository.beginBulkLoad(true);
+		try {
+			for (int i = 0; i < users.size(); i += batch) {
+				session.createMany(users.subList(i, Math.min(users.size(), i + batch)));
+			}
+		} finally {
+			session.close();
+		}
+		if (session.getTookMillis() < result.loadMillis) {
+			result.loadMillis = session.getTookMillis();
+			result.sizeBytes = client.admin().indices().prepareStats(repository.getIndex()).setStore(true).get()
+					.getPrimaries().getStore().getSizeInBytes();
+		}
+	}
+
+	/**
+	 * Scroll through every document of an index, parsing its source, and record the time if it was the fastest
+	 * @param client The ElasticSearch client
+	 * @param index The index to read
+	 * @param result The result to update
+	 */
+	private static void read(Client client, String index, Result result) {
+		long start = System.nanoTime();
+		long fields = 0;
+		SearchResponse response = client.prepareSearch(index).setSize(1000).setScroll(TimeValue.timeValueMinutes(1)).get();
+		while (response.getHits().getHits().length > 0) {
+			for (SearchHit hit : response.getHits().getHits()) {
+				fields += hit.getSourceAsMap().size();
+			}
+			response = client.prepareSearchScroll(response.getScrollId()).setScroll(TimeValue.timeValueMinutes(1)).get();
+		}
+		client.prepareClearScroll().addScrollId(response.getScrollId()).get();
+		long millis = (System.nanoTime() - start) / 1000000;
+		if (fields > 0 && millis < result.readMillis) {
+			result.readMillis = millis;
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package candidatetest.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A distribution of simulated network latencies in microseconds, parsed from a specification of
+ * the form {@code none}, {@code fixed:<ms>}, {@code uniform:<min ms>:<max ms>} or
+ * {@code lognormal:<median ms>:<p99 ms>}
+ */
+public abstract class LatencyDistribution {
+
+	/**
+	 * The z-score of the 99th percentile of the standard normal distribution
+	 */
+	private static final double Z99 = 2.3263478740408408;
+
+	/**
+	 * Draw a latency from the distribution
+	 * @return A latency in microseconds
+	 */
+	public abstract long sampleMicros();
+
+	/**
+	 * Parse a latency specification
+	 * @param spec The specification
+	 * @return The distribution described by the specification
+	 */
+	public static LatencyDistribution parse(String spec) {
+		String[] parts = spec.split(":");
+		switch (parts[0]) {
+			case "none":
+				return fixed(0);
+			case "fixed":
+				return fixed(millisToMicros(parts[1]));
+			case "uniform":
+				return uniform(millisToMicros(parts[1]), millisToMicros(parts[2]));
+			case "lognormal":
+				return logNormal(millisToMicros(parts[1]), millisToMicros(parts[2]));
+			default:
+				throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+		}
+	}
+
+	/**
+	 * A constant latency
+	 * @param micros The latency in microseconds
+	 * @return The distribution
+	 */
+	public static LatencyDistribution fixed(long micros) {
+		return new LatencyDistribution() {
+			@Override
+			public long sampleMicros() {
+				return micros;
+			}
+		};
+	}
+
+	/**
+	 * A latency uniformly distributed between two bounds
+	 * @param minMicros The lower bound in microseconds
+	 * @param maxMicros The upper bound in microseconds
+	 * @return The distribution
+	 */
+	public static LatencyDistribution uniform(long minMicros, long maxMicros) {
+		return new LatencyDistribution() {
+			@Override
+			public long sampleMicros() {
+				return minMicros + (long) (ThreadLocalRandom.current().nextDouble() * (maxMicros - minMicros));
+			}
+		};
+	}
+
+	/**
+	 * A long tailed latency, log-normally distributed with the passed median and 99th percentile
+	 * @param medianMicros The median in microseconds
+	 * @param p99Micros The 99th percentile in microseconds
+	 * @return The distribution
+	 */
+	public static LatencyDistribution logNormal(long medianMicros, long p99Micros) {
+		double mu = Math.log(Math.max(1, medianMicros));
+		double sigma = Math.max(0, (Math.log(Math.max(1, p99Micros)) - mu) / Z99);
+		return new LatencyDistribution() {
+			@Override
+			public long sampleMicros() {
+				return (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+			}
+		};
+	}
+
+	/**
+	 * Convert a decimal number of milliseconds to microseconds
+	 * @param millis The milliseconds as text
+	 * @return The microseconds
+	 */
+	private static long millisToMicros(String millis) {
+		return (long) (Double.parseDouble(millis) * 1000);
+	}
+
+}
@@ -0,0 +1,29 @@
+package candidatetest.loadtest;
+
+import org.elasticsearch.client.Client;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Replaces the transport client of the application with the simulated network client of the
+ * harness.  This configuration is registered after the application configuration so that its
+ * bean definition overrides the {@code client} bean
+ */
+@Configuration
+public class LoadTestConfiguration {
+
+	/**
+	 * The client shared with the harness, set before the application starts
+	 */
+	static volatile SimulatedNetworkClient standIn;
+
+	/**
+	 * The client to connect to the stand-in cluster
+	 * @return The simulated network client
+	 */
+	@Bean
+	public Client client() {
+		return standIn;
+	}
+
+}
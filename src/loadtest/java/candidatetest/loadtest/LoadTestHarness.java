@@ -0,0 +1,300 @@
+package candidatetest.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import candidatetest.main.Application;
+import candidatetest.main.model.data.User;
+import candidatetest.main.repository.BulkLoadSession;
+import candidatetest.main.repository.UserRepository;
+import candidatetest.main.security.PasswordEncoder;
+
+/**
+ * Boots the full application (security filter chain, authentication provider, controllers and
+ * repositories) against an in-process ElasticSearch stand-in and drives a concurrent HTTP workload
+ * against it, reporting throughput and latency percentiles per request kind.<br><br>
+ * Options are passed as {@code --name=value}:
+ * <ul>
+ * <li>{@code threads} - concurrent clients (16)</li>
+ * <li>{@code duration} - measured seconds (30)</li>
+ * <li>{@code warmup} - unmeasured seconds before measuring (10)</li>
+ * <li>{@code users} - users seeded before the run (1000)</li>
+ * <li>{@code mix} - relative weights of the workloads ({@code user=70,account=25,bulk=5})</li>
+ * <li>{@code latency} - simulated cluster latency, see {@link LatencyDistribution} ({@code lognormal:0.5:5})</li>
+ * <li>{@code error-rate} - fraction of cluster actions failing once seeded (0)</li>
+ * <li>{@code user}/{@code password} - the credentials of the clients (the seeded administrator)</li>
+ * <li>{@code output} - a file to write the results to as JSON</li>
+ * </ul>
+ * The clients run closed loop, so latencies do not include time a request would have spent
+ * queued behind a slow predecessor
+ */
+public class LoadTestHarness {
+
+	/**
+	 * The parsed options
+	 */
+	private final Map<String, String> options;
+	/**
+	 * The latencies of measured requests in microseconds per workload
+	 */
+	private final Map<Workload, ConcurrentHistogram> latencies = new EnumMap<Workload, ConcurrentHistogram>(Workload.class);
+	/**
+	 * The response status counts per workload, status 0 counts I/O failures
+	 */
+	private final Map<Workload, ConcurrentMap<Integer, LongAdder>> statuses = new EnumMap<Workload, ConcurrentMap<Integer, LongAdder>>(Workload.class);
+
+	/**
+	 * Construct a harness
+	 * @param options The parsed options
+	 */
+	private LoadTestHarness(Map<String, String> options) {
+		this.options = options;
+		for (Workload workload : Workload.values()) {
+			latencies.put(workload, new ConcurrentHistogram(3));
+			statuses.put(workload, new ConcurrentHashMap<Integer, LongAdder>());
+		}
+	}
+
+	/**
+	 * Run the load test
+	 * @param args The options in the form {@code --name=value}
+	 * @throws Exception Thrown if the stand-in or the application fails to start
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+			options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+		}
+		new LoadTestHarness(options).run();
+		System.exit(0);
+	}
+
+	/**
+	 * Get the id of a seeded user
+	 * @param index The index of the user
+	 * @return The user id
+	 */
+	static String userId(int index) {
+		return String.format("loadtest-%06d", index);
+	}
+
+	/**
+	 * Get an option
+	 * @param name The option name
+	 * @param defaultValue The value if the option was not passed
+	 * @return The option value
+	 */
+	private String option(String name, String defaultValue) {
+		return options.getOrDefault(name, defaultValue);
+	}
+
+	/**
+	 * Start the stand-in and the application, seed the users, run the workload and report
+	 * @throws Exception Thrown if the stand-in or the application fails to start
+	 */
+	private void run() throws Exception {
+		int threads = Integer.parseInt(option("threads", "16"));
+		int users = Integer.parseInt(option("users", "1000"));
+		try (EmbeddedElasticsearch elastic = new EmbeddedElasticsearch()) {
+			SimulatedNetworkClient client = new SimulatedNetworkClient(elastic.client(), Math.max(4, threads / 2));
+			LoadTestConfiguration.standIn = client;
+			ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class, LoadTestConfiguration.class)
+				.run("--server.port=0");
+			try {
+				if (context.getBean("client") != client) {
+					throw new IllegalStateException("The application is not using the stand-in client");
+				}
+				int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+				seed(context, users);
+				client.setLatency(LatencyDistribution.parse(option("latency", "lognormal:0.5:5")));
+				client.setErrorRate(Double.parseDouble(option("error-rate", "0")));
+				drive("http://localhost:" + port, threads, users);
+			} finally {
+				context.close();
+			}
+		}
+	}
+
+	/**
+	 * Seed users sharing a single password hash in a bulk-load session, which leaves them searchable when it ends
+	 * @param context The application context
+	 * @param users The number of users to seed
+	 * @throws InterruptedException Thrown if interrupted while writing the users
+	 */
+	private void seed(ConfigurableApplicationContext context, int users) throws InterruptedException {
+		UserRepository repository = context.getBean(UserRepository.class);
+		String hash = context.getBean(PasswordEncoder.class).encode("password123");
+		BulkLoadSession<User> session = repository.beginBulkLoad(false);
+		try {
+			List<User> batch = new ArrayList<User>();
+			for (int i = 0; i < users; i++) {
+				batch.add(new User(userId(i), "Load Test User " + i, hash, new String[] { "USER" }));
+				if (batch.size() == 1000 || i == users - 1) {
+					session.createMany(batch);
+					batch = new ArrayList<User>();
+				}
+			}
+		} finally {
+			session.close();
+		}
+		if (session.getFailed() > 0) {
+			throw new IllegalStateException(session.getFailed() + " seeded users failed to index");
+		}
+		System.out.println("Seeded " + session.getIndexed() + " users in " + session.getTookMillis() + "ms");
+	}
+
+	/**
+	 * Drive the workload from concurrent clients and print the report
+	 * @param baseUrl The URL of the application
+	 * @param threads The number of concurrent clients
+	 * @param users The number of seeded users
+	 * @throws Exception Thrown if the report cannot be written
+	 */
+	private void drive(String baseUrl, int threads, int users) throws Exception {
+		Workload[] mix = parseMix(option("mix", "user=70,account=25,bulk=5"));
+		String credentials = option("user", "administrator") + ":" + option("password", "@dministr8or");
+		String authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+		long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option("warmup", "10")));
+		long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option("duration", "30")));
+		long start = System.nanoTime();
+		long measureFrom = start + warmupNanos;
+		long end = measureFrom + durationNanos;
+
+		List<Thread> clients = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			Thread thread = new Thread(() -> {
+				long now;
+				while ((now = System.nanoTime()) < end) {
+					Workload workload = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+					int status = request(baseUrl + workload.path(users), workload.method(), authorization);
+					long finished = System.nanoTime();
+					if (now >= measureFrom) {
+						latencies.get(workload).recordValue(TimeUnit.NANOSECONDS.toMicros(finished - now));
+						statuses.get(workload).computeIfAbsent(status, key -> new LongAdder()).increment();
+					}
+				}
+			}, "loadtest-client-" + i);
+			clients.add(thread);
+			thread.start();
+		}
+		for (Thread thread : clients) {
+			thread.join();
+		}
+		report(durationNanos);
+	}
+
+	/**
+	 * Parse the workload weights into a lookup table for weighted random selection
+	 * @param mix Comma separated {@code workload=weight} pairs
+	 * @return An array containing each workload as many times as its weight
+	 */
+	private static Workload[] parseMix(String mix) {
+		List<Workload> table = new ArrayList<Workload>();
+		for (String pair : mix.split(",")) {
+			String[] parts = pair.split("=");
+			Workload workload = Workload.valueOf(parts[0].trim().toUpperCase());
+			for (int i = Integer.parseInt(parts[1].trim()); i > 0; i--) {
+				table.add(workload);
+			}
+		}
+		return table.toArray(new Workload[table.size()]);
+	}
+
+	/**
+	 * Issue a single request and consume its response so the connection can be kept alive
+	 * @param url The request URL
+	 * @param method The HTTP method
+	 * @param authorization The authorization header
+	 * @return The response status, or 0 if the request failed
+	 */
+	private static int request(String url, String method, String authorization) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+			connection.setRequestMethod(method);
+			connection.setRequestProperty("Authorization", authorization);
+			connection.setRequestProperty("Accept", "application/json");
+			int status = connection.getResponseCode();
+			try (InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+				if (body != null) {
+					byte[] buffer = new byte[8192];
+					while (body.read(buffer) >= 0) {
+						// Drain the body
+					}
+				}
+			}
+			return status;
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Print the throughput, errors and latency percentiles per workload, and write them as JSON if requested
+	 * @param durationNanos The measured duration
+	 * @throws IOException Thrown if the JSON report cannot be written
+	 */
+	private void report(long durationNanos) throws IOException {
+		double seconds = durationNanos / 1e9;
+		Map<String, Object> results = new LinkedHashMap<String, Object>();
+		System.out.println();
+		System.out.println(String.format("%-8s %10s %10s %8s %9s %9s %9s %9s %9s", "workload", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+		for (Workload workload : Workload.values()) {
+			AbstractHistogram histogram = latencies.get(workload).copy();
+			if (histogram.getTotalCount() == 0) {
+				continue;
+			}
+			long errors = 0;
+			Map<String, Long> codes = new LinkedHashMap<String, Long>();
+			for (Map.Entry<Integer, LongAdder> entry : statuses.get(workload).entrySet()) {
+				codes.put(String.valueOf(entry.getKey()), entry.getValue().sum());
+				if (entry.getKey() == 0 || entry.getKey() >= 500) {
+					errors += entry.getValue().sum();
+				}
+			}
+			Map<String, Object> result = new LinkedHashMap<String, Object>();
+			result.put("requests", histogram.getTotalCount());
+			result.put("throughput", histogram.getTotalCount() / seconds);
+			result.put("errors", errors);
+			result.put("statuses", codes);
+			result.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+			result.put("p90", histogram.getValueAtPercentile(90) / 1000.0);
+			result.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+			result.put("p999", histogram.getValueAtPercentile(99.9) / 1000.0);
+			result.put("max", histogram.getMaxValue() / 1000.0);
+			results.put(workload.name().toLowerCase(), result);
+			System.out.println(String.format("%-8s %10d %10.1f %8d %9.2f %9.2f %9.2f %9.2f %9.2f", workload.name().toLowerCase(),
+					histogram.getTotalCount(), histogram.getTotalCount() / seconds, errors,
+					result.get("p50"), result.get("p90"), result.get("p99"), result.get("p999"), result.get("max")));
+		}
+		if (options.containsKey("output")) {
+			new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(options.get("output")), results);
+		}
+	}
+
+}
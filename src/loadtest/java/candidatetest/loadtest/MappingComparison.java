@@ -0,0 +1,285 @@
+package candidatetest.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.client.Client;
+
+import candidatetest.main.metrics.MetricsRegistry;
+import candidatetest.main.model.data.AbstractModel;
+import candidatetest.main.model.data.ModelFactory;
+import candidatetest.main.model.data.User;
+import candidatetest.main.repository.BulkLoadSession;
+import candidatetest.main.repository.ElasticRepositoryImpl;
+import candidatetest.main.repository.IndexSettings;
+import candidatetest.main.repository.UserRepositoryImpl;
+
+/**
+ * Loads the same synthetic users into an index mapped with the {@link candidatetest.main.repository.FieldMapping}
+ * annotations of {@link User} and into an index of an unannotated copy of the model, then reports the load
+ * throughput and the size of each index once merged.<br><br>
+ * Options are passed as {@code --name=value}:
+ * <ul>
+ * <li>{@code documents} - users loaded into each index per round (100000)</li>
+ * <li>{@code batch} - users per bulk request (1000)</li>
+ * <li>{@code rounds} - rounds, alternating which index is loaded first (3)</li>
+ * </ul>
+ * The fastest round of each mapping is reported, with the size from that round
+ */
+public class MappingComparison {
+
+	/**
+	 * A copy of {@link User} without mapping annotations, mapped the way every field was before they existed
+	 */
+	public static class PlainUser extends AbstractModel {
+
+		/**
+		 * The user readable name
+		 */
+		private String fullName;
+		/**
+		 * The encrypted password
+		 */
+		private String password;
+		/**
+		 * The roles
+		 */
+		private String[] roles;
+
+		/**
+		 * The factory for creating new empty instances of this model
+		 */
+		public static class Factory implements ModelFactory<PlainUser> {
+
+			/**
+			 * @see candidatetest.main.model.data.ModelFactory#construct()
+			 */
+			@Override
+			public PlainUser construct() {
+				return new PlainUser();
+			}
+
+		}
+
+		/**
+		 * Get the user readable name
+		 * @return The user readable name
+		 */
+		public String getFullName() {
+			return fullName;
+		}
+
+		/**
+		 * Set the user readable name
+		 * @param fullName The user readable name
+		 */
+		public void setFullName(String fullName) {
+			this.fullName = fullName;
+		}
+
+		/**
+		 * Get the encrypted password
+		 * @return The encrypted password
+		 */
+		public String getPassword() {
+			return password;
+		}
+
+		/**
+		 * Set the encrypted password
+		 * @param password The encrypted password
+		 */
+		public void setPassword(String password) {
+			this.password = password;
+		}
+
+		/**
+		 * Get the roles
+		 * @return The roles
+		 */
+		public String[] getRoles() {
+			return roles;
+		}
+
+		/**
+		 * Set the roles
+		 * @param roles The roles
+		 */
+		public void setRoles(String[] roles) {
+			this.roles = roles;
+		}
+
+	}
+
+	/**
+	 * A repository of unannotated users
+	 */
+	public static class PlainUserRepository extends ElasticRepositoryImpl<PlainUser> {
+
+		/**
+		 * Construct the repository, creating its index
+		 * @param client The ElasticSearch client
+		 * @param settings The index layout
+		 */
+		public PlainUserRepository(Client client, IndexSettings settings) {
+			super(new PlainUser.Factory(), client, new MetricsRegistry(), settings);
+		}
+
+	}
+
+	/**
+	 * The outcome of loading one index
+	 */
+	private static class Result {
+
+		/**
+		 * The time taken to load, refresh and merge the index in milliseconds
+		 */
+		private long tookMillis = Long.MAX_VALUE;
+		/**
+		 * The size of the merged index in bytes
+		 */
+		private long sizeBytes;
+
+	}
+
+	/**
+	 * First names for the synthetic users
+	 */
+	private static final String[] FIRST_NAMES = { "Anne", "Joe", "John", "Mary", "Priya", "Wei", "Fatima", "Lars", "Sofia", "Kwame" };
+
+	/**
+	 * Last names for the synthetic users
+	 */
+	private static final String[] LAST_NAMES = { "Bloggs", "Doe", "Other", "Smith", "Patel", "Chen", "Khan", "Nilsson", "Rossi", "Mensah" };
+
+	/**
+	 * The characters of a BCrypt hash
+	 */
+	private static final String HASH_ALPHABET = "./ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+	/**
+	 * Run the comparison
+	 * @param args The options in the form {@code --name=value}
+	 * @throws Exception Thrown if the stand-in fails to start
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+			options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+		}
+		int documents = Integer.parseInt(options.getOrDefault("documents", "100000"));
+		int batch = Integer.parseInt(options.getOrDefault("batch", "1000"));
+		int rounds = Integer.parseInt(options.getOrDefault("rounds", "3"));
+
+		Result annotated = new Result();
+		Result plain = new Result();
+		try (EmbeddedElasticsearch elastic = new EmbeddedElasticsearch()) {
+			Client client = elastic.client();
+			for (int round = 0; round < rounds; round++) {
+				IndexSettings settings = new IndexSettings("compare" + round, 1, 0);
+				if (round % 2 == 0) {
+					load(client, new UserRepositoryImpl(client, new MetricsRegistry(), settings), documents, batch, false, annotated);
+					load(client, new PlainUserRepository(client, settings), documents, batch, true, plain);
+				} else {
+					load(client, new PlainUserRepository(client, settings), documents, batch, true, plain);
+					load(client, new UserRepositoryImpl(client, new MetricsRegistry(), settings), documents, batch, false, annotated);
+				}
+				client.admin().indices().prepareDelete(settings.getPrefix() + "-*").get();
+			}
+		}
+
+		System.out.println();
+		System.out.println(String.format("%-10s %10s %10s %12s %14s", "mapping", "documents", "docs/s", "size bytes", "bytes/doc"));
+		print("annotated", documents, annotated);
+		print("plain", documents, plain);
+		System.out.println(String.format("%-10s %10s %+9.1f%% %+11.1f%%", "change", "",
+				100.0 * plain.tookMillis / annotated.tookMillis - 100,
+				100.0 * (annotated.sizeBytes - plain.sizeBytes) / plain.sizeBytes));
+		System.exit(0);
+	}
+
+	/**
+	 * Load synthetic users into a repository in a bulk-load session and record the result if it was the fastest
+	 * @param client The ElasticSearch client
+	 * @param repository The repository to load
+	 * @param documents The number of users to load
+	 * @param batch The number of users per bulk request
+	 * @param plain Whether to load {@link PlainUser} models rather than {@link User} models
+	 * @param result The result to update
+	 * @param <T> The model type of the repository
+	 * @throws InterruptedException Thrown if interrupted while loading
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends AbstractModel> void load(Client client, ElasticRepositoryImpl<T> repository, int documents, int batch,
+			boolean plain, Result result) throws InterruptedException {
+		// The same seed gives both mappings the same documents
+		Random random = new Random(42);
+		BulkLoadSession<T> session = repository.beginBulkLoad(true);
+		try {
+			List<T> entities = new ArrayList<T>();
+			for (int i = 0; i < documents; i++) {
+				User user = syntheticUser(random, i);
+				entities.add(plain ? (T) toPlain(user) : (T) user);
+				if (entities.size() == batch || i == documents - 1) {
+					session.createMany(entities);
+					entities = new ArrayList<T>();
+				}
+			}
+		} finally {
+			session.close();
+		}
+		CommonStats stats = client.admin().indices().prepareStats(repository.getIndex()).setStore(true).get().getPrimaries();
+		if (session.getTookMillis() < result.tookMillis) {
+			result.tookMillis = session.getTookMillis();
+			result.sizeBytes = stats.getStore().getSizeInBytes();
+		}
+	}
+
+	/**
+	 * Generate a user with a realistic name and password hash
+	 * @param random The source of randomness
+	 * @param index The index of the user
+	 * @return The synthetic user
+	 */
+	static User syntheticUser(Random random, int index) {
+		StringBuilder hash = new StringBuilder("$2a$10$");
+		for (int i = 0; i < 53; i++) {
+			hash.append(HASH_ALPHABET.charAt(random.nextInt(HASH_ALPHABET.length())));
+		}
+		String fullName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+		String[] roles = random.nextInt(20) == 0 ? new String[] { "USER", "ADMIN" } : new String[] { "USER" };
+		return new User(String.format("synthetic-%08d", index), fullName, hash.toString(), roles);
+	}
+
+	/**
+	 * Copy a user into the unannotated model
+	 * @param user The user to copy
+	 * @return The unannotated copy
+	 */
+	private static PlainUser toPlain(User user) {
+		PlainUser plain = new PlainUser();
+		plain.setId(user.getId());
+		plain.setFullName(user.getFullName());
+		plain.setPassword(user.getPassword());
+		plain.setRoles(user.getRoles());
+		return plain;
+	}
+
+	/**
+	 * Print a row of the report
+	 * @param name The name of the mapping
+	 * @param documents The number of documents loaded
+	 * @param result The result of the fastest round
+	 */
+	private static void print(String name, int documents, Result result) {
+		System.out.println(String.format("%-10s %10d %10.0f %12d %14.1f", name, documents,
+				documents * 1000.0 / Math.max(1, result.tookMillis), result.sizeBytes, (double) result.sizeBytes / documents));
+	}
+
+}
@@ -0,0 +1,113 @@
+package candidatetest.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import candidatetest.main.metrics.MetricsRegistry;
+import candidatetest.main.model.data.User;
+import candidatetest.main.repository.BulkLoadSession;
+import candidatetest.main.repository.IndexSettings;
+import candidatetest.main.repository.UserRepositoryImpl;
+
+/**
+ * Loads one large batch of synthetic users with a single createMany call, once encoded on the calling
+ * thread into a single bulk request and once pipelined in parallel chunks, then reports the throughput of each.
+ * Requests pass through a {@link SimulatedNetworkClient} so the pipeline has network time to overlap.<br><br>
+ * Options are passed as {@code --name=value}:
+ * <ul>
+ * <li>{@code documents} - users in the batch (200000)</li>
+ * <li>{@code chunk} - users per pipelined bulk request (1000)</li>
+ * <li>{@code latency} - the simulated latency of each request, see {@link LatencyDistribution#parse(String)} (fixed:20)</li>
+ * <li>{@code rounds} - rounds, alternating which path runs first (3)</li>
+ * </ul>
+ * The fastest round of each path is reported
+ */
+public class PipelineComparison {
+
+	/**
+	 * Run the comparison
+	 * @param args The options in the form {@code --name=value}
+	 * @throws Exception Thrown if the stand-in fails to start
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+			options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+		}
+		int documents = Integer.parseInt(options.getOrDefault("documents", "200000"));
+		int chunk = Integer.parseInt(options.getOrDefault("chunk", "1000"));
+		int rounds = Integer.parseInt(options.getOrDefault("rounds", "3"));
+
+		List<User> users = new ArrayList<User>(documents);
+		Random random = new Random(42);
+		for (int i = 0; i < documents; i++) {
+			users.add(MappingComparison.syntheticUser(random, i));
+		}
+
+		long single = Long.MAX_VALUE;
+		long pipelined = Long.MAX_VALUE;
+		try (EmbeddedElasticsearch elastic = new EmbeddedElasticsearch()) {
+			SimulatedNetworkClient client = new SimulatedNetworkClient(elastic.client(), 8);
+			client.setLatency(LatencyDistribution.parse(options.getOrDefault("latency", "fixed:20")));
+			for (int round = 0; round < rounds; round++) {
+				for (int run = 0; run < 2; run++) {
+					// Each path loads a fresh index so neither pays for overwriting the other's documents
+					IndexSettings settings = new IndexSettings("pipeline" + round + run, 1, 0);
+					UserRepositoryImpl repository = new UserRepositoryImpl(client, new MetricsRegistry(), settings);
+					boolean pipeline = (round + run) % 2 == 1;
+					repository.setPipelineChunkSize(pipeline ? chunk : 0);
+					long tookMillis = load(repository, users);
+					if (pipeline) {
+						pipelined = Math.min(pipelined, tookMillis);
+					} else {
+						single = Math.min(single, tookMillis);
+					}
+					elastic.client().admin().indices().prepareDelete(settings.getPrefix() + "-*").get();
+				}
+			}
+			client.close();
+		}
+
+		System.out.println();
+		System.out.println(String.format("%-10s %10s %10s %10s", "path", "documents", "millis", "docs/s"));
+		print("single", documents, single);
+		print("pipelined", documents, pipelined);
+		System.out.println(String.format("%-10s %10s %10s %+9.1f%%", "change", "", "", 100.0 * single / pipelined - 100));
+		System.exit(0);
+	}
+
+	/**
+	 * Load the users in one createMany call of a bulk-load session
+	 * @param repository The repository to load
+	 * @param users The users to load
+	 * @return The time taken to load and refresh the index in milliseconds
+	 * @throws InterruptedException Thrown if interrupted while loading
+	 */
+	private static long load(UserRepositoryImpl repository, List<User> users) throws InterruptedException {
+		BulkLoadSession<User> session = repository.beginBulkLoad(false);
+		try {
+			session.createMany(users);
+		} finally {
+			session.close();
+		}
+		if (session.getFailed() > 0) {
+			System.out.println(session.getFailed() + " users failed to load");
+		}
+		return session.getTookMillis();
+	}
+
+	/**
+	 * Print a row of the report
+	 * @param name The name of the path
+	 * @param documents The number of documents loaded
+	 * @param tookMillis The time of the fastest round in milliseconds
+	 */
+	private static void print(String name, int documents, long tookMillis) {
+		System.out.println(String.format("%-10s %10d %10d %10.0f", name, documents, tookMillis, documents * 1000.0 / Math.max(1, tookMillis)));
+	}
+
+}
@@ -0,0 +1,99 @@
+package candidatetest.loadtest;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.FilterClient;
+
+/**
+ * A client wrapper simulating the network between the application and the cluster.  Every action
+ * is delayed by a latency drawn from a configurable distribution and a configurable fraction of
+ * actions fail, without blocking the calling thread
+ */
+public class SimulatedNetworkClient extends FilterClient {
+
+	/**
+	 * The distribution of simulated latencies
+	 */
+	private volatile LatencyDistribution latency = LatencyDistribution.fixed(0);
+	/**
+	 * The fraction of actions which fail, between 0 and 1
+	 */
+	private volatile double errorRate;
+	/**
+	 * The threads completing delayed actions
+	 */
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Wrap a client
+	 * @param in The client connected to the stand-in cluster
+	 * @param threads The number of threads used to dispatch delayed actions
+	 */
+	public SimulatedNetworkClient(Client in, int threads) {
+		super(in);
+		this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "simulated-network");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Set the distribution of simulated latencies
+	 * @param latency The distribution
+	 */
+	public void setLatency(LatencyDistribution latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Set the fraction of actions which fail
+	 * @param errorRate The fraction between 0 and 1
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Delay the action and possibly fail it before passing it to the wrapped client
+	 * @see org.elasticsearch.client.FilterClient#doExecute(org.elasticsearch.action.Action, org.elasticsearch.action.ActionRequest, org.elasticsearch.action.ActionListener)
+	 */
+	@Override
+	protected <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void doExecute(
+			Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+		long delay = latency.sampleMicros();
+		boolean fail = errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+		Runnable dispatch = () -> {
+			if (fail) {
+				listener.onFailure(new ElasticsearchException("Injected failure for " + action.name()));
+			} else {
+				super.doExecute(action, request, listener);
+			}
+		};
+		if (delay <= 0) {
+			dispatch.run();
+		} else {
+			scheduler.schedule(dispatch, delay, TimeUnit.MICROSECONDS);
+		}
+	}
+
+	/**
+	 * Stop the dispatch threads
+	 * @see org.elasticsearch.client.FilterClient#close()
+	 */
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+}
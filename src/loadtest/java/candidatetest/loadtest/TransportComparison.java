@@ -0,0 +1,342 @@
+package candidatetest.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.transport.client.PreBuiltTransportClient;
+
+import candidatetest.main.metrics.MetricsRegistry;
+import candidatetest.main.model.data.User;
+import candidatetest.main.repository.BulkLoadSession;
+import candidatetest.main.repository.ChangeBatch;
+import candidatetest.main.repository.IndexSettings;
+import candidatetest.main.repository.PartialUpdate;
+import candidatetest.main.repository.Statistic;
+import candidatetest.main.repository.Statistics;
+import candidatetest.main.repository.UserRepositoryImpl;
+import candidatetest.main.transport.RestDocumentClient;
+
+/**
+ * Runs the same repository checks and workloads against each ElasticSearch backend: the transport
+ * client, and the {@link RestDocumentClient} sending document reads and writes over HTTP.  The stand-in
+ * node listens on the network, so both backends pay for a real connection.  Each backend first runs the
+ * conformance checks on its own index, then loads synthetic users and runs timed read and update workloads
+ * from concurrent threads.<br><br>
+ * Options are passed as {@code --name=value}:
+ * <ul>
+ * <li>{@code documents} - users loaded per backend per round (50000)</li>
+ * <li>{@code threads} - threads issuing reads and updates (16)</li>
+ * <li>{@code seconds} - duration of each timed workload (10)</li>
+ * <li>{@code connections} - keep-alive connections of the HTTP backend (32)</li>
+ * <li>{@code compress} - whether the HTTP backend compresses (true)</li>
+ * <li>{@code rounds} - rounds, alternating which backend runs first (2)</li>
+ * </ul>
+ * The best round of each backend and workload is reported.  The process exits with status 1 if either
+ * backend fails a check
+ */
+public class TransportComparison {
+
+	/**
+	 * The backends compared
+	 */
+	private static final List<String> BACKENDS = Arrays.asList("transport", "rest");
+
+	/**
+	 * The workloads timed
+	 */
+	private static final List<String> WORKLOADS = Arrays.asList("load", "findOne", "update");
+
+	/**
+	 * The best outcome of one workload on one backend
+	 */
+	private static class Result {
+		/**
+		 * The operations per second, documents per second for a load
+		 */
+		private double throughput;
+		/**
+		 * The latency distribution in microseconds, null for a load
+		 */
+		private AbstractHistogram latency;
+	}
+
+	/**
+	 * Run the comparison
+	 * @param args The options in the form {@code --name=value}
+	 * @throws Exception Thrown if the stand-in fails to start
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+			options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+		}
+		int documents = Integer.parseInt(options.getOrDefault("documents", "50000"));
+		int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+		int seconds = Integer.parseInt(options.getOrDefault("seconds", "10"));
+		int connections = Integer.parseInt(options.getOrDefault("connections", "32"));
+		boolean compress = Boolean.parseBoolean(options.getOrDefault("compress", "true"));
+		int rounds = Integer.parseInt(options.getOrDefault("rounds", "2"));
+
+		List<User> users = new ArrayList<User>(documents);
+		Random random = new Random(42);
+		for (int i = 0; i < documents; i++) {
+			users.add(MappingComparison.syntheticUser(random, i));
+		}
+
+		Map<String, List<String>> failures = new HashMap<String, List<String>>();
+		Map<String, Result> results = new HashMap<String, Result>();
+		try (EmbeddedElasticsearch elastic = new EmbeddedElasticsearch(true)) {
+			Map<String, Client> clients = new HashMap<String, Client>();
+			clients.put("transport", transportClient(elastic));
+			clients.put("rest", new RestDocumentClient(transportClient(elastic),
+					RestDocumentClient.restClient(elastic.httpAddress(), connections, compress), compress));
+
+			for (String backend : BACKENDS) {
+				IndexSettings settings = new IndexSettings("conformance-" + backend, 1, 0);
+				UserRepositoryImpl repository = new UserRepositoryImpl(clients.get(backend), new MetricsRegistry(), settings);
+				failures.put(backend, conformance(repository, () -> elastic.client().admin().indices().prepareRefresh(repository.getIndex()).get()));
+				elastic.client().admin().indices().prepareDelete(settings.getPrefix() + "-*").get();
+			}
+
+			for (int round = 0; round < rounds; round++) {
+				for (int run = 0; run < BACKENDS.size(); run++) {
+					String backend = BACKENDS.get((round + run) % BACKENDS.size());
+					IndexSettings settings = new IndexSettings("transport" + round + run, 1, 0);
+					UserRepositoryImpl repository = new UserRepositoryImpl(clients.get(backend), new MetricsRegistry(), settings);
+					benchmark(backend, repository, users, threads, seconds, results);
+					elastic.client().admin().indices().prepareDelete(settings.getPrefix() + "-*").get();
+				}
+			}
+			clients.values().forEach(Client::close);
+		}
+
+		System.out.println();
+		boolean passed = true;
+		for (String backend : BACKENDS) {
+			List<String> failed = failures.get(backend);
+			passed &= failed.isEmpty();
+			System.out.println(backend + ": " + (failed.isEmpty() ? "all checks passed" : "failed " + String.join(", ", failed)));
+		}
+		System.out.println();
+		System.out.println(String.format("%-10s %-8s %12s %10s %10s %10s", "backend", "workload", "per second", "p50 ms", "p99 ms", "max ms"));
+		for (String workload : WORKLOADS) {
+			for (String backend : BACKENDS) {
+				Result result = results.get(backend + "/" + workload);
+				if (result.latency == null) {
+					System.out.println(String.format("%-10s %-8s %12.0f", backend, workload, result.throughput));
+				} else {
+					System.out.println(String.format("%-10s %-8s %12.0f %10.2f %10.2f %10.2f", backend, workload, result.throughput,
+							result.latency.getValueAtPercentile(50) / 1000.0, result.latency.getValueAtPercentile(99) / 1000.0,
+							result.latency.getMaxValue() / 1000.0));
+				}
+			}
+		}
+		System.exit(passed ? 0 : 1);
+	}
+
+	/**
+	 * Connect a transport client to the stand-in, configured as the application's
+	 * @param elastic The stand-in
+	 * @return The client
+	 */
+	private static TransportClient transportClient(EmbeddedElasticsearch elastic) {
+		TransportClient client = new PreBuiltTransportClient(Settings.builder()
+				.put("client.transport.ignore_cluster_name", true)
+				.put("transport.tcp.compress", true)
+				.build());
+		client.addTransportAddress(elastic.transportAddress());
+		return client;
+	}
+
+	/**
+	 * Check that the repository behaves as specified on a backend
+	 * @param repository A repository with an empty index
+	 * @param refresh Makes writes visible to reads, which are searches
+	 * @return The descriptions of the checks which failed
+	 * @throws InterruptedException Thrown if interrupted while waiting for writes to settle
+	 */
+	private static List<String> conformance(UserRepositoryImpl repository, Runnable refresh) throws InterruptedException {
+		List<String> failed = new ArrayList<String>();
+		List<User> users = new ArrayList<User>();
+		Random random = new Random(7);
+		for (int i = 0; i < 100; i++) {
+			users.add(MappingComparison.syntheticUser(random, i));
+		}
+		String first = users.get(0).getId();
+		String second = users.get(1).getId();
+		String third = users.get(2).getId();
+		String fourth = users.get(3).getId();
+
+		BulkLoadSession<User> session = repository.beginBulkLoad(false);
+		try {
+			session.createMany(users);
+		} finally {
+			session.close();
+		}
+		refresh.run();
+		// The repository seeds its index, so counts are relative to what it holds after the load
+		long loaded = repository.statistics(Collections.emptyList()).getTotal();
+		check(failed, "findOne returns a created user", () -> users.get(5).getFullName().equals(repository.findOne(users.get(5).getId()).getFullName()));
+		check(failed, "findOne of a missing id returns null", () -> repository.findOne("missing") == null);
+		check(failed, "updatePartial sets a field", () -> {
+			boolean updated = repository.updatePartial(PartialUpdate.field(first, "fullName", "Ada Lovelace")) == PartialUpdate.Result.UPDATED;
+			refresh.run();
+			return updated && "Ada Lovelace".equals(repository.findOne(first).getFullName());
+		});
+		check(failed, "updatePartial to the stored value is unchanged", () -> repository.updatePartial(PartialUpdate.field(first, "fullName", "Ada Lovelace")) == PartialUpdate.Result.UNCHANGED);
+		check(failed, "updatePartial of a missing id is not found", () -> repository.updatePartial(PartialUpdate.field("missing", "fullName", "Nobody")) == PartialUpdate.Result.NOT_FOUND);
+		check(failed, "updatePartial at a stale version conflicts", () -> repository.updatePartial(PartialUpdate.field(second, "fullName", "Stale Write")
+				.ifVersion(repository.findOne(second).getVersion() + 5)) == PartialUpdate.Result.CONFLICT);
+		check(failed, "updatePartial as an upsert creates", () -> {
+			boolean created = repository.updatePartial(PartialUpdate.field("upserted", "fullName", "Grace Hopper").asUpsert()) == PartialUpdate.Result.CREATED;
+			refresh.run();
+			return created && repository.findOne("upserted") != null;
+		});
+		check(failed, "updateMany reports each outcome", () -> repository.updateMany(Arrays.asList(PartialUpdate.field(third, "fullName", "Alan Turing"),
+				PartialUpdate.field("missing", "fullName", "Nobody"))).equals(Arrays.asList(PartialUpdate.Result.UPDATED, PartialUpdate.Result.NOT_FOUND)));
+		check(failed, "delete hides the entity", () -> {
+			boolean deleted = repository.delete(fourth);
+			refresh.run();
+			return deleted && repository.findOne(fourth) == null;
+		});
+		check(failed, "delete of a missing id is false", () -> !repository.delete("missing"));
+
+		// Wait for the writes to become searchable and settle into the change feed
+		TimeUnit.SECONDS.sleep(3);
+		check(failed, "suggest matches word prefixes", () -> repository.suggest("fullName", "Ada Lov", 5).stream().anyMatch(user -> first.equals(user.getId())));
+		check(failed, "statistics count live and deleted entities after an upsert and a delete", () -> {
+			Statistics statistics = repository.statistics(Collections.singletonList(Statistic.terms("roles", 5)));
+			return statistics.getTotal() == loaded && statistics.getDeleted() == 1;
+		});
+		check(failed, "changesSince pages through every write", () -> {
+			Set<String> ids = new HashSet<String>();
+			ChangeBatch<User> batch = repository.changesSince(null, 30);
+			ids.addAll(ids(batch.getChanges()));
+			while (batch.isMore()) {
+				batch = repository.changesSince(batch.getCursor(), 30);
+				ids.addAll(ids(batch.getChanges()));
+			}
+			return ids.containsAll(ids(users)) && ids.contains("upserted");
+		});
+		return failed;
+	}
+
+	/**
+	 * Run a check, recording it as failed if it returns false or throws
+	 * @param failed The descriptions of the checks which failed
+	 * @param description The description of the check
+	 * @param check The check
+	 */
+	private static void check(List<String> failed, String description, BooleanSupplier check) {
+		try {
+			if (check.getAsBoolean()) {
+				return;
+			}
+		} catch (RuntimeException e) {
+			System.out.println(description + ": " + e);
+		}
+		failed.add(description);
+	}
+
+	/**
+	 * Get the ids of users
+	 * @param users The users
+	 * @return The ids
+	 */
+	private static Set<String> ids(List<User> users) {
+		Set<String> ids = new HashSet<String>();
+		users.forEach(user -> ids.add(user.getId()));
+		return ids;
+	}
+
+	/**
+	 * Load the users, then time reads and updates of random users, recording each result if it is the best so far
+	 * @param backend The name of the backend
+	 * @param repository A repository with an empty index
+	 * @param users The users to load
+	 * @param threads The number of threads issuing requests
+	 * @param seconds The duration of each timed workload
+	 * @param results The best results, keyed by backend and workload
+	 * @throws InterruptedException Thrown if interrupted while loading or timing
+	 */
+	private static void benchmark(String backend, UserRepositoryImpl repository, List<User> users, int threads, int seconds,
+			Map<String, Result> results) throws InterruptedException {
+		BulkLoadSession<User> session = repository.beginBulkLoad(false);
+		try {
+			session.createMany(users);
+		} finally {
+			session.close();
+		}
+		record(results, backend + "/load", users.size() * 1000.0 / Math.max(1, session.getTookMillis()), null);
+		time(backend + "/findOne", threads, seconds, results,
+				index -> repository.findOne(users.get(index % users.size()).getId()));
+		time(backend + "/update", threads, seconds, results,
+				index -> repository.updatePartial(PartialUpdate.field(users.get(index % users.size()).getId(), "fullName", "Updated " + index)));
+	}
+
+	/**
+	 * Run an operation on random users from concurrent threads for a while
+	 * @param name The backend and workload
+	 * @param threads The number of threads
+	 * @param seconds The duration
+	 * @param results The best results
+	 * @param operation The operation, passed a random non-negative number
+	 * @throws InterruptedException Thrown if interrupted while waiting for the threads
+	 */
+	private static void time(String name, int threads, int seconds, Map<String, Result> results, Consumer<Integer> operation) throws InterruptedException {
+		ConcurrentHistogram latency = new ConcurrentHistogram(3);
+		AtomicLong operations = new AtomicLong();
+		long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(() -> {
+				while (System.nanoTime() < end) {
+					long start = System.nanoTime();
+					operation.accept(ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+					latency.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+					operations.incrementAndGet();
+				}
+			}, name);
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		record(results, name, operations.get() / (double) seconds, latency.copy());
+	}
+
+	/**
+	 * Record a result if it has the highest throughput so far
+	 * @param results The best results
+	 * @param name The backend and workload
+	 * @param throughput The throughput
+	 * @param latency The latency distribution in microseconds, or null
+	 */
+	private static void record(Map<String, Result> results, String name, double throughput, AbstractHistogram latency) {
+		Result result = results.computeIfAbsent(name, key -> new Result());
+		if (throughput > result.throughput) {
+			result.throughput = throughput;
+			result.latency = latency;
+		}
+	}
+
+}
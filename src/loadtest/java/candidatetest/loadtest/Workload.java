@@ -0,0 +1,60 @@
+package candidatetest.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The kinds of request issued by the load test harness
+ */
+public enum Workload {
+
+	/** Read a random seeded user through {@code GET /api/user/{id}} */
+	USER("GET") {
+		@Override
+		String path(int users) {
+			return "/api/user/" + LoadTestHarness.userId(ThreadLocalRandom.current().nextInt(users));
+		}
+	},
+	/** Read the authenticated user through {@code GET /api/account} */
+	ACCOUNT("GET") {
+		@Override
+		String path(int users) {
+			return "/api/account";
+		}
+	},
+	/** Write a batch of users through {@code POST /api/development} */
+	BULK("POST") {
+		@Override
+		String path(int users) {
+			return "/api/development";
+		}
+	};
+
+	/**
+	 * The HTTP method of the request
+	 */
+	private final String method;
+
+	/**
+	 * Construct a workload
+	 * @param method The HTTP method of the request
+	 */
+	Workload(String method) {
+		this.method = method;
+	}
+
+	/**
+	 * Get the HTTP method of the request
+	 * @return The HTTP method
+	 */
+	String method() {
+		return method;
+	}
+
+	/**
+	 * Build the path of the next request
+	 * @param users The number of seeded users
+	 * @return The request path
+	 */
+	abstract String path(int users);
+
+}
@@ -0,0 +1,164 @@
+package candidatetest.loadtest.replay;
+
+import java.time.Instant;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A single request read from an access log capture
+ */
+public class CapturedRequest {
+
+	/**
+	 * The time the request was received in milliseconds since the epoch
+	 */
+	private final long timestamp;
+	/**
+	 * The HTTP method
+	 */
+	private final String method;
+	/**
+	 * The request path and query
+	 */
+	private final String uri;
+	/**
+	 * The user name presented, null if the request was anonymous
+	 */
+	private final String user;
+	/**
+	 * The status originally returned
+	 */
+	private final int status;
+	/**
+	 * The duration originally measured in microseconds, -1 if not captured
+	 */
+	private final long durationMicros;
+
+	/**
+	 * Construct a captured request
+	 * @param timestamp The time the request was received
+	 * @param method The HTTP method
+	 * @param uri The request path and query
+	 * @param user The user name presented
+	 * @param status The status originally returned
+	 * @param durationMicros The duration originally measured
+	 */
+	public CapturedRequest(long timestamp, String method, String uri, String user, int status, long durationMicros) {
+		this.timestamp = timestamp;
+		this.method = method;
+		this.uri = uri;
+		this.user = user;
+		this.status = status;
+		this.durationMicros = durationMicros;
+	}
+
+	/**
+	 * Parse a line of a capture.  The line may be an access event as written by the access log filter,
+	 * a search hit holding the event in {@code _source}, or a log document holding the event in
+	 * {@code message} either as an object or as a JSON string
+	 * @param mapper The JSON mapper
+	 * @param line The line to parse
+	 * @return The captured request, or null if the line does not hold an access event
+	 * @throws java.io.IOException Thrown if the line is not valid JSON
+	 */
+	public static CapturedRequest parse(ObjectMapper mapper, String line) throws java.io.IOException {
+		JsonNode node = mapper.readTree(line);
+		if (node.has("_source")) {
+			node = node.get("_source");
+		}
+		if (node.has("message") && !node.has("path")) {
+			JsonNode message = node.get("message");
+			node = message.isTextual() ? mapper.readTree(message.asText()) : message;
+		}
+		if (!node.has("path") || !node.has("timestamp")) {
+			return null;
+		}
+		JsonNode timestamp = node.get("timestamp");
+		String uri = node.get("path").asText();
+		if (node.hasNonNull("query")) {
+			uri += "?" + node.get("query").asText();
+		}
+		return new CapturedRequest(
+				timestamp.isNumber() ? timestamp.asLong() : Instant.parse(timestamp.asText()).toEpochMilli(),
+				node.path("method").asText("GET"),
+				uri,
+				node.hasNonNull("user") ? node.get("user").asText() : null,
+				node.path("status").asInt(0),
+				node.path("durationMicros").asLong(-1));
+	}
+
+	/**
+	 * Group the request with requests to the same end-point, replacing path segments
+	 * after the resource name with a placeholder, e.g. {@code GET /api/user/{id}}
+	 * @return The end-point of the request
+	 */
+	public String endpoint() {
+		String path = uri.split("\\?", 2)[0];
+		String[] segments = path.split("/");
+		StringBuilder endpoint = new StringBuilder(method).append(' ');
+		for (int i = 1; i < segments.length; i++) {
+			endpoint.append('/').append(i > 2 && !segments[i].startsWith("_") ? "{id}" : segments[i]);
+		}
+		return endpoint.toString();
+	}
+
+	/**
+	 * Get the password to present for this request
+	 * @param credentials Passwords keyed by user name
+	 * @return The password, deliberately wrong if the original request failed authentication
+	 */
+	public String password(Map<String, String> credentials) {
+		return status == 401 ? "replayed-authentication-failure" : credentials.get(user);
+	}
+
+	/**
+	 * Get the time the request was received
+	 * @return The time in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Get the HTTP method
+	 * @return The HTTP method
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Get the request path and query
+	 * @return The request path and query
+	 */
+	public String getUri() {
+		return uri;
+	}
+
+	/**
+	 * Get the user name presented
+	 * @return The user name, null if the request was anonymous
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * Get the status originally returned
+	 * @return The status
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Get the duration originally measured
+	 * @return The duration in microseconds, -1 if not captured
+	 */
+	public long getDurationMicros() {
+		return durationMicros;
+	}
+
+}
@@ -0,0 +1,320 @@
+package candidatetest.loadtest.replay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.ConcurrentHistogram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Replays captured API traffic against a running instance and compares the results of runs
+ * against different builds.<br><br>
+ * Replay options, passed as {@code --name=value}:
+ * <ul>
+ * <li>{@code capture} - an NDJSON capture of access events, optionally gzipped (required)</li>
+ * <li>{@code target} - the base URL of the instance ({@code http://localhost:8080})</li>
+ * <li>{@code speed} - the replay speed multiplier, 0 replays as fast as possible (1)</li>
+ * <li>{@code credentials} - a properties file of {@code user=password}; requests by other users
+ * are sent with the seeded administrator password</li>
+ * <li>{@code threads} - the maximum number of requests in flight (64)</li>
+ * <li>{@code output} - a file to write the results to as JSON</li>
+ * </ul>
+ * Compare mode: {@code --compare=baseline.json,candidate.json} prints the latency and error
+ * differences per end-point between two result files.<br><br>
+ * Requests keep their original inter-arrival times divided by the speed multiplier.  Requests which
+ * originally failed authentication are replayed with a wrong password so that the traffic mix of
+ * hot users, missing entities and authentication failures is reproduced
+ */
+public class TrafficReplay {
+
+	/**
+	 * The JSON mapper for captures and results
+	 */
+	private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	/**
+	 * The latencies in microseconds per end-point
+	 */
+	private final ConcurrentMap<String, ConcurrentHistogram> latencies = new ConcurrentHashMap<String, ConcurrentHistogram>();
+	/**
+	 * The number of failed requests (status 5xx or no response) per end-point
+	 */
+	private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+	/**
+	 * The number of requests whose status differed from the capture per end-point
+	 */
+	private final ConcurrentMap<String, LongAdder> mismatches = new ConcurrentHashMap<String, LongAdder>();
+	/**
+	 * How late requests were sent compared to their schedule in microseconds
+	 */
+	private final ConcurrentHistogram lateness = new ConcurrentHistogram(3);
+
+	/**
+	 * Run a replay or a comparison
+	 * @param args The options in the form {@code --name=value}
+	 * @throws Exception Thrown if the capture or results cannot be read
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+			options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+		}
+		if (options.containsKey("compare")) {
+			String[] files = options.get("compare").split(",");
+			compare(mapper.readTree(new File(files[0])), mapper.readTree(new File(files[1])));
+		} else {
+			new TrafficReplay().replay(options);
+		}
+	}
+
+	/**
+	 * Read a capture ordered by timestamp
+	 * @param file The capture file, gzipped if its name ends in {@code .gz}
+	 * @return The captured requests
+	 * @throws IOException Thrown if the capture cannot be read
+	 */
+	static List<CapturedRequest> readCapture(String file) throws IOException {
+		List<CapturedRequest> requests = new ArrayList<CapturedRequest>();
+		InputStream input = new FileInputStream(file);
+		if (file.endsWith(".gz")) {
+			input = new GZIPInputStream(input);
+		}
+		try (BufferedReader reader = new BufferedReader(new java.io.InputStreamReader(input, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().isEmpty()) {
+					CapturedRequest request = CapturedRequest.parse(mapper, line);
+					if (request != null) {
+						requests.add(request);
+					}
+				}
+			}
+		}
+		requests.sort(Comparator.comparingLong(CapturedRequest::getTimestamp));
+		return requests;
+	}
+
+	/**
+	 * Replay a capture and print the results
+	 * @param options The replay options
+	 * @throws Exception Thrown if the capture cannot be read or the results cannot be written
+	 */
+	private void replay(Map<String, String> options) throws Exception {
+		List<CapturedRequest> requests = readCapture(options.get("capture"));
+		if (requests.isEmpty()) {
+			throw new IllegalArgumentException("The capture holds no access events");
+		}
+		String target = options.getOrDefault("target", "http://localhost:8080");
+		double speed = Double.parseDouble(options.getOrDefault("speed", "1"));
+		Map<String, String> credentials = new HashMap<String, String>();
+		if (options.containsKey("credentials")) {
+			Properties properties = new Properties();
+			properties.load(Files.newBufferedReader(Paths.get(options.get("credentials")), StandardCharsets.UTF_8));
+			properties.stringPropertyNames().forEach(name -> credentials.put(name, properties.getProperty(name)));
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(Integer.parseInt(options.getOrDefault("threads", "64")));
+
+		long capturedStart = requests.get(0).getTimestamp();
+		long replayStart = System.nanoTime();
+		for (CapturedRequest request : requests) {
+			long due = speed <= 0 ? replayStart : replayStart + (long) (TimeUnit.MILLISECONDS.toNanos(request.getTimestamp() - capturedStart) / speed);
+			long wait = due - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			pool.execute(() -> {
+				lateness.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due)));
+				send(target, request, credentials);
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.HOURS);
+		double seconds = (System.nanoTime() - replayStart) / 1e9;
+
+		Map<String, Object> results = results(requests, seconds);
+		print(results);
+		if (options.containsKey("output")) {
+			mapper.writeValue(new File(options.get("output")), results);
+		}
+	}
+
+	/**
+	 * Send a single captured request and record its outcome
+	 * @param target The base URL of the instance
+	 * @param request The captured request
+	 * @param credentials Passwords keyed by user name
+	 */
+	private void send(String target, CapturedRequest request, Map<String, String> credentials) {
+		String endpoint = request.endpoint();
+		long start = System.nanoTime();
+		int status = 0;
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(target + request.getUri()).openConnection();
+			connection.setRequestMethod(request.getMethod());
+			connection.setRequestProperty("Accept", "application/json");
+			if (request.getUser() != null) {
+				String password = request.password(credentials);
+				String pair = request.getUser() + ":" + (password == null ? "@dministr8or" : password);
+				connection.setRequestProperty("Authorization", "Basic " + Base64.getEncoder().encodeToString(pair.getBytes(StandardCharsets.UTF_8)));
+			}
+			status = connection.getResponseCode();
+			try (InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+				if (body != null) {
+					byte[] buffer = new byte[8192];
+					while (body.read(buffer) >= 0) {
+						// Drain the body so the connection can be kept alive
+					}
+				}
+			}
+		} catch (IOException e) {
+			status = 0;
+		}
+		latencies.computeIfAbsent(endpoint, key -> new ConcurrentHistogram(3)).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+		if (status == 0 || status >= 500) {
+			errors.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+		}
+		if (status != request.getStatus()) {
+			mismatches.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+		}
+	}
+
+	/**
+	 * Summarise the replay
+	 * @param requests The captured requests
+	 * @param seconds The duration of the replay
+	 * @return The results keyed by end-point, plus the overall figures
+	 */
+	private Map<String, Object> results(List<CapturedRequest> requests, double seconds) {
+		Map<String, ConcurrentHistogram> original = new HashMap<String, ConcurrentHistogram>();
+		for (CapturedRequest request : requests) {
+			if (request.getDurationMicros() >= 0) {
+				original.computeIfAbsent(request.endpoint(), key -> new ConcurrentHistogram(3)).recordValue(request.getDurationMicros());
+			}
+		}
+		Map<String, Object> endpoints = new TreeMap<String, Object>();
+		for (Map.Entry<String, ConcurrentHistogram> entry : latencies.entrySet()) {
+			AbstractHistogram histogram = entry.getValue().copy();
+			Map<String, Object> result = summarise(histogram);
+			result.put("errors", errors.containsKey(entry.getKey()) ? errors.get(entry.getKey()).sum() : 0);
+			result.put("statusMismatches", mismatches.containsKey(entry.getKey()) ? mismatches.get(entry.getKey()).sum() : 0);
+			if (original.containsKey(entry.getKey())) {
+				result.put("captured", summarise(original.get(entry.getKey())));
+			}
+			endpoints.put(entry.getKey(), result);
+		}
+		Map<String, Object> results = new LinkedHashMap<String, Object>();
+		results.put("requests", requests.size());
+		results.put("seconds", seconds);
+		results.put("throughput", requests.size() / seconds);
+		results.put("lateness", summarise(lateness.copy()));
+		results.put("endpoints", endpoints);
+		return results;
+	}
+
+	/**
+	 * Summarise a latency histogram in milliseconds
+	 * @param histogram The histogram in microseconds
+	 * @return The count and percentiles
+	 */
+	private static Map<String, Object> summarise(AbstractHistogram histogram) {
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("count", histogram.getTotalCount());
+		result.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+		result.put("p90", histogram.getValueAtPercentile(90) / 1000.0);
+		result.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+		result.put("max", histogram.getMaxValue() / 1000.0);
+		return result;
+	}
+
+	/**
+	 * Print the results of a replay
+	 * @param results The results
+	 */
+	@SuppressWarnings("unchecked")
+	private static void print(Map<String, Object> results) {
+		Map<String, Object> lateness = (Map<String, Object>) results.get("lateness");
+		System.out.println(String.format("%d requests in %.1fs (%.1f req/s), schedule lateness p99 %.2f ms",
+				results.get("requests"), results.get("seconds"), results.get("throughput"), lateness.get("p99")));
+		System.out.println(String.format("%-40s %8s %8s %9s %9s %9s %9s", "endpoint", "count", "errors", "mismatch", "p50 ms", "p99 ms", "max ms"));
+		for (Map.Entry<String, Object> entry : ((Map<String, Object>) results.get("endpoints")).entrySet()) {
+			Map<String, Object> result = (Map<String, Object>) entry.getValue();
+			System.out.println(String.format("%-40s %8d %8d %9d %9.2f %9.2f %9.2f", entry.getKey(), result.get("count"),
+					result.get("errors"), result.get("statusMismatches"), result.get("p50"), result.get("p99"), result.get("max")));
+		}
+	}
+
+	/**
+	 * Print the latency and error differences per end-point between two result files
+	 * @param baseline The results of the baseline build
+	 * @param candidate The results of the candidate build
+	 */
+	private static void compare(JsonNode baseline, JsonNode candidate) {
+		TreeSet<String> endpoints = new TreeSet<String>();
+		baseline.path("endpoints").fieldNames().forEachRemaining(endpoints::add);
+		candidate.path("endpoints").fieldNames().forEachRemaining(endpoints::add);
+		System.out.println(String.format("%-40s %10s %10s %8s %10s %10s %8s %8s %8s", "endpoint",
+				"base p50", "cand p50", "delta", "base p99", "cand p99", "delta", "base err", "cand err"));
+		for (String endpoint : endpoints) {
+			JsonNode a = baseline.path("endpoints").path(endpoint);
+			JsonNode b = candidate.path("endpoints").path(endpoint);
+			System.out.println(String.format("%-40s %10.2f %10.2f %8s %10.2f %10.2f %8s %8.2f%% %8.2f%%", endpoint,
+					a.path("p50").asDouble(), b.path("p50").asDouble(), change(a.path("p50").asDouble(), b.path("p50").asDouble()),
+					a.path("p99").asDouble(), b.path("p99").asDouble(), change(a.path("p99").asDouble(), b.path("p99").asDouble()),
+					errorRate(a), errorRate(b)));
+		}
+		System.out.println(String.format("%-40s %10.1f %10.1f %8s", "throughput (req/s)",
+				baseline.path("throughput").asDouble(), candidate.path("throughput").asDouble(),
+				change(baseline.path("throughput").asDouble(), candidate.path("throughput").asDouble())));
+	}
+
+	/**
+	 * Format the relative change between two values
+	 * @param before The baseline value
+	 * @param after The candidate value
+	 * @return The signed percentage change
+	 */
+	private static String change(double before, double after) {
+		return before == 0 ? "n/a" : String.format("%+.1f%%", (after - before) * 100 / before);
+	}
+
+	/**
+	 * Get the error rate of an end-point result
+	 * @param result The end-point result
+	 * @return The percentage of requests which failed
+	 */
+	private static double errorRate(JsonNode result) {
+		long count = result.path("count").asLong();
+		return count == 0 ? 0 : result.path("errors").asDouble() * 100 / count;
+	}
+
+}
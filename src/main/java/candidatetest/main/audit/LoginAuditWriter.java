@@ -0,0 +1,266 @@
+package candidatetest.main.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+import candidatetest.main.metrics.Counter;
+import candidatetest.main.metrics.MetricsRegistry;
+import candidatetest.main.repository.TimePartitionedIndex;
+
+/**
+ * Records every authentication attempt in a {@link TimePartitionedIndex} without slowing down
+ * authentication.  {@link #record(String, String, LoginEvent.Outcome)} only offers a small event to a
+ * bounded queue, and drops it when the queue is full rather than wait.  A single daemon thread drains the
+ * queue into bulk requests of up to {@code maxBatch} events, sent at least every {@code maxDelayMillis}
+ * milliseconds, and deletes the indices older than the retention period at startup and whenever the
+ * day's index changes.  Events which ElasticSearch rejects are counted and not retried
+ */
+public class LoginAuditWriter {
+
+	/**
+	 * Logger for write failures
+	 */
+	private static final Logger logger = LogManager.getLogger(LoginAuditWriter.class);
+
+	/**
+	 * The pause before retrying to initialise the index after a failure, in milliseconds
+	 */
+	private static final long RETRY_MILLIS = 5000;
+
+	/**
+	 * The indices the events are written to
+	 */
+	private final TimePartitionedIndex index;
+	/**
+	 * Whether attempts are recorded at all
+	 */
+	private final boolean enabled;
+	/**
+	 * The events waiting to be written
+	 */
+	private final BlockingQueue<LoginEvent> queue;
+	/**
+	 * The most events per bulk request
+	 */
+	private final int maxBatch;
+	/**
+	 * The longest an event waits for its batch to fill in milliseconds
+	 */
+	private final long maxDelayMillis;
+	/**
+	 * How long events are kept in milliseconds
+	 */
+	private final long retentionMillis;
+	/**
+	 * Events indexed
+	 */
+	private final Counter written;
+	/**
+	 * Events dropped because the queue was full
+	 */
+	private final Counter dropped;
+	/**
+	 * Events rejected by ElasticSearch or lost with a failed request
+	 */
+	private final Counter failed;
+	/**
+	 * The index written to by the last batch, to notice the day changing
+	 */
+	private String currentPartition;
+	/**
+	 * Whether the writing thread should keep waiting for events
+	 */
+	private volatile boolean running;
+	/**
+	 * The writing thread
+	 */
+	private Thread writer;
+
+	/**
+	 * Construct a new writer
+	 * @param index The indices the events are written to
+	 * @param enabled Whether attempts are recorded at all
+	 * @param bufferSize The most events waiting to be written before new ones are dropped
+	 * @param maxBatch The most events per bulk request
+	 * @param maxDelayMillis The longest an event waits for its batch to fill in milliseconds
+	 * @param retentionMillis How long events are kept in milliseconds
+	 * @param metrics The registry in which the event counts and queue depth are exported
+	 */
+	public LoginAuditWriter(TimePartitionedIndex index, boolean enabled, int bufferSize, int maxBatch, long maxDelayMillis,
+			long retentionMillis, MetricsRegistry metrics) {
+		this.index = index;
+		this.enabled = enabled;
+		this.queue = new ArrayBlockingQueue<LoginEvent>(Math.max(1, bufferSize));
+		this.maxBatch = Math.max(1, maxBatch);
+		this.maxDelayMillis = maxDelayMillis;
+		this.retentionMillis = retentionMillis;
+		this.written = outcome(metrics, "written");
+		this.dropped = outcome(metrics, "dropped");
+		this.failed = outcome(metrics, "failed");
+		metrics.gauge("login_audit_queue", "Login audit events waiting to be written", queue::size);
+	}
+
+	/**
+	 * Get the counter for an event outcome
+	 * @param metrics The registry
+	 * @param outcome The name of the outcome
+	 * @return The counter for the outcome
+	 */
+	private static Counter outcome(MetricsRegistry metrics, String outcome) {
+		return metrics.counter("login_audit_events_total", "Login audit events by outcome", "outcome", outcome);
+	}
+
+	/**
+	 * Start the writing thread
+	 */
+	@PostConstruct
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		running = true;
+		writer = new Thread(this::write, "login-audit");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Stop accepting events and write those already queued, waiting up to the batch delay for them
+	 */
+	@PreDestroy
+	public void stop() {
+		running = false;
+		if (writer != null) {
+			writer.interrupt();
+			try {
+				writer.join(maxDelayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Record an authentication attempt.  Never waits: the event is dropped if the queue is full
+	 * @param user The user name given
+	 * @param address The remote address of the client, or null if unknown
+	 * @param outcome The outcome
+	 */
+	public void record(String user, String address, LoginEvent.Outcome outcome) {
+		if (running && !queue.offer(new LoginEvent(System.currentTimeMillis(), user, address, outcome))) {
+			dropped.increment();
+		}
+	}
+
+	/**
+	 * The writing loop, which initialises the index then drains the queue into bulk requests until
+	 * stopped and the queue is empty
+	 */
+	private void write() {
+		while (running && !initialise()) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(RETRY_MILLIS);
+			} catch (InterruptedException e) {
+				// Stopped before ElasticSearch became available
+				return;
+			}
+		}
+		List<LoginEvent> batch = new ArrayList<LoginEvent>(maxBatch);
+		while (running || !queue.isEmpty()) {
+			try {
+				LoginEvent first = queue.poll(maxDelayMillis, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+				while (batch.size() < maxBatch) {
+					LoginEvent next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+			} catch (InterruptedException e) {
+				// Stopping, so write what is queued without waiting for batches to fill
+				queue.drainTo(batch, maxBatch - batch.size());
+			}
+			if (!batch.isEmpty()) {
+				flush(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Install the index template and apply retention
+	 * @return {@code true} if ElasticSearch was reached
+	 */
+	private boolean initialise() {
+		try {
+			index.initialise();
+			dropExpired();
+			return true;
+		} catch (Exception e) {
+			logger.warn("Could not initialise the login audit index " + index.getName() + ", retrying", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Delete the indices older than the retention period
+	 */
+	private void dropExpired() {
+		List<String> expired = index.dropExpired(retentionMillis);
+		if (!expired.isEmpty()) {
+			logger.info("Deleted expired login audit indices " + expired);
+		}
+	}
+
+	/**
+	 * Write a batch of events in one bulk request, applying retention first if the day has changed
+	 * @param batch The events
+	 */
+	private void flush(List<LoginEvent> batch) {
+		try {
+			String partition = index.partitionFor(batch.get(batch.size() - 1).getTimestamp());
+			if (currentPartition != null && !currentPartition.equals(partition)) {
+				dropExpired();
+			}
+			currentPartition = partition;
+			BulkRequestBuilder bulk = index.prepareBulk();
+			for (LoginEvent event : batch) {
+				bulk.add(index.prepareIndex(event.getTimestamp()).setSource(event.toXContent(XContentFactory.jsonBuilder())));
+			}
+			BulkResponse response = bulk.get();
+			int failures = 0;
+			if (response.hasFailures()) {
+				for (BulkItemResponse item : response.getItems()) {
+					if (item.isFailed()) {
+						failures++;
+					}
+				}
+				logger.warn(failures + " login audit events were rejected: " + response.buildFailureMessage());
+			}
+			written.increment(batch.size() - failures);
+			failed.increment(failures);
+		} catch (Exception e) {
+			failed.increment(batch.size());
+			logger.warn("Could not write " + batch.size() + " login audit events", e);
+		}
+	}
+
+}
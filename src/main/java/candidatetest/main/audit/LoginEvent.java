@@ -0,0 +1,119 @@
+package candidatetest.main.audit;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * One authentication attempt, as recorded in the login audit stream.  Events are created on the
+ * authentication path, so they hold only what is already to hand and are encoded later by the writer
+ */
+public final class LoginEvent {
+
+	/**
+	 * The outcomes of an authentication attempt
+	 */
+	public enum Outcome {
+		/** The password matched */											SUCCESS,
+		/** The password did not match */									BAD_PASSWORD,
+		/** No user has the name */											UNKNOWN_USER,
+		/** Rejected unchecked after too many recent failures */			THROTTLED
+	}
+
+	/**
+	 * The ElasticSearch type of each field of an encoded event, keyed by field name
+	 */
+	public static final Map<String, String> FIELD_TYPES;
+	static {
+		Map<String, String> types = new LinkedHashMap<String, String>();
+		types.put("timestamp", "date");
+		types.put("user", "keyword");
+		types.put("address", "ip");
+		types.put("outcome", "keyword");
+		FIELD_TYPES = Collections.unmodifiableMap(types);
+	}
+
+	/**
+	 * The time of the attempt in milliseconds since the epoch
+	 */
+	private final long timestamp;
+	/**
+	 * The user name given
+	 */
+	private final String user;
+	/**
+	 * The remote address of the client, or null if unknown
+	 */
+	private final String address;
+	/**
+	 * The outcome
+	 */
+	private final Outcome outcome;
+
+	/**
+	 * Construct an event
+	 * @param timestamp The time of the attempt in milliseconds since the epoch
+	 * @param user The user name given
+	 * @param address The remote address of the client, or null if unknown
+	 * @param outcome The outcome
+	 */
+	public LoginEvent(long timestamp, String user, String address, Outcome outcome) {
+		this.timestamp = timestamp;
+		this.user = user;
+		this.address = address;
+		this.outcome = outcome;
+	}
+
+	/**
+	 * Get the time of the attempt
+	 * @return The time in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Get the user name given
+	 * @return The user name
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * Get the remote address of the client
+	 * @return The address, or null if unknown
+	 */
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * Get the outcome of the attempt
+	 * @return The outcome
+	 */
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Encode the event as a document, leaving out an unknown address
+	 * @param builder The builder to encode into
+	 * @return The builder
+	 * @throws IOException Thrown if the builder fails
+	 */
+	XContentBuilder toXContent(XContentBuilder builder) throws IOException {
+		builder.startObject()
+			.field("timestamp", timestamp)
+			.field("user", user)
+			.field("outcome", outcome.name());
+		if (address != null) {
+			builder.field("address", address);
+		}
+		return builder.endObject();
+	}
+
+}
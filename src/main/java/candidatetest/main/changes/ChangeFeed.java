@@ -0,0 +1,193 @@
+package candidatetest.main.changes;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import candidatetest.main.model.data.AbstractModel;
+import candidatetest.main.repository.ChangeBatch;
+import candidatetest.main.repository.ElasticRepository;
+
+/**
+ * Long-polling over the change feed of a repository.  A poll with no changes waiting is parked
+ * without holding a request thread, and a single background thread answers the parked polls.
+ * Each check costs one small query while nothing has changed, however many polls are parked.
+ * Once changes have settled, each distinct cursor is read once per check and the page shared by
+ * the polls parked on it
+ * @param <T> The type of model in the feed
+ */
+public class ChangeFeed<T extends AbstractModel> {
+
+	/**
+	 * Logger for check failures
+	 */
+	private static final Logger logger = LogManager.getLogger(ChangeFeed.class);
+
+	/**
+	 * A parked poll
+	 */
+	private class Waiter {
+
+		/**
+		 * The cursor the poll reads from
+		 */
+		private final String cursor;
+		/**
+		 * The change sequence the cursor points after
+		 */
+		private final long sequence;
+		/**
+		 * The maximum number of changes to return
+		 */
+		private final int limit;
+		/**
+		 * The time to answer with no changes in milliseconds since the epoch
+		 */
+		private final long deadline;
+		/**
+		 * The pending response
+		 */
+		private final DeferredResult<ChangeBatch<T>> result;
+
+		/**
+		 * Park a poll
+		 * @param cursor The cursor the poll reads from
+		 * @param limit The maximum number of changes to return
+		 * @param deadline The time to answer with no changes in milliseconds since the epoch
+		 * @param result The pending response
+		 */
+		private Waiter(String cursor, int limit, long deadline, DeferredResult<ChangeBatch<T>> result) {
+			this.cursor = cursor;
+			this.sequence = ChangeBatch.cursorSequence(cursor);
+			this.limit = limit;
+			this.deadline = deadline;
+			this.result = result;
+		}
+
+	}
+
+	/**
+	 * The repository whose changes are fed
+	 */
+	private final ElasticRepository<T> repository;
+	/**
+	 * The interval between checks for parked polls in milliseconds
+	 */
+	private final long intervalMillis;
+	/**
+	 * The longest a poll may wait in milliseconds
+	 */
+	private final long maxWaitMillis;
+	/**
+	 * The parked polls
+	 */
+	private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+	/**
+	 * The single daemon thread answering parked polls
+	 */
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Construct a new change feed
+	 * @param repository The repository whose changes are fed
+	 * @param intervalMillis The interval between checks for parked polls in milliseconds
+	 * @param maxWaitMillis The longest a poll may wait in milliseconds
+	 */
+	public ChangeFeed(ElasticRepository<T> repository, long intervalMillis, long maxWaitMillis) {
+		this.repository = repository;
+		this.intervalMillis = intervalMillis;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * Start answering parked polls
+	 */
+	@PostConstruct
+	public void start() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "change-feed-" + repository.getType());
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop answering parked polls
+	 */
+	@PreDestroy
+	public void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Read the changes since a cursor, waiting for some if there are none yet
+	 * @param cursor The cursor returned with the previous page, or null to start from the beginning
+	 * @param limit The maximum number of changes to return
+	 * @param waitMillis How long to wait for changes in milliseconds, capped at the maximum wait
+	 * @return The pending page of changes, empty if none arrived in time
+	 * @throws IllegalArgumentException the cursor is not one returned by the change feed
+	 */
+	public DeferredResult<ChangeBatch<T>> poll(String cursor, int limit, long waitMillis) {
+		long wait = Math.min(Math.max(waitMillis, 0), maxWaitMillis);
+		ChangeBatch<T> empty = new ChangeBatch<T>(Collections.<T>emptyList(), cursor, false);
+		// Spring answers with the empty page if the check thread falls behind
+		DeferredResult<ChangeBatch<T>> result = new DeferredResult<ChangeBatch<T>>(wait + 2 * intervalMillis + 1000, empty);
+		ChangeBatch<T> batch = repository.changesSince(cursor, limit);
+		if (!batch.getChanges().isEmpty() || wait == 0) {
+			result.setResult(batch);
+			return result;
+		}
+		Waiter waiter = new Waiter(cursor, limit, System.currentTimeMillis() + wait, result);
+		result.onCompletion(() -> waiters.remove(waiter));
+		waiters.add(waiter);
+		return result;
+	}
+
+	/**
+	 * Answer the parked polls which have changes waiting or have waited long enough
+	 */
+	void check() {
+		if (waiters.isEmpty()) {
+			return;
+		}
+		try {
+			long latest = repository.latestSequence();
+			// A change the feed cannot return yet is no reason to read, so polls wait until it settles
+			long ready = Math.min(latest, repository.settledSequence() - 1);
+			long now = System.currentTimeMillis();
+			Map<String, ChangeBatch<T>> read = new HashMap<String, ChangeBatch<T>>();
+			for (Waiter waiter : waiters) {
+				if (waiter.result.isSetOrExpired()) {
+					waiters.remove(waiter);
+				} else if (ready > waiter.sequence) {
+					ChangeBatch<T> batch = read.computeIfAbsent(waiter.cursor + " " + waiter.limit,
+							key -> repository.changesSince(waiter.cursor, waiter.limit));
+					if (!batch.getChanges().isEmpty() || now >= waiter.deadline) {
+						waiter.result.setResult(batch);
+					}
+				} else if (now >= waiter.deadline) {
+					waiter.result.setResult(new ChangeBatch<T>(Collections.<T>emptyList(), waiter.cursor, false));
+				}
+			}
+		} catch (Exception e) {
+			// Never let an exception cancel the scheduled check
+			logger.warn("Change feed check for " + repository.getIndex() + " failed", e);
+		}
+	}
+
+}
@@ -4,17 +4,42 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.transport.client.PreBuiltTransportClient;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 
+import candidatetest.main.audit.LoginAuditWriter;
+import candidatetest.main.audit.LoginEvent;
+import candidatetest.main.changes.ChangeFeed;
+import candidatetest.main.development.SyntheticUserGenerator;
+import candidatetest.main.logging.ElasticSearchRestAppender;
+import candidatetest.main.metrics.MetricsRegistry;
+import candidatetest.main.model.data.User;
 import candidatetest.main.repository.UserRepository;
+import candidatetest.main.repository.IndexSettings;
+import candidatetest.main.repository.PurgeJob;
+import candidatetest.main.repository.TimePartitionedIndex;
 import candidatetest.main.repository.UserRepositoryImpl;
+import candidatetest.main.security.LoginThrottle;
+import candidatetest.main.security.PasswordVerifier;
+import candidatetest.main.status.StatusMonitor;
+import candidatetest.main.status.WarmUp;
+import candidatetest.main.suggest.Suggester;
+import candidatetest.main.trace.AccessLogFilter;
+import candidatetest.main.trace.ResourceAccountingFilter;
+import candidatetest.main.trace.TraceFilter;
+import candidatetest.main.trace.TraceRing;
+import candidatetest.main.transport.RestDocumentClient;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 
 /**
  * Configuration class for loading application properties and initialising beans
@@ -22,9 +47,292 @@ import java.net.UnknownHostException;
 @Configuration
 @ComponentScan(basePackages = "candidatetest.main")
 public class CandidateTestConfig {
+
+	/**
+	 * The interval between background status probes in milliseconds
+	 */
+	@Value("${status.probe-interval:5000}")
+	private long statusProbeInterval;
+
+	/**
+	 * The maximum time a status probe waits for ElasticSearch in milliseconds
+	 */
+	@Value("${status.probe-timeout:2000}")
+	private long statusProbeTimeout;
+
+	/**
+	 * Set to true to warm up the JIT before reporting ready on /api/status
+	 */
+	@Value("${warmup.enabled:false}")
+	private boolean warmUpEnabled;
+
+	/**
+	 * The longest the warm-up may run in milliseconds
+	 */
+	@Value("${warmup.max-millis:60000}")
+	private long warmUpMaxMillis;
+
+	/**
+	 * The number of consecutive rounds with little compilation after which the warm-up ends
+	 */
+	@Value("${warmup.settle-rounds:3}")
+	private int warmUpSettleRounds;
+
+	/**
+	 * The id of the user read in each warm-up round, which need not exist
+	 */
+	@Value("${warmup.read-id:administrator}")
+	private String warmUpReadId;
+
+	/**
+	 * Set to false to stop writing API access events
+	 */
+	@Value("${access-log.enabled:true}")
+	private boolean accessLogEnabled;
+
+	/**
+	 * Set to false to stop tracing request phases
+	 */
+	@Value("${trace.enabled:true}")
+	private boolean traceEnabled;
+
+	/**
+	 * The fraction of requests traced regardless of duration
+	 */
+	@Value("${trace.sample-rate:0.01}")
+	private double traceSampleRate;
+
+	/**
+	 * The duration from which requests are always traced in milliseconds, 0 to trace only sampled requests
+	 */
+	@Value("${trace.slow-millis:1000}")
+	private long traceSlowMillis;
+
+	/**
+	 * The number of recent traces kept for /api/admin/traces
+	 */
+	@Value("${trace.buffer-size:512}")
+	private int traceBufferSize;
+
+	/**
+	 * Set to false to stop accounting allocation and CPU time per controller method
+	 */
+	@Value("${accounting.enabled:true}")
+	private boolean accountingEnabled;
+
+	/**
+	 * The interval between purges of soft-deleted documents in milliseconds
+	 */
+	@Value("${purge.interval:3600000}")
+	private long purgeInterval;
+
+	/**
+	 * How long soft-deleted documents are kept before they are purged in milliseconds
+	 */
+	@Value("${purge.retention:604800000}")
+	private long purgeRetention;
+
+	/**
+	 * The maximum number of soft-deleted documents purged per second
+	 */
+	@Value("${purge.requests-per-second:500}")
+	private float purgeRequestsPerSecond;
+
+	/**
+	 * The interval between checks for changes to answer waiting change feed polls in milliseconds
+	 */
+	@Value("${changes.poll-interval:500}")
+	private long changesPollInterval;
+
+	/**
+	 * The longest a change feed poll may wait for changes in milliseconds
+	 */
+	@Value("${changes.max-wait:30000}")
+	private long changesMaxWait;
+
+	/**
+	 * How long a completed write is left to settle before the change feed returns it in milliseconds
+	 */
+	@Value("${changes.settle-millis:2000}")
+	private long changesSettleMillis;
+
+	/**
+	 * The maximum number of typeahead suggestions returned
+	 */
+	@Value("${suggest.max-limit:10}")
+	private int suggestMaxLimit;
+
+	/**
+	 * How long typeahead suggestions for a prefix are cached in milliseconds
+	 */
+	@Value("${suggest.cache-ttl:5000}")
+	private long suggestCacheTtl;
+
+	/**
+	 * The maximum number of prefixes with cached typeahead suggestions
+	 */
+	@Value("${suggest.cache-size:10000}")
+	private int suggestCacheSize;
+
+	/**
+	 * The number of password verification threads, 0 for one per core
+	 */
+	@Value("${auth.verifier.threads:0}")
+	private int verifierThreads;
+
+	/**
+	 * The number of password verifications which may wait for a thread before logins are refused
+	 */
+	@Value("${auth.verifier.queue-size:64}")
+	private int verifierQueueSize;
+
+	/**
+	 * The longest a login waits for its password verification in milliseconds
+	 */
+	@Value("${auth.verifier.timeout:5000}")
+	private long verifierTimeout;
+
+	/**
+	 * The length of the sliding window over which failed logins are counted in milliseconds
+	 */
+	@Value("${auth.throttle.window:300000}")
+	private long throttleWindow;
+
+	/**
+	 * Failed logins of a user name from one address within the window after which its logins from there are rejected, 0 for no limit
+	 */
+	@Value("${auth.throttle.max-user-failures:10}")
+	private int throttleMaxUserFailures;
+
+	/**
+	 * Failed logins from a client address within the window after which its logins are rejected, 0 for no limit
+	 */
+	@Value("${auth.throttle.max-address-failures:50}")
+	private int throttleMaxAddressFailures;
+
+	/**
+	 * The most user name and address keys the login throttle tracks, failures of further keys are not counted
+	 */
+	@Value("${auth.throttle.max-keys:100000}")
+	private int throttleMaxKeys;
+
+	/**
+	 * Whether authentication attempts are recorded in the login audit indices
+	 */
+	@Value("${audit.enabled:true}")
+	private boolean auditEnabled;
+
+	/**
+	 * The most login audit events waiting to be written before new ones are dropped
+	 */
+	@Value("${audit.buffer-size:10000}")
+	private int auditBufferSize;
+
+	/**
+	 * The most login audit events per bulk request
+	 */
+	@Value("${audit.max-batch:500}")
+	private int auditMaxBatch;
+
+	/**
+	 * The longest a login audit event waits for its batch to fill in milliseconds
+	 */
+	@Value("${audit.max-delay:1000}")
+	private long auditMaxDelay;
+
+	/**
+	 * How long login audit events are kept in milliseconds, whole days at a time
+	 */
+	@Value("${audit.retention:7776000000}")
+	private long auditRetention;
+
+	/**
+	 * The number of primary shards of each daily login audit index
+	 */
+	@Value("${audit.shards:1}")
+	private int auditShards;
+
+	/**
+	 * The number of replicas of each shard of the login audit indices
+	 */
+	@Value("${audit.replicas:1}")
+	private int auditReplicas;
+
+	/**
+	 * The number of synthetic users per bulk request on {@code /api/development/users}
+	 */
+	@Value("${development.generator.batch-size:1000}")
+	private int generatorBatchSize;
+
+	/**
+	 * The most synthetic users one request to {@code /api/development/users} may generate
+	 */
+	@Value("${development.generator.max-count:10000000}")
+	private int generatorMaxCount;
+
+	/**
+	 * The prefix of every index alias, and the name of the legacy index shared by all models
+	 */
+	@Value("${elasticsearch.index:candidatetest}")
+	private String indexPrefix;
+
+	/**
+	 * The number of primary shards of the user index
+	 */
+	@Value("${elasticsearch.indices.user.shards:1}")
+	private int userIndexShards;
+
+	/**
+	 * The number of replicas of each shard of the user index
+	 */
+	@Value("${elasticsearch.indices.user.replicas:1}")
+	private int userIndexReplicas;
+
+	/**
+	 * The number of entities per bulk request when a large createMany is pipelined, or 0 to send one request
+	 */
+	@Value("${elasticsearch.bulk.pipeline-chunk-size:1000}")
+	private int bulkPipelineChunkSize;
+
+	/**
+	 * Whether fields holding their default value are left out of stored documents, off by default since it changes what queries on existing data match
+	 */
+	@Value("${elasticsearch.encoding.elide-defaults:false}")
+	private boolean elideDefaults;
+
+	/**
+	 * The encoding of written documents: json, smile or cbor
+	 */
+	@Value("${elasticsearch.encoding.content-type:json}")
+	private String contentType;
+
+	/**
+	 * The backend carrying document reads and writes: transport, or rest for the asynchronous HTTP client
+	 */
+	@Value("${elasticsearch.transport:transport}")
+	private String transport;
+
+	/**
+	 * Comma separated host:port pairs of the HTTP endpoints used by the rest backend
+	 */
+	@Value("${elasticsearch.rest.hosts:localhost:9200}")
+	private String restHosts;
+
+	/**
+	 * The most keep-alive connections the rest backend opens to each host
+	 */
+	@Value("${elasticsearch.rest.max-connections:32}")
+	private int restMaxConnections;
+
+	/**
+	 * Whether the rest backend compresses large request bodies and asks for compressed responses
+	 */
+	@Value("${elasticsearch.rest.compress:true}")
+	private boolean restCompress;
 	
     /**
-     * The client to connect to ES 
+     * The client to connect to ES.  With the rest backend document reads and writes go over HTTP and
+     * only administrative actions and aggregations use the transport client
      * @return An ElasticSearch client used for all data operations
      */
     @Bean
@@ -50,9 +358,25 @@ public class CandidateTestConfig {
 			throw new RuntimeException(e);
 		}
 
+        if ("rest".equals(transport)) {
+        	return new RestDocumentClient(client, RestDocumentClient.restClient(restHosts, restMaxConnections, restCompress), restCompress);
+        } else if (!"transport".equals(transport)) {
+        	throw new IllegalArgumentException("Unknown elasticsearch.transport " + transport);
+        }
         return client;
     }
 
+    /**
+     * The registry of application metrics, exposed in the Prometheus text format
+     * @return The shared metrics registry
+     */
+    @Bean
+    public MetricsRegistry metricsRegistry() {
+    	MetricsRegistry registry = new MetricsRegistry();
+    	ElasticSearchRestAppender.registerMetrics(registry);
+    	return registry;
+    }
+
     /**
      * A Bean to be auto-wired wherever user data is used
      * @param manager The migration manager
@@ -61,7 +385,168 @@ public class CandidateTestConfig {
     @Autowired
     @Bean
     public UserRepository userRepository() {
-    	return new UserRepositoryImpl(client());
+    	UserRepositoryImpl repository = new UserRepositoryImpl(client(), metricsRegistry(), new IndexSettings(indexPrefix, userIndexShards, userIndexReplicas));
+    	repository.setPipelineChunkSize(bulkPipelineChunkSize);
+    	repository.setSettleMillis(changesSettleMillis);
+    	XContentType type = XContentType.fromMediaTypeOrFormat(contentType);
+    	if (type == null) {
+    		throw new IllegalArgumentException("Unknown elasticsearch.encoding.content-type " + contentType);
+    	}
+    	repository.setEncoding(elideDefaults, type);
+    	return repository;
+    }
+
+    /**
+     * The cached health of the service and its dependencies reported on {@code /api/status}
+     * @return A monitor probing ElasticSearch in the background
+     */
+    @Bean
+    public StatusMonitor statusMonitor() {
+    	return new StatusMonitor(client(), Arrays.asList(userRepository()), statusProbeInterval, statusProbeTimeout, warmUp());
+    }
+
+    /**
+     * The warm-up run once the repositories have initialised, gating readiness on {@code /api/status}
+     * @return The warm-up
+     */
+    @Bean
+    public WarmUp warmUp() {
+    	return new WarmUp(warmUpEnabled, warmUpMaxMillis, warmUpSettleRounds, warmUpReadId, metricsRegistry());
+    }
+
+    /**
+     * The background removal of soft-deleted documents
+     * @return A job purging the repositories on a schedule
+     */
+    @Bean
+    public PurgeJob purgeJob() {
+    	return new PurgeJob(Arrays.asList(userRepository()), purgeInterval, purgeRetention, purgeRequestsPerSecond);
+    }
+
+    /**
+     * The long-polling feed of user changes served on {@code /api/user/_changes}
+     * @return The user change feed
+     */
+    @Bean
+    public ChangeFeed<User> userChangeFeed() {
+    	return new ChangeFeed<User>(userRepository(), changesPollInterval, changesMaxWait);
+    }
+
+    /**
+     * The pool on which passwords are verified, away from the request threads
+     * @return The password verifier
+     */
+    @Bean
+    public PasswordVerifier passwordVerifier() {
+    	return new PasswordVerifier(verifierThreads, verifierQueueSize, verifierTimeout, metricsRegistry());
+    }
+
+    /**
+     * The counter of recent failed logins per user name and client address
+     * @return The login throttle
+     */
+    @Bean
+    public LoginThrottle loginThrottle() {
+    	return new LoginThrottle(throttleWindow, throttleMaxUserFailures, throttleMaxAddressFailures, throttleMaxKeys, metricsRegistry());
+    }
+
+    /**
+     * The writer recording every authentication attempt in daily login audit indices
+     * @return The login audit writer
+     */
+    @Bean
+    public LoginAuditWriter loginAuditWriter() {
+    	TimePartitionedIndex index = new TimePartitionedIndex(client(), metricsRegistry(),
+    			new IndexSettings(indexPrefix, auditShards, auditReplicas), "login-audit", "event", LoginEvent.FIELD_TYPES);
+    	return new LoginAuditWriter(index, auditEnabled, auditBufferSize, auditMaxBatch, auditMaxDelay, auditRetention, metricsRegistry());
+    }
+
+    /**
+     * The generator of synthetic users served on {@code /api/development/users}
+     * @return The synthetic user generator
+     */
+    @Bean
+    public SyntheticUserGenerator syntheticUserGenerator() {
+    	return new SyntheticUserGenerator(generatorBatchSize, generatorMaxCount);
+    }
+
+    /**
+     * The typeahead over user names served on {@code /api/user/_suggest}
+     * @return The user name suggester
+     */
+    @Bean
+    public Suggester<User> userSuggester() {
+    	return new Suggester<User>(userRepository(), "fullName", suggestMaxLimit, suggestCacheTtl, suggestCacheSize, metricsRegistry());
+    }
+
+    /**
+     * Register the access log ahead of the security filter chain so that rejected
+     * authentications are logged too
+     * @return The access log filter registration
+     */
+    @Bean
+    public FilterRegistrationBean accessLogFilter() {
+    	FilterRegistrationBean registration = new FilterRegistrationBean(new AccessLogFilter());
+    	registration.addUrlPatterns("/api/*");
+    	registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+    	registration.setEnabled(accessLogEnabled);
+    	return registration;
+    }
+
+    /**
+     * The recent traces served on /api/admin/traces
+     * @return The trace ring
+     */
+    @Bean
+    public TraceRing traceRing() {
+    	return new TraceRing(traceBufferSize);
+    }
+
+    /**
+     * The filter tracing request phases
+     * @return The trace filter
+     */
+    @Bean
+    public TraceFilter traceFilter() {
+    	return new TraceFilter(traceSampleRate, traceSlowMillis, traceRing(), metricsRegistry());
+    }
+
+    /**
+     * Register the trace filter just inside the access log, so that the access event of a
+     * traced request carries its trace, and ahead of the security filter chain so that it is timed
+     * @return The trace filter registration
+     */
+    @Bean
+    public FilterRegistrationBean traceFilterRegistration() {
+    	FilterRegistrationBean registration = new FilterRegistrationBean(traceFilter());
+    	registration.addUrlPatterns("/api/*");
+    	registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+    	registration.setEnabled(traceEnabled);
+    	return registration;
+    }
+
+    /**
+     * The filter accounting allocation and CPU time per controller method
+     * @return The accounting filter
+     */
+    @Bean
+    public ResourceAccountingFilter resourceAccountingFilter() {
+    	return new ResourceAccountingFilter(metricsRegistry());
+    }
+
+    /**
+     * Register the accounting filter inside the trace filter, so that neither the access event nor
+     * the trace is accounted to the request, and ahead of the security filter chain so that the
+     * authentication of each request, including password verification on the verifier's threads, is accounted
+     * @return The accounting filter registration
+     */
+    @Bean
+    public FilterRegistrationBean resourceAccountingFilterRegistration() {
+    	FilterRegistrationBean registration = new FilterRegistrationBean(resourceAccountingFilter());
+    	registration.addUrlPatterns("/api/*");
+    	registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+    	registration.setEnabled(accountingEnabled);
+    	return registration;
     }
 
 }
@@ -1,6 +1,9 @@
 package candidatetest.main.configuration;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -13,9 +16,11 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
+import candidatetest.main.security.BCryptCalibration;
 import candidatetest.main.security.ElasticAuthenticationProvider;
 import candidatetest.main.security.PasswordEncoder;
 import candidatetest.main.security.PasswordEncoderImpl;
+import candidatetest.main.security.Roles;
 
 /**
  * A Custom security configuration which limits user access to areas of the API and
@@ -24,6 +29,16 @@ import candidatetest.main.security.PasswordEncoderImpl;
 @Configuration
 @EnableWebSecurity
 public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
+
+	/**
+	 * Logger for the chosen password encoding strength
+	 */
+	private static final Logger logger = LogManager.getLogger(SecurityConfiguration.class);
+
+	/**
+	 * The BCrypt cost chosen for the base encoder, set when it is created
+	 */
+	private int bcryptStrength;
 	
     /**
      * A Bean to be auto-wired wherever the custom authentication
@@ -36,13 +51,27 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     }
 
     /**
-     * A Bean to be auto-wired wherever BCrypt specific data encryption is required
+     * A Bean to be auto-wired wherever BCrypt specific data encryption is required.
+     * The properties are method parameters rather than fields, since this configuration
+     * is still being wired when the authentication provider asks for the encoder
+     * @param strength The BCrypt cost, or 0 to calibrate it against the target time
+     * @param targetMillis The time a verification should take on this host in milliseconds
+     * @param minStrength The lowest cost calibration may choose
+     * @param maxStrength The highest cost calibration may choose
      * @return The BCrypt password encoder for encrypting and decrypting
      * using the latest security standard
      */
     @Bean
-    public BCryptPasswordEncoder baseEncoder() {
-    	return new BCryptPasswordEncoder();
+    public BCryptPasswordEncoder baseEncoder(@Value("${auth.bcrypt.strength:0}") int strength,
+    		@Value("${auth.bcrypt.target-millis:100}") long targetMillis,
+    		@Value("${auth.bcrypt.min-strength:10}") int minStrength,
+    		@Value("${auth.bcrypt.max-strength:16}") int maxStrength) {
+    	if (strength <= 0) {
+    		strength = BCryptCalibration.calibrate(targetMillis, minStrength, maxStrength);
+    		logger.info("Calibrated BCrypt strength " + strength + " for a target of " + targetMillis + "ms");
+    	}
+    	bcryptStrength = strength;
+    	return new BCryptPasswordEncoder(strength);
     }
     
     /** 
@@ -50,11 +79,21 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
      * This wraps the BCrypt encoder, but is given a generic interface in case
      * we need to upgrade this encryption at a later date (though of course this
      * would require some handling of already encrypted data)
+     * @param baseEncoder The BCrypt encoder, taken so that its cost has been chosen by now
      * @return A generic password encoder
      */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-    	return new PasswordEncoderImpl();
+    public PasswordEncoder passwordEncoder(BCryptPasswordEncoder baseEncoder) {
+    	return new PasswordEncoderImpl(bcryptStrength);
+    }
+
+    /**
+     * The role registry, referenced by access expressions as {@code @roles}
+     * @return The role registry
+     */
+    @Bean
+    public Roles roles() {
+    	return new Roles();
     }
 
 	/**
@@ -95,7 +134,8 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
 		http.csrf().disable()
 		  	.authorizeRequests()
   	    		.antMatchers("/api/status").permitAll()
-		  	    .antMatchers("/api/**").hasRole("ADMIN")
+		  	    // A role mask test, rather than hasRole building a set of the granted authority names per request
+		  	    .antMatchers("/api/**").access("@roles.has(authentication, 'ADMIN')")
 			.and()
 				// Direct API calls need to be able to use basic auth
 				.httpBasic() 
@@ -0,0 +1,24 @@
+package candidatetest.main.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import candidatetest.main.trace.TraceInterceptor;
+
+/**
+ * Additions to the MVC configuration which Spring Boot sets up
+ */
+@Configuration
+public class WebConfiguration extends WebMvcConfigurerAdapter {
+
+	/**
+	 * Add the interceptor marking the phases of traced requests
+	 * @see org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter#addInterceptors(org.springframework.web.servlet.config.annotation.InterceptorRegistry)
+	 */
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new TraceInterceptor()).addPathPatterns("/api/**");
+	}
+
+}
@@ -5,12 +5,18 @@ import java.util.Arrays;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import candidatetest.main.security.PasswordEncoder;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import candidatetest.main.development.GenerationReport;
+import candidatetest.main.development.SyntheticUserGenerator;
+import candidatetest.main.development.SyntheticUsers;
 import candidatetest.main.model.data.User;
 import candidatetest.main.repository.UserRepository;
 
@@ -32,6 +38,12 @@ public class DevelopmentRestController {
 	 */
 	@Autowired
 	private PasswordEncoder encoder;
+
+	/**
+	 * The auto-wired generator of synthetic users
+	 */
+	@Autowired
+	private SyntheticUserGenerator generator;
         
     /**
      * POST /api/development - Builds a set of development data.  This should be cut from production<br><br>
@@ -52,4 +64,49 @@ public class DevelopmentRestController {
 
     }
 
+    /**
+     * POST /api/development/users - Generates a deterministic population of synthetic users for performance
+     * testing, waiting until every batch is indexed<br><br>
+     * 201 - Users generated, with the number indexed and the rate achieved<br>
+     * 400 - The count or a distribution is invalid<br>
+     * 409 - A bulk load or reindex of the user index is already running<br>
+     * 500 - Unknown error occurred
+     * @param count The number of users
+     * @param seed The seed, the same seed giving the same users
+     * @param roles The distribution of role sets as {@code roles:weight} pairs, roles joined with {@code +}
+     * @param nameLengths The distribution of first and last name lengths as {@code length:weight} pairs
+     * @param password The plaintext password of every user
+     * @param sharedHash Whether to hash the password once for every user rather than per user
+     * @return One of the HTTP responses above
+     * @throws InterruptedException Thrown if interrupted while waiting for a batch to be indexed
+     */
+    @RequestMapping(value = "/users", method = RequestMethod.POST, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<GenerationReport> generate(@RequestParam(value = "count") int count,
+    		@RequestParam(value = "seed", defaultValue = "42") long seed,
+    		@RequestParam(value = "roles", defaultValue = "USER:95,USER+ADMIN:5") String roles,
+    		@RequestParam(value = "nameLengths", defaultValue = "3:10,4:20,5:30,6:25,8:15") String nameLengths,
+    		@RequestParam(value = "password", defaultValue = "password123") String password,
+    		@RequestParam(value = "sharedHash", defaultValue = "false") boolean sharedHash) throws InterruptedException {
+    	GenerationReport report = generator.generate(count, new SyntheticUsers(seed, roles, nameLengths), password, sharedHash);
+    	return new ResponseEntity<GenerationReport>(report, HttpStatus.CREATED);
+    }
+
+    /**
+     * Map invalid parameters to 400
+     * @return A bad request response
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Void> badRequest() {
+    	return new ResponseEntity<Void>(HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Map a bulk load which is already running to 409
+     * @return A conflict response
+     */
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Void> conflict() {
+    	return new ResponseEntity<Void>(HttpStatus.CONFLICT);
+    }
+
 }
@@ -0,0 +1,93 @@
+package candidatetest.main.controller;
+
+import java.util.List;
+
+import org.elasticsearch.index.IndexNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import candidatetest.main.repository.ElasticRepository;
+import candidatetest.main.repository.ReindexReport;
+
+/**
+* Index administration end-points
+*/
+@RequestMapping("/api/admin/indices")
+@RestController
+public class IndexAdminRestController {
+
+	/**
+	 * The auto-wired repositories, one per model index
+	 */
+	@Autowired
+	private List<ElasticRepository<?>> repositories;
+
+    /**
+     * POST /api/admin/indices/{type}/_reindex - Copy a model's documents into a new index and swap its alias
+     * once the copy completes.  It returns one of the following:<br><br>
+     * 202 - The reindex has started<br>
+     * 404 - There is no repository for the type, or its alias does not point to an index<br>
+     * 409 - A reindex of the index is already running
+     * @param type The mapping type of the model, e.g. user
+     * @param slices The number of slices to copy in parallel, defaults to one per shard
+     * @param deleteOld Whether to delete the previous index after the swap
+     * @return The report of the started reindex
+     */
+    @RequestMapping(value = "/{type}/_reindex", method = RequestMethod.POST, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<ReindexReport> reindex(@PathVariable("type") String type,
+    		@RequestParam(value = "slices", defaultValue = "0") int slices,
+    		@RequestParam(value = "deleteOld", defaultValue = "false") boolean deleteOld) {
+    	ElasticRepository<?> repository = findRepository(type);
+    	if (repository == null) {
+    		return new ResponseEntity<ReindexReport>(HttpStatus.NOT_FOUND);
+    	}
+    	try {
+    		repository.reindex(slices, deleteOld);
+    	} catch (IndexNotFoundException e) {
+    		return new ResponseEntity<ReindexReport>(HttpStatus.NOT_FOUND);
+    	} catch (IllegalStateException e) {
+    		return new ResponseEntity<ReindexReport>(repository.getReindexReport(), HttpStatus.CONFLICT);
+    	}
+        return new ResponseEntity<ReindexReport>(repository.getReindexReport(), HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * GET /api/admin/indices/{type}/_reindex - Get the progress of the most recent reindex of a model's index.
+     * It returns one of the following:<br><br>
+     * 200 - The report of the most recent reindex<br>
+     * 404 - There is no index for the type, or it has not been reindexed
+     * @param type The mapping type of the model, e.g. user
+     * @return The report of the most recent reindex
+     */
+    @RequestMapping(value = "/{type}/_reindex", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<ReindexReport> getReindex(@PathVariable("type") String type) {
+    	ElasticRepository<?> repository = findRepository(type);
+    	ReindexReport report = repository == null ? null : repository.getReindexReport();
+    	if (report == null) {
+    		return new ResponseEntity<ReindexReport>(HttpStatus.NOT_FOUND);
+    	}
+        return new ResponseEntity<ReindexReport>(report, HttpStatus.OK);
+    }
+
+    /**
+     * Find the repository storing a mapping type
+     * @param type The mapping type
+     * @return The repository, or null if there is none
+     */
+    private ElasticRepository<?> findRepository(String type) {
+    	for (ElasticRepository<?> repository : repositories) {
+    		if (repository.getType().equals(type)) {
+    			return repository;
+    		}
+    	}
+    	return null;
+    }
+
+}
@@ -0,0 +1,38 @@
+package candidatetest.main.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import candidatetest.main.metrics.MetricsRegistry;
+
+/**
+* Metrics end-point exposing the application metrics for scraping
+*/
+@RequestMapping("/api/admin/metrics")
+@RestController
+public class MetricsRestController {
+
+	/**
+	 * The Prometheus text exposition format content type
+	 */
+	private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	/**
+	 * The auto-wired registry holding all application metrics
+	 */
+	@Autowired
+	private MetricsRegistry metrics;
+
+    /**
+     * GET /api/admin/metrics - Render all application metrics in the Prometheus text format<br><br>
+     * 200 - Metrics rendered successfully
+     * @return The rendered metrics
+     */
+    @RequestMapping(method = RequestMethod.GET, produces = PROMETHEUS_CONTENT_TYPE)
+    public String get() {
+    	return metrics.scrape();
+    }
+
+}
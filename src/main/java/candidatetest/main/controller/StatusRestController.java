@@ -0,0 +1,41 @@
+package candidatetest.main.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import candidatetest.main.status.ServiceStatus;
+import candidatetest.main.status.ServiceStatus.State;
+import candidatetest.main.status.StatusMonitor;
+
+/**
+* Status end-point for load balancer health checks.  This end-point is not authenticated
+*/
+@RequestMapping("/api/status")
+@RestController
+public class StatusRestController {
+
+	/**
+	 * The auto-wired monitor holding the cached service status
+	 */
+	@Autowired
+	private StatusMonitor monitor;
+
+    /**
+     * GET /api/status - Get the cached status of the service and its dependencies.  This never
+     * calls ElasticSearch, the status is refreshed in the background.  It returns one of the following:<br><br>
+     * 200 - The service is up or degraded<br>
+     * 503 - The service cannot serve requests
+     * @return The status of the service
+     */
+    @RequestMapping(method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<ServiceStatus> get() {
+    	ServiceStatus status = monitor.getStatus();
+        return new ResponseEntity<ServiceStatus>(status, status.getStatus() == State.DOWN ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK);
+    }
+
+}
@@ -0,0 +1,57 @@
+package candidatetest.main.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import candidatetest.main.trace.TraceRecord;
+import candidatetest.main.trace.TraceRing;
+
+/**
+* Request trace end-point exposing the phase timings of recent sampled and slow requests
+*/
+@RequestMapping("/api/admin/traces")
+@RestController
+public class TraceRestController {
+
+	/**
+	 * The auto-wired ring of recent traces
+	 */
+	@Autowired
+	private TraceRing traceRing;
+
+    /**
+     * GET /api/admin/traces - List the most recent kept traces, newest first<br><br>
+     * 200 - Traces listed<br>
+     * 400 - The limit is out of range
+     * @param limit The most traces to list, from 1 to 1000
+     * @param minMillis The shortest duration of the traces listed in milliseconds
+     * @return The traces
+     */
+    @RequestMapping(method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public List<TraceRecord> list(@RequestParam(value = "limit", defaultValue = "100") int limit,
+    		@RequestParam(value = "minMillis", defaultValue = "0") long minMillis) {
+    	if (limit < 1 || limit > 1000) {
+    		throw new IllegalArgumentException("limit must be between 1 and 1000");
+    	}
+    	return traceRing.recent(limit, minMillis * 1000);
+    }
+
+    /**
+     * Map invalid parameters to 400
+     * @return A bad request response
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Void> badRequest() {
+    	return new ResponseEntity<Void>(HttpStatus.BAD_REQUEST);
+    }
+
+}
@@ -0,0 +1,40 @@
+package candidatetest.main.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import candidatetest.main.trace.EndpointUsage;
+import candidatetest.main.trace.ResourceAccountingFilter;
+
+/**
+* Resource usage end-point exposing the allocation and CPU time per request of each controller method
+*/
+@RequestMapping("/api/admin/usage")
+@RestController
+public class UsageRestController {
+
+	/**
+	 * The auto-wired filter accounting each request
+	 */
+	@Autowired
+	private ResourceAccountingFilter accounting;
+
+    /**
+     * GET /api/admin/usage - List the allocation and CPU time per request of each controller method, most allocating first.
+     * Password verification is included although it runs on the verifier's threads.  An asynchronous request, such as a
+     * {@code _changes} request parked until documents change, is only measured up to the return of its controller
+     * method: the work of completing it later on another thread is not included<br><br>
+     * 200 - Usage listed, empty if accounting is disabled or unsupported by the JVM
+     * @return The usage per controller method
+     */
+    @RequestMapping(method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public List<EndpointUsage> list() {
+    	return accounting.report();
+    }
+
+}
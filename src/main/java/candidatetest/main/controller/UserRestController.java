@@ -1,14 +1,29 @@
 package candidatetest.main.controller;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import candidatetest.main.changes.ChangeFeed;
 
 import candidatetest.main.model.data.User;
+import candidatetest.main.repository.ChangeBatch;
+import candidatetest.main.repository.Statistic;
+import candidatetest.main.repository.Statistics;
 import candidatetest.main.repository.UserRepository;
+import candidatetest.main.suggest.Suggester;
 
 /**
 * User end-point for all API operations relating to the API user
@@ -22,6 +37,18 @@ public class UserRestController {
 	 */
 	@Autowired
 	protected UserRepository userRepository;
+
+	/**
+	 * The long-polling feed of user changes
+	 */
+	@Autowired
+	private ChangeFeed<User> userChangeFeed;
+
+	/**
+	 * The typeahead over user names
+	 */
+	@Autowired
+	private Suggester<User> userSuggester;
 	
     /**
      * GET /{id} - Single entity retrieval end-point controller method<br><br>
@@ -36,4 +63,101 @@ public class UserRestController {
     	return userRepository.findOne(id);
     }
 
+    /**
+     * GET /_changes - Read the users changed since a cursor, including soft-deleted users, in the order they
+     * were changed.  With {@code wait} the request is held until changes arrive or the wait ends<br><br>
+     * 200 - A page of changes, possibly empty, and the cursor to read the next page from<br>
+     * 400 - The cursor or limit is invalid<br>
+     * @param cursor [Request Parameter] The cursor returned with the previous page, omitted to start from the beginning
+     * @param limit [Request Parameter] The maximum number of changes to return, up to 1000
+     * @param wait [Request Parameter] How long to wait for changes in milliseconds
+     * @return The pending page of changes
+     */
+    @RequestMapping(value = "/_changes", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public DeferredResult<ChangeBatch<User>> changes(@RequestParam(value = "cursor", required = false) String cursor,
+    		@RequestParam(value = "limit", defaultValue = "100") int limit,
+    		@RequestParam(value = "wait", defaultValue = "0") long wait) {
+    	if (limit < 1 || limit > 1000) {
+    		throw new IllegalArgumentException("limit must be between 1 and 1000");
+    	}
+    	return userChangeFeed.poll(cursor, limit, wait);
+    }
+
+    /**
+     * GET /_suggest - Typeahead over user names.  Each word typed matches the start of a word of the name,
+     * so {@code jo bl} suggests Joe Bloggs.  Only the id and name of each user are returned, and suggestions
+     * for popular prefixes are cached for a few seconds<br><br>
+     * 200 - The best matching users, empty for a blank query<br>
+     * 400 - The limit is invalid<br>
+     * @param q [Request Parameter] The text typed so far
+     * @param limit [Request Parameter] The maximum number of suggestions, up to the configured maximum
+     * @return The suggested users
+     */
+    @RequestMapping(value = "/_suggest", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public List<User> suggest(@RequestParam(value = "q", defaultValue = "") String q,
+    		@RequestParam(value = "limit", defaultValue = "5") int limit) {
+    	if (limit < 1 || limit > userSuggester.getMaxLimit()) {
+    		throw new IllegalArgumentException("limit must be between 1 and " + userSuggester.getMaxLimit());
+    	}
+    	return userSuggester.suggest(q, limit);
+    }
+
+    /**
+     * GET /_stats - Statistics of the users, counted by ElasticSearch in one query.  The live and soft-deleted
+     * user counts are always returned; with no statistics requested the users are counted by role<br><br>
+     * 200 - The statistics<br>
+     * 400 - A field cannot be aggregated, or the size or interval is invalid<br>
+     * @param terms [Request Parameter] Fields to count the users by each of the most common values of, e.g. {@code roles}
+     * @param cardinality [Request Parameter] Fields to count the distinct values of
+     * @param histogram [Request Parameter] Date fields to count the users by interval of, e.g. {@code modifiedAt}
+     * @param size [Request Parameter] The maximum number of values counted for each terms field, up to 1000
+     * @param interval [Request Parameter] The interval of each histogram, e.g. {@code day} or {@code month}
+     * @return The statistics
+     */
+    @RequestMapping(value = "/_stats", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public Statistics stats(@RequestParam(value = "terms", required = false) List<String> terms,
+    		@RequestParam(value = "cardinality", required = false) List<String> cardinality,
+    		@RequestParam(value = "histogram", required = false) List<String> histogram,
+    		@RequestParam(value = "size", defaultValue = "10") int size,
+    		@RequestParam(value = "interval", defaultValue = "month") String interval) {
+    	if (size < 1 || size > 1000) {
+    		throw new IllegalArgumentException("size must be between 1 and 1000");
+    	}
+    	List<Statistic> statistics = new ArrayList<Statistic>();
+    	if (terms == null && cardinality == null && histogram == null) {
+    		terms = Arrays.asList("roles");
+    	}
+    	if (terms != null) {
+    		terms.forEach(field -> statistics.add(Statistic.terms(field, size)));
+    	}
+    	if (cardinality != null) {
+    		cardinality.forEach(field -> statistics.add(Statistic.cardinality(field)));
+    	}
+    	if (histogram != null) {
+    		histogram.forEach(field -> statistics.add(Statistic.dateHistogram(field, interval)));
+    	}
+    	return userRepository.statistics(statistics);
+    }
+
+    /**
+     * Answer requests with an invalid argument, such as an unknown change cursor
+     * @return 400 - Bad request
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Void> badRequest() {
+    	return new ResponseEntity<Void>(HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * DELETE /{id} - Soft-delete an entity.  It is no longer returned and is purged after the retention period<br><br>
+     * 204 - Entity deleted<br>
+     * 404 - No entity was found<br>
+     * @param id [Path Variable] The id of the entity to delete
+     * @return One of the HTTP responses above
+     */
+    @RequestMapping(value = "/{id}", method = RequestMethod.DELETE)
+    public ResponseEntity<Void> delete(@PathVariable("id") String id) {
+    	return new ResponseEntity<Void>(userRepository.delete(id) ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND);
+    }
+
 }
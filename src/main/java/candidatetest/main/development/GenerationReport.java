@@ -0,0 +1,107 @@
+package candidatetest.main.development;
+
+/**
+ * The outcome of generating synthetic users
+ */
+public class GenerationReport {
+
+	/**
+	 * The number of users requested
+	 */
+	private final int count;
+	/**
+	 * The seed of the population
+	 */
+	private final long seed;
+	/**
+	 * Whether every user shares one password hash
+	 */
+	private final boolean sharedHash;
+	/**
+	 * The number of users indexed
+	 */
+	private final long indexed;
+	/**
+	 * The number of users rejected by ElasticSearch
+	 */
+	private final long failed;
+	/**
+	 * The time taken to generate and index the users in milliseconds
+	 */
+	private final long tookMillis;
+
+	/**
+	 * Construct a report
+	 * @param count The number of users requested
+	 * @param seed The seed of the population
+	 * @param sharedHash Whether every user shares one password hash
+	 * @param indexed The number of users indexed
+	 * @param failed The number of users rejected by ElasticSearch
+	 * @param tookMillis The time taken to generate and index the users in milliseconds
+	 */
+	public GenerationReport(int count, long seed, boolean sharedHash, long indexed, long failed, long tookMillis) {
+		this.count = count;
+		this.seed = seed;
+		this.sharedHash = sharedHash;
+		this.indexed = indexed;
+		this.failed = failed;
+		this.tookMillis = tookMillis;
+	}
+
+	/**
+	 * Get the number of users requested
+	 * @return The number of users
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Get the seed of the population
+	 * @return The seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Get whether every user shares one password hash
+	 * @return {@code true} if the hash was computed once
+	 */
+	public boolean isSharedHash() {
+		return sharedHash;
+	}
+
+	/**
+	 * Get the number of users indexed
+	 * @return The number of users
+	 */
+	public long getIndexed() {
+		return indexed;
+	}
+
+	/**
+	 * Get the number of users rejected by ElasticSearch
+	 * @return The number of users
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Get the time taken to generate and index the users
+	 * @return The duration in milliseconds
+	 */
+	public long getTookMillis() {
+		return tookMillis;
+	}
+
+	/**
+	 * Get the rate at which users were indexed
+	 * @return The users indexed per second
+	 */
+	public double getDocsPerSecond() {
+		return indexed * 1000.0 / Math.max(1, tookMillis);
+	}
+
+}
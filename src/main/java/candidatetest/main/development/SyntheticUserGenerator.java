@@ -0,0 +1,84 @@
+package candidatetest.main.development;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import candidatetest.main.model.data.User;
+import candidatetest.main.repository.BulkLoadSession;
+import candidatetest.main.repository.UserRepository;
+import candidatetest.main.security.PasswordEncoder;
+
+/**
+ * Generates synthetic users for performance testing and writes them through a bulk-load session.
+ * Each batch is generated, hashing its passwords in parallel, while earlier batches are still being
+ * indexed, and every batch is acknowledged before the report is returned
+ */
+public class SyntheticUserGenerator {
+
+	/**
+	 * Auto-wired repository the users are written to
+	 */
+	@Autowired
+	private UserRepository userRepository;
+
+	/**
+	 * Auto-wired encoder hashing the passwords
+	 */
+	@Autowired
+	private PasswordEncoder encoder;
+
+	/**
+	 * The number of users per bulk request
+	 */
+	private final int batchSize;
+	/**
+	 * The most users one request may generate
+	 */
+	private final int maxCount;
+
+	/**
+	 * Construct a new generator
+	 * @param batchSize The number of users per bulk request
+	 * @param maxCount The most users one request may generate
+	 */
+	public SyntheticUserGenerator(int batchSize, int maxCount) {
+		this.batchSize = batchSize;
+		this.maxCount = maxCount;
+	}
+
+	/**
+	 * Generate and index a population of users
+	 * @param count The number of users
+	 * @param users The population to draw the users from
+	 * @param password The plaintext password of every user
+	 * @param sharedHash Whether to hash the password once and give every user the same hash,
+	 * rather than hashing it for each user with its own salt
+	 * @return The report of the users indexed
+	 * @throws IllegalArgumentException the count is below 1 or above the maximum
+	 * @throws IllegalStateException a bulk load or reindex of the user repository is already running
+	 * @throws InterruptedException Thrown if interrupted while waiting for a batch to be indexed
+	 */
+	public GenerationReport generate(int count, SyntheticUsers users, String password, boolean sharedHash) throws InterruptedException {
+		if (count < 1 || count > maxCount) {
+			throw new IllegalArgumentException("count must be between 1 and " + maxCount);
+		}
+		String shared = sharedHash ? encoder.encode(password) : null;
+		BulkLoadSession<User> session = userRepository.beginBulkLoad(false);
+		try {
+			for (int from = 0; from < count; from += batchSize) {
+				List<User> batch = IntStream.range(from, Math.min(count, from + batchSize))
+					.parallel()
+					.mapToObj(index -> users.user(index, shared != null ? shared : encoder.encode(password)))
+					.collect(Collectors.toList());
+				session.createMany(batch);
+			}
+		} finally {
+			session.close();
+		}
+		return new GenerationReport(count, users.getSeed(), sharedHash, session.getIndexed(), session.getFailed(), session.getTookMillis());
+	}
+
+}
@@ -0,0 +1,100 @@
+package candidatetest.main.development;
+
+import java.util.SplittableRandom;
+
+import candidatetest.main.model.data.User;
+
+/**
+ * A deterministic population of synthetic users.  Each user is derived from the seed and its own index alone,
+ * so users can be generated in any order or in parallel and the same seed always gives the same users
+ */
+public class SyntheticUsers {
+
+	/**
+	 * Consonants used to build names
+	 */
+	private static final String CONSONANTS = "bcdfghjklmnprstvwz";
+
+	/**
+	 * Vowels used to build names
+	 */
+	private static final String VOWELS = "aeiou";
+
+	/**
+	 * The seed of the population
+	 */
+	private final long seed;
+	/**
+	 * The distribution of role sets
+	 */
+	private final WeightedChoice<String[]> roles;
+	/**
+	 * The distribution of the lengths of first and last names
+	 */
+	private final WeightedChoice<Integer> nameLengths;
+
+	/**
+	 * Describe a population
+	 * @param seed The seed of the population
+	 * @param roles The distribution of role sets, e.g. {@code USER:95,USER+ADMIN:5}
+	 * @param nameLengths The distribution of the lengths of first and last names, e.g. {@code 4:30,6:50,9:20}
+	 * @throws IllegalArgumentException a distribution is invalid, or a name length is below 1
+	 */
+	public SyntheticUsers(long seed, String roles, String nameLengths) {
+		this.seed = seed;
+		this.roles = new WeightedChoice<String[]>(roles, role -> role.split("\\+"));
+		this.nameLengths = new WeightedChoice<Integer>(nameLengths, length -> {
+			int value;
+			try {
+				value = Integer.parseInt(length);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid name length " + length, e);
+			}
+			if (value < 1) {
+				throw new IllegalArgumentException("Invalid name length " + length);
+			}
+			return value;
+		});
+	}
+
+	/**
+	 * Get the seed of the population
+	 * @return The seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Generate a user.  The id is the initial and last name followed by the index, so it is unique in the population
+	 * @param index The index of the user in the population
+	 * @param password The password hash to give the user
+	 * @return The user
+	 */
+	public User user(int index, String password) {
+		SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + index);
+		String first = name(random, nameLengths.pick(random));
+		String last = name(random, nameLengths.pick(random));
+		String id = String.format("%c%s-%08d", Character.toLowerCase(first.charAt(0)), last.toLowerCase(), index);
+		return new User(id, first + " " + last, password, roles.pick(random));
+	}
+
+	/**
+	 * Build a pronounceable capitalised name of alternating consonants and vowels
+	 * @param random The source of randomness
+	 * @param length The length of the name
+	 * @return The name
+	 */
+	private static String name(SplittableRandom random, int length) {
+		StringBuilder name = new StringBuilder(length);
+		boolean vowel = random.nextInt(3) == 0;
+		for (int i = 0; i < length; i++) {
+			String letters = vowel ? VOWELS : CONSONANTS;
+			char letter = letters.charAt(random.nextInt(letters.length()));
+			name.append(i == 0 ? Character.toUpperCase(letter) : letter);
+			vowel = !vowel;
+		}
+		return name.toString();
+	}
+
+}
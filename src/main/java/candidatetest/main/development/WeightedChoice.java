@@ -0,0 +1,70 @@
+package candidatetest.main.development;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+
+/**
+ * A discrete distribution over values, parsed from a specification such as {@code USER:95,USER+ADMIN:5}
+ * in which each value is followed by its relative weight
+ * @param <T> The type of value chosen
+ */
+public class WeightedChoice<T> {
+
+	/**
+	 * The values in specification order
+	 */
+	private final List<T> values = new ArrayList<T>();
+	/**
+	 * The running total of the weights, one per value
+	 */
+	private final List<Double> cumulative = new ArrayList<Double>();
+
+	/**
+	 * Parse a specification of comma separated {@code value:weight} pairs.  A value without a weight has weight 1
+	 * @param specification The specification
+	 * @param parser Converts the text of a value
+	 * @throws IllegalArgumentException the specification is empty, or a weight is negative or not a number
+	 */
+	public WeightedChoice(String specification, Function<String, T> parser) {
+		double total = 0;
+		for (String pair : specification.split(",")) {
+			if (pair.trim().isEmpty()) {
+				continue;
+			}
+			int colon = pair.lastIndexOf(':');
+			double weight;
+			try {
+				weight = colon < 0 ? 1 : Double.parseDouble(pair.substring(colon + 1).trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid weight in " + pair, e);
+			}
+			if (weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight)) {
+				throw new IllegalArgumentException("Invalid weight in " + pair);
+			}
+			total += weight;
+			values.add(parser.apply((colon < 0 ? pair : pair.substring(0, colon)).trim()));
+			cumulative.add(total);
+		}
+		if (total <= 0) {
+			throw new IllegalArgumentException("No weighted values in " + specification);
+		}
+	}
+
+	/**
+	 * Choose a value in proportion to its weight
+	 * @param random The source of randomness
+	 * @return The value
+	 */
+	public T pick(SplittableRandom random) {
+		double point = random.nextDouble() * cumulative.get(cumulative.size() - 1);
+		for (int i = 0; i < cumulative.size(); i++) {
+			if (point < cumulative.get(i)) {
+				return values.get(i);
+			}
+		}
+		return values.get(values.size() - 1);
+	}
+
+}
@@ -0,0 +1,648 @@
+package candidatetest.main.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToDoubleFunction;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+
+import candidatetest.main.metrics.MetricsRegistry;
+
+/**
+ * Ships log events to ElasticSearch over its HTTP bulk API.  Logging threads only serialise the event into
+ * a slot of a bounded ring and return; a background thread drains the ring into bulk requests of up to
+ * {@code maxBulkSize} events, sent at least every {@code maxDelayTime} milliseconds.  When the ring is full
+ * the event is dropped rather than waiting.  When ElasticSearch cannot be reached, batches are either
+ * discarded or, with {@code onFailure="SPILL"}, written to {@code spillFile} and sent once it is back.
+ * A batch ElasticSearch refuses with a client error other than 429 would be refused again, so it is
+ * counted as rejected and dropped without backing off.
+ * Documents go to a daily index named {@code index} followed by the date, e.g. {@code log-spectre-2018.02.15}
+ */
+@Plugin(name = "ElasticSearchRestAppender", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
+public class ElasticSearchRestAppender extends AbstractAppender {
+
+	/**
+	 * What to do with a batch ElasticSearch did not accept
+	 */
+	public enum FailurePolicy {
+		/** Discard the batch */					DROP,
+		/** Keep the batch on disk until ElasticSearch is back */	SPILL
+	}
+
+	/**
+	 * The longest the shipping thread sleeps while the ring is empty in nanoseconds
+	 */
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+	/**
+	 * The longest a failed host is left alone before it is tried again in milliseconds
+	 */
+	private static final long MAX_BACKOFF_MILLIS = 30000;
+
+	/**
+	 * The number of spilled bytes after which a replay stops, so the shipping thread gets back to the ring
+	 */
+	private static final long REPLAY_BYTES = 1024 * 1024;
+
+	/**
+	 * The most bytes of an error response quoted in the log
+	 */
+	private static final int MAX_QUOTED_BYTES = 512;
+
+	/**
+	 * The running appenders, keyed by name, for their metrics
+	 */
+	private static final Map<String, ElasticSearchRestAppender> appenders = new ConcurrentHashMap<String, ElasticSearchRestAppender>();
+
+	/**
+	 * The events waiting to be shipped
+	 */
+	private final EventRing ring;
+	/**
+	 * The bulk endpoint of each host
+	 */
+	private final URL[] endpoints;
+	/**
+	 * The prefix of the daily index names
+	 */
+	private final String index;
+	/**
+	 * The mapping type of the documents
+	 */
+	private final String type;
+	/**
+	 * The basic authorization header, or null to send none
+	 */
+	private final String authorization;
+	/**
+	 * The most events per bulk request
+	 */
+	private final int maxBulkSize;
+	/**
+	 * The longest an event waits for its batch to fill in milliseconds
+	 */
+	private final long maxDelayMillis;
+	/**
+	 * The connect and read timeout of a bulk request in milliseconds
+	 */
+	private final int timeoutMillis;
+	/**
+	 * Whether messages are JSON objects to be embedded as objects
+	 */
+	private final boolean jsonMessages;
+	/**
+	 * Where failed batches go, or null to discard them
+	 */
+	private final SpillFile spill;
+	/**
+	 * Events refused because the ring was full
+	 */
+	private final LongAdder dropped = new LongAdder();
+	/**
+	 * Events accepted by ElasticSearch
+	 */
+	private final LongAdder shipped = new LongAdder();
+	/**
+	 * Events written to the spill file
+	 */
+	private final LongAdder spilled = new LongAdder();
+	/**
+	 * Events discarded because ElasticSearch did not accept them and they could not be spilled
+	 */
+	private final LongAdder discarded = new LongAdder();
+	/**
+	 * Events dropped because ElasticSearch refused their batch as invalid
+	 */
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * The thread draining the ring
+	 */
+	private Thread shipper;
+	/**
+	 * Whether the shipping thread should keep running
+	 */
+	private volatile boolean running;
+
+	/**
+	 * The bulk request being built, only used by the shipping thread
+	 */
+	private byte[] body = new byte[65536];
+	/**
+	 * The number of bytes of the bulk request
+	 */
+	private int length;
+	/**
+	 * The number of events in the bulk request
+	 */
+	private int count;
+	/**
+	 * The day since the epoch of the cached action line
+	 */
+	private long actionDay = Long.MIN_VALUE;
+	/**
+	 * The cached bulk action line of the day
+	 */
+	private byte[] action;
+	/**
+	 * The host the next request is sent to
+	 */
+	private int host;
+	/**
+	 * The consecutive failed requests
+	 */
+	private int failures;
+	/**
+	 * The time before which no request is attempted after a failure, in milliseconds since the epoch
+	 */
+	private long downUntil;
+	/**
+	 * The time before which the spill file is not checked while the ring is idle, in milliseconds since the epoch
+	 */
+	private long nextReplay;
+
+	/**
+	 * Construct a new appender
+	 * @param name The appender name
+	 * @param filter The filter, or null
+	 * @param endpoints The bulk endpoint of each host
+	 * @param index The prefix of the daily index names
+	 * @param type The mapping type of the documents
+	 * @param authorization The basic authorization header, or null
+	 * @param maxBulkSize The most events per bulk request
+	 * @param maxDelayMillis The longest an event waits for its batch to fill in milliseconds
+	 * @param timeoutMillis The connect and read timeout of a bulk request in milliseconds
+	 * @param bufferSize The number of events the ring holds
+	 * @param jsonMessages Whether messages are JSON objects
+	 * @param spill Where failed batches go, or null to discard them
+	 */
+	protected ElasticSearchRestAppender(String name, Filter filter, URL[] endpoints, String index, String type, String authorization,
+			int maxBulkSize, long maxDelayMillis, int timeoutMillis, int bufferSize, boolean jsonMessages, SpillFile spill) {
+		super(name, filter, null, true);
+		this.ring = new EventRing(bufferSize);
+		this.endpoints = endpoints;
+		this.index = index;
+		this.type = type;
+		this.authorization = authorization;
+		this.maxBulkSize = maxBulkSize;
+		this.maxDelayMillis = maxDelayMillis;
+		this.timeoutMillis = timeoutMillis;
+		this.jsonMessages = jsonMessages;
+		this.spill = spill;
+	}
+
+	/**
+	 * Create the appender from its configuration
+	 * @param name The appender name
+	 * @param filter The filter, or null
+	 * @param layout Ignored, events are always written as JSON documents
+	 * @param hosts Comma separated {@code host:port} or URL of each ElasticSearch node
+	 * @param index The prefix of the daily index names
+	 * @param type The mapping type of the documents
+	 * @param user The user name for basic authentication, or null or empty for none
+	 * @param password The password for basic authentication, may be null
+	 * @param maxBulkSize The most events per bulk request
+	 * @param maxDelayTime The longest an event waits for its batch to fill in milliseconds
+	 * @param timeout The connect and read timeout of a bulk request in milliseconds
+	 * @param bufferSize The number of events which may wait to be shipped before further events are dropped
+	 * @param jsonMessages Whether messages are JSON objects to be embedded as objects rather than strings
+	 * @param onFailure {@code DROP} or {@code SPILL} batches ElasticSearch did not accept
+	 * @param spillFile The file failed batches are spilled to
+	 * @param spillMaxSize The largest the spill file may grow to in bytes
+	 * @return The appender, or null if the configuration is invalid
+	 */
+	@PluginFactory
+	public static ElasticSearchRestAppender createAppender(
+			@PluginAttribute("name") String name,
+			@PluginElement("Filter") Filter filter,
+			@PluginElement("Layout") Layout<? extends Serializable> layout,
+			@PluginAttribute(value = "hosts", defaultString = "localhost:9200") String hosts,
+			@PluginAttribute(value = "index", defaultString = "log-") String index,
+			@PluginAttribute(value = "type", defaultString = "log") String type,
+			@PluginAttribute("user") String user,
+			@PluginAttribute(value = "password", sensitive = true) String password,
+			@PluginAttribute(value = "maxBulkSize", defaultInt = 200) int maxBulkSize,
+			@PluginAttribute(value = "maxDelayTime", defaultLong = 2000) long maxDelayTime,
+			@PluginAttribute(value = "timeout", defaultInt = 5000) int timeout,
+			@PluginAttribute(value = "bufferSize", defaultInt = 8192) int bufferSize,
+			@PluginAttribute(value = "jsonMessages", defaultBoolean = false) boolean jsonMessages,
+			@PluginAttribute(value = "onFailure", defaultString = "DROP") String onFailure,
+			@PluginAttribute(value = "spillFile") String spillFile,
+			@PluginAttribute(value = "spillMaxSize", defaultLong = 100 * 1024 * 1024) long spillMaxSize) {
+		if (name == null) {
+			LOGGER.error("No name provided for ElasticSearchRestAppender");
+			return null;
+		}
+		if (maxBulkSize < 1 || maxDelayTime < 1 || bufferSize < 1) {
+			LOGGER.error("maxBulkSize, maxDelayTime and bufferSize of ElasticSearchRestAppender " + name + " must be positive");
+			return null;
+		}
+		String[] names = hosts.split(",");
+		URL[] endpoints = new URL[names.length];
+		try {
+			for (int i = 0; i < names.length; i++) {
+				String host = names[i].trim();
+				endpoints[i] = new URL((host.contains("://") ? host : "http://" + host).replaceAll("/+$", "") + "/_bulk");
+			}
+		} catch (IOException e) {
+			LOGGER.error("Invalid hosts of ElasticSearchRestAppender " + name + ": " + hosts, e);
+			return null;
+		}
+		FailurePolicy policy;
+		try {
+			policy = FailurePolicy.valueOf(onFailure.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			LOGGER.error("onFailure of ElasticSearchRestAppender " + name + " must be DROP or SPILL, not " + onFailure);
+			return null;
+		}
+		SpillFile spill = null;
+		if (policy == FailurePolicy.SPILL) {
+			spill = new SpillFile(new File(spillFile != null ? spillFile : "logs/" + name + ".spill"), spillMaxSize);
+		}
+		String authorization = user == null || user.isEmpty() ? null
+			: "Basic " + Base64.getEncoder().encodeToString((user + ":" + (password != null ? password : "")).getBytes(StandardCharsets.UTF_8));
+		return new ElasticSearchRestAppender(name, filter, endpoints, index, type, authorization,
+				maxBulkSize, maxDelayTime, timeout, bufferSize, jsonMessages, spill);
+	}
+
+	/**
+	 * Register gauges of the queue depth and event outcomes of every running appender.  The gauges look the
+	 * appender up by name when read, so they follow a reconfigured appender of the same name
+	 * @param metrics The registry to register in
+	 */
+	public static void registerMetrics(MetricsRegistry metrics) {
+		for (String name : appenders.keySet()) {
+			metrics.gauge("log_appender_queue", "Log events waiting to be shipped to ElasticSearch",
+					() -> read(name, appender -> appender.ring.size()), "appender", name);
+			metrics.gauge("log_appender_events", "Log events by outcome since the appender started",
+					() -> read(name, appender -> appender.shipped.sum()), "appender", name, "outcome", "shipped");
+			metrics.gauge("log_appender_events", "Log events by outcome since the appender started",
+					() -> read(name, appender -> appender.dropped.sum()), "appender", name, "outcome", "dropped");
+			metrics.gauge("log_appender_events", "Log events by outcome since the appender started",
+					() -> read(name, appender -> appender.spilled.sum()), "appender", name, "outcome", "spilled");
+			metrics.gauge("log_appender_events", "Log events by outcome since the appender started",
+					() -> read(name, appender -> appender.discarded.sum()), "appender", name, "outcome", "discarded");
+			metrics.gauge("log_appender_events", "Log events by outcome since the appender started",
+					() -> read(name, appender -> appender.rejected.sum()), "appender", name, "outcome", "rejected");
+		}
+	}
+
+	/**
+	 * Read a value of a running appender
+	 * @param name The appender name
+	 * @param value Reads the value
+	 * @return The value, or 0 if no appender of that name is running
+	 */
+	private static double read(String name, ToDoubleFunction<ElasticSearchRestAppender> value) {
+		ElasticSearchRestAppender appender = appenders.get(name);
+		return appender == null ? 0 : value.applyAsDouble(appender);
+	}
+
+	/**
+	 * Start the shipping thread
+	 * @see org.apache.logging.log4j.core.filter.AbstractFilterable#start()
+	 */
+	@Override
+	public void start() {
+		running = true;
+		shipper = new Thread(this::ship, "log-shipper-" + getName());
+		shipper.setDaemon(true);
+		shipper.start();
+		appenders.put(getName(), this);
+		super.start();
+	}
+
+	/**
+	 * Stop accepting events and ship those already queued, waiting up to the timeout
+	 * @see org.apache.logging.log4j.core.filter.AbstractFilterable#stop(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public boolean stop(long timeout, TimeUnit timeUnit) {
+		setStopping();
+		super.stop(timeout, timeUnit, false);
+		running = false;
+		appenders.remove(getName(), this);
+		boolean stopped = true;
+		if (shipper != null) {
+			LockSupport.unpark(shipper);
+			try {
+				shipper.join(timeout > 0 ? timeUnit.toMillis(timeout) : 0);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			stopped = !shipper.isAlive();
+		}
+		setStopped();
+		return stopped;
+	}
+
+	/**
+	 * Serialise the event into the ring, or drop it if the ring is full.  Never waits
+	 * @see org.apache.logging.log4j.core.Appender#append(org.apache.logging.log4j.core.LogEvent)
+	 */
+	@Override
+	public void append(LogEvent event) {
+		EventRing.Slot slot = ring.claim();
+		if (slot == null) {
+			dropped.increment();
+			return;
+		}
+		try {
+			slot.timestamp = event.getTimeMillis();
+			JsonEventFormat.format(event, jsonMessages, slot.text);
+		} catch (RuntimeException e) {
+			// An empty slot is skipped by the shipping thread
+			slot.text.setLength(0);
+			error("Could not serialise log event", event, e);
+		} finally {
+			ring.publish(slot);
+		}
+	}
+
+	/**
+	 * The shipping loop, which drains the ring into bulk requests until stopped and the ring is empty
+	 */
+	private void ship() {
+		long batchStarted = 0;
+		while (true) {
+			EventRing.Slot slot = ring.peek();
+			if (slot != null) {
+				if (slot.text.length() > 0) {
+					if (count == 0) {
+						batchStarted = System.currentTimeMillis();
+					}
+					appendDocument(slot);
+				}
+				ring.release(slot);
+				if (count >= maxBulkSize) {
+					flush();
+				}
+			} else if (count > 0 && (!running || System.currentTimeMillis() - batchStarted >= maxDelayMillis)) {
+				flush();
+			} else if (!running && ring.size() == 0) {
+				return;
+			} else {
+				long now = System.currentTimeMillis();
+				if (spill != null && now >= nextReplay) {
+					// Keep draining the spill file while no events arrive to send first
+					nextReplay = now + maxDelayMillis;
+					if (now >= downUntil) {
+						replay();
+					}
+				}
+				LockSupport.parkNanos(this, IDLE_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Add an action line and the event document to the bulk request
+	 * @param slot The slot holding the event
+	 */
+	private void appendDocument(EventRing.Slot slot) {
+		long day = Math.floorDiv(slot.timestamp, 86400000L);
+		if (day != actionDay) {
+			StringBuilder line = new StringBuilder(96).append("{\"index\":{\"_index\":");
+			StringBuilder name = new StringBuilder(index);
+			JsonEventFormat.appendDate(day, '.', name);
+			JsonEventFormat.appendString(name, line);
+			line.append(",\"_type\":");
+			JsonEventFormat.appendString(type, line);
+			line.append("}}\n");
+			action = line.toString().getBytes(StandardCharsets.UTF_8);
+			actionDay = day;
+		}
+		ensureCapacity(action.length);
+		System.arraycopy(action, 0, body, length, action.length);
+		length += action.length;
+		appendUtf8(slot.text);
+		ensureCapacity(1);
+		body[length++] = '\n';
+		count++;
+	}
+
+	/**
+	 * Encode text as UTF-8 onto the end of the bulk request without an intermediate string
+	 * @param text The text
+	 */
+	private void appendUtf8(CharSequence text) {
+		ensureCapacity(text.length() * 3);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				body[length++] = (byte) c;
+			} else if (c < 0x800) {
+				body[length++] = (byte) (0xC0 | (c >> 6));
+				body[length++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				body[length++] = (byte) (0xF0 | (codePoint >> 18));
+				body[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				body[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				body[length++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				body[length++] = '?';
+			} else {
+				body[length++] = (byte) (0xE0 | (c >> 12));
+				body[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				body[length++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	/**
+	 * Grow the bulk request buffer to fit more bytes
+	 * @param extra The number of bytes to fit
+	 */
+	private void ensureCapacity(int extra) {
+		if (length + extra > body.length) {
+			byte[] grown = new byte[Math.max(body.length * 2, length + extra)];
+			System.arraycopy(body, 0, grown, 0, length);
+			body = grown;
+		}
+	}
+
+	/**
+	 * Send the bulk request, or apply the failure policy if ElasticSearch is down or overloaded.  Once
+	 * ElasticSearch has answered, part of anything spilled earlier is replayed
+	 */
+	private void flush() {
+		SpillFile.Delivery delivery = System.currentTimeMillis() >= downUntil
+			? deliver(body, length, count) : SpillFile.Delivery.UNAVAILABLE;
+		if (delivery != SpillFile.Delivery.UNAVAILABLE) {
+			replay();
+		} else if (spill != null && spill.append(body, length)) {
+			spilled.add(count);
+		} else {
+			discarded.add(count);
+		}
+		length = 0;
+		count = 0;
+		if (body.length > 4 * 1024 * 1024) {
+			// One burst of large events should not pin a large buffer for good
+			body = new byte[65536];
+		}
+	}
+
+	/**
+	 * Replay up to {@link #REPLAY_BYTES} of the spill file, if there is anything in it
+	 */
+	private void replay() {
+		if (spill == null || spill.isEmpty()) {
+			return;
+		}
+		try {
+			spill.replay(maxBulkSize, REPLAY_BYTES, this::deliver);
+		} catch (IOException e) {
+			LOGGER.warn("Could not replay the spilled log events of " + getName(), e);
+		}
+	}
+
+	/**
+	 * Send a bulk request and count its events as shipped or rejected
+	 * @param request The buffer holding the request body
+	 * @param size The number of bytes of the body
+	 * @param events The number of events in the request
+	 * @return What became of the request
+	 */
+	private SpillFile.Delivery deliver(byte[] request, int size, int events) {
+		SpillFile.Delivery delivery = send(request, size);
+		if (delivery == SpillFile.Delivery.ACCEPTED) {
+			shipped.add(events);
+		} else if (delivery == SpillFile.Delivery.REJECTED) {
+			rejected.add(events);
+		}
+		return delivery;
+	}
+
+	/**
+	 * Send a bulk request to the current host.  After a failure to reach it, or a status which may succeed
+	 * later, the next host is used and no request is attempted for an exponentially growing back-off
+	 * @param request The buffer holding the request body
+	 * @param size The number of bytes of the body
+	 * @return What became of the request
+	 */
+	private SpillFile.Delivery send(byte[] request, int size) {
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) endpoints[host].openConnection();
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setConnectTimeout(timeoutMillis);
+			connection.setReadTimeout(timeoutMillis);
+			connection.setFixedLengthStreamingMode(size);
+			connection.setRequestProperty("Content-Type", "application/x-ndjson");
+			if (authorization != null) {
+				connection.setRequestProperty("Authorization", authorization);
+			}
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(request, 0, size);
+			}
+			int status = connection.getResponseCode();
+			String reply = "";
+			try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				// Read the response fully so the connection can be kept alive
+				if (in != null) {
+					byte[] buffer = new byte[8192];
+					int read = in.read(buffer);
+					if (status >= 400 && read > 0) {
+						reply = new String(buffer, 0, Math.min(read, MAX_QUOTED_BYTES), StandardCharsets.UTF_8);
+					}
+					while (read > 0) {
+						read = in.read(buffer);
+					}
+				}
+			}
+			if (status >= 200 && status < 300) {
+				failures = 0;
+				return SpillFile.Delivery.ACCEPTED;
+			}
+			if (status >= 400 && status < 500 && status != 429) {
+				// The host is up and the same request would be refused again, e.g. 400 for a malformed body or 413 for its size
+				failures = 0;
+				LOGGER.warn("ElasticSearch refused " + size + " bytes of log events of " + getName() + " with status " + status + ", dropping them: " + reply);
+				return SpillFile.Delivery.REJECTED;
+			}
+			LOGGER.warn("ElasticSearch did not accept log events of " + getName() + " with status " + status + ": " + reply);
+		} catch (IOException e) {
+			LOGGER.warn("Could not ship log events of " + getName() + " to " + endpoints[host] + ": " + e);
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+		failures++;
+		host = (host + 1) % endpoints.length;
+		downUntil = System.currentTimeMillis() + Math.min(MAX_BACKOFF_MILLIS, 250L << Math.min(failures, 10));
+		return SpillFile.Delivery.UNAVAILABLE;
+	}
+
+	/**
+	 * Get the number of events waiting to be shipped
+	 * @return The queue depth
+	 */
+	public int getQueueSize() {
+		return ring.size();
+	}
+
+	/**
+	 * Get the number of events dropped because the queue was full
+	 * @return The number of events
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Get the number of events accepted by ElasticSearch
+	 * @return The number of events
+	 */
+	public long getShipped() {
+		return shipped.sum();
+	}
+
+	/**
+	 * Get the number of events written to the spill file
+	 * @return The number of events
+	 */
+	public long getSpilled() {
+		return spilled.sum();
+	}
+
+	/**
+	 * Get the number of events discarded because ElasticSearch did not accept them and they were not spilled
+	 * @return The number of events
+	 */
+	public long getDiscarded() {
+		return discarded.sum();
+	}
+
+	/**
+	 * Get the number of events dropped because ElasticSearch refused their batch as invalid
+	 * @return The number of events
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+}
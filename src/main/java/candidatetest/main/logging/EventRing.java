@@ -0,0 +1,140 @@
+package candidatetest.main.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded ring of pre-allocated text buffers shared by many logging threads and one shipping thread.
+ * Logging threads claim a slot with a compare-and-set and never wait: when the ring is full the event
+ * is refused.  Each slot carries a sequence number saying whether it is free, written or being written,
+ * so neither side takes a lock and the buffers are reused rather than allocated per event
+ */
+class EventRing {
+
+	/**
+	 * A reusable buffer holding one serialised event
+	 */
+	static final class Slot {
+
+		/**
+		 * The sequence at which the slot may next be claimed, or that plus one once it has been written
+		 */
+		private volatile long sequence;
+		/**
+		 * The serialised event
+		 */
+		final StringBuilder text = new StringBuilder(256);
+		/**
+		 * The time of the event in milliseconds since the epoch
+		 */
+		long timestamp;
+
+		/**
+		 * Construct a free slot
+		 * @param sequence The first sequence at which the slot may be claimed
+		 */
+		private Slot(long sequence) {
+			this.sequence = sequence;
+		}
+
+	}
+
+	/**
+	 * The slots, a power of two in number
+	 */
+	private final Slot[] slots;
+	/**
+	 * The mask mapping a sequence to its slot
+	 */
+	private final int mask;
+	/**
+	 * The next sequence to be claimed by a logging thread
+	 */
+	private final AtomicLong head = new AtomicLong();
+	/**
+	 * The next sequence to be read by the shipping thread, written only by that thread
+	 */
+	private volatile long tail;
+
+	/**
+	 * Construct a ring
+	 * @param capacity The minimum number of events it can hold, rounded up to a power of two
+	 */
+	EventRing(int capacity) {
+		int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		this.slots = new Slot[size];
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			slots[i] = new Slot(i);
+		}
+	}
+
+	/**
+	 * Claim a slot to write an event into.  The caller must write its text and timestamp then {@link #publish(Slot)} it
+	 * @return The cleared slot, or null if the ring is full
+	 */
+	Slot claim() {
+		while (true) {
+			long sequence = head.get();
+			Slot slot = slots[(int) sequence & mask];
+			long available = slot.sequence;
+			if (available < sequence) {
+				// The slot still holds an event from the previous lap
+				return null;
+			}
+			if (available == sequence && head.compareAndSet(sequence, sequence + 1)) {
+				slot.text.setLength(0);
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * Hand a written slot to the shipping thread
+	 * @param slot The slot claimed and written
+	 */
+	void publish(Slot slot) {
+		slot.sequence = slot.sequence + 1;
+	}
+
+	/**
+	 * Get the next written slot, for the shipping thread only.  The slot must be given back with {@link #release(Slot)}
+	 * @return The slot, or null if the next event has not been written yet
+	 */
+	Slot peek() {
+		long next = tail;
+		Slot slot = slots[(int) next & mask];
+		return slot.sequence == next + 1 ? slot : null;
+	}
+
+	/**
+	 * Free a slot read by the shipping thread for a later lap
+	 * @param slot The slot returned by {@link #peek()}
+	 */
+	void release(Slot slot) {
+		long next = tail;
+		if (slot.text.capacity() > 65536) {
+			// One huge event should not pin its buffer for good
+			slot.text.setLength(0);
+			slot.text.trimToSize();
+		}
+		slot.sequence = next + slots.length;
+		tail = next + 1;
+	}
+
+	/**
+	 * Get the number of events waiting to be shipped, including any being written
+	 * @return The queue depth
+	 */
+	int size() {
+		return (int) Math.max(0, head.get() - tail);
+	}
+
+	/**
+	 * Get the number of events the ring holds
+	 * @return The capacity
+	 */
+	int capacity() {
+		return slots.length;
+	}
+
+}
@@ -0,0 +1,179 @@
+package candidatetest.main.logging;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+/**
+ * Writes log events as single-line JSON documents into a caller's buffer.  Timestamps are formatted
+ * arithmetically and messages are formatted straight into a per-thread scratch buffer, so an event
+ * without an exception allocates nothing once the buffers have grown to size
+ */
+final class JsonEventFormat {
+
+	/**
+	 * Milliseconds per day
+	 */
+	private static final long DAY_MILLIS = 86400000L;
+
+	/**
+	 * Hexadecimal digits for escaped control characters
+	 */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Scratch buffers into which messages are formatted before being escaped
+	 */
+	private static final ThreadLocal<StringBuilder> scratch = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+	/**
+	 * Static utility only
+	 */
+	private JsonEventFormat() {}
+
+	/**
+	 * Write an event as a JSON document with {@code @timestamp}, {@code level}, {@code logger},
+	 * {@code thread}, {@code message} and, if there is one, {@code exception} fields
+	 * @param event The event
+	 * @param jsonMessage Whether the message is itself a JSON object to be embedded rather than quoted
+	 * @param out The buffer to append to
+	 */
+	static void format(LogEvent event, boolean jsonMessage, StringBuilder out) {
+		out.append("{\"@timestamp\":\"");
+		appendTimestamp(event.getTimeMillis(), out);
+		out.append("\",\"level\":\"").append(event.getLevel().name());
+		out.append("\",\"logger\":");
+		appendString(event.getLoggerName(), out);
+		out.append(",\"thread\":");
+		appendString(event.getThreadName(), out);
+		out.append(",\"message\":");
+		StringBuilder message = scratch.get();
+		message.setLength(0);
+		appendMessage(event.getMessage(), message);
+		if (jsonMessage && message.length() > 0 && message.charAt(0) == '{') {
+			out.append(message);
+		} else {
+			appendString(message, out);
+		}
+		if (message.capacity() > 65536) {
+			scratch.remove();
+		}
+		Throwable thrown = event.getThrown();
+		if (thrown != null) {
+			StringWriter trace = new StringWriter();
+			thrown.printStackTrace(new PrintWriter(trace));
+			out.append(",\"exception\":");
+			appendString(trace.getBuffer(), out);
+		}
+		out.append('}');
+	}
+
+	/**
+	 * Format a message without creating a string where the message supports it
+	 * @param message The message
+	 * @param out The buffer to append to
+	 */
+	private static void appendMessage(Message message, StringBuilder out) {
+		if (message == null) {
+			return;
+		}
+		if (message instanceof StringBuilderFormattable) {
+			((StringBuilderFormattable) message).formatTo(out);
+		} else {
+			out.append(message.getFormattedMessage());
+		}
+	}
+
+	/**
+	 * Append a quoted, escaped JSON string
+	 * @param value The text, may be null
+	 * @param out The buffer to append to
+	 */
+	static void appendString(CharSequence value, StringBuilder out) {
+		if (value == null) {
+			out.append("null");
+			return;
+		}
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"': out.append("\\\""); break;
+				case '\\': out.append("\\\\"); break;
+				case '\n': out.append("\\n"); break;
+				case '\r': out.append("\\r"); break;
+				case '\t': out.append("\\t"); break;
+				default:
+					if (c < 0x20) {
+						out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+					} else {
+						out.append(c);
+					}
+			}
+		}
+		out.append('"');
+	}
+
+	/**
+	 * Append an ISO-8601 UTC timestamp such as {@code 2018-02-15T13:58:32.543Z}
+	 * @param millis The time in milliseconds since the epoch
+	 * @param out The buffer to append to
+	 */
+	static void appendTimestamp(long millis, StringBuilder out) {
+		long days = Math.floorDiv(millis, DAY_MILLIS);
+		int ofDay = (int) Math.floorMod(millis, DAY_MILLIS);
+		appendDate(days, '-', out);
+		out.append('T');
+		appendPadded(ofDay / 3600000, 2, out);
+		out.append(':');
+		appendPadded(ofDay / 60000 % 60, 2, out);
+		out.append(':');
+		appendPadded(ofDay / 1000 % 60, 2, out);
+		out.append('.');
+		appendPadded(ofDay % 1000, 3, out);
+		out.append('Z');
+	}
+
+	/**
+	 * Append the civil date of a day since the epoch
+	 * @param epochDay The day since 1970-01-01
+	 * @param separator The character between year, month and day
+	 * @param out The buffer to append to
+	 */
+	static void appendDate(long epochDay, char separator, StringBuilder out) {
+		// Howard Hinnant's civil_from_days, on 400 year eras starting in March
+		long z = epochDay + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long shiftedMonth = (5 * dayOfYear + 2) / 153;
+		int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+		int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		appendPadded((int) year, 4, out);
+		out.append(separator);
+		appendPadded(month, 2, out);
+		out.append(separator);
+		appendPadded(day, 2, out);
+	}
+
+	/**
+	 * Append a non-negative number padded with leading zeroes
+	 * @param value The number
+	 * @param width The minimum number of digits
+	 * @param out The buffer to append to
+	 */
+	private static void appendPadded(int value, int width, StringBuilder out) {
+		for (int limit = 10, digits = 1; digits < width; limit *= 10, digits++) {
+			if (value < limit) {
+				out.append('0');
+			}
+		}
+		out.append(value);
+	}
+
+}
@@ -0,0 +1,72 @@
+package candidatetest.main.logging;
+
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
+
+/**
+ * Matches events logged by one logger, so that an appender can take or leave the events of e.g. the access logger
+ */
+@Plugin(name = "LoggerNameFilter", category = Node.CATEGORY, elementType = Filter.ELEMENT_TYPE, printObject = true)
+public final class LoggerNameFilter extends AbstractFilter {
+
+	/**
+	 * The logger name to match
+	 */
+	private final String name;
+	/**
+	 * Whether the name is matched regardless of case
+	 */
+	private final boolean ignoreCase;
+
+	/**
+	 * Construct a new filter
+	 * @param name The logger name to match
+	 * @param ignoreCase Whether the name is matched regardless of case
+	 * @param onMatch The result for events of the logger
+	 * @param onMismatch The result for events of other loggers
+	 */
+	private LoggerNameFilter(String name, boolean ignoreCase, Result onMatch, Result onMismatch) {
+		super(onMatch, onMismatch);
+		this.name = name;
+		this.ignoreCase = ignoreCase;
+	}
+
+	/**
+	 * Create the filter from its configuration
+	 * @param name The logger name to match
+	 * @param ignoreCase Whether the name is matched regardless of case
+	 * @param onMatch The result for events of the logger, {@code NEUTRAL} by default
+	 * @param onMismatch The result for events of other loggers, {@code DENY} by default
+	 * @return The filter, or null if no name was given
+	 */
+	@PluginFactory
+	public static LoggerNameFilter createFilter(
+			@PluginAttribute("name") String name,
+			@PluginAttribute(value = "ignoreCase", defaultBoolean = false) boolean ignoreCase,
+			@PluginAttribute("onMatch") Result onMatch,
+			@PluginAttribute("onMismatch") Result onMismatch) {
+		if (name == null) {
+			LOGGER.error("No name provided for LoggerNameFilter");
+			return null;
+		}
+		return new LoggerNameFilter(name, ignoreCase,
+				onMatch != null ? onMatch : Result.NEUTRAL, onMismatch != null ? onMismatch : Result.DENY);
+	}
+
+	/**
+	 * Test the logger of an event
+	 * @see org.apache.logging.log4j.core.filter.AbstractFilter#filter(org.apache.logging.log4j.core.LogEvent)
+	 */
+	@Override
+	public Result filter(LogEvent event) {
+		String logger = event.getLoggerName();
+		boolean matches = logger != null && (ignoreCase ? logger.equalsIgnoreCase(name) : logger.equals(name));
+		return matches ? onMatch : onMismatch;
+	}
+
+}
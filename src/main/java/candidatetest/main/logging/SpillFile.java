@@ -0,0 +1,225 @@
+package candidatetest.main.logging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Bulk request bodies kept on disk while ElasticSearch is unreachable, to be sent once it is back.
+ * Replayed bodies are skipped by an offset kept in a second file, so a long spill is replayed a
+ * piece at a time without rewriting the rest of the file after each piece.  Only the shipping
+ * thread of one appender uses a spill file, so it is not thread safe
+ */
+class SpillFile {
+
+	/**
+	 * What became of a bulk request body that was sent
+	 */
+	enum Delivery {
+		/** ElasticSearch accepted the request */						ACCEPTED,
+		/** ElasticSearch refused the request itself, so it must not be sent again */	REJECTED,
+		/** ElasticSearch could not be reached or was overloaded */		UNAVAILABLE
+	}
+
+	/**
+	 * Sends a bulk request body, used to replay the file
+	 */
+	interface Sender {
+
+		/**
+		 * Send a bulk request body
+		 * @param body The buffer holding the body
+		 * @param length The number of bytes of the body
+		 * @param documents The number of documents in the body
+		 * @return What became of the request
+		 */
+		Delivery send(byte[] body, int length, int documents);
+
+	}
+
+	/**
+	 * The file
+	 */
+	private final File file;
+	/**
+	 * The file holding the number of bytes at the start of the file already replayed
+	 */
+	private final File offsetFile;
+	/**
+	 * The largest the file may grow to in bytes
+	 */
+	private final long maxBytes;
+	/**
+	 * The number of bytes at the start of the file already replayed, or -1 until read from the offset file
+	 */
+	private long offset = -1;
+
+	/**
+	 * Construct a spill file, which is created when first needed.  A file left by an earlier run is replayed too
+	 * @param file The file
+	 * @param maxBytes The largest the file may grow to in bytes
+	 */
+	SpillFile(File file, long maxBytes) {
+		this.file = file;
+		this.offsetFile = new File(file.getPath() + ".offset");
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Test whether any bodies are waiting to be replayed
+	 * @return {@code true} if the file holds bodies not yet replayed
+	 */
+	boolean isEmpty() {
+		return file.length() <= offset();
+	}
+
+	/**
+	 * Append a bulk request body
+	 * @param body The buffer holding the body, a sequence of complete newline terminated action and document lines
+	 * @param length The number of bytes of the body
+	 * @return {@code true} if the body was written, {@code false} if the file is full or could not be written
+	 */
+	boolean append(byte[] body, int length) {
+		if (file.length() - offset() + length > maxBytes) {
+			return false;
+		}
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		try (OutputStream out = new FileOutputStream(file, true)) {
+			out.write(body, 0, length);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Send some of the spilled documents again, in bulk requests of a bounded number of documents.  Bodies which
+	 * ElasticSearch rejects are skipped like those it accepts.  If ElasticSearch is unavailable, the request and
+	 * everything after it stay in the file for the next replay
+	 * @param maxDocuments The most documents per request
+	 * @param maxReplayBytes The number of bytes after which no further request is started
+	 * @param sender Sends each request
+	 * @throws IOException Thrown if the file cannot be read or rewritten
+	 */
+	void replay(int maxDocuments, long maxReplayBytes, Sender sender) throws IOException {
+		long start = offset();
+		long acknowledged = start;
+		ByteArrayOutputStream batch = new ByteArrayOutputStream(65536);
+		byte[] buffer = new byte[65536];
+		int documents = 0;
+		int lines = 0;
+		long position = start;
+		boolean stopped = false;
+		try (FileInputStream in = new FileInputStream(file)) {
+			in.getChannel().position(start);
+			int read;
+			while (!stopped && (read = in.read(buffer)) > 0) {
+				int from = 0;
+				for (int i = 0; i < read; i++) {
+					// Every document is an action line followed by a source line
+					if (buffer[i] == '\n' && ++lines % 2 == 0 && ++documents == maxDocuments) {
+						batch.write(buffer, from, i + 1 - from);
+						from = i + 1;
+						if (sender.send(batch.toByteArray(), batch.size(), documents) == Delivery.UNAVAILABLE) {
+							stopped = true;
+							break;
+						}
+						acknowledged = position + from;
+						batch.reset();
+						documents = 0;
+						if (acknowledged - start >= maxReplayBytes) {
+							stopped = true;
+							break;
+						}
+					}
+				}
+				if (!stopped) {
+					batch.write(buffer, from, read - from);
+					position += read;
+				}
+			}
+			if (!stopped && documents > 0 && sender.send(batch.toByteArray(), batch.size(), documents) != Delivery.UNAVAILABLE) {
+				acknowledged = position;
+			}
+		}
+		acknowledge(acknowledged);
+	}
+
+	/**
+	 * Get the number of bytes already replayed, reading it from the offset file the first time
+	 * @return The number of bytes
+	 */
+	private long offset() {
+		if (!file.exists()) {
+			offset = 0;
+		} else if (offset < 0) {
+			offset = 0;
+			if (offsetFile.exists()) {
+				try {
+					offset = Math.min(file.length(), Long.parseLong(new String(Files.readAllBytes(offsetFile.toPath()), StandardCharsets.US_ASCII).trim()));
+				} catch (IOException | NumberFormatException e) {
+					// Replaying from the start sends some documents twice, which is better than losing them
+				}
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Record how much of the file has been replayed.  The file is deleted once it has all been replayed, and
+	 * rewritten without the replayed start once that is over half the size limit, so appends find room again
+	 * @param acknowledged The number of bytes at the start of the file replayed
+	 * @throws IOException Thrown if the file cannot be rewritten
+	 */
+	private void acknowledge(long acknowledged) throws IOException {
+		if (acknowledged == offset) {
+			return;
+		}
+		if (acknowledged >= file.length()) {
+			Files.delete(file.toPath());
+			Files.deleteIfExists(offsetFile.toPath());
+			offset = 0;
+			return;
+		}
+		if (acknowledged > maxBytes / 2) {
+			truncate(acknowledged);
+			Files.deleteIfExists(offsetFile.toPath());
+			offset = 0;
+			return;
+		}
+		Files.write(offsetFile.toPath(), Long.toString(acknowledged).getBytes(StandardCharsets.US_ASCII));
+		offset = acknowledged;
+	}
+
+	/**
+	 * Remove the replayed start of the file
+	 * @param acknowledged The number of bytes replayed
+	 * @throws IOException Thrown if the file cannot be rewritten
+	 */
+	private void truncate(long acknowledged) throws IOException {
+		File rest = new File(file.getPath() + ".tmp");
+		try (InputStream in = new FileInputStream(file); OutputStream out = new FileOutputStream(rest)) {
+			long skipped = 0;
+			while (skipped < acknowledged) {
+				skipped += in.skip(acknowledged - skipped);
+			}
+			byte[] buffer = new byte[65536];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+			}
+		}
+		Files.move(rest.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+}
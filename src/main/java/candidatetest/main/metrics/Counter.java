@@ -0,0 +1,55 @@
+package candidatetest.main.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing counter.  Increments are striped across cells so that
+ * concurrent writers never contend on a single value
+ */
+public class Counter implements Metric {
+
+	/**
+	 * The striped count
+	 */
+	private final LongAdder count = new LongAdder();
+
+	/**
+	 * Increment the counter by one
+	 */
+	public void increment() {
+		count.increment();
+	}
+
+	/**
+	 * Increment the counter by the passed amount
+	 * @param amount The amount to add, which should not be negative
+	 */
+	public void increment(long amount) {
+		count.add(amount);
+	}
+
+	/**
+	 * Get the current value of the counter
+	 * @return The sum of all increments
+	 */
+	public long get() {
+		return count.sum();
+	}
+
+	/**
+	 * @see candidatetest.main.metrics.Metric#getType()
+	 */
+	@Override
+	public String getType() {
+		return "counter";
+	}
+
+	/**
+	 * @see candidatetest.main.metrics.Metric#writeSamples(java.lang.String, java.lang.String, java.lang.StringBuilder)
+	 */
+	@Override
+	public void writeSamples(String name, String labels, StringBuilder output) {
+		MetricsRegistry.writeSample(output, name, labels, null, count.sum());
+	}
+
+}
@@ -0,0 +1,47 @@
+package candidatetest.main.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * A gauge whose value is read from a supplier each time the metrics are scraped
+ */
+public class Gauge implements Metric {
+
+	/**
+	 * The supplier of the current value
+	 */
+	private final DoubleSupplier supplier;
+
+	/**
+	 * Construct a new gauge
+	 * @param supplier The supplier of the current value, which must be thread safe
+	 */
+	public Gauge(DoubleSupplier supplier) {
+		this.supplier = supplier;
+	}
+
+	/**
+	 * Get the current value of the gauge
+	 * @return The value returned by the supplier
+	 */
+	public double get() {
+		return supplier.getAsDouble();
+	}
+
+	/**
+	 * @see candidatetest.main.metrics.Metric#getType()
+	 */
+	@Override
+	public String getType() {
+		return "gauge";
+	}
+
+	/**
+	 * @see candidatetest.main.metrics.Metric#writeSamples(java.lang.String, java.lang.String, java.lang.StringBuilder)
+	 */
+	@Override
+	public void writeSamples(String name, String labels, StringBuilder output) {
+		MetricsRegistry.writeSample(output, name, labels, null, supplier.getAsDouble());
+	}
+
+}
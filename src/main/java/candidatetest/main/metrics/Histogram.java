@@ -0,0 +1,108 @@
+package candidatetest.main.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.ConcurrentHistogram;
+
+/**
+ * A distribution of recorded values backed by an HDR histogram.  Recording is wait-free so
+ * the histogram can be used on hot paths without becoming a contention point, and values are
+ * exported as a Prometheus summary with a fixed set of quantiles.  A summary may not carry a maximum,
+ * so the registry exports {@link #getMax()} as a separate gauge
+ */
+public class Histogram implements Metric {
+
+	/**
+	 * The quantiles exported for every histogram
+	 */
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	/**
+	 * The underlying HDR histogram, auto-resizing so that outliers are never lost
+	 */
+	private final ConcurrentHistogram histogram;
+	/**
+	 * The exact sum of all recorded values, HDR histograms only hold approximations
+	 */
+	private final LongAdder sum = new LongAdder();
+	/**
+	 * The factor applied to recorded values on export, e.g. {@code 1e-9} to export nanoseconds as seconds
+	 */
+	private final double scale;
+
+	/**
+	 * Construct a new histogram
+	 * @param significantDigits The number of significant decimal digits to which values are resolved
+	 * @param scale The factor applied to recorded values on export
+	 */
+	public Histogram(int significantDigits, double scale) {
+		this.histogram = new ConcurrentHistogram(significantDigits);
+		this.scale = scale;
+	}
+
+	/**
+	 * Record a single value.  Negative values are recorded as zero
+	 * @param value The value to record in the unit of the histogram
+	 */
+	public void record(long value) {
+		long v = value < 0 ? 0 : value;
+		histogram.recordValue(v);
+		sum.add(v);
+	}
+
+	/**
+	 * Record the time elapsed since the passed start time
+	 * @param startNanos A start time obtained from {@link System#nanoTime()}
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Get the exact sum of the recorded values
+	 * @return The sum in the unit of the histogram
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Get the largest recorded value
+	 * @return The largest value scaled for export, or 0 if nothing has been recorded
+	 */
+	public double getMax() {
+		return histogram.getMaxValue() * scale;
+	}
+
+	/**
+	 * Take a consistent copy of the recorded values
+	 * @return A copy of the histogram which can be queried without affecting recording
+	 */
+	public AbstractHistogram snapshot() {
+		return histogram.copy();
+	}
+
+	/**
+	 * @see candidatetest.main.metrics.Metric#getType()
+	 */
+	@Override
+	public String getType() {
+		return "summary";
+	}
+
+	/**
+	 * @see candidatetest.main.metrics.Metric#writeSamples(java.lang.String, java.lang.String, java.lang.StringBuilder)
+	 */
+	@Override
+	public void writeSamples(String name, String labels, StringBuilder output) {
+		AbstractHistogram copy = histogram.copy();
+		for (double quantile : QUANTILES) {
+			double value = copy.getTotalCount() == 0 ? Double.NaN : copy.getValueAtPercentile(quantile * 100) * scale;
+			MetricsRegistry.writeSample(output, name, labels, "quantile=\"" + quantile + "\"", value);
+		}
+		MetricsRegistry.writeSample(output, name + "_sum", labels, null, sum.sum() * scale);
+		MetricsRegistry.writeSample(output, name + "_count", labels, null, copy.getTotalCount());
+	}
+
+}
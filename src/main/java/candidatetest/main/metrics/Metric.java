@@ -0,0 +1,22 @@
+package candidatetest.main.metrics;
+
+/**
+ * A single labelled metric which can be rendered in the Prometheus text exposition format
+ */
+public interface Metric {
+
+	/**
+	 * The Prometheus type of the metric, used for the {@code # TYPE} line of its family
+	 * @return One of {@code counter}, {@code gauge} or {@code summary}
+	 */
+	String getType();
+
+	/**
+	 * Append the sample lines of this metric to the passed output
+	 * @param name The family name of the metric
+	 * @param labels The rendered label pairs without braces, may be empty
+	 * @param output The output to append the samples to
+	 */
+	void writeSamples(String name, String labels, StringBuilder output);
+
+}
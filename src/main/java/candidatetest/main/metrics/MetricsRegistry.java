@@ -0,0 +1,205 @@
+package candidatetest.main.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A registry of named, labelled metrics.  Callers should look up their metrics once and keep the
+ * returned instance, recording against it directly on hot paths; the registry itself is only
+ * consulted on registration and when the metrics are rendered
+ */
+public class MetricsRegistry {
+
+	/**
+	 * Scale for histograms recording nanoseconds but exported in seconds
+	 */
+	public static final double NANOS_TO_SECONDS = 1e-9;
+
+	/**
+	 * The registered metric families, keyed by family name
+	 */
+	private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<String, Family>();
+
+	/**
+	 * A group of metrics sharing a name, help text and type, distinguished by their labels
+	 */
+	private static class Family {
+		/** The help text of the family */
+		private final String help;
+		/** The metrics keyed by their rendered labels */
+		private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+
+		/**
+		 * Construct a new family
+		 * @param help The help text of the family
+		 */
+		private Family(String help) {
+			this.help = help;
+		}
+	}
+
+	/**
+	 * Get or create a counter
+	 * @param name The metric name
+	 * @param help A description of the metric
+	 * @param labels Alternating label names and values
+	 * @return The counter registered under the passed name and labels
+	 */
+	public Counter counter(String name, String help, String... labels) {
+		return register(name, help, labels, Counter.class, Counter::new);
+	}
+
+	/**
+	 * Get or create a histogram of durations recorded in nanoseconds and exported in seconds
+	 * @param name The metric name, which should end in {@code _seconds}
+	 * @param help A description of the metric
+	 * @param labels Alternating label names and values
+	 * @return The histogram registered under the passed name and labels
+	 */
+	public Histogram timer(String name, String help, String... labels) {
+		return histogram(name, help, labels, NANOS_TO_SECONDS);
+	}
+
+	/**
+	 * Get or create a histogram of unit-less values such as batch sizes
+	 * @param name The metric name
+	 * @param help A description of the metric
+	 * @param labels Alternating label names and values
+	 * @return The histogram registered under the passed name and labels
+	 */
+	public Histogram distribution(String name, String help, String... labels) {
+		return histogram(name, help, labels, 1);
+	}
+
+	/**
+	 * Get or create a histogram, registering a {@code <name>_max} gauge of its largest value when it is created
+	 * @param name The metric name
+	 * @param help A description of the metric
+	 * @param labels Alternating label names and values
+	 * @param scale The factor applied to recorded values on export
+	 * @return The histogram registered under the passed name and labels
+	 */
+	private Histogram histogram(String name, String help, String[] labels, double scale) {
+		return register(name, help, labels, Histogram.class, () -> {
+			Histogram histogram = new Histogram(2, scale);
+			gauge(name + "_max", "The largest value recorded in " + name, histogram::getMax, labels);
+			return histogram;
+		});
+	}
+
+	/**
+	 * Register a gauge, replacing any gauge already registered under the same name and labels
+	 * @param name The metric name
+	 * @param help A description of the metric
+	 * @param supplier The thread safe supplier of the gauge value
+	 * @param labels Alternating label names and values
+	 * @return The registered gauge
+	 */
+	public Gauge gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+		Gauge gauge = new Gauge(supplier);
+		family(name, help).metrics.put(renderLabels(labels), gauge);
+		return gauge;
+	}
+
+	/**
+	 * Render all registered metrics in the Prometheus text exposition format (version 0.0.4)
+	 * @return The rendered metrics
+	 */
+	public String scrape() {
+		StringBuilder output = new StringBuilder(4096);
+		for (Map.Entry<String, Family> entry : new TreeMap<String, Family>(families).entrySet()) {
+			Family family = entry.getValue();
+			Map<String, Metric> metrics = new TreeMap<String, Metric>(family.metrics);
+			if (metrics.isEmpty()) {
+				continue;
+			}
+			output.append("# HELP ").append(entry.getKey()).append(' ').append(family.help).append('\n');
+			output.append("# TYPE ").append(entry.getKey()).append(' ').append(metrics.values().iterator().next().getType()).append('\n');
+			for (Map.Entry<String, Metric> metric : metrics.entrySet()) {
+				metric.getValue().writeSamples(entry.getKey(), metric.getKey(), output);
+			}
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Get or create a metric of the passed type
+	 * @param name The metric name
+	 * @param help A description of the metric
+	 * @param labels Alternating label names and values
+	 * @param type The expected class of the metric
+	 * @param constructor Creates the metric if it is not yet registered
+	 * @return The metric registered under the passed name and labels
+	 */
+	private <M extends Metric> M register(String name, String help, String[] labels, Class<M> type, Supplier<M> constructor) {
+		Metric metric = family(name, help).metrics.computeIfAbsent(renderLabels(labels), key -> constructor.get());
+		if (!type.isInstance(metric)) {
+			throw new IllegalArgumentException("Metric " + name + " is already registered as a " + metric.getType());
+		}
+		return type.cast(metric);
+	}
+
+	/**
+	 * Get or create the family for the passed name
+	 * @param name The metric name
+	 * @param help A description of the metric
+	 * @return The family registered under the passed name
+	 */
+	private Family family(String name, String help) {
+		return families.computeIfAbsent(name, key -> new Family(help));
+	}
+
+	/**
+	 * Render alternating label names and values as Prometheus label pairs
+	 * @param labels Alternating label names and values
+	 * @return The comma separated label pairs without braces
+	 */
+	private static String renderLabels(String[] labels) {
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException("Labels must be passed as name/value pairs");
+		}
+		StringBuilder rendered = new StringBuilder();
+		for (int i = 0; i < labels.length; i += 2) {
+			if (i > 0) {
+				rendered.append(',');
+			}
+			rendered.append(labels[i]).append("=\"")
+				.append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+				.append('"');
+		}
+		return rendered.toString();
+	}
+
+	/**
+	 * Append a single sample line
+	 * @param output The output to append to
+	 * @param name The sample name
+	 * @param labels The rendered labels of the metric, may be empty
+	 * @param extraLabel An additional rendered label pair such as a quantile, may be null
+	 * @param value The sample value
+	 */
+	static void writeSample(StringBuilder output, String name, String labels, String extraLabel, double value) {
+		output.append(name);
+		if (!labels.isEmpty() || extraLabel != null) {
+			output.append('{').append(labels);
+			if (extraLabel != null) {
+				output.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+			}
+			output.append('}');
+		}
+		output.append(' ');
+		if (Double.isNaN(value)) {
+			output.append("NaN");
+		} else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			output.append((long) value);
+		} else {
+			output.append(value);
+		}
+		output.append('\n');
+	}
+
+}
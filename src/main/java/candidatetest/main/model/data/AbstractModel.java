@@ -2,6 +2,8 @@ package candidatetest.main.model.data;
 
 import javax.xml.bind.annotation.XmlElement;
 
+import candidatetest.main.repository.FieldMapping;
+
 /**
  * Base model to enable the Elastic Repository to generate a generic repository
  */
@@ -17,6 +19,29 @@ public abstract class AbstractModel {
 	 * deleted will not show up in the queries performed by the ElasticRepository
 	 */
 	private Boolean deleted;
+
+	/**
+	 * The time the model was marked as deleted in milliseconds since the epoch, set by the repository.
+	 * Deleted models are purged once this is older than the retention period
+	 */
+	private Long deletedAt;
+
+	/**
+	 * The time the model was last written in milliseconds since the epoch, set by the repository
+	 */
+	private Long modifiedAt;
+
+	/**
+	 * The change sequence of the last write, set by the repository.  Sequences increase with every
+	 * write through a repository and order the change feed
+	 */
+	private Long sequence;
+
+	/**
+	 * The version of the stored document when the model was read, used for conditional writes.
+	 * This is metadata of the document rather than a stored field
+	 */
+	private Long version;
 	
 	/**
 	 * Force deleted to false by default
@@ -39,6 +64,44 @@ public abstract class AbstractModel {
 	 */
 	public void setId(String id) { this.id = id; }
 	
+	/**
+	 * Get the time the model was last written, set by the repository
+	 * @return The time in milliseconds since the epoch, or null if the model has not been written
+	 */
+	@FieldMapping(type = "date")
+	public Long getModifiedAt() { return modifiedAt; }
+
+	/**
+	 * Set the time the model was last written
+	 * @param modifiedAt The time in milliseconds since the epoch
+	 */
+	public void setModifiedAt(Long modifiedAt) { this.modifiedAt = modifiedAt; }
+
+	/**
+	 * Get the change sequence of the last write, set by the repository
+	 * @return The change sequence, or null if the model has not been written
+	 */
+	public Long getSequence() { return sequence; }
+
+	/**
+	 * Set the change sequence of the last write
+	 * @param sequence The change sequence
+	 */
+	public void setSequence(Long sequence) { this.sequence = sequence; }
+
+	/**
+	 * Get the version of the stored document when the model was read
+	 * @return The document version, or null if the model was not read from the data store
+	 */
+	@XmlElement(nillable=true)
+	public Long getVersion() { return version; }
+
+	/**
+	 * Set the version of the stored document when the model was read
+	 * @param version The document version
+	 */
+	public void setVersion(Long version) { this.version = version; }
+	
 	/**
 	 * Marks an outlet as deleted, handled automatically in the row filter, any model marked as
 	 * deleted will not show up in the queries performed by the ElasticRepository
@@ -56,5 +119,22 @@ public abstract class AbstractModel {
 	public void setDeleted(boolean deleted) {
 		this.deleted = deleted;
 	}
+
+	/**
+	 * Get the time the model was marked as deleted, set by the repository
+	 * @return The time in milliseconds since the epoch, or null if the model is not deleted
+	 */
+	@FieldMapping(type = "date")
+	public Long getDeletedAt() {
+		return deletedAt;
+	}
+
+	/**
+	 * Set the time the model was marked as deleted
+	 * @param deletedAt The time in milliseconds since the epoch
+	 */
+	public void setDeletedAt(Long deletedAt) {
+		this.deletedAt = deletedAt;
+	}
 		
 }
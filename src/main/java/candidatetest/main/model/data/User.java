@@ -1,7 +1,6 @@
 package candidatetest.main.model.data;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -10,7 +9,6 @@ import javax.xml.bind.annotation.XmlRootElement;
 
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 import com.fasterxml.jackson.core.JsonParseException;
@@ -18,6 +16,10 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import candidatetest.main.repository.FieldMapping;
+import candidatetest.main.repository.MultiField;
+import candidatetest.main.security.Roles;
+
 /**
  * The user model representing a user of this API
  */
@@ -37,6 +39,37 @@ public class User extends AbstractModel {
 	 * The roles for this user.  These roles are prefixed with "ROLE_" and granted as authorities 
 	 */
 	private String[] roles;
+
+	/**
+	 * An immutable role mask of a roles array
+	 */
+	private static final class RoleMask {
+
+		/**
+		 * The mask of the roles
+		 */
+		private final long mask;
+		/**
+		 * The normalised names of the roles left out of the mask because the registry was full
+		 */
+		private final String[] unregistered;
+
+		/**
+		 * Compute the mask of a roles array
+		 * @param roles The roles
+		 */
+		private RoleMask(String[] roles) {
+			this.mask = Roles.mask(roles);
+			this.unregistered = Roles.unregistered(roles);
+		}
+
+	}
+
+	/**
+	 * The mask of the current roles, computed by {@link #setRoles(String[])} or on first use when the roles
+	 * field was set directly
+	 */
+	private transient volatile RoleMask roleMask;
 	
 	/**
 	 * The factory for creating new empty instances of this model
@@ -88,18 +121,23 @@ public class User extends AbstractModel {
 			if (this.roles != null) {
 				String[] newRoles = Arrays.copyOf(this.roles, this.roles.length + 1);
 				newRoles[this.roles.length] = "USER";
-				this.roles = newRoles;
+				this.setRoles(newRoles);
 			} else {
-				this.roles = new String[] { "USER" };
+				this.setRoles(new String[] { "USER" });
 			}
 		}
 	}
 
 	/**
-	 * Get the user readable name of the user
+	 * Get the user readable name of the user.  It is searchable as text, sortable through {@code fullName.raw}
+	 * and searchable by word prefix for typeahead through {@code fullName.suggest}
 	 * @return The user readable name of the user
 	 */
 	@XmlElement
+	@FieldMapping(type = "text", fields = {
+		@MultiField(name = "raw", type = "keyword"),
+		@MultiField(name = "suggest", type = "text", analyzer = "autocomplete", searchAnalyzer = "autocomplete_search")
+	})
 	public String getFullName() { 
 		return fullName; 
 	}
@@ -112,10 +150,11 @@ public class User extends AbstractModel {
 	}
 
 	/**
-	 * Get the encrypted password
+	 * Get the encrypted password.  It is only ever read by id, so it is neither indexed nor kept in doc values
 	 * @return The encrypted user password
 	 */
 	@XmlElement
+	@FieldMapping(index = false, docValues = false)
 	public String getPassword() { 
 		return password; 
 	}
@@ -135,11 +174,13 @@ public class User extends AbstractModel {
 		return roles; 
 	}
 	/** 
-	 * Set the roles for controlling user access to API areas
+	 * Set the roles for controlling user access to API areas.  The role mask is computed from the array
+	 * here, so an array changed in place must be set again
 	 * @param roles The roles for controlling user access to API areas
 	 */
 	public void setRoles(String[] roles) { 
 		this.roles = roles; 
+		this.roleMask = new RoleMask(roles);
 	}
 	
 	/**
@@ -148,11 +189,31 @@ public class User extends AbstractModel {
 	 * @return A list of {@link org.springframework.security.core.GrantedAuthority} objects based on this users roles
 	 */
 	public List<GrantedAuthority> listAuthorities() {
-		ArrayList<GrantedAuthority> auths = new ArrayList<GrantedAuthority>();
-    	for (String role : this.getRoles()) {
-    		auths.add(new SimpleGrantedAuthority("ROLE_" + role.toUpperCase()));        		
-    	}	
-    	return auths;
+		RoleMask current = currentRoleMask();
+		return Roles.authorities(current.mask, current.unregistered);
+	}
+
+	/**
+	 * Get the mask of this user's roles in the {@link Roles} registry.  Roles left unregistered because the
+	 * registry was full are not in the mask
+	 * @return The role mask
+	 */
+	public long roleMask() {
+		return currentRoleMask().mask;
+	}
+
+	/**
+	 * Get the mask of the current roles.  A user read from the data store has its roles field set directly,
+	 * so the mask is computed on first use
+	 * @return The role mask
+	 */
+	private RoleMask currentRoleMask() {
+		RoleMask current = roleMask;
+		if (current == null) {
+			current = new RoleMask(roles);
+			roleMask = current;
+		}
+		return current;
 	}
 	
 	/**
@@ -161,13 +222,14 @@ public class User extends AbstractModel {
 	 * @return {@code True} if the user has the passed role
 	 */
 	public Boolean hasRole(String role) {
-		Boolean flag = false;
 		if (roles != null) {
 			for (String r : roles) {
-				flag = flag || r.equalsIgnoreCase(role);
+				if (r.equalsIgnoreCase(role)) {
+					return true;
+				}
 			}
 		}
-		return flag;
+		return false;
 	}
 	
 	/**
@@ -176,13 +238,15 @@ public class User extends AbstractModel {
 	 * @return {@code True} if the user has the passed role
 	 */
 	public Boolean hasAnyRole(String... roles) {
-		Boolean flag = false;
-		if (roles != null) {
+		if (roles != null && this.roles != null) {
+			List<String> own = Arrays.asList(this.roles);
 			for (String r : roles) {
-				flag = flag || Arrays.asList(this.getRoles()).contains(r);
+				if (own.contains(r)) {
+					return true;
+				}
 			}
 		}
-		return flag;
+		return false;
 	}
 		
 	/**
@@ -0,0 +1,188 @@
+package candidatetest.main.repository;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.common.settings.Settings;
+
+import candidatetest.main.model.data.AbstractModel;
+
+/**
+ * A large import into a repository index.  While the session is open the index is not refreshed and
+ * has no replicas, so ElasticSearch spends its effort indexing.  Closing the session waits for the
+ * outstanding writes, restores the index settings, refreshes and optionally force-merges the index.
+ * Sessions should be used with try-with-resources so the settings are restored if the import fails
+ * @param <T> The type of model being imported
+ */
+public class BulkLoadSession<T extends AbstractModel> implements AutoCloseable {
+
+	/**
+	 * The maximum number of bulk requests in flight at once, to keep the bulk queue from rejecting requests
+	 */
+	private static final int MAX_IN_FLIGHT = 4;
+
+	/**
+	 * The repository being imported into
+	 */
+	private final ElasticRepositoryImpl<T> repository;
+	/**
+	 * The real index being imported into, which stays the same if the alias moves
+	 */
+	private final String index;
+	/**
+	 * The index settings in place before the session started
+	 */
+	private final Settings restore;
+	/**
+	 * Whether to merge the index down to a single segment when the session ends
+	 */
+	private final boolean forceMerge;
+	/**
+	 * The repository's change feed hold, which keeps the feed behind the unrefreshed documents until the session ends
+	 */
+	private final long changeHold;
+	/**
+	 * Permits for bulk requests in flight
+	 */
+	private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+	/**
+	 * Whether the session has ended
+	 */
+	private final AtomicBoolean closed = new AtomicBoolean();
+	/**
+	 * The number of documents indexed
+	 */
+	private final LongAdder indexed = new LongAdder();
+	/**
+	 * The number of documents rejected by ElasticSearch
+	 */
+	private final LongAdder failed = new LongAdder();
+	/**
+	 * The time the session started in nanoseconds
+	 */
+	private final long start = System.nanoTime();
+	/**
+	 * The duration of the session in milliseconds, set when it ends
+	 */
+	private volatile long tookMillis = -1;
+
+	/**
+	 * Start a session.  The repository has already suspended refresh and replication
+	 * @param repository The repository being imported into
+	 * @param index The real index being imported into
+	 * @param restore The index settings to restore when the session ends
+	 * @param forceMerge Whether to merge the index down to a single segment when the session ends
+	 * @param changeHold The repository's change feed hold, released when the session ends
+	 */
+	BulkLoadSession(ElasticRepositoryImpl<T> repository, String index, Settings restore, boolean forceMerge, long changeHold) {
+		this.repository = repository;
+		this.index = index;
+		this.restore = restore;
+		this.forceMerge = forceMerge;
+		this.changeHold = changeHold;
+	}
+
+	/**
+	 * Get the repository's change feed hold
+	 * @return The hold, released when the session ends
+	 */
+	long getChangeHold() {
+		return changeHold;
+	}
+
+	/**
+	 * Index the passed entities, blocking while too many earlier batches are still being written.  A
+	 * batch sent as a pipeline of requests counts the documents of each request separately, so one
+	 * failed request does not count the whole batch as failed
+	 * @param entities The entities to index
+	 * @throws InterruptedException Thrown if interrupted while waiting for an earlier batch
+	 * @throws IllegalStateException The session has ended
+	 */
+	public void createMany(List<T> entities) throws InterruptedException {
+		if (closed.get()) {
+			throw new IllegalStateException("The bulk-load session has ended");
+		}
+		if (entities == null || entities.isEmpty()) {
+			return;
+		}
+		final int size = entities.size();
+		inFlight.acquire();
+		try {
+			repository.createMany(index, entities, new ActionListener<BulkResponse>() {
+				@Override
+				public void onResponse(BulkResponse response) {
+					int failures = 0;
+					if (response.hasFailures()) {
+						for (BulkItemResponse item : response.getItems()) {
+							if (item.isFailed()) {
+								failures++;
+							}
+						}
+					}
+					failed.add(failures);
+					indexed.add(size - failures);
+					inFlight.release();
+				}
+
+				@Override
+				public void onFailure(Exception e) {
+					failed.add(size);
+					inFlight.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			inFlight.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Wait for the outstanding writes and restore the index settings.  The settings are restored
+	 * even if waiting is interrupted.  Closing an ended session does nothing
+	 */
+	@Override
+	public void close() {
+		if (!closed.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			inFlight.acquireUninterruptibly(MAX_IN_FLIGHT);
+		} finally {
+			try {
+				repository.endBulkLoad(index, restore, forceMerge, changeHold);
+			} finally {
+				tookMillis = (System.nanoTime() - start) / 1000000;
+			}
+		}
+	}
+
+	/**
+	 * Get the number of documents indexed so far
+	 * @return The number of documents acknowledged by ElasticSearch
+	 */
+	public long getIndexed() {
+		return indexed.sum();
+	}
+
+	/**
+	 * Get the number of documents rejected so far
+	 * @return The number of documents ElasticSearch failed to index
+	 */
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	/**
+	 * Get how long the session ran
+	 * @return The duration in milliseconds including restoring the settings, or -1 while the session is open
+	 */
+	public long getTookMillis() {
+		return tookMillis;
+	}
+
+}
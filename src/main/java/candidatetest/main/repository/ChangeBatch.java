@@ -0,0 +1,107 @@
+package candidatetest.main.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import candidatetest.main.model.data.AbstractModel;
+
+/**
+ * A page of the change feed of a repository: the entities written since a cursor, in the order
+ * they were written, and the cursor from which to read the next page
+ * @param <T> The type of model changed
+ */
+public class ChangeBatch<T extends AbstractModel> {
+
+	/**
+	 * The changed entities, including soft-deleted ones
+	 */
+	private final List<T> changes;
+	/**
+	 * The cursor after the last change
+	 */
+	private final String cursor;
+	/**
+	 * Whether more changes were already available when the page was read
+	 */
+	private final boolean more;
+
+	/**
+	 * Construct a page of changes
+	 * @param changes The changed entities in the order they were written
+	 * @param cursor The cursor after the last change
+	 * @param more Whether the page was full, so more changes may be waiting
+	 */
+	public ChangeBatch(List<T> changes, String cursor, boolean more) {
+		this.changes = changes;
+		this.cursor = cursor;
+		this.more = more;
+	}
+
+	/**
+	 * Get the changed entities.  Soft-deleted entities are included with {@code deleted} set so that
+	 * consumers can remove them
+	 * @return The changed entities in the order they were written
+	 */
+	public List<T> getChanges() {
+		return changes;
+	}
+
+	/**
+	 * Get the cursor from which to read the next page
+	 * @return The opaque cursor, or the requested cursor if there were no changes
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * Get whether the page was full
+	 * @return {@code true} if the next page should be read straight away
+	 */
+	public boolean isMore() {
+		return more;
+	}
+
+	/**
+	 * Get the change sequence a cursor points after
+	 * @param cursor The cursor
+	 * @return The change sequence, or {@link Long#MIN_VALUE} for no cursor or a document written before writes were stamped
+	 */
+	public static long cursorSequence(String cursor) {
+		if (cursor == null || cursor.isEmpty()) {
+			return Long.MIN_VALUE;
+		}
+		return (Long) decodeCursor(cursor)[0];
+	}
+
+	/**
+	 * Encode the sort values of the last change of a page as an opaque cursor
+	 * @param sortValues The sequence and uid of the change
+	 * @return The cursor
+	 */
+	static String encodeCursor(Object[] sortValues) {
+		String value = ((Number) sortValues[0]).longValue() + ":" + sortValues[1];
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decode a cursor into the sort values to search after
+	 * @param cursor The cursor
+	 * @return The sequence and uid of the last change read
+	 * @throws IllegalArgumentException the cursor is not one returned by the change feed
+	 */
+	static Object[] decodeCursor(String cursor) {
+		String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		int separator = value.indexOf(':');
+		if (separator < 0) {
+			throw new IllegalArgumentException("Invalid change cursor");
+		}
+		try {
+			return new Object[] { Long.parseLong(value.substring(0, separator)), value.substring(separator + 1) };
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid change cursor", e);
+		}
+	}
+
+}
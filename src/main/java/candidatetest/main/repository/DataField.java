@@ -44,6 +44,10 @@ public class DataField {
 	 * The method to set the value
 	 */
 	private String setterFunction;
+	/**
+	 * The mapping options declared on the getter, or null for the defaults
+	 */
+	private FieldMapping mapping;
 	
 	/**
 	 * Construct a new field with 
@@ -59,6 +63,7 @@ public class DataField {
 		this.isArray = javaType.endsWith("[]");
 		this.getter = getter;
 		this.setterFunction = setterFunction;
+		this.mapping = getter == null ? null : getter.getAnnotation(FieldMapping.class);
 		if (this.isArray) {
 			javaType = javaType.substring(0, javaType.length() - 2);
 			this.fieldClass = this.fieldClass.getComponentType();
@@ -152,6 +157,14 @@ public class DataField {
 		this.fieldClass = fieldClass;
 	}
 
+	/**
+	 * Get the mapping options declared on the getter
+	 * @return The mapping options, or null if the field uses the defaults
+	 */
+	public FieldMapping getMapping() {
+		return mapping;
+	}
+
 	/**
 	 * Indicates that the field is writable
 	 * @return a boolean value indicating that the field is writable
@@ -291,7 +304,8 @@ public class DataField {
 	private static void loadField(ArrayList<DataField> fields, String name, Method getter, String setterFunction) {
 		if (getter != null) {
 			DataField field = new DataField(name, getter.getReturnType(), getter, setterFunction);
-			if (!field.getName().equals("id") && field.getType() != FieldType.UNKNOWN) {
+			// The id and version are document metadata rather than stored fields
+			if (!field.getName().equals("id") && !field.getName().equals("version") && field.getType() != FieldType.UNKNOWN) {
 				fields.add(field);
 			}
 		}
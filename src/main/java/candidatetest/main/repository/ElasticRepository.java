@@ -1,6 +1,8 @@
 package candidatetest.main.repository;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import candidatetest.main.model.data.AbstractModel;
 
@@ -28,4 +30,140 @@ public interface ElasticRepository<T extends AbstractModel> {
 	 */
 	T findOne(String id);
 
+	/**
+	 * Convert the passed entity to its source map and back without calling ElasticSearch, exercising
+	 * the mapping used by every read and write so that it is compiled before traffic arrives
+	 * @param entity A representative entity
+	 * @return A copy of the entity read back from its source map
+	 */
+	T roundTrip(T entity);
+
+	/**
+	 * Soft-delete the entity with the passed id.  It is flagged as deleted, no longer returned by any
+	 * read, and purged once it has been deleted for longer than the retention period
+	 * @param id The id of the entity to delete
+	 * @return {@code true} if the entity existed
+	 */
+	boolean delete(String id);
+
+	/**
+	 * Set some fields of a stored entity without reading it first
+	 * @param id The id of the entity to change
+	 * @param fields The values to set keyed by model field name
+	 * @return {@code true} if the entity exists
+	 * @throws IllegalArgumentException a value is for a field the model does not have
+	 */
+	boolean updatePartial(String id, Map<String, Object> fields);
+
+	/**
+	 * Apply a partial update to a stored entity without reading it first
+	 * @param update The change to apply
+	 * @return The outcome of the update
+	 * @throws IllegalArgumentException a value is for a field the model does not have
+	 */
+	PartialUpdate.Result updatePartial(PartialUpdate update);
+
+	/**
+	 * Apply partial updates in a single bulk request.  Soft-deleted entities are updated like any other
+	 * @param updates The changes to apply
+	 * @return The outcome of each update, in the same order
+	 * @throws IllegalArgumentException a value is for a field the model does not have
+	 */
+	List<PartialUpdate.Result> updateMany(List<PartialUpdate> updates);
+
+	/**
+	 * Read the entities written since a cursor, in the order they were written.  Each write is stamped
+	 * with a change sequence, so the cost is proportional to the amount of change.  Changes are only
+	 * returned once they are below {@link #settledSequence()}, so none is skipped while it becomes searchable.
+	 * An entity written again after it was read appears again later in the feed
+	 * @param cursor The cursor returned with the previous page, or null to start from the beginning
+	 * @param limit The maximum number of changes to return
+	 * @return The changes and the cursor from which to continue
+	 * @throws IllegalArgumentException the cursor is not one returned by the change feed
+	 */
+	ChangeBatch<T> changesSince(String cursor, int limit);
+
+	/**
+	 * Find entities whose field has words starting with each of the words typed so far, for typeahead.
+	 * The field needs a {@code suggest} multi-field using the autocomplete analyzers
+	 * @param field The model field name, e.g. {@code fullName}
+	 * @param prefix The text typed so far
+	 * @param limit The maximum number of entities to return
+	 * @return The best matching entities with only their id and the field populated
+	 */
+	List<T> suggest(String field, String prefix, int limit);
+
+	/**
+	 * Compute statistics of the live entities in one query, along with the live and soft-deleted counts.
+	 * Repeated requests are answered from the shard request cache until the index next refreshes
+	 * @param statistics The statistics to compute
+	 * @return The statistics
+	 * @throws IllegalArgumentException a field does not exist, or is not mapped in a way that can be aggregated
+	 */
+	Statistics statistics(List<Statistic> statistics);
+
+	/**
+	 * Get the change sequence below which every write has settled, so the change feed can return it.  This
+	 * lags the clock by the settle time, and stays below each write through this repository still in flight,
+	 * including the whole of an open bulk-load session, until it has completed and settled
+	 * @return The exclusive upper bound of the change sequences the feed returns
+	 */
+	long settledSequence();
+
+	/**
+	 * Get the change sequence of the most recent write, settled or not.  Cheaper than reading changes,
+	 * for checking whether there is anything to read
+	 * @return The change sequence, or {@link Long#MIN_VALUE} if nothing has been written
+	 */
+	long latestSequence();
+
+	/**
+	 * Permanently remove entities soft-deleted more than the retention period ago.  The removal is
+	 * throttled so it does not compete with live traffic.  Nothing is removed while a reindex is running,
+	 * since the copy would keep the documents in the new index, and no reindex may start during a purge
+	 * @param retentionMillis How long soft-deleted entities are kept in milliseconds
+	 * @param requestsPerSecond The maximum number of documents removed per second
+	 * @return The number of entities removed
+	 */
+	long purgeDeleted(long retentionMillis, float requestsPerSecond);
+
+	/**
+	 * Get the name of the index in which this repository stores its documents
+	 * @return The index name
+	 */
+	String getIndex();
+
+	/**
+	 * Get the name of the mapping type this repository stores its documents under
+	 * @return The mapping type name
+	 */
+	String getType();
+
+	/**
+	 * Start a large import.  Refresh and replication of the index are suspended until the session is closed
+	 * @param forceMerge Whether to merge the index down to a single segment when the session is closed
+	 * @return The session through which to import the entities
+	 * @throws IllegalStateException a bulk load or reindex of this repository is already running
+	 */
+	BulkLoadSession<T> beginBulkLoad(boolean forceMerge);
+
+	/**
+	 * Copy every document into a new version of the index and atomically repoint the alias at it.
+	 * Documents written through this repository while the copy runs are written to both indices, and the
+	 * copy waits for the writes already in flight and refreshes the old index so it sees them.  A new
+	 * index left by an earlier reindex which failed is deleted first, and one whose copy fails is deleted
+	 * @param slices The number of slices to copy in parallel, or zero for one per shard
+	 * @param deleteOld Whether to delete the previous index once the alias has moved
+	 * @return The report of the reindex, completed once the alias has moved or the copy has failed
+	 * @throws IllegalStateException a reindex, bulk load or purge of this repository is already running
+	 * @throws org.elasticsearch.index.IndexNotFoundException the alias does not point to an index
+	 */
+	CompletableFuture<ReindexReport> reindex(int slices, boolean deleteOld);
+
+	/**
+	 * Get the report of the most recent reindex of this repository
+	 * @return The report, or null if this repository has not been reindexed since it started
+	 */
+	ReindexReport getReindexReport();
+
 }
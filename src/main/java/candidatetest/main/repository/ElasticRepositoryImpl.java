@@ -2,22 +2,72 @@ package candidatetest.main.repository;
 
 import java.beans.IntrospectionException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesResponse;
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsResponse;
 import org.elasticsearch.action.admin.indices.mapping.get.GetMappingsResponse;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequestBuilder;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.bulk.byscroll.BulkByScrollResponse;
+import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.update.UpdateRequestBuilder;
+import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.UUIDs;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.IndexNotFoundException;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.reindex.DeleteByQueryAction;
+import org.elasticsearch.index.reindex.ReindexAction;
+import org.elasticsearch.index.reindex.ReindexRequestBuilder;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.index.mapper.UidFieldMapper;
+import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
+import org.elasticsearch.search.aggregations.bucket.filter.Filter;
+import org.elasticsearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.metrics.cardinality.Cardinality;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.beans.PropertyAccessor;
 import org.springframework.beans.PropertyAccessorFactory;
 import org.springframework.core.GenericTypeResolver;
@@ -25,20 +75,210 @@ import org.springframework.core.GenericTypeResolver;
 import com.carrotsearch.hppc.ObjectLookupContainer;
 import com.carrotsearch.hppc.cursors.ObjectCursor;
 
+import candidatetest.main.metrics.Counter;
+import candidatetest.main.metrics.Histogram;
+import candidatetest.main.metrics.MetricsRegistry;
 import candidatetest.main.model.data.AbstractModel;
 import candidatetest.main.model.data.ModelFactory;
 import candidatetest.main.repository.DataField.FieldType;
+import candidatetest.main.trace.Trace;
 
 /**
  * Generic repository for storing and accessing a Java model in ElasticSearch
  * @param <T> The type of model being accessed.  This type should inherit from {@link candidatetest.main.model.data.AbstractModel}
  */
 public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRepository<T> {
+
+	/**
+	 * Logger for index lifecycle events
+	 */
+	private static final Logger logger = LogManager.getLogger(ElasticRepositoryImpl.class);
+
+	/**
+	 * Separates the alias from the version in the name of a real index
+	 */
+	private static final String VERSION_SEPARATOR = "-v";
+
+	/**
+	 * The index setting controlling how often new documents become searchable
+	 */
+	private static final String REFRESH_INTERVAL = "index.refresh_interval";
+
+	/**
+	 * The refresh interval ElasticSearch uses when none is set
+	 */
+	private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+
+	/**
+	 * The index setting holding the number of replicas of each shard
+	 */
+	private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+
+	/**
+	 * The analyzer indexing every prefix of every word, for typeahead multi-fields
+	 */
+	public static final String AUTOCOMPLETE_ANALYZER = "autocomplete";
+
+	/**
+	 * The analyzer for typeahead queries, which matches whole words against the indexed prefixes
+	 */
+	public static final String AUTOCOMPLETE_SEARCH_ANALYZER = "autocomplete_search";
+
+	/**
+	 * The longest word prefix indexed by the autocomplete analyzer
+	 */
+	private static final int AUTOCOMPLETE_MAX_GRAM = 20;
+
+	/**
+	 * The name of the typeahead multi-field searched by {@link #suggest(String, String, int)}
+	 */
+	public static final String SUGGEST_FIELD = "suggest";
+
+	/**
+	 * The maximum number of bulk requests of a pipelined createMany in flight, and of chunks encoded ahead of them
+	 */
+	private static final int PIPELINE_MAX_IN_FLIGHT = 4;
+
+	/**
+	 * The name of the aggregation over the documents which are not soft-deleted
+	 */
+	private static final String LIVE = "live";
+
+	/**
+	 * The calendar intervals accepted by date histogram statistics
+	 */
+	private static final List<String> DATE_INTERVALS = Arrays.asList("minute", "hour", "day", "week", "month", "quarter", "year");
+
+	/**
+	 * The field flagging a soft-deleted document
+	 */
+	private static final String DELETED = "deleted";
+
+	/**
+	 * The field holding the time a document was soft-deleted
+	 */
+	private static final String DELETED_AT = "deletedAt";
+
+	/**
+	 * The field holding the time a document was last written
+	 */
+	private static final String MODIFIED_AT = "modifiedAt";
+
+	/**
+	 * The field holding the change sequence of the last write to a document
+	 */
+	private static final String SEQUENCE = "sequence";
+
+	/**
+	 * The default of how long a completed write is left to settle before the change feed returns it, in milliseconds
+	 */
+	private static final long DEFAULT_SETTLE_MILLIS = 2000;
+
+	/**
+	 * The longest a reindex waits for the writes in flight when it starts, in milliseconds
+	 */
+	private static final long DRAIN_MILLIS = 60000;
+
+	/**
+	 * The painless functions of the update scripts.  {@code _same} compares values deeply, treating numbers
+	 * as equal by value since a stored integer is read back as an Integer while a parameter may be a Long,
+	 * {@code _copy} deep-copies a document so that a script's changes can be detected, and {@code _merge}
+	 * merges a partial document the way a field update does, returning whether anything changed
+	 */
+	private static final String UPDATE_FUNCTIONS =
+		"boolean _same(def a, def b) {"
+		+ " if (a instanceof Number && b instanceof Number) {"
+		+ " if (a instanceof Double || a instanceof Float || b instanceof Double || b instanceof Float) { return ((Number) a).doubleValue() == ((Number) b).doubleValue() }"
+		+ " return ((Number) a).longValue() == ((Number) b).longValue()"
+		+ " }"
+		+ " if (a instanceof Map && b instanceof Map) {"
+		+ " if (a.size() != b.size()) { return false }"
+		+ " for (def e : a.entrySet()) { if (!b.containsKey(e.getKey()) || !_same(e.getValue(), b.get(e.getKey()))) { return false } }"
+		+ " return true"
+		+ " }"
+		+ " if (a instanceof List && b instanceof List) {"
+		+ " if (a.size() != b.size()) { return false }"
+		+ " for (int i = 0; i < a.size(); ++i) { if (!_same(a.get(i), b.get(i))) { return false } }"
+		+ " return true"
+		+ " }"
+		+ " return a == b"
+		+ " }\n"
+		+ "def _copy(def v) {"
+		+ " if (v instanceof Map) { Map c = new HashMap(); for (def e : v.entrySet()) { c.put(e.getKey(), _copy(e.getValue())) } return c }"
+		+ " if (v instanceof List) { List c = new ArrayList(); for (def x : v) { c.add(_copy(x)) } return c }"
+		+ " return v"
+		+ " }\n"
+		+ "boolean _merge(Map s, Map c) {"
+		+ " boolean changed = false;"
+		+ " for (def e : c.entrySet()) {"
+		+ " def old = s.get(e.getKey());"
+		+ " if (old instanceof Map && e.getValue() instanceof Map) { if (_merge(old, e.getValue())) { changed = true } }"
+		+ " else if (!s.containsKey(e.getKey()) || !_same(old, e.getValue())) { s.put(e.getKey(), e.getValue()); changed = true }"
+		+ " }"
+		+ " return changed"
+		+ " }\n";
+
+	/**
+	 * The painless statement ending every update script, which stamps a changed document and turns an update
+	 * which changed nothing into a no-op, so that it is reported as unchanged and does not appear in the change feed
+	 */
+	private static final String STAMP_IF_CHANGED =
+		"if (ctx.op != 'none' && ctx.op != 'delete') { if (_changed) { ctx._source.putAll(params._stamps) } else { ctx.op = 'none' } }";
+
+	/**
+	 * The painless script of a field update
+	 */
+	private static final String MERGE_SCRIPT = UPDATE_FUNCTIONS + "boolean _changed = _merge(ctx._source, params._doc);\n" + STAMP_IF_CHANGED;
+
+	/**
+	 * Change sequences per millisecond, giving room for a thousand writes per millisecond before
+	 * the sequence runs ahead of the clock
+	 */
+	private static final long SEQUENCES_PER_MILLI = 1000;
 	
     /**
      * The name of the ElasticSearch index alias
      */
     private String index;
+    /**
+     * The name of the index shared by all models before each repository owned its own index.
+     * Documents are migrated from it when this repository's index is first created
+     */
+    private String legacyIndex;
+    /**
+     * The shard and replica layout of this repository's index
+     */
+    private IndexSettings settings;
+    /**
+     * The real index being built by a reindex, written to alongside the alias until the swap
+     */
+    private volatile String shadowIndex;
+    /**
+     * The most recent reindex of this repository
+     */
+    private final AtomicReference<ReindexReport> reindexReport = new AtomicReference<ReindexReport>();
+    /**
+     * The number of purges running, during which no reindex may start
+     */
+    private final AtomicInteger purges = new AtomicInteger();
+    /**
+     * The open bulk-load session, if any
+     */
+    private final AtomicReference<BulkLoadSession<T>> bulkLoadSession = new AtomicReference<BulkLoadSession<T>>();
+    /**
+     * The last change sequence stamped by this repository
+     */
+    private final AtomicLong lastSequence = new AtomicLong();
+    /**
+     * The writes through this repository which the change feed is held behind, keyed by the lowest change
+     * sequence each may stamp.  The value is the time in milliseconds since the epoch until which the write
+     * holds the feed, or {@link Long#MAX_VALUE} while it is still in flight
+     */
+    private final ConcurrentSkipListMap<Long, Long> pendingWrites = new ConcurrentSkipListMap<Long, Long>();
+    /**
+     * How long a completed write is left to settle before the change feed returns it, in milliseconds
+     */
+    private volatile long settleMillis = DEFAULT_SETTLE_MILLIS;
     /**
      * The name of the ElasticSearch mapping created for the passed model. This will be
      * inferred from the generic type instantiated
@@ -56,10 +296,86 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
      * A list of fields inferred from the generic model from which this repository is built
      */
     private List<DataField> fields;
+
+	/**
+	 * The number of entities per bulk request when createMany pipelines a large batch, or 0 to send one request
+	 */
+	private volatile int pipelineChunkSize = 1000;
+
+	/**
+	 * The stored value of each field of a newly constructed model, keyed by field name
+	 */
+	private final Map<String, Object> defaults = new HashMap<String, Object>();
+
+	/**
+	 * Whether fields holding their default value are left out of written documents
+	 */
+	private volatile boolean elideDefaults;
+
+	/**
+	 * The encoding of the documents sent in bulk requests, which is also how their source is stored
+	 */
+	private volatile XContentType contentType = XContentType.JSON;
     /**
      * A factory required to instantiate new instances of the generic type
      */
 	private ModelFactory<T> factory;
+	/**
+	 * The registry holding the metrics recorded by this repository
+	 */
+	private MetricsRegistry metrics;
+	/**
+	 * Latency of single document reads
+	 */
+	private Histogram findOneTimer;
+	/**
+	 * Latency of soft deletes
+	 */
+	private Histogram deleteTimer;
+	/**
+	 * Latency of bulk partial updates
+	 */
+	private Histogram updateManyTimer;
+	/**
+	 * Latency of change feed reads
+	 */
+	private Histogram changesTimer;
+	/**
+	 * Latency of typeahead searches
+	 */
+	private Histogram suggestTimer;
+	/**
+	 * Latency of statistics queries
+	 */
+	private Histogram statisticsTimer;
+	/**
+	 * Number of soft-deleted documents removed by purges
+	 */
+	private Counter purgedDocuments;
+	/**
+	 * Latency of bulk writes, from submission until the bulk response arrives
+	 */
+	private Histogram createManyTimer;
+	/**
+	 * Number of documents in each bulk write
+	 */
+	private Histogram bulkSizes;
+	/**
+	 * Number of bulk items rejected by ElasticSearch
+	 */
+	private Counter bulkItemFailures;
+	/**
+	 * Number of bulk requests which failed entirely
+	 */
+	private Counter bulkFailures;
+	/**
+	 * Time taken to convert an entity into a source map
+	 */
+	private Histogram serializeTimer;
+	/**
+	 * Time taken to convert a source map into an entity
+	 */
+	private Histogram deserializeTimer;
 	
 	/**
 	 * Instantiate a new Elastic Repository instance
@@ -67,6 +383,8 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
 	 * @param factory The factory method which can be used to generate new instances 
 	 * of the model being accessed by this repository   
 	 * @param client The ElasticSearch client through which to perform all data operations
+	 * @param metrics The registry in which to record the repository metrics
+	 * @param settings The shard and replica layout of the index owned by this repository
 	 * @param migrationManagerNotifier The migration manager
 	 * @param props Custom properties for this class
 	 * @param retryTemplate The retry template for calls to the repository
@@ -75,37 +393,136 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
 	 * @throws MappingInitialisationException Mapping initialisation failed
 	 * @throws IOException Thrown if the JSON builder fails to create JSON
 	 */
-	public ElasticRepositoryImpl(ModelFactory<T> factory, Client client) {
+	public ElasticRepositoryImpl(ModelFactory<T> factory, Client client, MetricsRegistry metrics, IndexSettings settings) {
 		this.factory = factory;
-		this.index = "candidatetest";
 		this.client = client;
 		this.genericType = GenericTypeResolver.resolveTypeArgument(this.getClass(), ElasticRepository.class);
 		this.mapping = getMappingName(this.genericType);
+		this.settings = settings;
+		this.legacyIndex = settings.getPrefix();
+		this.index = settings.getPrefix() + "-" + mapping;
+		this.metrics = metrics;
+		this.findOneTimer = requestTimer("findOne");
+		this.deleteTimer = requestTimer("delete");
+		this.updateManyTimer = requestTimer("updateMany");
+		this.changesTimer = requestTimer("changesSince");
+		this.suggestTimer = requestTimer("suggest");
+		this.statisticsTimer = requestTimer("statistics");
+		this.purgedDocuments = metrics.counter("repository_purged_total", "Soft-deleted documents removed by purges", "type", mapping);
+		this.createManyTimer = requestTimer("createMany");
+		this.bulkSizes = metrics.distribution("elastic_bulk_size", "Number of documents per bulk request", "type", mapping);
+		this.bulkItemFailures = metrics.counter("elastic_bulk_item_failures_total", "Bulk items rejected by ElasticSearch", "type", mapping);
+		this.bulkFailures = metrics.counter("elastic_bulk_failures_total", "Bulk requests which failed entirely", "type", mapping);
+		this.serializeTimer = metrics.timer("repository_mapping_seconds", "Time converting between entities and source maps", "type", mapping, "direction", "serialize");
+		this.deserializeTimer = metrics.timer("repository_mapping_seconds", "Time converting between entities and source maps", "type", mapping, "direction", "deserialize");
+		try {
+			this.fields = DataField.readFields(this.genericType);
+			T empty = factory.construct();
+			for (DataField f : this.fields) {
+				this.defaults.put(f.getName(), f.serialize(f.getGetter().invoke(empty)));
+			}
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
 		initialise();
 	}
 
 	/**
-	 * Reflect the fields defined on the type used by this repository and create an index 
-	 * and mapping if they don't already exist
+	 * Get the timer for a data operation of this repository
+	 * @param operation The name of the operation
+	 * @return The latency histogram for the operation
+	 */
+	private Histogram requestTimer(String operation) {
+		return metrics.timer("elastic_request_seconds", "Latency of ElasticSearch data operations", "type", mapping, "operation", operation);
+	}
+
+	/**
+	 * Get the timer for an administrative operation of this repository
+	 * @param operation The name of the operation
+	 * @return The latency histogram for the operation
+	 */
+	private Histogram adminTimer(String operation) {
+		return metrics.timer("elastic_admin_request_seconds", "Latency of ElasticSearch administrative operations", "type", mapping, "operation", operation);
+	}
+
+	/**
+	 * Create a versioned real index behind this repository's alias, and a mapping for the fields
+	 * reflected from the type used by this repository, if they don't already exist.  When the
+	 * index is first created any documents of this type in the legacy shared index are copied into it
 	 */
     protected void initialise () {
 		try {
-			this.fields = DataField.readFields(this.genericType);
-			
+			String realIndex = getAliasedIndex();
+			boolean created = realIndex == null;
+			if (created) {
+				realIndex = getRealIndexName(0);
+			}
+
 			// Create the index
-			if (!initialiseIndex(this.index)) {
+			if (!initialiseIndex(this.index, realIndex)) {
 				throw new RuntimeException("Index initialisation failed");
 			}
-			
+
 			// Create/Update the mappings
-			if (!initialiseMapping(this.index)) {
+			boolean seed = getMapping(realIndex) == null;
+			if (!initialiseMapping(realIndex)) {
 				throw new RuntimeException("Mapping initialisation failed");
 			}
-			
+
+			if (created) {
+				if (indexExists(legacyIndex) && getMapping(legacyIndex) != null) {
+					logger.info("Migrating " + mapping + " documents from " + legacyIndex + " to " + realIndex);
+					copyDocuments(legacyIndex, realIndex, settings.getShards(), OpType.INDEX);
+					seed = false;
+				}
+				long start = System.nanoTime();
+				client.admin().indices().prepareAliases().addAlias(realIndex, this.index).execute().actionGet();
+				adminTimer("updateAliases").recordSince(start);
+			}
+
+			// Seed data only if the mapping did not previously exist
+			if (seed) {
+				seedData();
+			}
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
+
+	/**
+	 * Get the real index this repository's alias points to
+	 * @return The real index name, or null if the alias does not exist
+	 */
+	private String getAliasedIndex() {
+		long start = System.nanoTime();
+		GetAliasesResponse response = client.admin().indices().prepareGetAliases(this.index).execute().actionGet();
+		adminTimer("getAliases").recordSince(start);
+		String realIndex = null;
+		for (ObjectCursor<String> cursor : response.getAliases().keys()) {
+			if (realIndex == null || getIndexVersion(cursor.value) > getIndexVersion(realIndex)) {
+				realIndex = cursor.value;
+			}
+		}
+		return realIndex;
+	}
+
+	/**
+	 * Generate the name of a real index for this repository
+	 * @param version The version of the index
+	 * @return The real index name
+	 */
+	private String getRealIndexName(long version) {
+		return this.index + VERSION_SEPARATOR + version;
+	}
+
+	/**
+	 * Get the version of a real index of this repository
+	 * @param realIndex The real index name
+	 * @return The version of the index
+	 */
+	private long getIndexVersion(String realIndex) {
+		return Long.parseLong(realIndex.substring(realIndex.lastIndexOf(VERSION_SEPARATOR) + VERSION_SEPARATOR.length()));
+	}
     
     /**
      * Check whether this repository's index exists.
@@ -114,7 +531,9 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
      * @return {@code true} if the index exists
      */
 	private Boolean indexExists(String index) {
+		long start = System.nanoTime();
 		IndicesExistsResponse response = client.admin().indices().prepareExists(index).execute().actionGet();
+		adminTimer("indexExists").recordSince(start);
 		return response.isExists();
 	}
 
@@ -128,16 +547,34 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
 	}
 	
 	/**
-	 * Create the index if it doesn't already exist.
+	 * Create the index if it doesn't already exist, with the shard and replica counts of this repository.
+	 * The alias is added separately once the index is ready for access.
 	 *
 	 * @param alias the alias that should point to index
 	 * @param index the real index name
 	 * @return {@code true} if the index is ready for access
 	 */
-	protected Boolean initialiseIndex(String index) {
+	protected Boolean initialiseIndex(String alias, String index) {
     	if (!indexExists(index)) {
     		// Real index creation
-    		return client.admin().indices().prepareCreate(index).execute().actionGet().isAcknowledged();
+    		long start = System.nanoTime();
+    		boolean acknowledged = client.admin().indices().prepareCreate(index)
+    			.setSettings(Settings.builder()
+    				.put("index.number_of_shards", settings.getShards())
+    				.put("index.number_of_replicas", settings.getReplicas())
+    				// Analyzers can't be added to an open index, so they are defined up front for any model to use
+    				.put("index.analysis.filter.autocomplete_prefix.type", "edge_ngram")
+    				.put("index.analysis.filter.autocomplete_prefix.min_gram", 1)
+    				.put("index.analysis.filter.autocomplete_prefix.max_gram", AUTOCOMPLETE_MAX_GRAM)
+    				.put("index.analysis.analyzer." + AUTOCOMPLETE_ANALYZER + ".type", "custom")
+    				.put("index.analysis.analyzer." + AUTOCOMPLETE_ANALYZER + ".tokenizer", "standard")
+    				.putArray("index.analysis.analyzer." + AUTOCOMPLETE_ANALYZER + ".filter", "lowercase", "asciifolding", "autocomplete_prefix")
+    				.put("index.analysis.analyzer." + AUTOCOMPLETE_SEARCH_ANALYZER + ".type", "custom")
+    				.put("index.analysis.analyzer." + AUTOCOMPLETE_SEARCH_ANALYZER + ".tokenizer", "standard")
+    				.putArray("index.analysis.analyzer." + AUTOCOMPLETE_SEARCH_ANALYZER + ".filter", "lowercase", "asciifolding"))
+    			.execute().actionGet().isAcknowledged();
+    		adminTimer("createIndex").recordSince(start);
+    		return acknowledged;
     	} else {
     		return true;
     	}
@@ -149,10 +586,12 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
      * @return the mapping or null if it does not exist
      * @throws IOException the mapping is invalid
      */
-	private Map<String, Object> getMapping() throws IOException {
-		GetMappingsResponse response = client.admin().indices().prepareGetMappings(this.index).execute().actionGet();
-		if (response.mappings().get(this.index).containsKey(mapping)) {
-			return response.mappings().get(this.index).get(mapping).getSourceAsMap();
+	private Map<String, Object> getMapping(String realIndex) throws IOException {
+		long start = System.nanoTime();
+		GetMappingsResponse response = client.admin().indices().prepareGetMappings(realIndex).execute().actionGet();
+		adminTimer("getMapping").recordSince(start);
+		if (response.mappings().containsKey(realIndex) && response.mappings().get(realIndex).containsKey(mapping)) {
+			return response.mappings().get(realIndex).get(mapping).getSourceAsMap();
 		} else {
 			return null;
 		}
@@ -168,7 +607,7 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
 	 */
 	@SuppressWarnings("unchecked")
 	protected Boolean initialiseMapping(String realIndex) throws IOException, IntrospectionException {
-		Map<String, Object> existingMapping = getMapping();
+		Map<String, Object> existingMapping = getMapping(realIndex);
     	boolean applyMapping = existingMapping == null;
 
 		// Prepare to create the mapping
@@ -192,11 +631,11 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
         	}	        	
         }
         builder.setSource(source.endObject().endObject());			
-	    Boolean result = !applyMapping || builder.execute().actionGet().isAcknowledged();
-
-	    // Seed data only if mapping did not previously exist
-	    if (existingMapping == null) {
-	    	seedData();
+	    Boolean result = true;
+	    if (applyMapping) {
+	    	long start = System.nanoTime();
+	    	result = builder.execute().actionGet().isAcknowledged();
+	    	adminTimer("putMapping").recordSince(start);
 	    }
 	    
 	    return result;
@@ -212,7 +651,44 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
 		// Start new field definition object
 		source.startObject(field.getName());
 
-		source.field("type", getESType(field.getType()));
+		FieldMapping options = field.getMapping();
+		if (options == null) {
+			source.field("type", getESType(field.getType()));
+		} else if (!options.enabled()) {
+			// Only objects can be disabled, but any value is accepted and kept in the source
+			source.field("type", "object");
+			source.field("enabled", false);
+		} else {
+			String type = options.type().isEmpty() ? getESType(field.getType()) : options.type();
+			source.field("type", type);
+			if (!options.index()) {
+				source.field("index", false);
+			}
+			if ("text".equals(type)) {
+				// Text has no doc values to turn off
+				source.field("norms", options.norms());
+			} else if (!options.docValues()) {
+				source.field("doc_values", false);
+			}
+			if (options.store()) {
+				source.field("store", true);
+			}
+			if (options.fields().length > 0) {
+				source.startObject("fields");
+				for (MultiField multiField : options.fields()) {
+					source.startObject(multiField.name());
+					source.field("type", multiField.type());
+					if (!multiField.analyzer().isEmpty()) {
+						source.field("analyzer", multiField.analyzer());
+					}
+					if (!multiField.searchAnalyzer().isEmpty()) {
+						source.field("search_analyzer", multiField.searchAnalyzer());
+					}
+					source.endObject();
+				}
+				source.endObject();
+			}
+		}
 		
 		// Finish the object
 		source.endObject();
@@ -245,17 +721,25 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
 	}
 		
 	/**
-	 * Create a {@link Map} representation of the passed POJO 
+	 * Create a {@link Map} representation of the passed POJO.  When defaults are elided, fields with the
+	 * value of a newly constructed model are left out
 	 * @param entity The model whose fields you wish to turn into a {@link Map}
 	 * @return A {@link Map} keyed by field name with the values of the passed model
 	 */
-	private Map<String, Object> mapFromEntity(T entity) {
+	protected Map<String, Object> mapFromEntity(T entity) {
+		long start = System.nanoTime();
 		try {
 			Map<String, Object> map = new HashMap<String, Object>();
+			boolean elide = elideDefaults;
 			for (DataField f : this.fields) {
 				String name = f.getName();
-				map.put(name, f.serialize(f.getGetter().invoke(entity)));
+				Object value = f.serialize(f.getGetter().invoke(entity));
+				// An omitted field keeps the value of a newly constructed model when read back
+				if (!elide || !Objects.deepEquals(value, defaults.get(name))) {
+					map.put(name, value);
+				}
 			}
+			serializeTimer.recordSince(start);
 	        return map;
 		}
 	    catch (Exception ex) {
@@ -269,7 +753,8 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
 	 * @param map The {@link Map} containing field names and the values to be set
 	 * @return A new instance of the generic type from which this repository is built
 	 */
-	private T entityFromMap(Map<String, Object> map) {
+	protected T entityFromMap(Map<String, Object> map) {
+		long start = System.nanoTime();
 		try {
 			T entity = this.factory.construct();
 	        PropertyAccessor acc = PropertyAccessorFactory.forDirectFieldAccess(entity);
@@ -281,6 +766,7 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
 					}
 	        	}
 			}
+	        deserializeTimer.recordSince(start);
 	        return entity;
 		}
         catch (Exception ex) {
@@ -288,6 +774,38 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
         }
 	}
 
+	/**
+	 * Set how createMany splits large batches.  Batches larger than a chunk are encoded in parallel chunks
+	 * and sent as a pipeline of bulk requests, overlapping the encoding with the network
+	 * @param pipelineChunkSize The number of entities per bulk request, or 0 to always send a single request
+	 */
+	public void setPipelineChunkSize(int pipelineChunkSize) {
+		this.pipelineChunkSize = pipelineChunkSize;
+	}
+
+	/**
+	 * Set how long a completed write is left to settle before the change feed returns it.  This must cover
+	 * the refresh interval and the clock skew between instances: writes through this instance hold the feed
+	 * back until they have completed, but those through other instances are only covered by this time
+	 * @param settleMillis The time in milliseconds
+	 */
+	public void setSettleMillis(long settleMillis) {
+		this.settleMillis = settleMillis;
+	}
+
+	/**
+	 * Set how documents are encoded when written.  Leaving out default values shrinks the stored source
+	 * of sparse models, e.g. {@code deleted=false} on every live document, and a binary content type is
+	 * smaller and cheaper to generate and parse than JSON.  Documents with either encoding read back the same,
+	 * but a query for a default value, such as a term query for {@code deleted=false}, does not match elided fields
+	 * @param elideDefaults Whether to leave out fields holding the value of a newly constructed model
+	 * @param contentType The encoding of documents sent in bulk requests, e.g. {@link XContentType#SMILE}
+	 */
+	public void setEncoding(boolean elideDefaults, XContentType contentType) {
+		this.elideDefaults = elideDefaults;
+		this.contentType = contentType;
+	}
+
 	/**
 	 * @see candidatetest.main.repository.ElasticRepository#create(candidatetest.main.model.data.AbstractModel)
 	 */
@@ -302,36 +820,990 @@ public class ElasticRepositoryImpl<T extends AbstractModel> implements ElasticRe
 	@Override
 	public void createMany(List<T> entities) {
 		if (entities != null && entities.size() > 0) {
-			BulkRequestBuilder builder = client.prepareBulk();
-			for (T entity : entities) {
-				IndexRequestBuilder indexBuilder = client.prepareIndex(index, mapping).setSource(mapFromEntity(entity));
-				indexBuilder.setOpType(OpType.INDEX);
-				if (entity.getId() != null) {
-					indexBuilder.setId(entity.getId());
+			createMany(index, entities, null);
+		}
+	}
+
+	/**
+	 * Index the passed entities in a single asynchronous bulk request
+	 * @param target The alias or real index to write to
+	 * @param entities The entities to index
+	 * @param callback Notified when the bulk request completes, may be null
+	 */
+	void createMany(String target, List<T> entities, final ActionListener<BulkResponse> callback) {
+		// The documents are stamped long before they are all searchable, so the feed waits for the last response
+		long hold = holdChanges();
+		ActionListener<BulkResponse> release = new ActionListener<BulkResponse>() {
+			@Override
+			public void onResponse(BulkResponse response) {
+				releaseChanges(hold);
+				if (callback != null) {
+					callback.onResponse(response);
+				}
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				releaseChanges(hold);
+				if (callback != null) {
+					callback.onFailure(e);
+				}
+			}
+		};
+		try {
+			if (pipelineChunkSize > 0 && entities.size() > pipelineChunkSize) {
+				createManyPipelined(target, entities, release);
+				return;
+			}
+			executeBulk(prepareBulk(target, shadowIndex, entities), entities.size(), release);
+		} catch (RuntimeException e) {
+			releaseChanges(hold);
+			throw e;
+		}
+	}
+
+	/**
+	 * Index the passed entities as a pipeline of bulk requests.  Chunks of entities are encoded on the
+	 * fork-join pool while the earlier chunks are on the wire, and sent in order.  Encoding runs at most
+	 * {@link #PIPELINE_MAX_IN_FLIGHT} chunks ahead of sending, and at most that many requests are in
+	 * flight, so memory stays bounded and no document is stamped long before it becomes visible.  A chunk
+	 * which cannot be encoded or sent is reported as a failed item per entity, so the other chunks still count
+	 * @param target The alias or real index to write to
+	 * @param entities The entities to index
+	 * @param callback Notified with the combined response once every request completes, may be null
+	 */
+	private void createManyPipelined(String target, List<T> entities, final ActionListener<BulkResponse> callback) {
+		String shadow = shadowIndex;
+		int chunks = (entities.size() + pipelineChunkSize - 1) / pipelineChunkSize;
+		List<CompletableFuture<Void>> dispatched = new ArrayList<CompletableFuture<Void>>(chunks);
+		List<CompletableFuture<BulkResponse>> responded = new ArrayList<CompletableFuture<BulkResponse>>(chunks);
+		for (int i = 0; i < chunks; i++) {
+			List<T> chunk = entities.subList(i * pipelineChunkSize, Math.min(entities.size(), (i + 1) * pipelineChunkSize));
+			// Each stage waits for earlier chunks to be dispatched whether or not they failed, so a failed chunk fails alone
+			CompletableFuture<?> encodeAfter = i < PIPELINE_MAX_IN_FLIGHT
+				? CompletableFuture.completedFuture(null) : dispatched.get(i - PIPELINE_MAX_IN_FLIGHT).handle((v, e) -> null);
+			CompletableFuture<BulkRequestBuilder> encoded = encodeAfter.thenApplyAsync(v -> prepareBulk(target, shadow, chunk), ForkJoinPool.commonPool());
+			CompletableFuture<BulkResponse> response = new CompletableFuture<BulkResponse>();
+			CompletableFuture<?> previous = i == 0 ? CompletableFuture.completedFuture(null) : dispatched.get(i - 1).handle((v, e) -> null);
+			CompletableFuture<?> slot = i < PIPELINE_MAX_IN_FLIGHT
+				? CompletableFuture.completedFuture(null) : responded.get(i - PIPELINE_MAX_IN_FLIGHT).handle((r, e) -> null);
+			dispatched.add(CompletableFuture.allOf(previous, slot).thenCombine(encoded, (v, builder) -> {
+				executeBulk(builder, chunk.size(), new ActionListener<BulkResponse>() {
+					@Override
+					public void onResponse(BulkResponse bulkResponse) {
+						response.complete(bulkResponse);
+					}
+
+					@Override
+					public void onFailure(Exception e) {
+						response.completeExceptionally(e);
+					}
+				});
+				return null;
+			}));
+			// A chunk that cannot be encoded or sent fails its own response, which is reported as failed items
+			dispatched.get(i).whenComplete((v, e) -> {
+				if (e != null) {
+					response.completeExceptionally(e);
+				}
+			});
+			responded.add(response);
+		}
+		CompletableFuture.allOf(responded.toArray(new CompletableFuture<?>[chunks])).whenComplete((v, e) -> {
+			List<BulkItemResponse> items = new ArrayList<BulkItemResponse>(entities.size());
+			long tookMillis = 0;
+			int failedChunks = 0;
+			Throwable firstFailure = null;
+			for (int i = 0; i < chunks; i++) {
+				int offset = i * pipelineChunkSize;
+				try {
+					BulkResponse bulkResponse = responded.get(i).join();
+					items.addAll(Arrays.asList(bulkResponse.getItems()));
+					tookMillis += bulkResponse.getTookInMillis();
+				} catch (CompletionException failure) {
+					Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+					if (failedChunks++ == 0) {
+						firstFailure = cause;
+					}
+					failedItems(target, entities.subList(offset, Math.min(entities.size(), offset + pipelineChunkSize)), offset, cause, items);
 				}
-				builder.add(indexBuilder);
 			}
-			builder.execute();
+			if (failedChunks > 0) {
+				logger.warn(failedChunks + " of " + chunks + " pipelined bulk requests to " + target + " failed", firstFailure);
+			}
+			if (callback != null) {
+				callback.onResponse(new BulkResponse(items.toArray(new BulkItemResponse[items.size()]), tookMillis));
+			}
+		});
+	}
+
+	/**
+	 * Report each entity of a bulk request which failed as a whole as a failed item
+	 * @param target The alias or real index the request wrote to
+	 * @param entities The entities of the request
+	 * @param offset The position of the first entity in the whole write
+	 * @param cause The failure of the request
+	 * @param items The items to add the failed items to
+	 */
+	private void failedItems(String target, List<T> entities, int offset, Throwable cause, List<BulkItemResponse> items) {
+		Exception exception = cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+		for (int i = 0; i < entities.size(); i++) {
+			BulkItemResponse.Failure failure = new BulkItemResponse.Failure(target, mapping, entities.get(i).getId(), exception);
+			items.add(new BulkItemResponse(offset + i, OpType.INDEX, failure));
 		}
 	}
 
+	/**
+	 * Encode entities into a bulk request, stamping each and copying it to the shadow index of a running reindex
+	 * @param target The alias or real index to write to
+	 * @param shadow The shadow index, or null
+	 * @param entities The entities to index
+	 * @return The bulk request
+	 */
+	private BulkRequestBuilder prepareBulk(String target, String shadow, List<T> entities) {
+		BulkRequestBuilder builder = client.prepareBulk();
+		XContentType type = contentType;
+		for (T entity : entities) {
+			Map<String, Object> source = mapFromEntity(entity);
+			stamp(source);
+			BytesReference encoded;
+			try {
+				// Encoded once so the shadow copy doesn't pay for it again
+				encoded = XContentFactory.contentBuilder(type).map(source).bytes();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			IndexRequestBuilder indexBuilder = client.prepareIndex(target, mapping).setSource(encoded, type);
+			indexBuilder.setOpType(OpType.INDEX);
+			String id = entity.getId();
+			if (id == null && shadow != null) {
+				// Both copies must share an id, so it can't be left to ElasticSearch
+				id = UUIDs.base64UUID();
+			}
+			if (id != null) {
+				indexBuilder.setId(id);
+			}
+			builder.add(indexBuilder);
+			if (shadow != null) {
+				builder.add(client.prepareIndex(shadow, mapping).setSource(encoded, type).setOpType(OpType.INDEX).setId(id));
+			}
+		}
+		return builder;
+	}
+
+	/**
+	 * Send a bulk request asynchronously, recording its latency and failures
+	 * @param builder The bulk request
+	 * @param size The number of entities in the request
+	 * @param callback Notified when the bulk request completes, may be null
+	 */
+	private void executeBulk(BulkRequestBuilder builder, final int size, final ActionListener<BulkResponse> callback) {
+		final long start = System.nanoTime();
+		bulkSizes.record(size);
+		builder.execute(new ActionListener<BulkResponse>() {
+			@Override
+			public void onResponse(BulkResponse response) {
+				createManyTimer.recordSince(start);
+				if (response.hasFailures()) {
+					for (BulkItemResponse item : response.getItems()) {
+						if (item.isFailed()) {
+							bulkItemFailures.increment();
+						}
+					}
+				}
+				if (callback != null) {
+					callback.onResponse(response);
+				}
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				createManyTimer.recordSince(start);
+				bulkFailures.increment();
+				bulkItemFailures.increment(size);
+				if (callback != null) {
+					callback.onFailure(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#beginBulkLoad(boolean)
+	 */
+	@Override
+	public BulkLoadSession<T> beginBulkLoad(boolean forceMerge) {
+		String realIndex = getAliasedIndex();
+		long start = System.nanoTime();
+		Settings current = client.admin().indices().prepareGetSettings(realIndex).execute().actionGet().getIndexToSettings().get(realIndex);
+		adminTimer("getSettings").recordSince(start);
+		Settings restore = Settings.builder()
+			.put(REFRESH_INTERVAL, current.get(REFRESH_INTERVAL, DEFAULT_REFRESH_INTERVAL))
+			.put(NUMBER_OF_REPLICAS, current.getAsInt(NUMBER_OF_REPLICAS, settings.getReplicas()))
+			.build();
+
+		BulkLoadSession<T> session = new BulkLoadSession<T>(this, realIndex, restore, forceMerge, holdChanges());
+		if (reindexRunning() || !bulkLoadSession.compareAndSet(null, session)) {
+			releaseChanges(session.getChangeHold());
+			throw new IllegalStateException("A bulk load or reindex of " + index + " is already running");
+		}
+		try {
+			start = System.nanoTime();
+			client.admin().indices().prepareUpdateSettings(realIndex)
+				.setSettings(Settings.builder().put(REFRESH_INTERVAL, "-1").put(NUMBER_OF_REPLICAS, 0))
+				.execute().actionGet();
+			adminTimer("updateSettings").recordSince(start);
+		} catch (RuntimeException e) {
+			bulkLoadSession.set(null);
+			releaseChanges(session.getChangeHold());
+			throw e;
+		}
+		logger.info("Started bulk load of " + realIndex);
+		return session;
+	}
+
+	/**
+	 * Restore the index settings suspended by a bulk-load session, then refresh and optionally force-merge the index
+	 * @param realIndex The real index the session imported into
+	 * @param restore The index settings in place before the session started
+	 * @param forceMerge Whether to merge the index down to a single segment
+	 * @param changeHold The change feed hold taken when the session began, released once the index is refreshed
+	 */
+	void endBulkLoad(String realIndex, Settings restore, boolean forceMerge, long changeHold) {
+		try {
+			long start = System.nanoTime();
+			client.admin().indices().prepareUpdateSettings(realIndex).setSettings(restore).execute().actionGet();
+			adminTimer("updateSettings").recordSince(start);
+
+			start = System.nanoTime();
+			client.admin().indices().prepareRefresh(realIndex).execute().actionGet();
+			adminTimer("refresh").recordSince(start);
+
+			if (forceMerge) {
+				start = System.nanoTime();
+				client.admin().indices().prepareForceMerge(realIndex).setMaxNumSegments(1).execute().actionGet();
+				adminTimer("forceMerge").recordSince(start);
+			}
+			logger.info("Ended bulk load of " + realIndex);
+		} finally {
+			releaseChanges(changeHold);
+			bulkLoadSession.set(null);
+		}
+	}
+
+	/**
+	 * Check whether a reindex of this repository is running
+	 * @return {@code true} if the most recent reindex has not ended
+	 */
+	private boolean reindexRunning() {
+		ReindexReport report = reindexReport.get();
+		return report != null && report.getState() == ReindexReport.State.RUNNING;
+	}
+
+	/**
+	 * Copy all documents of this repository's type between indices using parallel sliced scrolls
+	 * executed by the cluster
+	 * @param source The index to copy from
+	 * @param destination The real index to copy to
+	 * @param slices The number of slices to copy in parallel
+	 * @param opType {@link OpType#CREATE} to keep documents already in the destination, {@link OpType#INDEX} to overwrite them
+	 * @return The copy statistics
+	 */
+	private BulkByScrollResponse copyDocuments(String source, String destination, int slices, OpType opType) {
+		long start = System.nanoTime();
+		ReindexRequestBuilder builder = ReindexAction.INSTANCE.newRequestBuilder(client)
+			.source(source)
+			.destination(destination, mapping)
+			.filter(QueryBuilders.typeQuery(mapping))
+			.abortOnVersionConflict(false)
+			.setSlices(Math.max(1, slices))
+			.refresh(true);
+		builder.destination().setOpType(opType);
+		BulkByScrollResponse response = builder.get();
+		adminTimer("reindex").recordSince(start);
+		return response;
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#reindex(int, boolean)
+	 */
+	@Override
+	public CompletableFuture<ReindexReport> reindex(int slices, boolean deleteOld) {
+		String oldIndex = getAliasedIndex();
+		if (oldIndex == null) {
+			throw new IndexNotFoundException("The alias " + index + " does not point to an index", index);
+		}
+		String newIndex = getRealIndexName(getIndexVersion(oldIndex) + 1);
+		ReindexReport report = new ReindexReport(oldIndex, newIndex, slices > 0 ? slices : settings.getShards());
+		ReindexReport previous = reindexReport.get();
+		if (reindexRunning() || bulkLoadSession.get() != null || !reindexReport.compareAndSet(previous, report)) {
+			throw new IllegalStateException("A reindex or bulk load of " + index + " is already running");
+		}
+		if (purges.get() > 0) {
+			// The copy would bring back documents the purge removes from the old index after scrolling past them
+			reindexReport.compareAndSet(report, previous);
+			throw new IllegalStateException("A purge of " + index + " is running");
+		}
+		return CompletableFuture.supplyAsync(() -> {
+			boolean swapped = false;
+			try {
+				if (indexExists(newIndex)) {
+					// Left half-filled by a reindex which failed or was interrupted, and the copy would keep its stale documents
+					logger.warn("Deleting " + newIndex + " left by an earlier reindex of " + index);
+					deleteIndex(newIndex);
+				}
+				if (!initialiseIndex(index, newIndex) || !initialiseMapping(newIndex)) {
+					throw new IllegalStateException("Could not create " + newIndex);
+				}
+				// New writes go to both indices from here, and the copy skips documents they already wrote
+				shadowIndex = newIndex;
+				// Writes which started before only went to the old index, so the copy must be able to see them
+				drainWrites();
+				long refreshStart = System.nanoTime();
+				client.admin().indices().prepareRefresh(oldIndex).execute().actionGet();
+				adminTimer("refresh").recordSince(refreshStart);
+				BulkByScrollResponse response = copyDocuments(oldIndex, newIndex, report.getSlices(), OpType.CREATE);
+				report.copied(response.getCreated(), response.getVersionConflicts(), response.getBulkFailures().size() + response.getSearchFailures().size());
+				if (report.getFailures() > 0) {
+					throw new IllegalStateException(report.getFailures() + " documents failed to copy");
+				}
+				// Swap the alias atomically
+				long start = System.nanoTime();
+				client.admin().indices().prepareAliases()
+					.removeAlias(oldIndex, index)
+					.addAlias(newIndex, index)
+					.execute().actionGet();
+				adminTimer("updateAliases").recordSince(start);
+				swapped = true;
+				shadowIndex = null;
+				if (deleteOld) {
+					deleteIndex(oldIndex);
+				}
+				report.completed();
+				logger.info("Reindexed " + index + " from " + oldIndex + " to " + newIndex + " in " + report.getTookMillis() + "ms");
+			} catch (Exception e) {
+				shadowIndex = null;
+				report.failed(e.getMessage());
+				logger.error("Reindex of " + index + " to " + newIndex + " failed", e);
+				if (!swapped) {
+					try {
+						deleteIndex(newIndex);
+					} catch (Exception deleteFailure) {
+						// The next reindex deletes it before copying
+						logger.warn("Could not delete " + newIndex + " after the failed reindex", deleteFailure);
+					}
+				}
+			}
+			return report;
+		});
+	}
+
+	/**
+	 * Wait for the writes through this repository which are in flight to complete.  Every write holds the
+	 * change feed before it reads the shadow index, so the writes still holding it are the only ones which
+	 * may have missed a shadow index just set
+	 * @throws InterruptedException Thrown if interrupted while waiting
+	 * @throws IllegalStateException Writes are still in flight after {@link #DRAIN_MILLIS}
+	 */
+	private void drainWrites() throws InterruptedException {
+		List<Long> inFlight = new ArrayList<Long>();
+		for (Map.Entry<Long, Long> hold : pendingWrites.entrySet()) {
+			if (hold.getValue() == Long.MAX_VALUE) {
+				inFlight.add(hold.getKey());
+			}
+		}
+		long deadline = System.currentTimeMillis() + DRAIN_MILLIS;
+		for (Long hold : inFlight) {
+			while (Long.valueOf(Long.MAX_VALUE).equals(pendingWrites.get(hold))) {
+				if (System.currentTimeMillis() > deadline) {
+					throw new IllegalStateException("Writes to " + index + " are still in flight after " + DRAIN_MILLIS + "ms");
+				}
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	/**
+	 * Delete a real index of this repository
+	 * @param realIndex The real index name
+	 */
+	private void deleteIndex(String realIndex) {
+		long start = System.nanoTime();
+		client.admin().indices().prepareDelete(realIndex).execute().actionGet();
+		adminTimer("deleteIndex").recordSince(start);
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#getReindexReport()
+	 */
+	@Override
+	public ReindexReport getReindexReport() {
+		return reindexReport.get();
+	}
+
+	/**
+	 * Restrict a query to documents which are not soft-deleted.  Every read should go through this.
+	 * Both clauses run in filter context, so ElasticSearch caches the deleted filter per segment
+	 * @param query The query to restrict
+	 * @return The restricted query
+	 */
+	protected QueryBuilder live(QueryBuilder query) {
+		return QueryBuilders.boolQuery()
+			.filter(query)
+			.mustNot(QueryBuilders.termQuery(DELETED, true));
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#delete(java.lang.String)
+	 */
+	@Override
+	public boolean delete(String id) {
+		long start = System.nanoTime();
+		long hold = holdChanges();
+		try {
+			for (int attempt = 1; ; attempt++) {
+				GetResponse current = client.prepareGet(index, mapping, id).get();
+				if (!current.isExists() || Boolean.TRUE.equals(current.getSource().get(DELETED))) {
+					return false;
+				}
+				Map<String, Object> flags = new HashMap<String, Object>();
+				flags.put(DELETED, true);
+				flags.put(DELETED_AT, System.currentTimeMillis());
+				stamp(flags);
+				UpdateResponse response;
+				try {
+					// Only flag the version that was read, so a deleted entity keeps its original deletion time
+					response = client.prepareUpdate(index, mapping, id)
+						.setDoc(flags)
+						.setVersion(current.getVersion())
+						.setFetchSource(true)
+						.get();
+				} catch (VersionConflictEngineException | DocumentMissingException e) {
+					if (attempt == 3) {
+						throw e;
+					}
+					continue;
+				}
+				String shadow = shadowIndex;
+				if (shadow != null) {
+					// The copy may not have reached this document yet, so write it whole
+					try {
+						shadowCopy(shadow, id, response.getVersion(), response.getGetResult().sourceAsMap()).get();
+					} catch (VersionConflictEngineException e) {
+						// A later write of the document reached the new index first
+					}
+				}
+				return true;
+			}
+		} finally {
+			releaseChanges(hold);
+			deleteTimer.recordSince(start);
+			Trace.span("repository.delete", start);
+		}
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#updatePartial(java.lang.String, java.util.Map)
+	 */
+	@Override
+	public boolean updatePartial(String id, Map<String, Object> fields) {
+		PartialUpdate.Result result = updatePartial(PartialUpdate.fields(id, fields));
+		return result == PartialUpdate.Result.UPDATED || result == PartialUpdate.Result.UNCHANGED;
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#updatePartial(candidatetest.main.repository.PartialUpdate)
+	 */
+	@Override
+	public PartialUpdate.Result updatePartial(PartialUpdate update) {
+		return updateMany(Arrays.asList(update)).get(0);
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#updateMany(java.util.List)
+	 */
+	@Override
+	public List<PartialUpdate.Result> updateMany(List<PartialUpdate> updates) {
+		List<PartialUpdate.Result> results = new ArrayList<PartialUpdate.Result>(updates.size());
+		if (updates.isEmpty()) {
+			return results;
+		}
+		long hold = holdChanges();
+		try {
+			return updateMany(updates, results);
+		} finally {
+			releaseChanges(hold);
+		}
+	}
+
+	/**
+	 * Apply partial updates in one bulk request, while the change feed is held behind them
+	 * @param updates The updates
+	 * @param results The list to add the result of each update to, in order
+	 * @return The results
+	 */
+	private List<PartialUpdate.Result> updateMany(List<PartialUpdate> updates, List<PartialUpdate.Result> results) {
+		String shadow = shadowIndex;
+		BulkRequestBuilder builder = client.prepareBulk();
+		for (PartialUpdate update : updates) {
+			UpdateRequestBuilder updateBuilder = client.prepareUpdate(index, mapping, update.getId());
+			Map<String, Object> stamps = stamp(new HashMap<String, Object>());
+			// Updates run as scripts which only stamp the document if they changed it, unless they always change it
+			Map<String, Object> upsert = update.getUpsert() == null ? null : serializeFields(update.getUpsert());
+			if (update.getScript() == null && update.isAlwaysChanges()) {
+				Map<String, Object> doc = serializeFields(update.getFields());
+				if (update.isFieldsAsUpsert()) {
+					upsert = new HashMap<String, Object>(doc);
+				}
+				doc.putAll(stamps);
+				updateBuilder.setDoc(doc);
+			} else if (update.getScript() != null) {
+				Map<String, Object> params = new HashMap<String, Object>(update.getParams());
+				params.put("_stamps", stamps);
+				updateBuilder.setScript(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, scriptSource(update.getScript()), params));
+			} else {
+				Map<String, Object> doc = serializeFields(update.getFields());
+				Map<String, Object> params = new HashMap<String, Object>();
+				params.put("_doc", doc);
+				params.put("_stamps", stamps);
+				updateBuilder.setScript(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, MERGE_SCRIPT, params));
+				if (update.isFieldsAsUpsert()) {
+					upsert = new HashMap<String, Object>(doc);
+				}
+			}
+			if (upsert != null) {
+				upsert.putAll(stamps);
+				updateBuilder.setUpsert(upsert);
+			}
+			if (update.getVersion() != null) {
+				updateBuilder.setVersion(update.getVersion());
+			}
+			// The new index needs the whole document, as the copy may not have reached it yet
+			updateBuilder.setFetchSource(shadow != null);
+			builder.add(updateBuilder);
+		}
+
+		long start = System.nanoTime();
+		BulkResponse response;
+		try {
+			response = builder.get();
+		} finally {
+			updateManyTimer.recordSince(start);
+			Trace.span("repository.updateMany", start);
+		}
+		BulkRequestBuilder shadowBuilder = client.prepareBulk();
+		for (BulkItemResponse item : response.getItems()) {
+			if (item.isFailed()) {
+				if (item.status() == RestStatus.NOT_FOUND) {
+					results.add(PartialUpdate.Result.NOT_FOUND);
+				} else if (item.status() == RestStatus.CONFLICT) {
+					results.add(PartialUpdate.Result.CONFLICT);
+				} else {
+					bulkItemFailures.increment();
+					results.add(PartialUpdate.Result.FAILED);
+				}
+				continue;
+			}
+			UpdateResponse updateResponse = item.getResponse();
+			switch (updateResponse.getResult()) {
+				case CREATED: results.add(PartialUpdate.Result.CREATED); break;
+				case NOOP: results.add(PartialUpdate.Result.UNCHANGED); break;
+				default: results.add(PartialUpdate.Result.UPDATED); break;
+			}
+			if (shadow != null && updateResponse.getGetResult() != null) {
+				shadowBuilder.add(shadowCopy(shadow, item.getId(), updateResponse.getVersion(), updateResponse.getGetResult().sourceAsMap()));
+			}
+		}
+		if (shadowBuilder.numberOfActions() > 0) {
+			// Copies overtaken by a later write of the same document fail with a version conflict, which is ignored
+			shadowBuilder.get();
+		}
+		return results;
+	}
+
+	/**
+	 * Prepare to copy a document just written to the shadow index of a running reindex.  The copy carries
+	 * the version of the write as an external version, so that when two writes of a document race, the
+	 * copy of the earlier one cannot overwrite the later one
+	 * @param shadow The shadow index
+	 * @param id The id of the document
+	 * @param version The version the write gave the document
+	 * @param source The whole document
+	 * @return The index request
+	 */
+	private IndexRequestBuilder shadowCopy(String shadow, String id, long version, Map<String, Object> source) {
+		return client.prepareIndex(shadow, mapping, id)
+			.setSource(source)
+			.setVersion(version)
+			.setVersionType(VersionType.EXTERNAL);
+	}
+
+	/**
+	 * Wrap the script of an update so that it only stamps the document if the script changed it
+	 * @param script The painless source of the update's script
+	 * @return The painless source to run
+	 */
+	private static String scriptSource(String script) {
+		String body = script.trim();
+		// Painless needs a semicolon between statements, except after a block
+		boolean terminated = body.endsWith(";") || body.endsWith("}");
+		return UPDATE_FUNCTIONS
+			+ "def _before = _copy(ctx._source);\n"
+			+ body + (terminated ? "\n" : "\n;\n")
+			+ "boolean _changed = !_same(ctx._source, _before);\n"
+			+ STAMP_IF_CHANGED;
+	}
+
+	/**
+	 * Stamp a document being written with the time and the next change sequence
+	 * @param source The document source, or the partial document of an update
+	 * @return The passed source
+	 */
+	private Map<String, Object> stamp(Map<String, Object> source) {
+		long sequence = nextSequence();
+		source.put(SEQUENCE, sequence);
+		source.put(MODIFIED_AT, sequence / SEQUENCES_PER_MILLI);
+		return source;
+	}
+
+	/**
+	 * Get the next change sequence.  Sequences follow the clock so that writes through different
+	 * instances interleave in time order, and always increase within this instance
+	 * @return The change sequence
+	 */
+	private long nextSequence() {
+		while (true) {
+			long last = lastSequence.get();
+			long next = Math.max(last + 1, System.currentTimeMillis() * SEQUENCES_PER_MILLI);
+			if (lastSequence.compareAndSet(last, next)) {
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Hold the change feed behind a write about to be stamped, until {@link #releaseChanges(long)}
+	 * @return The hold, which is the lowest change sequence the write may stamp
+	 */
+	private long holdChanges() {
+		long floor = nextSequence();
+		pendingWrites.put(floor, Long.MAX_VALUE);
+		return floor;
+	}
+
+	/**
+	 * Release a hold once its write has completed.  The hold lasts for the settle time more, while the
+	 * written documents become searchable
+	 * @param hold The hold returned by {@link #holdChanges()}
+	 */
+	private void releaseChanges(long hold) {
+		pendingWrites.replace(hold, System.currentTimeMillis() + settleMillis);
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#settledSequence()
+	 */
+	@Override
+	public long settledSequence() {
+		long now = System.currentTimeMillis();
+		long settled = (now - settleMillis) * SEQUENCES_PER_MILLI;
+		for (Map.Entry<Long, Long> hold : pendingWrites.entrySet()) {
+			if (hold.getValue() > now) {
+				return Math.min(settled, hold.getKey());
+			}
+			pendingWrites.remove(hold.getKey(), hold.getValue());
+		}
+		return settled;
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#changesSince(java.lang.String, int)
+	 */
+	@Override
+	public ChangeBatch<T> changesSince(String cursor, int limit) {
+		long start = System.nanoTime();
+		try {
+			long settled = settledSequence();
+			// Documents written before writes were stamped come first, so a sync from no cursor sees everything
+			SearchRequestBuilder search = client.prepareSearch(index)
+				.setTypes(mapping)
+				.setVersion(true)
+				.setQuery(QueryBuilders.boolQuery()
+					.should(QueryBuilders.rangeQuery(SEQUENCE).lt(settled))
+					.should(QueryBuilders.boolQuery().mustNot(QueryBuilders.existsQuery(SEQUENCE)))
+					.minimumShouldMatch(1))
+				.addSort(SortBuilders.fieldSort(SEQUENCE).order(SortOrder.ASC).missing("_first"))
+				.addSort(SortBuilders.fieldSort(UidFieldMapper.NAME).order(SortOrder.ASC))
+				.setSize(limit);
+			if (cursor != null && !cursor.isEmpty()) {
+				search.searchAfter(ChangeBatch.decodeCursor(cursor));
+			}
+			SearchHits hits = search.get().getHits();
+			List<T> changes = new ArrayList<T>(hits.getHits().length);
+			String next = cursor;
+			for (SearchHit hit : hits.getHits()) {
+				T entity = entityFromMap(hit.getSourceAsMap());
+				entity.setId(hit.getId());
+				entity.setVersion(hit.getVersion());
+				changes.add(entity);
+				next = ChangeBatch.encodeCursor(hit.getSortValues());
+			}
+			return new ChangeBatch<T>(changes, next, changes.size() == limit);
+		} finally {
+			changesTimer.recordSince(start);
+			Trace.span("repository.changesSince", start);
+		}
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#suggest(java.lang.String, java.lang.String, int)
+	 */
+	@Override
+	public List<T> suggest(String field, String prefix, int limit) {
+		long start = System.nanoTime();
+		try {
+			SearchHits hits = client.prepareSearch(index)
+				.setTypes(mapping)
+				// Every word typed so far must be the prefix of a word in the field
+				.setQuery(live(QueryBuilders.matchQuery(field + "." + SUGGEST_FIELD, prefix).operator(Operator.AND)))
+				.setFetchSource(new String[] { field }, null)
+				.setSize(limit)
+				.get()
+				.getHits();
+			List<T> suggestions = new ArrayList<T>(hits.getHits().length);
+			for (SearchHit hit : hits.getHits()) {
+				T entity = entityFromMap(hit.getSourceAsMap());
+				entity.setId(hit.getId());
+				suggestions.add(entity);
+			}
+			return suggestions;
+		} finally {
+			suggestTimer.recordSince(start);
+			Trace.span("repository.suggest", start);
+		}
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#statistics(java.util.List)
+	 */
+	@Override
+	public Statistics statistics(List<Statistic> statistics) {
+		FilterAggregationBuilder live = AggregationBuilders.filter(LIVE, live(QueryBuilders.matchAllQuery()));
+		for (Statistic statistic : statistics) {
+			String field = aggregatableField(statistic);
+			switch (statistic.getKind()) {
+				case TERMS:
+					live.subAggregation(AggregationBuilders.terms(statistic.getName()).field(field).size(statistic.getSize()));
+					break;
+				case CARDINALITY:
+					live.subAggregation(AggregationBuilders.cardinality(statistic.getName()).field(field));
+					break;
+				case DATE_HISTOGRAM:
+					if (!DATE_INTERVALS.contains(statistic.getInterval())) {
+						throw new IllegalArgumentException("Unknown interval " + statistic.getInterval());
+					}
+					live.subAggregation(AggregationBuilders.dateHistogram(statistic.getName()).field(field)
+						.dateHistogramInterval(new DateHistogramInterval(statistic.getInterval())));
+					break;
+			}
+		}
+
+		long start = System.nanoTime();
+		try {
+			// Without hits or a relative date the result is kept by the shard request cache until the next refresh
+			Aggregations aggregations = client.prepareSearch(index)
+				.setTypes(mapping)
+				.setSize(0)
+				.setRequestCache(true)
+				.addAggregation(live)
+				.addAggregation(AggregationBuilders.filter(DELETED, QueryBuilders.termQuery(DELETED, true)))
+				.get()
+				.getAggregations();
+			Filter liveResult = aggregations.get(LIVE);
+			Map<String, Object> values = new LinkedHashMap<String, Object>();
+			for (Statistic statistic : statistics) {
+				Aggregation aggregation = liveResult.getAggregations().get(statistic.getName());
+				if (aggregation instanceof Cardinality) {
+					values.put(statistic.getName(), ((Cardinality) aggregation).getValue());
+				} else {
+					Map<String, Long> counts = new LinkedHashMap<String, Long>();
+					for (MultiBucketsAggregation.Bucket bucket : ((MultiBucketsAggregation) aggregation).getBuckets()) {
+						counts.put(bucket.getKeyAsString(), bucket.getDocCount());
+					}
+					values.put(statistic.getName(), counts);
+				}
+			}
+			return new Statistics(liveResult.getDocCount(), ((Filter) aggregations.get(DELETED)).getDocCount(), values);
+		} finally {
+			statisticsTimer.recordSince(start);
+			Trace.span("repository.statistics", start);
+		}
+	}
+
+	/**
+	 * Get the indexed field to aggregate for a statistic, from the mapping declared on the model
+	 * @param statistic The statistic
+	 * @return The name of the field or multi-field holding values for aggregation
+	 * @throws IllegalArgumentException the field does not exist or its mapping keeps no values to aggregate
+	 */
+	private String aggregatableField(Statistic statistic) {
+		DataField field = findField(statistic.getField());
+		FieldMapping options = field.getMapping();
+		String type = options == null || options.type().isEmpty() ? getESType(field.getType()) : options.type();
+		if (options != null && !options.enabled()) {
+			throw new IllegalArgumentException(field.getName() + " is not indexed");
+		}
+		if (statistic.getKind() == Statistic.Kind.DATE_HISTOGRAM && !"date".equals(type)) {
+			throw new IllegalArgumentException(field.getName() + " is not a date");
+		}
+		if ("text".equals(type)) {
+			// Analysed text has no doc values, but a keyword multi-field does
+			for (MultiField multiField : options.fields()) {
+				if ("keyword".equals(multiField.type())) {
+					return field.getName() + "." + multiField.name();
+				}
+			}
+			throw new IllegalArgumentException(field.getName() + " is text without a keyword multi-field");
+		}
+		if (options != null && !options.docValues()) {
+			throw new IllegalArgumentException(field.getName() + " has no doc values");
+		}
+		return field.getName();
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#latestSequence()
+	 */
+	@Override
+	public long latestSequence() {
+		SearchHits hits = client.prepareSearch(index)
+			.setTypes(mapping)
+			.setSize(1)
+			.setFetchSource(false)
+			.addSort(SortBuilders.fieldSort(SEQUENCE).order(SortOrder.DESC).missing("_last"))
+			.get()
+			.getHits();
+		if (hits.getHits().length == 0 || !(hits.getAt(0).getSortValues()[0] instanceof Number)) {
+			return Long.MIN_VALUE;
+		}
+		return ((Number) hits.getAt(0).getSortValues()[0]).longValue();
+	}
+
+	/**
+	 * Find a field of the model
+	 * @param name The model field name
+	 * @return The field
+	 * @throws IllegalArgumentException the model has no such field
+	 */
+	private DataField findField(String name) {
+		for (DataField field : this.fields) {
+			if (field.getName().equals(name)) {
+				return field;
+			}
+		}
+		throw new IllegalArgumentException(genericType.getSimpleName() + " has no field " + name);
+	}
+
+	/**
+	 * Convert model field values into their stored form
+	 * @param values The values keyed by model field name
+	 * @return The stored values keyed by field name
+	 * @throws IllegalArgumentException a value is for a field the model does not have
+	 */
+	private Map<String, Object> serializeFields(Map<String, Object> values) {
+		Map<String, Object> source = new HashMap<String, Object>();
+		for (Map.Entry<String, Object> value : values.entrySet()) {
+			DataField field = findField(value.getKey());
+			try {
+				source.put(field.getName(), field.serialize(value.getValue()));
+			} catch (Exception e) {
+				throw new IllegalArgumentException("Invalid value for " + value.getKey(), e);
+			}
+		}
+		return source;
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#purgeDeleted(long, float)
+	 */
+	@Override
+	public long purgeDeleted(long retentionMillis, float requestsPerSecond) {
+		// Counted before checking for a reindex, which checks the other way round, so that one of the two always backs off
+		purges.incrementAndGet();
+		try {
+			if (reindexRunning()) {
+				// Only the alias would be purged, and the copy would keep the documents in the new index
+				logger.info("Skipping the purge of " + index + " while it is reindexed");
+				return 0;
+			}
+			long start = System.nanoTime();
+			BulkByScrollResponse response = DeleteByQueryAction.INSTANCE.newRequestBuilder(client)
+				.source(index)
+				.filter(QueryBuilders.boolQuery()
+					.filter(QueryBuilders.typeQuery(mapping))
+					.filter(QueryBuilders.termQuery(DELETED, true))
+					.filter(QueryBuilders.rangeQuery(DELETED_AT).lt(System.currentTimeMillis() - retentionMillis)))
+				.abortOnVersionConflict(false)
+				.setRequestsPerSecond(requestsPerSecond)
+				.get();
+			adminTimer("purge").recordSince(start);
+			purgedDocuments.increment(response.getDeleted());
+			return response.getDeleted();
+		} finally {
+			purges.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#getIndex()
+	 */
+	@Override
+	public String getIndex() {
+		return index;
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#getType()
+	 */
+	@Override
+	public String getType() {
+		return mapping;
+	}
+
+	/**
+	 * @see candidatetest.main.repository.ElasticRepository#roundTrip(candidatetest.main.model.data.AbstractModel)
+	 */
+	@Override
+	public T roundTrip(T entity) {
+		return entityFromMap(mapFromEntity(entity));
+	}
+
 	/**
 	 * @see candidatetest.main.repository.ElasticRepository#findOne(java.lang.String)
 	 */
 	@Override
 	public T findOne(String id) {
+		long start = System.nanoTime();
 		try {
 			SearchHits hits = client.prepareSearch(index)
 				.setVersion(true)
 		        .setTypes(mapping)
-		        .setQuery(QueryBuilders.idsQuery().addIds(new String[] {id}))
+		        .setQuery(live(QueryBuilders.idsQuery().addIds(new String[] {id})))
 		        .setFrom(0)
 		        .setSize(1)
 		        .get()
 		        .getHits();
-			return hits.totalHits == 0 ? null : entityFromMap(hits.getAt(0).getSourceAsMap());
+			if (hits.totalHits == 0) {
+				return null;
+			}
+			T entity = entityFromMap(hits.getAt(0).getSourceAsMap());
+			entity.setVersion(hits.getAt(0).getVersion());
+			return entity;
 		} catch (Exception ex) {
 			throw new RuntimeException();
+		} finally {
+			findOneTimer.recordSince(start);
+			Trace.span("repository.findOne", start);
 		}
 	}
 
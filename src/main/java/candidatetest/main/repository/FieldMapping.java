@@ -0,0 +1,63 @@
+package candidatetest.main.repository;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Controls how a model field is mapped in ElasticSearch.  Placed on the getter of a field of an
+ * {@link candidatetest.main.model.data.AbstractModel} subclass.  Fields which are never queried
+ * should turn off indexing and doc values so they cost nothing beyond their place in the source.
+ * Changes to an existing field only apply to a new index, see {@link ElasticRepository#reindex(int, boolean)}
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface FieldMapping {
+
+	/**
+	 * The ElasticSearch type of the field, e.g. {@code "text"}.  By default it is derived from the Java type
+	 * @return The ElasticSearch type, or an empty string to derive it
+	 */
+	String type() default "";
+
+	/**
+	 * Whether the field can be searched
+	 * @return {@code false} to keep the field out of the inverted index
+	 */
+	boolean index() default true;
+
+	/**
+	 * Whether the field can be sorted and aggregated
+	 * @return {@code false} to keep the field out of the column store
+	 */
+	boolean docValues() default true;
+
+	/**
+	 * Whether the length of a text field is stored for scoring.  Ignored for other types, which never have norms
+	 * @return {@code true} to store norms for a text field
+	 */
+	boolean norms() default false;
+
+	/**
+	 * Whether the field is stored separately from the source
+	 * @return {@code true} to store the field
+	 */
+	boolean store() default false;
+
+	/**
+	 * Whether the field is parsed at all.  A disabled field is only kept in the source, and the
+	 * other settings are ignored
+	 * @return {@code false} to skip parsing the field
+	 */
+	boolean enabled() default true;
+
+	/**
+	 * Additional ways of indexing the same value, e.g. a keyword copy of a text field for sorting
+	 * @return The multi-fields of the field
+	 */
+	MultiField[] fields() default {};
+
+}
@@ -0,0 +1,57 @@
+package candidatetest.main.repository;
+
+/**
+ * The physical layout of the index owned by a repository
+ */
+public class IndexSettings {
+
+	/**
+	 * The prefix shared by the indices of all repositories
+	 */
+	private final String prefix;
+	/**
+	 * The number of primary shards
+	 */
+	private final int shards;
+	/**
+	 * The number of replicas of each primary shard
+	 */
+	private final int replicas;
+
+	/**
+	 * Construct new index settings
+	 * @param prefix The prefix shared by the indices of all repositories
+	 * @param shards The number of primary shards
+	 * @param replicas The number of replicas of each primary shard
+	 */
+	public IndexSettings(String prefix, int shards, int replicas) {
+		this.prefix = prefix;
+		this.shards = shards;
+		this.replicas = replicas;
+	}
+
+	/**
+	 * Get the prefix shared by the indices of all repositories
+	 * @return The index prefix
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Get the number of primary shards
+	 * @return The number of primary shards
+	 */
+	public int getShards() {
+		return shards;
+	}
+
+	/**
+	 * Get the number of replicas of each primary shard
+	 * @return The number of replicas
+	 */
+	public int getReplicas() {
+		return replicas;
+	}
+
+}
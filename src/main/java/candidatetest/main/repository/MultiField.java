@@ -0,0 +1,40 @@
+package candidatetest.main.repository;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A multi-field of a model field, declared through {@link FieldMapping#fields()}
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface MultiField {
+
+	/**
+	 * The name of the multi-field, queried as {@code field.name}
+	 * @return The name of the multi-field
+	 */
+	String name();
+
+	/**
+	 * The ElasticSearch type of the multi-field
+	 * @return The ElasticSearch type
+	 */
+	String type();
+
+	/**
+	 * The analyzer of a text multi-field
+	 * @return The analyzer name, or an empty string for the default
+	 */
+	String analyzer() default "";
+
+	/**
+	 * The analyzer applied to queries of a text multi-field, when it differs from the index analyzer
+	 * @return The analyzer name, or an empty string for the index analyzer
+	 */
+	String searchAnalyzer() default "";
+
+}
@@ -0,0 +1,227 @@
+package candidatetest.main.repository;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A change to part of a stored entity, applied by ElasticSearch without the entity being read
+ * and rewritten by the application.  The change is either a set of field values or a small script
+ */
+public class PartialUpdate {
+
+	/**
+	 * The outcomes of a partial update
+	 */
+	public enum Result {
+		/** The entity was changed */									UPDATED,
+		/** The entity did not exist and was created from the upsert */	CREATED,
+		/** The entity already had the values */						UNCHANGED,
+		/** The entity does not exist and there was no upsert */			NOT_FOUND,
+		/** The entity is no longer at the expected version */			CONFLICT,
+		/** ElasticSearch rejected the update */						FAILED
+	}
+
+	/**
+	 * The id of the entity to change
+	 */
+	private final String id;
+	/**
+	 * The field values to set, keyed by model field name
+	 */
+	private Map<String, Object> fields;
+	/**
+	 * The painless source of the script to run against the stored document
+	 */
+	private String script;
+	/**
+	 * The parameters passed to the script
+	 */
+	private Map<String, Object> params;
+	/**
+	 * Whether to create the entity from the field values if it does not exist
+	 */
+	private boolean fieldsAsUpsert;
+	/**
+	 * The document to create if the entity does not exist
+	 */
+	private Map<String, Object> upsert;
+	/**
+	 * The version the entity must be at for the change to apply
+	 */
+	private Long version;
+	/**
+	 * Whether the field values always differ from the stored ones, so there is no point checking for a change
+	 */
+	private boolean alwaysChanges;
+
+	/**
+	 * Construct a change to an entity
+	 * @param id The id of the entity to change
+	 */
+	private PartialUpdate(String id) {
+		this.id = id;
+	}
+
+	/**
+	 * Set some fields of an entity, leaving the others as they are
+	 * @param id The id of the entity to change
+	 * @param fields The values to set keyed by model field name
+	 * @return The update
+	 */
+	public static PartialUpdate fields(String id, Map<String, Object> fields) {
+		PartialUpdate update = new PartialUpdate(id);
+		update.fields = fields;
+		return update;
+	}
+
+	/**
+	 * Set one field of an entity, leaving the others as they are
+	 * @param id The id of the entity to change
+	 * @param field The model field name
+	 * @param value The value to set
+	 * @return The update
+	 */
+	public static PartialUpdate field(String id, String field, Object value) {
+		Map<String, Object> fields = new HashMap<String, Object>();
+		fields.put(field, value);
+		return fields(id, fields);
+	}
+
+	/**
+	 * Run a painless script against the stored document, available to the script as {@code ctx._source}
+	 * @param id The id of the entity to change
+	 * @param source The script source
+	 * @param params The parameters available to the script as {@code params}
+	 * @return The update
+	 */
+	public static PartialUpdate script(String id, String source, Map<String, Object> params) {
+		PartialUpdate update = new PartialUpdate(id);
+		update.script = source;
+		update.params = params;
+		return update;
+	}
+
+	/**
+	 * Add a value to an array field unless it is already present, e.g. a role of a user
+	 * @param id The id of the entity to change
+	 * @param field The model field name of the array
+	 * @param value The value to add
+	 * @return The update
+	 */
+	public static PartialUpdate addValue(String id, String field, Object value) {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("field", field);
+		params.put("value", value);
+		return script(id,
+			"def values = ctx._source[params.field];"
+			+ "if (values == null) { ctx._source[params.field] = [params.value] }"
+			+ "else if (values.contains(params.value)) { ctx.op = 'none' }"
+			+ "else { values.add(params.value) }", params);
+	}
+
+	/**
+	 * Create the entity from the field values if it does not exist.  Only applies to field updates
+	 * @return This update
+	 */
+	public PartialUpdate asUpsert() {
+		this.fieldsAsUpsert = true;
+		return this;
+	}
+
+	/**
+	 * Create the entity from a document if it does not exist
+	 * @param document The source of the entity to create keyed by model field name
+	 * @return This update
+	 */
+	public PartialUpdate upsert(Map<String, Object> document) {
+		this.upsert = document;
+		return this;
+	}
+
+	/**
+	 * Only apply the change if the entity has not been written since it was read
+	 * @param version The version of the entity when it was read, see {@link candidatetest.main.model.data.AbstractModel#getVersion()}
+	 * @return This update
+	 */
+	public PartialUpdate ifVersion(long version) {
+		this.version = version;
+		return this;
+	}
+
+	/**
+	 * Declare that the field values always differ from the stored ones, e.g. a freshly salted password hash, so
+	 * the update is sent as a plain partial document rather than a script which first checks for a change.  Such
+	 * an update is never reported as unchanged.  Only applies to field updates
+	 * @return This update
+	 */
+	public PartialUpdate alwaysChanges() {
+		this.alwaysChanges = true;
+		return this;
+	}
+
+	/**
+	 * Get the id of the entity to change
+	 * @return The entity id
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Get the field values to set
+	 * @return The values keyed by model field name, or null for a script update
+	 */
+	public Map<String, Object> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Get the script to run
+	 * @return The painless source, or null for a field update
+	 */
+	public String getScript() {
+		return script;
+	}
+
+	/**
+	 * Get the parameters of the script
+	 * @return The script parameters
+	 */
+	public Map<String, Object> getParams() {
+		return params == null ? Collections.<String, Object>emptyMap() : params;
+	}
+
+	/**
+	 * Get whether to create the entity from the field values if it does not exist
+	 * @return {@code true} if the field values are the upsert
+	 */
+	public boolean isFieldsAsUpsert() {
+		return fieldsAsUpsert;
+	}
+
+	/**
+	 * Get the document to create if the entity does not exist
+	 * @return The upsert document, or null
+	 */
+	public Map<String, Object> getUpsert() {
+		return upsert;
+	}
+
+	/**
+	 * Get the version the entity must be at
+	 * @return The expected version, or null to apply regardless
+	 */
+	public Long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get whether the field values always differ from the stored ones
+	 * @return {@code true} if no check for a change is needed
+	 */
+	public boolean isAlwaysChanges() {
+		return alwaysChanges;
+	}
+
+}
@@ -0,0 +1,100 @@
+package candidatetest.main.repository;
+
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Permanently removes soft-deleted documents on a background thread once they are older than the
+ * retention period, so that the indices do not grow with churn
+ */
+public class PurgeJob {
+
+	/**
+	 * Logger for purge results and failures
+	 */
+	private static final Logger logger = LogManager.getLogger(PurgeJob.class);
+
+	/**
+	 * The repositories to purge
+	 */
+	private final Collection<? extends ElasticRepository<?>> repositories;
+	/**
+	 * The interval between purges in milliseconds
+	 */
+	private final long intervalMillis;
+	/**
+	 * How long soft-deleted documents are kept in milliseconds
+	 */
+	private final long retentionMillis;
+	/**
+	 * The maximum number of documents removed per second
+	 */
+	private final float requestsPerSecond;
+	/**
+	 * The single daemon thread running the purges
+	 */
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Construct a new purge job
+	 * @param repositories The repositories to purge
+	 * @param intervalMillis The interval between purges in milliseconds
+	 * @param retentionMillis How long soft-deleted documents are kept in milliseconds
+	 * @param requestsPerSecond The maximum number of documents removed per second
+	 */
+	public PurgeJob(Collection<? extends ElasticRepository<?>> repositories, long intervalMillis, long retentionMillis, float requestsPerSecond) {
+		this.repositories = repositories;
+		this.intervalMillis = intervalMillis;
+		this.retentionMillis = retentionMillis;
+		this.requestsPerSecond = requestsPerSecond;
+	}
+
+	/**
+	 * Start purging in the background.  The first purge waits a full interval so it does not slow down startup
+	 */
+	@PostConstruct
+	public void start() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "purge-job");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::purge, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop purging
+	 */
+	@PreDestroy
+	public void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Purge each repository in turn
+	 */
+	void purge() {
+		for (ElasticRepository<?> repository : repositories) {
+			try {
+				long purged = repository.purgeDeleted(retentionMillis, requestsPerSecond);
+				if (purged > 0) {
+					logger.info("Purged " + purged + " deleted documents from " + repository.getIndex());
+				}
+			} catch (Exception e) {
+				// Never let an exception cancel the scheduled purge
+				logger.warn("Purge of " + repository.getIndex() + " failed", e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+package candidatetest.main.repository;
+
+/**
+ * The progress and outcome of rebuilding a repository index
+ */
+public class ReindexReport {
+
+	/**
+	 * The states of a reindex
+	 */
+	public enum State {
+		/** The new index is being built */			RUNNING,
+		/** The alias points to the new index */		COMPLETED,
+		/** The alias still points to the old index */	FAILED
+	}
+
+	/**
+	 * The state of the reindex
+	 */
+	private volatile State state = State.RUNNING;
+	/**
+	 * The index being copied
+	 */
+	private final String source;
+	/**
+	 * The index being built
+	 */
+	private final String destination;
+	/**
+	 * The number of parallel slices copying documents
+	 */
+	private final int slices;
+	/**
+	 * The time the reindex started in milliseconds since the epoch
+	 */
+	private final long started = System.currentTimeMillis();
+	/**
+	 * The duration of the reindex in milliseconds, set when it ends
+	 */
+	private volatile long tookMillis;
+	/**
+	 * The number of documents copied
+	 */
+	private volatile long created;
+	/**
+	 * The number of documents skipped because a newer version was written during the reindex
+	 */
+	private volatile long versionConflicts;
+	/**
+	 * The number of documents which failed to copy
+	 */
+	private volatile long failures;
+	/**
+	 * The error which failed the reindex
+	 */
+	private volatile String error;
+
+	/**
+	 * Start a new report
+	 * @param source The index being copied
+	 * @param destination The index being built
+	 * @param slices The number of parallel slices copying documents
+	 */
+	public ReindexReport(String source, String destination, int slices) {
+		this.source = source;
+		this.destination = destination;
+		this.slices = slices;
+	}
+
+	/**
+	 * Record the copy statistics
+	 * @param created The number of documents copied
+	 * @param versionConflicts The number of documents skipped in favour of newer versions
+	 * @param failures The number of documents which failed to copy
+	 */
+	void copied(long created, long versionConflicts, long failures) {
+		this.created = created;
+		this.versionConflicts = versionConflicts;
+		this.failures = failures;
+	}
+
+	/**
+	 * Mark the reindex as complete
+	 */
+	void completed() {
+		this.tookMillis = System.currentTimeMillis() - started;
+		this.state = State.COMPLETED;
+	}
+
+	/**
+	 * Mark the reindex as failed
+	 * @param error The reason for the failure
+	 */
+	void failed(String error) {
+		this.tookMillis = System.currentTimeMillis() - started;
+		this.error = error;
+		this.state = State.FAILED;
+	}
+
+	/**
+	 * Get the state of the reindex
+	 * @return The state
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Get the index being copied
+	 * @return The source index name
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Get the index being built
+	 * @return The destination index name
+	 */
+	public String getDestination() {
+		return destination;
+	}
+
+	/**
+	 * Get the number of parallel slices copying documents
+	 * @return The number of slices
+	 */
+	public int getSlices() {
+		return slices;
+	}
+
+	/**
+	 * Get the time the reindex started
+	 * @return The start time in milliseconds since the epoch
+	 */
+	public long getStarted() {
+		return started;
+	}
+
+	/**
+	 * Get the duration of the reindex
+	 * @return The duration in milliseconds, 0 while running
+	 */
+	public long getTookMillis() {
+		return tookMillis;
+	}
+
+	/**
+	 * Get the number of documents copied
+	 * @return The number of documents copied
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * Get the number of documents skipped because a newer version was written during the reindex
+	 * @return The number of version conflicts
+	 */
+	public long getVersionConflicts() {
+		return versionConflicts;
+	}
+
+	/**
+	 * Get the number of documents which failed to copy
+	 * @return The number of failures
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Get the error which failed the reindex
+	 * @return The error, null unless the reindex failed
+	 */
+	public String getError() {
+		return error;
+	}
+
+}
@@ -0,0 +1,118 @@
+package candidatetest.main.repository;
+
+/**
+ * A statistic computed by ElasticSearch over one field of the live entities of a repository,
+ * so that reports need one small query rather than every entity
+ */
+public class Statistic {
+
+	/**
+	 * The kinds of statistic
+	 */
+	public enum Kind {
+		/** The number of entities having each of the most common values */	TERMS,
+		/** The approximate number of distinct values */						CARDINALITY,
+		/** The number of entities in each interval of a date field */		DATE_HISTOGRAM
+	}
+
+	/**
+	 * The kind of statistic
+	 */
+	private final Kind kind;
+	/**
+	 * The model field name
+	 */
+	private final String field;
+	/**
+	 * The maximum number of values counted by a terms statistic
+	 */
+	private int size;
+	/**
+	 * The interval of a date histogram, e.g. {@code day} or {@code month}
+	 */
+	private String interval;
+
+	/**
+	 * Construct a statistic
+	 * @param kind The kind of statistic
+	 * @param field The model field name
+	 */
+	private Statistic(Kind kind, String field) {
+		this.kind = kind;
+		this.field = field;
+	}
+
+	/**
+	 * Count the entities having each of the most common values of a field, e.g. users by role
+	 * @param field The model field name
+	 * @param size The maximum number of values counted
+	 * @return The statistic
+	 */
+	public static Statistic terms(String field, int size) {
+		Statistic statistic = new Statistic(Kind.TERMS, field);
+		statistic.size = size;
+		return statistic;
+	}
+
+	/**
+	 * Count the distinct values of a field.  Counts above a few thousand are approximate
+	 * @param field The model field name
+	 * @return The statistic
+	 */
+	public static Statistic cardinality(String field) {
+		return new Statistic(Kind.CARDINALITY, field);
+	}
+
+	/**
+	 * Count the entities in each interval of a date field, e.g. users modified each month
+	 * @param field The model field name of a date field
+	 * @param interval The interval, one of {@code minute}, {@code hour}, {@code day}, {@code week}, {@code month}, {@code quarter} or {@code year}
+	 * @return The statistic
+	 */
+	public static Statistic dateHistogram(String field, String interval) {
+		Statistic statistic = new Statistic(Kind.DATE_HISTOGRAM, field);
+		statistic.interval = interval;
+		return statistic;
+	}
+
+	/**
+	 * Get the name the statistic is reported under
+	 * @return The kind and field, e.g. {@code terms:roles}
+	 */
+	public String getName() {
+		return kind.name().toLowerCase() + ":" + field;
+	}
+
+	/**
+	 * Get the kind of statistic
+	 * @return The kind
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Get the model field name
+	 * @return The field name
+	 */
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * Get the maximum number of values counted by a terms statistic
+	 * @return The number of values
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Get the interval of a date histogram
+	 * @return The interval
+	 */
+	public String getInterval() {
+		return interval;
+	}
+
+}
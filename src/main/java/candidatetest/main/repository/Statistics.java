@@ -0,0 +1,61 @@
+package candidatetest.main.repository;
+
+import java.util.Map;
+
+/**
+ * The statistics of the entities of a repository
+ */
+public class Statistics {
+
+	/**
+	 * The number of live entities
+	 */
+	private final long total;
+	/**
+	 * The number of soft-deleted entities not yet purged
+	 */
+	private final long deleted;
+	/**
+	 * The requested statistics of the live entities keyed by name
+	 */
+	private final Map<String, Object> values;
+
+	/**
+	 * Construct the statistics of a repository
+	 * @param total The number of live entities
+	 * @param deleted The number of soft-deleted entities not yet purged
+	 * @param values The requested statistics keyed by name, see {@link #getValues()}
+	 */
+	public Statistics(long total, long deleted, Map<String, Object> values) {
+		this.total = total;
+		this.deleted = deleted;
+		this.values = values;
+	}
+
+	/**
+	 * Get the number of live entities
+	 * @return The entity count
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Get the number of soft-deleted entities which have not been purged yet
+	 * @return The deleted entity count
+	 */
+	public long getDeleted() {
+		return deleted;
+	}
+
+	/**
+	 * Get the requested statistics of the live entities, keyed by {@link Statistic#getName()}.  Terms
+	 * and date histograms are maps of value to entity count, most common value or earliest date first,
+	 * and cardinalities are counts
+	 * @return The statistics
+	 */
+	public Map<String, Object> getValues() {
+		return values;
+	}
+
+}
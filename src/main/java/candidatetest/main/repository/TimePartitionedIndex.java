@@ -0,0 +1,265 @@
+package candidatetest.main.repository;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.ResourceAlreadyExistsException;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+import candidatetest.main.metrics.Histogram;
+import candidatetest.main.metrics.MetricsRegistry;
+
+/**
+ * An append-only stream of events stored in one index per UTC day, e.g. {@code candidatetest-login-audit-2017.11.20},
+ * for data which is written once, read by time range and expired by age.  The settings and mapping are held in an
+ * index template, so each day's index is created on demand when the first event of the day is written.  Retention
+ * deletes whole indices, which costs nothing like deleting their documents one by one
+ */
+public class TimePartitionedIndex {
+
+	/**
+	 * The length of a partition in milliseconds
+	 */
+	private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	/**
+	 * The format of the date suffix of each index
+	 */
+	private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+
+	/**
+	 * The name of one day's index
+	 */
+	private static final class Partition {
+		/** The day since the epoch */
+		private final long day;
+		/** The index name */
+		private final String index;
+
+		/**
+		 * Construct a partition
+		 * @param day The day since the epoch
+		 * @param index The index name
+		 */
+		private Partition(long day, String index) {
+			this.day = day;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * The ElasticSearch client
+	 */
+	private final Client client;
+	/**
+	 * The name shared by the template and, followed by the date, each index
+	 */
+	private final String name;
+	/**
+	 * The mapping type of the events
+	 */
+	private final String type;
+	/**
+	 * The shard and replica counts of each index
+	 */
+	private final IndexSettings settings;
+	/**
+	 * The ElasticSearch type of each event field, keyed by field name
+	 */
+	private final Map<String, String> fieldTypes;
+	/**
+	 * The indices known to exist
+	 */
+	private final Set<String> created = ConcurrentHashMap.newKeySet();
+	/**
+	 * The partition most recently written to, so that the index name is not formatted per event
+	 */
+	private volatile Partition current = new Partition(Long.MIN_VALUE, null);
+	/**
+	 * The registry in which the administration time is recorded
+	 */
+	private final MetricsRegistry metrics;
+
+	/**
+	 * Construct a new time-partitioned index.  Nothing is created until {@link #initialise()}
+	 * @param client The ElasticSearch client
+	 * @param metrics The registry in which the administration time is recorded
+	 * @param settings The prefix shared with the other indices and the shard and replica counts of each day's index
+	 * @param name The name of the stream, e.g. {@code login-audit}
+	 * @param type The mapping type of the events
+	 * @param fieldTypes The ElasticSearch type of each event field, keyed by field name.  Other fields are stored but not indexed
+	 */
+	public TimePartitionedIndex(Client client, MetricsRegistry metrics, IndexSettings settings, String name, String type, Map<String, String> fieldTypes) {
+		this.client = client;
+		this.name = settings.getPrefix() + "-" + name;
+		this.type = type;
+		this.settings = settings;
+		this.fieldTypes = fieldTypes;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Get the timer of an administrative operation
+	 * @param operation The name of the operation
+	 * @return The timer
+	 */
+	private Histogram adminTimer(String operation) {
+		return metrics.timer("elastic_admin_request_seconds", "Latency of ElasticSearch administrative operations", "type", type, "operation", operation);
+	}
+
+	/**
+	 * Create or replace the index template, which applies to indices created from then on
+	 * @throws IOException Thrown if the mapping cannot be built
+	 */
+	public void initialise() throws IOException {
+		long start = System.nanoTime();
+		XContentBuilder mapping = XContentFactory.jsonBuilder().startObject()
+			.startObject("_all").field("enabled", false).endObject()
+			.field("dynamic", false)
+			.startObject("properties");
+		for (Map.Entry<String, String> field : fieldTypes.entrySet()) {
+			mapping.startObject(field.getKey()).field("type", field.getValue()).endObject();
+		}
+		mapping.endObject().endObject();
+		client.admin().indices().preparePutTemplate(name)
+			.setTemplate(getPattern())
+			.setSettings(Settings.builder()
+				.put("index.number_of_shards", settings.getShards())
+				.put("index.number_of_replicas", settings.getReplicas())
+				// Events are read in reports rather than straight after they are written
+				.put("index.refresh_interval", "30s"))
+			.addMapping(type, mapping)
+			.get();
+		adminTimer("putTemplate").recordSince(start);
+	}
+
+	/**
+	 * Get the name of the template and the prefix of every index
+	 * @return The name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the pattern matching every index, for searches across the whole stream
+	 * @return The index pattern
+	 */
+	public String getPattern() {
+		return name + "-*";
+	}
+
+	/**
+	 * Get the index holding the events of an instant
+	 * @param timestamp The time of an event in milliseconds since the epoch
+	 * @return The index name
+	 */
+	public String partitionFor(long timestamp) {
+		long day = Math.floorDiv(timestamp, DAY_MILLIS);
+		Partition partition = current;
+		if (partition.day != day) {
+			partition = new Partition(day, name + "-" + SUFFIX.format(LocalDate.ofEpochDay(day)));
+			current = partition;
+		}
+		return partition.index;
+	}
+
+	/**
+	 * Start a bulk request of events
+	 * @return The bulk request
+	 */
+	public BulkRequestBuilder prepareBulk() {
+		return client.prepareBulk();
+	}
+
+	/**
+	 * Prepare to index an event, creating the index of its day from the template if this is the first event of the day
+	 * @param timestamp The time of the event in milliseconds since the epoch
+	 * @return The index request, to be given a source
+	 */
+	public IndexRequestBuilder prepareIndex(long timestamp) {
+		String index = partitionFor(timestamp);
+		if (!created.contains(index)) {
+			create(index);
+		}
+		return client.prepareIndex(index, type);
+	}
+
+	/**
+	 * Create an index from the template, tolerating another instance having created it first
+	 * @param index The index name
+	 */
+	private void create(String index) {
+		long start = System.nanoTime();
+		try {
+			client.admin().indices().prepareCreate(index).get();
+		} catch (ResourceAlreadyExistsException e) {
+			// Created by another instance
+		} finally {
+			adminTimer("createIndex").recordSince(start);
+		}
+		created.add(index);
+	}
+
+	/**
+	 * List the existing indices of the stream
+	 * @return The index names, oldest first
+	 */
+	public List<String> partitions() {
+		long start = System.nanoTime();
+		String[] indices = client.admin().indices().prepareGetIndex()
+			.setIndices(getPattern())
+			.setIndicesOptions(IndicesOptions.lenientExpandOpen())
+			.get()
+			.getIndices();
+		adminTimer("getIndex").recordSince(start);
+		List<String> partitions = new ArrayList<String>(Arrays.asList(indices));
+		partitions.sort(null);
+		return partitions;
+	}
+
+	/**
+	 * Delete the indices whose every event is older than the retention period
+	 * @param retentionMillis How long events are kept in milliseconds
+	 * @return The indices deleted
+	 */
+	public List<String> dropExpired(long retentionMillis) {
+		long cutoff = System.currentTimeMillis() - retentionMillis;
+		List<String> expired = new ArrayList<String>();
+		for (String index : partitions()) {
+			try {
+				LocalDate day = LocalDate.parse(index.substring(name.length() + 1), SUFFIX);
+				long end = day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+				if (end <= cutoff) {
+					expired.add(index);
+				}
+			} catch (DateTimeParseException | IndexOutOfBoundsException e) {
+				// Not a partition of this stream, e.g. a longer name sharing the prefix
+			}
+		}
+		if (!expired.isEmpty()) {
+			long start = System.nanoTime();
+			client.admin().indices().prepareDelete(expired.toArray(new String[expired.size()])).get();
+			adminTimer("deleteIndex").recordSince(start);
+			created.removeAll(expired);
+		}
+		return expired;
+	}
+
+}
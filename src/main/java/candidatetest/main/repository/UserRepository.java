@@ -6,5 +6,21 @@ import candidatetest.main.model.data.User;
  * The repository for storing user documents
  */
 public interface UserRepository extends ElasticRepository<User> {
+
+	/**
+	 * Replace the password of a user without reading the user first
+	 * @param id The user name
+	 * @param encodedPassword The encrypted password
+	 * @return {@code true} if the user exists
+	 */
+	boolean setPassword(String id, String encodedPassword);
+
+	/**
+	 * Grant a role to a user without reading the user first.  Granting a role the user has does nothing
+	 * @param id The user name
+	 * @param role The role to grant, e.g. {@code "ADMIN"}
+	 * @return {@code true} if the user exists
+	 */
+	boolean addRole(String id, String role);
 		
 }
@@ -6,6 +6,8 @@ import java.io.IOException;
 import org.elasticsearch.client.Client;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import candidatetest.main.metrics.MetricsRegistry;
+
 import candidatetest.main.model.data.*;
 import candidatetest.main.security.PasswordEncoder;
 
@@ -34,6 +36,8 @@ public class UserRepositoryImpl extends ElasticRepositoryImpl<User> implements U
 	/**
 	 * Initialise the User repository
 	 * @param client The ElasticSearch client for data operations
+	 * @param metrics The registry in which to record the repository metrics
+	 * @param settings The shard and replica layout of the user index
 	 * @param migrationManagerNotifier The migrations manager
 	 * @param props Elastic Repository Properties
 	 * @param retryTemplate The retry template for calls to the repository
@@ -43,8 +47,8 @@ public class UserRepositoryImpl extends ElasticRepositoryImpl<User> implements U
 	 * @throws IOException Thrown if the JSON builder fails to create JSON
 	 */
 	@Autowired
-	public UserRepositoryImpl(Client client) {
-		super(new User.Factory(), client);
+	public UserRepositoryImpl(Client client, MetricsRegistry metrics, IndexSettings settings) {
+		super(new User.Factory(), client, metrics, settings);
 	}
 		
 	/**
@@ -56,4 +60,23 @@ public class UserRepositoryImpl extends ElasticRepositoryImpl<User> implements U
 		this.createOne(initialAdminCredentials);
 	}
 
+	/**
+	 * @see candidatetest.main.repository.UserRepository#setPassword(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public boolean setPassword(String id, String encodedPassword) {
+		// A new hash has a new salt, so it never matches the stored one
+		PartialUpdate.Result result = updatePartial(PartialUpdate.field(id, "password", encodedPassword).alwaysChanges());
+		return result == PartialUpdate.Result.UPDATED;
+	}
+
+	/**
+	 * @see candidatetest.main.repository.UserRepository#addRole(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public boolean addRole(String id, String role) {
+		PartialUpdate.Result result = updatePartial(PartialUpdate.addValue(id, "roles", role));
+		return result == PartialUpdate.Result.UPDATED || result == PartialUpdate.Result.UNCHANGED;
+	}
+
 }
@@ -0,0 +1,66 @@
+package candidatetest.main.security;
+
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+/**
+ * Chooses the BCrypt cost for the host, so that verifying a password takes about the same time on
+ * every machine, and reads the cost of stored hashes so that ones of a lower cost can be replaced
+ */
+public final class BCryptCalibration {
+
+	/**
+	 * The cost at which the host is timed.  Each step up doubles the time
+	 */
+	private static final int PROBE_STRENGTH = 8;
+
+	/**
+	 * The number of timed hashes, the fastest of which is used so that JIT compilation and scheduling don't count
+	 */
+	private static final int PROBES = 3;
+
+	/**
+	 * Static utility only
+	 */
+	private BCryptCalibration() {}
+
+	/**
+	 * Find the highest cost whose verification fits in a target time on this host
+	 * @param targetMillis The target verification time in milliseconds
+	 * @param minStrength The lowest cost allowed, used even if it is slower than the target
+	 * @param maxStrength The highest cost allowed
+	 * @return The cost
+	 */
+	public static int calibrate(long targetMillis, int minStrength, int maxStrength) {
+		String salt = BCrypt.gensalt(PROBE_STRENGTH);
+		long fastest = Long.MAX_VALUE;
+		for (int i = 0; i < PROBES; i++) {
+			long start = System.nanoTime();
+			BCrypt.hashpw("calibration", salt);
+			fastest = Math.min(fastest, System.nanoTime() - start);
+		}
+		double millis = fastest / 1e6;
+		int strength = minStrength;
+		while (strength < maxStrength && millis * Math.pow(2, strength + 1 - PROBE_STRENGTH) <= targetMillis) {
+			strength++;
+		}
+		return strength;
+	}
+
+	/**
+	 * Read the cost of a BCrypt hash, e.g. 10 for {@code $2a$10$...}
+	 * @param cipherText The hash
+	 * @return The cost, or -1 if the text is not a BCrypt hash
+	 */
+	public static int strengthOf(String cipherText) {
+		if (cipherText == null || cipherText.length() < 7 || cipherText.charAt(0) != '$' || cipherText.charAt(3) != '$' || cipherText.charAt(6) != '$') {
+			return -1;
+		}
+		char tens = cipherText.charAt(4);
+		char units = cipherText.charAt(5);
+		if (tens < '0' || tens > '9' || units < '0' || units > '9') {
+			return -1;
+		}
+		return (tens - '0') * 10 + (units - '0');
+	}
+
+}
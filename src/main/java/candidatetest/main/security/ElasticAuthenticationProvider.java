@@ -1,16 +1,29 @@
 package candidatetest.main.security;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.LockedException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
 
+import candidatetest.main.audit.LoginAuditWriter;
+import candidatetest.main.audit.LoginEvent;
+import candidatetest.main.metrics.Counter;
+import candidatetest.main.metrics.Histogram;
+import candidatetest.main.metrics.MetricsRegistry;
 import candidatetest.main.model.data.User;
+import candidatetest.main.repository.PartialUpdate;
 import candidatetest.main.repository.UserRepository;
+import candidatetest.main.trace.Trace;
 
 /**
  * Custom authentication provider used to store user meta data in ElasticSearch
@@ -18,17 +31,86 @@ import candidatetest.main.repository.UserRepository;
 public class ElasticAuthenticationProvider implements AuthenticationProvider {
 
 	/**
-	 * Auto-wired password encoder used to create and compare one way encryption 
+	 * Logger for failed password rehashes
+	 */
+	private static final Logger logger = LogManager.getLogger(ElasticAuthenticationProvider.class);
+
+	/**
+	 * Auto-wired pool on which passwords are compared with their one way encryption
 	 */
 	@Autowired
-	private PasswordEncoder encoder;
+	private PasswordVerifier verifier;
+
+	/**
+	 * Auto-wired counter of recent failed logins
+	 */
+	@Autowired
+	private LoginThrottle throttle;
 	
 	/**
 	 * Auto-wired User repository used to read the user and password 
 	 */
 	@Autowired
 	private UserRepository userRepository;
-	
+
+	/**
+	 * Auto-wired writer to which every attempt is handed for the login audit
+	 */
+	@Autowired
+	private LoginAuditWriter audit;
+
+	/**
+	 * Auto-wired registry in which the authentication metrics are recorded
+	 */
+	@Autowired
+	private MetricsRegistry metrics;
+
+	/**
+	 * Time spent verifying passwords
+	 */
+	private Histogram passwordTimer;
+	/**
+	 * Authentications where the password matched
+	 */
+	private Counter successes;
+	/**
+	 * Authentications where the password did not match
+	 */
+	private Counter badPasswords;
+	/**
+	 * Authentications for user names which do not exist
+	 */
+	private Counter unknownUsers;
+	/**
+	 * Authentications rejected unchecked after too many recent failures
+	 */
+	private Counter throttled;
+	/**
+	 * Stored passwords replaced with a hash of the current cost
+	 */
+	private Counter rehashes;
+
+	/**
+	 * Look up the metrics recorded on every authentication once the registry has been wired
+	 */
+	@PostConstruct
+	public void initialiseMetrics() {
+		passwordTimer = metrics.timer("auth_password_verification_seconds", "Time spent verifying passwords");
+		successes = outcome("success");
+		badPasswords = outcome("bad_password");
+		unknownUsers = outcome("unknown_user");
+		throttled = outcome("throttled");
+		rehashes = metrics.counter("auth_password_rehash_total", "Stored passwords hashed again with the current cost after a login");
+	}
+
+	/**
+	 * Get the counter for an authentication outcome
+	 * @param outcome The name of the outcome
+	 * @return The counter for the outcome
+	 */
+	private Counter outcome(String outcome) {
+		return metrics.counter("auth_attempts_total", "Authentication attempts by outcome", "outcome", outcome);
+	}
 	
 	/**
 	 * Perform an authentication on the given credentials 
@@ -36,17 +118,68 @@ public class ElasticAuthenticationProvider implements AuthenticationProvider {
 	 */
 	@Override
     public Authentication authenticate(Authentication authentication) {
-        List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>();
+        List<GrantedAuthority> authorities = Collections.emptyList();
         String name = authentication.getName();
         String password = authentication.getCredentials().toString();
+        String address = authentication.getDetails() instanceof WebAuthenticationDetails
+        	? ((WebAuthenticationDetails) authentication.getDetails()).getRemoteAddress() : null;
+        // Rejected before the lookup and the hashing, which is what a credential-stuffing burst would cost
+        if (throttle.isThrottled(name, address)) {
+        	throttled.increment();
+        	audit.record(name, address, LoginEvent.Outcome.THROTTLED);
+        	throw new LockedException("Too many failed logins, try again later");
+        }
         User response;
 		response = userRepository.findOne(name);
-        if (response != null && encoder.matches(password, response.getPassword())) {
-        	authorities = response.listAuthorities();
+        if (response == null) {
+        	unknownUsers.increment();
+        	audit.record(name, address, LoginEvent.Outcome.UNKNOWN_USER);
+        	throttle.recordFailure(name, address);
+        } else {
+        	long start = System.nanoTime();
+        	boolean matches = verifier.matches(password, response.getPassword());
+        	passwordTimer.recordSince(start);
+        	Trace.span("password", start);
+        	if (matches) {
+        		successes.increment();
+        		audit.record(name, address, LoginEvent.Outcome.SUCCESS);
+        		throttle.recordSuccess(name, address);
+        		authorities = response.listAuthorities();
+        		rehashIfNeeded(name, password, response);
+        	} else {
+        		badPasswords.increment();
+        		audit.record(name, address, LoginEvent.Outcome.BAD_PASSWORD);
+        		throttle.recordFailure(name, address);
+        	}
         }
         return new UsernamePasswordAuthenticationToken(response, null, authorities);
     }
 
+	/**
+	 * Replace the stored hash of a user who has just logged in if it was made with a lower cost.
+	 * The write is conditional on the version read, so a password changed meanwhile is not overwritten
+	 * @param name The user name, which is the id of the user
+	 * @param password The verified password
+	 * @param user The user as read for the login
+	 */
+	private void rehashIfNeeded(String name, String password, User user) {
+		Long version = user.getVersion();
+		if (version == null) {
+			return;
+		}
+		verifier.rehashIfNeeded(password, user.getPassword(), encoded -> {
+			try {
+				PartialUpdate.Result result = userRepository.updatePartial(
+						PartialUpdate.field(name, "password", encoded).ifVersion(version).alwaysChanges());
+				if (result == PartialUpdate.Result.UPDATED) {
+					rehashes.increment();
+				}
+			} catch (RuntimeException e) {
+				logger.warn("Could not rehash the password of " + name, e);
+			}
+		});
+	}
+
 	/**
 	 * Test whether this authentication provider supports the given token form
 	 * @see org.springframework.security.authentication.AuthenticationProvider#supports(java.lang.Class)
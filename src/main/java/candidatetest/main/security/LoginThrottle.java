@@ -0,0 +1,240 @@
+package candidatetest.main.security;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import candidatetest.main.metrics.Counter;
+import candidatetest.main.metrics.MetricsRegistry;
+
+/**
+ * Counts failed logins per user name and client address pair and per client address over a sliding
+ * window, so that attempts for a throttled key can be rejected before the user is read or a password
+ * is hashed.  User names are only throttled together with the address failing as them, so that nobody
+ * can lock an account out of every other address by failing to log in as it.
+ * The window is approximated with the counts of the current and previous fixed windows, weighted
+ * by how far the current window has run, which needs constant memory per key.  At most {@code maxKeys}
+ * keys are tracked: once that many are, failures of new keys are counted as untracked rather than
+ * stored, so a spray from many addresses or user names cannot grow the map without limit.  Keys idle
+ * for two windows are swept at most once per window, and only when the map is full
+ */
+public class LoginThrottle {
+
+	/**
+	 * The failure counts of one key
+	 */
+	private static class Window {
+
+		/**
+		 * The start of the current fixed window in milliseconds since the epoch
+		 */
+		private long start;
+		/**
+		 * Failures in the current fixed window
+		 */
+		private int current;
+		/**
+		 * Failures in the previous fixed window
+		 */
+		private int previous;
+
+		/**
+		 * Start counting at a time
+		 * @param now The time in milliseconds since the epoch
+		 */
+		private Window(long now) {
+			this.start = now;
+		}
+
+		/**
+		 * Move the fixed windows forward to a time
+		 * @param now The time in milliseconds since the epoch
+		 * @param windowMillis The length of a window in milliseconds
+		 */
+		private void advance(long now, long windowMillis) {
+			long elapsed = now - start;
+			if (elapsed >= 2 * windowMillis) {
+				previous = 0;
+				current = 0;
+				start = now;
+			} else if (elapsed >= windowMillis) {
+				previous = current;
+				current = 0;
+				start += windowMillis;
+			}
+		}
+
+		/**
+		 * Estimate the failures in the sliding window ending at a time
+		 * @param now The time in milliseconds since the epoch
+		 * @param windowMillis The length of a window in milliseconds
+		 * @return The estimated number of failures
+		 */
+		private double failures(long now, long windowMillis) {
+			advance(now, windowMillis);
+			return previous * (1.0 - (double) (now - start) / windowMillis) + current;
+		}
+
+	}
+
+	/**
+	 * The prefix of user name and client address keys
+	 */
+	private static final String USER = "user:";
+
+	/**
+	 * The prefix of client address keys
+	 */
+	private static final String ADDRESS = "address:";
+
+	/**
+	 * The failure counts keyed by prefixed user name and client address, or client address
+	 */
+	private final Map<String, Window> windows = new ConcurrentHashMap<String, Window>();
+	/**
+	 * The length of the sliding window in milliseconds
+	 */
+	private final long windowMillis;
+	/**
+	 * Failures of a user name from one client address within the window at which further attempts from it are rejected
+	 */
+	private final int maxUserFailures;
+	/**
+	 * Failures from a client address within the window at which further attempts are rejected
+	 */
+	private final int maxAddressFailures;
+	/**
+	 * The most keys tracked
+	 */
+	private final int maxKeys;
+	/**
+	 * The earliest time of the next sweep in milliseconds since the epoch
+	 */
+	private final AtomicLong nextSweep = new AtomicLong();
+	/**
+	 * Failures of keys not tracked because the map was full
+	 */
+	private final Counter untracked;
+
+	/**
+	 * Construct a new throttle
+	 * @param windowMillis The length of the sliding window in milliseconds
+	 * @param maxUserFailures Failures of a user name from one client address within the window at which further attempts from
+	 * it are rejected, or 0 not to throttle user names
+	 * @param maxAddressFailures Failures from a client address within the window at which further attempts are rejected, or 0 not to throttle addresses
+	 * @param maxKeys The most keys tracked
+	 * @param metrics The registry in which the number of keys and the untracked failures are exported
+	 */
+	public LoginThrottle(long windowMillis, int maxUserFailures, int maxAddressFailures, int maxKeys, MetricsRegistry metrics) {
+		this.windowMillis = windowMillis;
+		this.maxUserFailures = maxUserFailures;
+		this.maxAddressFailures = maxAddressFailures;
+		this.maxKeys = maxKeys;
+		this.untracked = metrics.counter("auth_throttle_untracked_total", "Failed logins not counted by the throttle because it was tracking the most keys");
+		metrics.gauge("auth_throttle_keys", "User names and addresses tracked by the login throttle", windows::size);
+	}
+
+	/**
+	 * Test whether a login attempt should be rejected without being checked
+	 * @param userName The user name being logged in as
+	 * @param address The client address, or null if unknown
+	 * @return {@code true} if the user name from the address, or the address, has failed too often recently
+	 */
+	public boolean isThrottled(String userName, String address) {
+		long now = System.currentTimeMillis();
+		return exceeded(userKey(userName, address), maxUserFailures, now)
+			|| (address != null && exceeded(ADDRESS + address, maxAddressFailures, now));
+	}
+
+	/**
+	 * Record a failed login attempt
+	 * @param userName The user name being logged in as
+	 * @param address The client address, or null if unknown
+	 */
+	public void recordFailure(String userName, String address) {
+		long now = System.currentTimeMillis();
+		if (maxUserFailures > 0) {
+			increment(userKey(userName, address), now);
+		}
+		if (address != null && maxAddressFailures > 0) {
+			increment(ADDRESS + address, now);
+		}
+	}
+
+	/**
+	 * Forget the failures of a user name from an address after it logs in successfully from there.
+	 * Failures of the address as a whole are kept, since one address may be trying many user names
+	 * @param userName The user name which logged in
+	 * @param address The client address, or null if unknown
+	 */
+	public void recordSuccess(String userName, String address) {
+		windows.remove(userKey(userName, address));
+	}
+
+	/**
+	 * Get the key of a user name logging in from an address
+	 * @param userName The user name
+	 * @param address The client address, or null if unknown
+	 * @return The prefixed key
+	 */
+	private static String userKey(String userName, String address) {
+		// The address comes first as it cannot contain a space, so no two pairs share a key
+		return USER + address + " " + userName;
+	}
+
+	/**
+	 * Test whether a key has reached its failure limit
+	 * @param key The prefixed key
+	 * @param max The failure limit, or 0 for none
+	 * @param now The time in milliseconds since the epoch
+	 * @return {@code true} if the key is throttled
+	 */
+	private boolean exceeded(String key, int max, long now) {
+		Window window = max > 0 ? windows.get(key) : null;
+		if (window == null) {
+			return false;
+		}
+		synchronized (window) {
+			return window.failures(now, windowMillis) >= max;
+		}
+	}
+
+	/**
+	 * Count a failure against a key
+	 * @param key The prefixed key
+	 * @param now The time in milliseconds since the epoch
+	 */
+	private void increment(String key, long now) {
+		Window window = windows.get(key);
+		if (window == null) {
+			if (windows.size() >= maxKeys && !(sweep(now) && windows.size() < maxKeys)) {
+				untracked.increment();
+				return;
+			}
+			window = windows.computeIfAbsent(key, k -> new Window(now));
+		}
+		synchronized (window) {
+			window.advance(now, windowMillis);
+			window.current++;
+		}
+	}
+
+	/**
+	 * Remove the keys with no failures in the last two windows, unless a sweep has run within the last window
+	 * @param now The time in milliseconds since the epoch
+	 * @return {@code true} if this call swept
+	 */
+	private boolean sweep(long now) {
+		long next = nextSweep.get();
+		if (now < next || !nextSweep.compareAndSet(next, now + windowMillis)) {
+			return false;
+		}
+		windows.values().removeIf(window -> {
+			synchronized (window) {
+				return now - window.start >= 2 * windowMillis;
+			}
+		});
+		return true;
+	}
+
+}
@@ -21,5 +21,13 @@ public interface PasswordEncoder {
 	 * encoded version of the given plaintext 
 	 */
 	Boolean matches(String plaintext, String cipherText);
+
+	/**
+	 * Test whether a ciphertext was encoded with weaker settings than new ones would be,
+	 * in which case it should be replaced once its plaintext is known
+	 * @param cipherText The stored ciphertext
+	 * @return {@code true} if the ciphertext should be encoded again
+	 */
+	boolean needsRehash(String cipherText);
 	
 }
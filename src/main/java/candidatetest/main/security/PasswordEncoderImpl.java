@@ -13,7 +13,19 @@ public class PasswordEncoderImpl implements PasswordEncoder {
 	 */
 	@Autowired
 	private BCryptPasswordEncoder encoder;
-	
+
+	/**
+	 * The BCrypt cost of new hashes
+	 */
+	private final int strength;
+
+	/**
+	 * Construct a new encoder
+	 * @param strength The BCrypt cost the auto-wired encoder was created with, as it does not expose it
+	 */
+	public PasswordEncoderImpl(int strength) {
+		this.strength = strength;
+	}
 
 	/**
 	 * Encode plaintext into a one-way cipher
@@ -40,4 +52,18 @@ public class PasswordEncoderImpl implements PasswordEncoder {
 		return encoder.matches(plaintext, cipherText);
 	}
 
+	/**
+	 * Test whether a hash was made with a lower BCrypt cost than the current one.  Hashes are only ever
+	 * upgraded, since instances calibrated on different hardware would otherwise keep hashing a user's
+	 * password back and forth between their costs
+	 * @param cipherText The stored hash
+	 * @return {@code true} if the hash should be made again
+	 * @see candidatetest.main.security.PasswordEncoder#needsRehash(java.lang.String)
+	 */
+	@Override
+	public boolean needsRehash(String cipherText) {
+		int stored = BCryptCalibration.strengthOf(cipherText);
+		return stored > 0 && stored < strength;
+	}
+
 }
@@ -0,0 +1,128 @@
+package candidatetest.main.security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+import candidatetest.main.metrics.Counter;
+import candidatetest.main.metrics.MetricsRegistry;
+import candidatetest.main.trace.ResourceAccountingFilter;
+
+/**
+ * Verifies passwords on a pool of threads sized to the cores rather than on the request threads.
+ * Password hashing is deliberately expensive, so a burst of logins could otherwise occupy every
+ * request thread with hashing.  Once the queue is full, further logins are refused straight away.
+ * The allocation and CPU time of each verification are accounted to the login's request
+ */
+public class PasswordVerifier {
+
+	/**
+	 * Auto-wired encoder performing the verification
+	 */
+	@Autowired
+	private PasswordEncoder encoder;
+	/**
+	 * The verification threads
+	 */
+	private final ThreadPoolExecutor executor;
+	/**
+	 * The longest a login waits for its verification in milliseconds
+	 */
+	private final long timeoutMillis;
+	/**
+	 * Verifications refused because the queue was full or the wait timed out
+	 */
+	private final Counter rejections;
+
+	/**
+	 * Construct a new verifier
+	 * @param threads The number of verification threads, or 0 for one per core
+	 * @param queueSize The number of verifications which may wait for a thread
+	 * @param timeoutMillis The longest a login waits for its verification in milliseconds
+	 * @param metrics The registry to record the queue and rejections in
+	 */
+	public PasswordVerifier(int threads, int queueSize, long timeoutMillis, MetricsRegistry metrics) {
+		this.timeoutMillis = timeoutMillis;
+		int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize), runnable -> {
+			Thread thread = new Thread(runnable, "password-verifier-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.rejections = metrics.counter("auth_password_verification_rejected_total", "Password verifications refused because the pool was saturated");
+		metrics.gauge("auth_password_verification_queue", "Password verifications waiting for a thread", () -> executor.getQueue().size());
+	}
+
+	/**
+	 * Test a plaintext password against a hash on the verification pool, waiting for the result
+	 * @param plaintext The password given
+	 * @param cipherText The stored hash
+	 * @return {@code true} if the password matches
+	 * @throws AuthenticationServiceException the pool is saturated or the verification did not finish in time
+	 */
+	public boolean matches(String plaintext, String cipherText) {
+		Future<Boolean> result;
+		try {
+			result = executor.submit(ResourceAccountingFilter.charged(() -> encoder.matches(plaintext, cipherText)));
+		} catch (RejectedExecutionException e) {
+			rejections.increment();
+			throw new AuthenticationServiceException("Too many logins in progress", e);
+		}
+		try {
+			return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			result.cancel(false);
+			rejections.increment();
+			throw new AuthenticationServiceException("Password verification timed out", e);
+		} catch (InterruptedException e) {
+			result.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new AuthenticationServiceException("Interrupted while verifying password", e);
+		} catch (ExecutionException e) {
+			throw new AuthenticationServiceException("Password verification failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Hash a password again in the background if its stored hash was made with weaker settings
+	 * than the encoder now uses, e.g. a lower BCrypt cost calibrated on a slower host.  Only call this
+	 * once the password has been verified.  If the pool is busy the rehash is skipped, and will
+	 * be tried again on a later login
+	 * @param plaintext The verified password
+	 * @param cipherText The stored hash
+	 * @param store Called on a verification thread with the new hash to write it
+	 * @return {@code true} if a rehash was scheduled
+	 */
+	public boolean rehashIfNeeded(String plaintext, String cipherText, Consumer<String> store) {
+		if (!encoder.needsRehash(cipherText)) {
+			return false;
+		}
+		try {
+			executor.execute(() -> store.accept(encoder.encode(plaintext)));
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Stop the verification threads
+	 */
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+}
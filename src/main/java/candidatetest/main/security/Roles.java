@@ -0,0 +1,325 @@
+package candidatetest.main.security;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * The registry of user roles.  Each role is interned once and given a bit, so that a set of roles is a
+ * {@code long} mask, role checks are mask tests and the granted authorities of each distinct set of roles
+ * are built once and shared.  Role names are case insensitive, and surrounding spaces and a {@code ROLE_}
+ * prefix are ignored.  Once every bit is taken, further roles are left unregistered: they still work, but
+ * are compared by name and their authorities are built per user
+ */
+public final class Roles {
+
+	/**
+	 * Logger for the registry filling up
+	 */
+	private static final Logger logger = LogManager.getLogger(Roles.class);
+
+	/**
+	 * The authority granted for a role, which carries the bit of the role so that access checks need not compare names
+	 */
+	public static final class RoleAuthority implements GrantedAuthority {
+
+		/**
+		 * Serialisation version
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The authority name, {@code ROLE_} and the upper case role name
+		 */
+		private final String authority;
+		/**
+		 * The bit of the role
+		 */
+		private final int bit;
+
+		/**
+		 * Construct the authority of a role
+		 * @param role The upper case role name
+		 * @param bit The bit of the role
+		 */
+		private RoleAuthority(String role, int bit) {
+			this.authority = AUTHORITY_PREFIX + role;
+			this.bit = bit;
+		}
+
+		/**
+		 * @see org.springframework.security.core.GrantedAuthority#getAuthority()
+		 */
+		@Override
+		public String getAuthority() {
+			return authority;
+		}
+
+		/**
+		 * Get the bit of the role
+		 * @return The bit
+		 */
+		public int getBit() {
+			return bit;
+		}
+
+		/**
+		 * Authorities are equal when their names are
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof RoleAuthority && authority.equals(((RoleAuthority) obj).authority);
+		}
+
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return authority.hashCode();
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return authority;
+		}
+
+	}
+
+	/**
+	 * The most roles the registry can hold, one per bit of the mask
+	 */
+	public static final int MAX_ROLES = Long.SIZE;
+
+	/**
+	 * The bit returned for a role which could not be registered because the registry is full
+	 */
+	public static final int UNREGISTERED = -1;
+
+	/**
+	 * The prefix of the authority name of a role
+	 */
+	private static final String AUTHORITY_PREFIX = "ROLE_";
+
+	/**
+	 * The unregistered roles of a set of roles which all have bits
+	 */
+	private static final String[] NONE = new String[0];
+
+	/**
+	 * The bit of each role, keyed by the role name as interned and in upper case
+	 */
+	private static final Map<String, Integer> bits = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * The authority of each role, indexed by bit
+	 */
+	private static final RoleAuthority[] authorities = new RoleAuthority[MAX_ROLES];
+
+	/**
+	 * The shared authority lists, keyed by role mask
+	 */
+	private static final Map<Long, List<GrantedAuthority>> authorityLists = new ConcurrentHashMap<Long, List<GrantedAuthority>>();
+
+	/**
+	 * The number of roles interned
+	 */
+	private static int size;
+
+	/**
+	 * Whether a role has been left unregistered because the registry was full
+	 */
+	private static volatile boolean overflowed;
+
+	/**
+	 * Construct the bean through which access expressions reach the registry, which is itself static
+	 */
+	public Roles() {}
+
+	/**
+	 * Get the canonical name of a role
+	 * @param role The role name as spelled, e.g. {@code admin} or {@code ROLE_ADMIN}
+	 * @return The upper case name without surrounding spaces or the {@code ROLE_} prefix, e.g. {@code ADMIN}
+	 */
+	public static String normalise(String role) {
+		String name = role.trim().toUpperCase(Locale.ROOT);
+		return name.startsWith(AUTHORITY_PREFIX) ? name.substring(AUTHORITY_PREFIX.length()) : name;
+	}
+
+	/**
+	 * Get the bit of a role, registering the role if it is new
+	 * @param role The role name, e.g. {@code ADMIN}
+	 * @return The bit of the role, or {@link #UNREGISTERED} if the role is new and the registry already holds {@link #MAX_ROLES} roles
+	 */
+	public static int intern(String role) {
+		Integer bit = bits.get(role);
+		if (bit != null) {
+			return bit;
+		}
+		String name = normalise(role);
+		synchronized (bits) {
+			bit = bits.get(name);
+			if (bit == null) {
+				if (size == MAX_ROLES) {
+					if (!overflowed) {
+						logger.warn("The role registry is full, so " + name + " and later new roles are compared by name");
+						overflowed = true;
+					}
+					return UNREGISTERED;
+				}
+				bit = size;
+				authorities[bit] = new RoleAuthority(name, bit);
+				bits.put(name, bit);
+				size++;
+			}
+			// Later lookups of the same spelling need not normalise it
+			bits.put(role, bit);
+		}
+		return bit;
+	}
+
+	/**
+	 * Get the mask of a set of roles, registering any new roles
+	 * @param roles The role names, may be null
+	 * @return The mask with the bit of each role set
+	 */
+	public static long mask(String... roles) {
+		long mask = 0;
+		if (roles != null) {
+			for (String role : roles) {
+				int bit = role != null ? intern(role) : UNREGISTERED;
+				if (bit != UNREGISTERED) {
+					mask |= 1L << bit;
+				}
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Get the roles of a set which have no bit because the registry was full when they were first seen
+	 * @param roles The role names, may be null
+	 * @return The normalised names of the unregistered roles, usually none
+	 */
+	public static String[] unregistered(String... roles) {
+		if (roles == null || !overflowed) {
+			return NONE;
+		}
+		List<String> names = new ArrayList<String>();
+		for (String role : roles) {
+			if (role != null && bitOf(role) == null) {
+				names.add(normalise(role));
+			}
+		}
+		return names.isEmpty() ? NONE : names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Test whether a mask includes a role.  Unknown roles are not registered
+	 * @param mask The role mask
+	 * @param role The role name, e.g. {@code ADMIN}
+	 * @return {@code true} if the role is registered and its bit is set
+	 */
+	public static boolean has(long mask, String role) {
+		Integer bit = bitOf(role);
+		return bit != null && (mask & (1L << bit)) != 0;
+	}
+
+	/**
+	 * Test whether an authentication was granted a role, for use in access expressions as
+	 * {@code @roles.has(authentication, 'ADMIN')}.  Only the granted authorities count, not the
+	 * roles of the principal, since a failed authentication still carries its principal
+	 * @param authentication The authentication of the request, may be null
+	 * @param role The role name
+	 * @return {@code true} if the authority of the role was granted
+	 */
+	public boolean has(Authentication authentication, String role) {
+		if (authentication == null) {
+			return false;
+		}
+		Integer bit = bitOf(role);
+		if (bit == null) {
+			// Unregistered roles are only granted as plain authorities
+			String name = AUTHORITY_PREFIX + normalise(role);
+			for (GrantedAuthority authority : authentication.getAuthorities()) {
+				if (name.equals(authority.getAuthority())) {
+					return true;
+				}
+			}
+			return false;
+		}
+		for (GrantedAuthority authority : authentication.getAuthorities()) {
+			if (authority instanceof RoleAuthority) {
+				if (((RoleAuthority) authority).bit == bit) {
+					return true;
+				}
+			} else if (authority.getAuthority().equals(authorities[bit].authority)) {
+				// Authorities granted elsewhere, e.g. to an anonymous user, are compared by name
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Look up the bit of a role without registering it
+	 * @param role The role name
+	 * @return The bit, or null if the role is not registered
+	 */
+	private static Integer bitOf(String role) {
+		Integer bit = bits.get(role);
+		return bit != null ? bit : bits.get(normalise(role));
+	}
+
+	/**
+	 * Get the granted authorities of a set of roles.  Each distinct mask builds its list once
+	 * @param mask The role mask
+	 * @return The shared, unmodifiable list of a {@code ROLE_} authority per role, in registration order
+	 */
+	public static List<GrantedAuthority> authorities(long mask) {
+		List<GrantedAuthority> list = authorityLists.get(mask);
+		if (list == null) {
+			List<GrantedAuthority> built = new ArrayList<GrantedAuthority>(Long.bitCount(mask));
+			for (int bit = 0; bit < MAX_ROLES; bit++) {
+				if ((mask & (1L << bit)) != 0) {
+					built.add(authorities[bit]);
+				}
+			}
+			list = Collections.unmodifiableList(built);
+			authorityLists.putIfAbsent(mask, list);
+		}
+		return list;
+	}
+
+	/**
+	 * Get the granted authorities of a set of roles some of which are unregistered.  Only the list of the
+	 * registered roles is shared
+	 * @param mask The mask of the registered roles
+	 * @param unregistered The normalised names of the unregistered roles, see {@link #unregistered(String...)}
+	 * @return The unmodifiable list of a {@code ROLE_} authority per role, the unregistered ones last
+	 */
+	public static List<GrantedAuthority> authorities(long mask, String[] unregistered) {
+		if (unregistered.length == 0) {
+			return authorities(mask);
+		}
+		List<GrantedAuthority> list = new ArrayList<GrantedAuthority>(authorities(mask));
+		for (String role : unregistered) {
+			list.add(new SimpleGrantedAuthority(AUTHORITY_PREFIX + role));
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+}
@@ -0,0 +1,286 @@
+package candidatetest.main.status;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the health of the service and its dependencies, as reported on {@code /api/status}
+ */
+public class ServiceStatus {
+
+	/**
+	 * The overall state of the service
+	 */
+	public enum State {
+		/** All dependencies are healthy */					UP,
+		/** The service works but a dependency is impaired */	DEGRADED,
+		/** The service cannot serve requests */				DOWN
+	}
+
+	/**
+	 * The health of an index used by a repository
+	 */
+	public static class IndexStatus {
+		/** The name of the index */
+		private final String name;
+		/** Set to true if the index exists and its primaries are allocated */
+		private final boolean ready;
+		/** The ElasticSearch health colour of the index, null if the index does not exist */
+		private final String health;
+
+		/**
+		 * Construct a new index status
+		 * @param name The name of the index
+		 * @param ready Set to true if the index exists and its primaries are allocated
+		 * @param health The ElasticSearch health colour of the index
+		 */
+		public IndexStatus(String name, boolean ready, String health) {
+			this.name = name;
+			this.ready = ready;
+			this.health = health;
+		}
+
+		/**
+		 * Get the name of the index
+		 * @return The name of the index
+		 */
+		public String getName() { return name; }
+
+		/**
+		 * Get a flag which is {@code true} if the index exists and its primaries are allocated
+		 * @return {@code true} if the index exists and its primaries are allocated
+		 */
+		public boolean getReady() { return ready; }
+
+		/**
+		 * Get the ElasticSearch health colour of the index
+		 * @return The ElasticSearch health colour of the index
+		 */
+		public String getHealth() { return health; }
+	}
+
+	/**
+	 * Statistics of a client thread pool
+	 */
+	public static class PoolStatus {
+		/** The number of threads in the pool */
+		private final int threads;
+		/** The number of threads executing tasks */
+		private final int active;
+		/** The number of queued tasks */
+		private final int queue;
+		/** The number of tasks rejected since start up */
+		private final long rejected;
+
+		/**
+		 * Construct new pool statistics
+		 * @param threads The number of threads in the pool
+		 * @param active The number of threads executing tasks
+		 * @param queue The number of queued tasks
+		 * @param rejected The number of tasks rejected since start up
+		 */
+		public PoolStatus(int threads, int active, int queue, long rejected) {
+			this.threads = threads;
+			this.active = active;
+			this.queue = queue;
+			this.rejected = rejected;
+		}
+
+		/**
+		 * Get the number of threads in the pool
+		 * @return The number of threads in the pool
+		 */
+		public int getThreads() { return threads; }
+
+		/**
+		 * Get the number of threads executing tasks
+		 * @return The number of threads executing tasks
+		 */
+		public int getActive() { return active; }
+
+		/**
+		 * Get the number of queued tasks
+		 * @return The number of queued tasks
+		 */
+		public int getQueue() { return queue; }
+
+		/**
+		 * Get the number of tasks rejected since start up
+		 * @return The number of tasks rejected since start up
+		 */
+		public long getRejected() { return rejected; }
+	}
+
+	/**
+	 * The overall state of the service
+	 */
+	private final State status;
+	/**
+	 * The time the dependencies were last probed in milliseconds since the epoch
+	 */
+	private final long checkedAt;
+	/**
+	 * Set to true if ElasticSearch answered the last probe
+	 */
+	private final boolean elasticConnected;
+	/**
+	 * The health colour of the cluster, null if it could not be reached
+	 */
+	private final String clusterHealth;
+	/**
+	 * The number of nodes in the cluster
+	 */
+	private final int clusterNodes;
+	/**
+	 * The error raised by the last probe, null if it succeeded
+	 */
+	private final String error;
+	/**
+	 * The health of the repository indices keyed by repository
+	 */
+	private final Map<String, IndexStatus> indices;
+	/**
+	 * The client thread pool statistics keyed by pool name
+	 */
+	private final Map<String, PoolStatus> pools;
+	/**
+	 * Set to true once the warm-up has ended
+	 */
+	private final boolean warmedUp;
+	/**
+	 * The time the warm-up took, or has taken so far, in milliseconds
+	 */
+	private final long warmUpMillis;
+
+	/**
+	 * Construct a new status snapshot
+	 * @param status The overall state of the service
+	 * @param checkedAt The time the dependencies were probed
+	 * @param elasticConnected Set to true if ElasticSearch answered the probe
+	 * @param clusterHealth The health colour of the cluster
+	 * @param clusterNodes The number of nodes in the cluster
+	 * @param error The error raised by the probe
+	 * @param indices The health of the repository indices
+	 * @param pools The client thread pool statistics
+	 */
+	public ServiceStatus(State status, long checkedAt, boolean elasticConnected, String clusterHealth, int clusterNodes,
+			String error, Map<String, IndexStatus> indices, Map<String, PoolStatus> pools) {
+		this(status, checkedAt, elasticConnected, clusterHealth, clusterNodes, error, indices, pools, false, 0);
+	}
+
+	/**
+	 * Construct a new status snapshot including the warm-up
+	 * @param status The overall state of the service
+	 * @param checkedAt The time the dependencies were probed
+	 * @param elasticConnected Set to true if ElasticSearch answered the probe
+	 * @param clusterHealth The health colour of the cluster
+	 * @param clusterNodes The number of nodes in the cluster
+	 * @param error The error raised by the probe
+	 * @param indices The health of the repository indices
+	 * @param pools The client thread pool statistics
+	 * @param warmedUp Set to true once the warm-up has ended
+	 * @param warmUpMillis The time the warm-up took, or has taken so far, in milliseconds
+	 */
+	private ServiceStatus(State status, long checkedAt, boolean elasticConnected, String clusterHealth, int clusterNodes,
+			String error, Map<String, IndexStatus> indices, Map<String, PoolStatus> pools, boolean warmedUp, long warmUpMillis) {
+		this.status = status;
+		this.checkedAt = checkedAt;
+		this.elasticConnected = elasticConnected;
+		this.clusterHealth = clusterHealth;
+		this.clusterNodes = clusterNodes;
+		this.error = error;
+		this.indices = Collections.unmodifiableMap(indices);
+		this.pools = Collections.unmodifiableMap(pools);
+		this.warmedUp = warmedUp;
+		this.warmUpMillis = warmUpMillis;
+	}
+
+	/**
+	 * Create a copy of this snapshot with a different overall state
+	 * @param state The new overall state
+	 * @param reason The reason for the change, reported as the error
+	 * @return A new snapshot
+	 */
+	public ServiceStatus withState(State state, String reason) {
+		return new ServiceStatus(state, checkedAt, elasticConnected, clusterHealth, clusterNodes, reason, indices, pools, warmedUp, warmUpMillis);
+	}
+
+	/**
+	 * Create a copy of this snapshot with the progress of the warm-up.  Until the warm-up has
+	 * ended the service is reported as down
+	 * @param warmedUp Set to true once the warm-up has ended
+	 * @param warmUpMillis The time the warm-up took, or has taken so far, in milliseconds
+	 * @return A new snapshot
+	 */
+	public ServiceStatus withWarmUp(boolean warmedUp, long warmUpMillis) {
+		return new ServiceStatus(warmedUp ? status : State.DOWN, checkedAt, elasticConnected, clusterHealth, clusterNodes,
+				warmedUp ? error : "Warming up", indices, pools, warmedUp, warmUpMillis);
+	}
+
+	/**
+	 * The application is live if it can answer this request at all
+	 * @return Always {@code true}
+	 */
+	public boolean getLive() { return true; }
+
+	/**
+	 * Get the overall state of the service
+	 * @return The overall state of the service
+	 */
+	public State getStatus() { return status; }
+
+	/**
+	 * Get the time the dependencies were last probed in milliseconds since the epoch
+	 * @return The time the dependencies were last probed in milliseconds since the epoch
+	 */
+	public long getCheckedAt() { return checkedAt; }
+
+	/**
+	 * Get a flag which is {@code true} if ElasticSearch answered the last probe
+	 * @return {@code true} if ElasticSearch answered the last probe
+	 */
+	public boolean getElasticConnected() { return elasticConnected; }
+
+	/**
+	 * Get the health colour of the cluster
+	 * @return The health colour of the cluster
+	 */
+	public String getClusterHealth() { return clusterHealth; }
+
+	/**
+	 * Get the number of nodes in the cluster
+	 * @return The number of nodes in the cluster
+	 */
+	public int getClusterNodes() { return clusterNodes; }
+
+	/**
+	 * Get the error raised by the last probe
+	 * @return The error raised by the last probe
+	 */
+	public String getError() { return error; }
+
+	/**
+	 * Get the health of the repository indices keyed by repository
+	 * @return The health of the repository indices keyed by repository
+	 */
+	public Map<String, IndexStatus> getIndices() { return indices; }
+
+	/**
+	 * Get the client thread pool statistics keyed by pool name
+	 * @return The client thread pool statistics keyed by pool name
+	 */
+	public Map<String, PoolStatus> getPools() { return pools; }
+
+	/**
+	 * Get a flag which is {@code true} once the warm-up has ended
+	 * @return {@code true} once the warm-up has ended
+	 */
+	public boolean getWarmedUp() { return warmedUp; }
+
+	/**
+	 * Get the time the warm-up took, or has taken so far, in milliseconds
+	 * @return The time the warm-up took in milliseconds
+	 */
+	public long getWarmUpMillis() { return warmUpMillis; }
+
+}
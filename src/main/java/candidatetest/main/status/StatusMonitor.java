@@ -0,0 +1,217 @@
+package candidatetest.main.status;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.cluster.health.ClusterIndexHealth;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPoolStats;
+
+import com.carrotsearch.hppc.cursors.ObjectObjectCursor;
+
+import candidatetest.main.repository.ElasticRepository;
+import candidatetest.main.status.ServiceStatus.IndexStatus;
+import candidatetest.main.status.ServiceStatus.PoolStatus;
+import candidatetest.main.status.ServiceStatus.State;
+
+/**
+ * Probes ElasticSearch on a background thread and caches the result, so that health checks
+ * are answered from memory and never reach the cluster directly
+ */
+public class StatusMonitor {
+
+	/**
+	 * Logger for probe failures
+	 */
+	private static final Logger logger = LogManager.getLogger(StatusMonitor.class);
+
+	/**
+	 * The ElasticSearch client to probe
+	 */
+	private final Client client;
+	/**
+	 * The repositories whose indices must be ready for the service to be up
+	 */
+	private final Collection<? extends ElasticRepository<?>> repositories;
+	/**
+	 * The interval between probes in milliseconds
+	 */
+	private final long intervalMillis;
+	/**
+	 * The maximum time a single probe may wait for the cluster in milliseconds
+	 */
+	private final long timeoutMillis;
+	/**
+	 * The warm-up which must end before the service is ready
+	 */
+	private final WarmUp warmUp;
+	/**
+	 * The most recent probe result
+	 */
+	private final AtomicReference<ServiceStatus> current = new AtomicReference<ServiceStatus>();
+	/**
+	 * The single daemon thread running the probes
+	 */
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Construct a new status monitor
+	 * @param client The ElasticSearch client to probe
+	 * @param repositories The repositories whose indices must be ready for the service to be up
+	 * @param intervalMillis The interval between probes in milliseconds
+	 * @param timeoutMillis The maximum time a single probe may wait for the cluster in milliseconds
+	 * @param warmUp The warm-up which must end before the service is ready
+	 */
+	public StatusMonitor(Client client, Collection<? extends ElasticRepository<?>> repositories, long intervalMillis, long timeoutMillis, WarmUp warmUp) {
+		this.client = client;
+		this.repositories = repositories;
+		this.intervalMillis = intervalMillis;
+		this.timeoutMillis = timeoutMillis;
+		this.warmUp = warmUp;
+		this.current.set(new ServiceStatus(State.DOWN, 0, false, null, 0, "Not yet probed",
+				new LinkedHashMap<String, IndexStatus>(), new LinkedHashMap<String, PoolStatus>()));
+	}
+
+	/**
+	 * Start probing in the background
+	 */
+	@PostConstruct
+	public void start() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "status-monitor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::refresh, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop probing
+	 */
+	@PreDestroy
+	public void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Get the cached status.  If the probe has not completed within three intervals the
+	 * cached result can no longer be trusted and the service is reported as down, as it is
+	 * until the warm-up has ended
+	 * @return The most recent status snapshot
+	 */
+	public ServiceStatus getStatus() {
+		ServiceStatus status = current.get().withWarmUp(warmUp.isComplete(), warmUp.getMillis());
+		if (status.getCheckedAt() > 0 && System.currentTimeMillis() - status.getCheckedAt() > 3 * intervalMillis + timeoutMillis) {
+			return status.withState(State.DOWN, "Status probe is stale");
+		}
+		return status;
+	}
+
+	/**
+	 * Probe ElasticSearch and replace the cached status
+	 */
+	void refresh() {
+		try {
+			current.set(probe());
+		} catch (Exception e) {
+			// Never let an exception cancel the scheduled probe
+			logger.warn("Status probe failed", e);
+		}
+	}
+
+	/**
+	 * Get the alias of every repository index
+	 * @return The alias names
+	 */
+	private String[] aliasNames() {
+		List<String> names = new ArrayList<String>();
+		for (ElasticRepository<?> repository : repositories) {
+			names.add(repository.getIndex());
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Find the health of the real index behind an alias.  Cluster health is reported per real index,
+	 * so the alias has to be resolved first
+	 * @param health The cluster health
+	 * @param aliases The aliases of each real index
+	 * @param alias The alias to resolve
+	 * @return The health of the real index, or null if the alias does not exist
+	 */
+	private ClusterIndexHealth aliasHealth(ClusterHealthResponse health, ImmutableOpenMap<String, List<AliasMetaData>> aliases, String alias) {
+		for (ObjectObjectCursor<String, List<AliasMetaData>> cursor : aliases) {
+			for (AliasMetaData metaData : cursor.value) {
+				if (metaData.alias().equals(alias)) {
+					return health.getIndices().get(cursor.key);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Probe the cluster health, the repository indices and the client thread pools
+	 * @return A new status snapshot
+	 */
+	private ServiceStatus probe() {
+		Map<String, PoolStatus> pools = new LinkedHashMap<String, PoolStatus>();
+		for (ThreadPoolStats.Stats stats : client.threadPool().stats()) {
+			pools.put(stats.getName(), new PoolStatus(stats.getThreads(), stats.getActive(), stats.getQueue(), stats.getRejected()));
+		}
+		Map<String, IndexStatus> indices = new LinkedHashMap<String, IndexStatus>();
+		long checkedAt = System.currentTimeMillis();
+		ClusterHealthResponse health;
+		ImmutableOpenMap<String, List<AliasMetaData>> aliases;
+		try {
+			health = client.admin().cluster().prepareHealth()
+				.setTimeout(TimeValue.timeValueMillis(timeoutMillis))
+				.get(TimeValue.timeValueMillis(timeoutMillis));
+			aliases = client.admin().indices().prepareGetAliases(aliasNames())
+				.get(TimeValue.timeValueMillis(timeoutMillis)).getAliases();
+		} catch (Exception e) {
+			for (ElasticRepository<?> repository : repositories) {
+				indices.put(repository.getType(), new IndexStatus(repository.getIndex(), false, null));
+			}
+			return new ServiceStatus(State.DOWN, checkedAt, false, null, 0, e.getMessage(), indices, pools);
+		}
+
+		boolean ready = true;
+		for (ElasticRepository<?> repository : repositories) {
+			ClusterIndexHealth indexHealth = aliasHealth(health, aliases, repository.getIndex());
+			boolean indexReady = indexHealth != null && indexHealth.getStatus() != ClusterHealthStatus.RED;
+			ready = ready && indexReady;
+			indices.put(repository.getType(), new IndexStatus(repository.getIndex(), indexReady,
+					indexHealth == null ? null : indexHealth.getStatus().name()));
+		}
+		State state;
+		if (!ready) {
+			state = State.DOWN;
+		} else if (health.getStatus() == ClusterHealthStatus.GREEN) {
+			state = State.UP;
+		} else {
+			state = State.DEGRADED;
+		}
+		return new ServiceStatus(state, checkedAt, true, health.getStatus().name(), health.getNumberOfNodes(), null, indices, pools);
+	}
+
+}
@@ -0,0 +1,211 @@
+package candidatetest.main.status;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import candidatetest.main.development.SyntheticUsers;
+import candidatetest.main.metrics.MetricsRegistry;
+import candidatetest.main.model.data.User;
+import candidatetest.main.repository.UserRepository;
+import candidatetest.main.security.PasswordEncoder;
+
+/**
+ * Runs representative work through the hot paths of the service on a background thread after the
+ * repositories have initialised, so that the JIT has compiled them before the instance reports ready
+ * on {@code /api/status}.  Each round maps synthetic users to source maps and back, serialises them
+ * to JSON and reads a user from ElasticSearch.  Rounds continue until the JIT has spent no more than
+ * a twentieth of a round compiling for several rounds in a row, or the time limit is reached.  A
+ * password is verified after each of the first few rounds only, outside the timed round: one
+ * verification at the calibrated cost outlasts the rest of a round, so it would hide the compilation
+ * still going on and end the warm-up early
+ */
+public class WarmUp {
+
+	/**
+	 * Logger for the warm-up outcome
+	 */
+	private static final Logger logger = LogManager.getLogger(WarmUp.class);
+
+	/**
+	 * The number of synthetic users mapped and serialised per round
+	 */
+	private static final int USERS_PER_ROUND = 500;
+
+	/**
+	 * The plaintext password verified each round
+	 */
+	private static final String PASSWORD = "warm-up-password";
+
+	/**
+	 * The number of rounds after which a password is verified
+	 */
+	private static final int VERIFY_ROUNDS = 3;
+
+	/**
+	 * Auto-wired repository whose mapping and reads are warmed up
+	 */
+	@Autowired
+	private UserRepository userRepository;
+
+	/**
+	 * Auto-wired encoder whose password verification is warmed up
+	 */
+	@Autowired
+	private PasswordEncoder encoder;
+
+	/**
+	 * Whether to warm up at all, if not the instance is ready at once
+	 */
+	private final boolean enabled;
+	/**
+	 * The longest the warm-up may run in nanoseconds
+	 */
+	private final long maxNanos;
+	/**
+	 * The number of consecutive quiet rounds after which compilation is considered settled
+	 */
+	private final int settleRounds;
+	/**
+	 * The id of the user read each round, which need not exist
+	 */
+	private final String readId;
+	/**
+	 * The time the warm-up started in nanoseconds
+	 */
+	private volatile long startNanos;
+	/**
+	 * The time the warm-up took in milliseconds, or -1 while it is running
+	 */
+	private volatile long tookMillis = -1;
+	/**
+	 * The thread running the warm-up
+	 */
+	private Thread thread;
+
+	/**
+	 * Construct a new warm-up
+	 * @param enabled Whether to warm up at all, if not the instance is ready at once
+	 * @param maxMillis The longest the warm-up may run in milliseconds
+	 * @param settleRounds The number of consecutive quiet rounds after which compilation is considered settled
+	 * @param readId The id of the user read each round, which need not exist
+	 * @param metrics The registry in which the warm-up time is exported
+	 */
+	public WarmUp(boolean enabled, long maxMillis, int settleRounds, String readId, MetricsRegistry metrics) {
+		this.enabled = enabled;
+		this.maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+		this.settleRounds = Math.max(1, settleRounds);
+		this.readId = readId;
+		metrics.gauge("warmup_seconds", "Time spent warming up before reporting ready", () -> getMillis() / 1000.0);
+	}
+
+	/**
+	 * Start warming up in the background
+	 */
+	@PostConstruct
+	public void start() {
+		startNanos = System.nanoTime();
+		if (!enabled) {
+			tookMillis = 0;
+			return;
+		}
+		thread = new Thread(this::run, "warm-up");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop warming up
+	 */
+	@PreDestroy
+	public void stop() {
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Test whether the warm-up has ended
+	 * @return {@code true} once the warm-up has ended or if it is disabled
+	 */
+	public boolean isComplete() {
+		return tookMillis >= 0;
+	}
+
+	/**
+	 * Get the time spent warming up
+	 * @return The time the warm-up took, or has taken so far, in milliseconds
+	 */
+	public long getMillis() {
+		long took = tookMillis;
+		return took >= 0 ? took : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Run rounds until compilation settles or the time limit is reached
+	 */
+	private void run() {
+		int rounds = 0;
+		try {
+			CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+			boolean monitored = jit != null && jit.isCompilationTimeMonitoringSupported();
+			SyntheticUsers users = new SyntheticUsers(startNanos, "USER:95,USER+ADMIN:5", "3:10,4:20,5:30,6:25,8:15");
+			String hash = encoder.encode(PASSWORD);
+			int quiet = 0;
+			while (quiet < settleRounds && System.nanoTime() - startNanos < maxNanos && !Thread.currentThread().isInterrupted()) {
+				long compiling = monitored ? jit.getTotalCompilationTime() : 0;
+				long roundStart = System.nanoTime();
+				round(users, rounds, hash);
+				long roundMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - roundStart);
+				// Compilation time is summed over the compiler threads, so this is the share of the round they were busy
+				boolean settled = !monitored || (jit.getTotalCompilationTime() - compiling) * 20 <= roundMillis;
+				quiet = settled ? quiet + 1 : 0;
+				if (rounds++ < VERIFY_ROUNDS) {
+					verify(hash);
+				}
+			}
+		} catch (Exception e) {
+			logger.warn("Warm-up failed, reporting ready", e);
+		} finally {
+			tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			logger.info("Warm-up ended after " + rounds + " rounds in " + tookMillis + "ms");
+		}
+	}
+
+	/**
+	 * Run one round of representative work
+	 * @param users The synthetic users
+	 * @param round The number of the round
+	 * @param hash The hash of {@link #PASSWORD} given to the users
+	 * @throws Exception Thrown if the work fails, other than the read
+	 */
+	private void round(SyntheticUsers users, int round, String hash) throws Exception {
+		for (int i = 0; i < USERS_PER_ROUND; i++) {
+			User user = userRepository.roundTrip(users.user(round * USERS_PER_ROUND + i, hash));
+			User.deserialize(User.serialize(user));
+		}
+		try {
+			userRepository.findOne(readId);
+		} catch (RuntimeException e) {
+			// The read only warms up the client, ElasticSearch may still be starting
+		}
+	}
+
+	/**
+	 * Verify {@link #PASSWORD} against its hash
+	 * @param hash The hash of {@link #PASSWORD}
+	 */
+	private void verify(String hash) {
+		if (!encoder.matches(PASSWORD, hash)) {
+			throw new IllegalStateException("Password verification failed");
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package candidatetest.main.suggest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import candidatetest.main.metrics.Counter;
+import candidatetest.main.metrics.MetricsRegistry;
+import candidatetest.main.model.data.AbstractModel;
+import candidatetest.main.repository.ElasticRepository;
+
+/**
+ * Typeahead over one field of a repository.  Each keystroke is a request, and most users type the
+ * same few prefixes, so the suggestions for a prefix are cached for a short time.  Suggestions can
+ * therefore be up to one time-to-live out of date
+ * @param <T> The type of model suggested
+ */
+public class Suggester<T extends AbstractModel> {
+
+	/**
+	 * Cached suggestions for a prefix
+	 */
+	private static class Entry<T> {
+
+		/**
+		 * The suggestions
+		 */
+		private final List<T> suggestions;
+		/**
+		 * When the suggestions go stale in nanoseconds, see {@link System#nanoTime()}
+		 */
+		private final long expiresAt;
+
+		/**
+		 * Cache suggestions
+		 * @param suggestions The suggestions
+		 * @param expiresAt When the suggestions go stale in nanoseconds
+		 */
+		private Entry(List<T> suggestions, long expiresAt) {
+			this.suggestions = suggestions;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+
+	/**
+	 * The repository to search
+	 */
+	private final ElasticRepository<T> repository;
+	/**
+	 * The model field suggested
+	 */
+	private final String field;
+	/**
+	 * The maximum number of suggestions returned
+	 */
+	private final int maxLimit;
+	/**
+	 * How long suggestions are cached in nanoseconds
+	 */
+	private final long ttlNanos;
+	/**
+	 * The maximum number of prefixes cached
+	 */
+	private final int maxEntries;
+	/**
+	 * The cached suggestions keyed by limit and normalised prefix
+	 */
+	private final Map<String, Entry<T>> cache = new ConcurrentHashMap<String, Entry<T>>();
+	/**
+	 * Suggestions answered from the cache
+	 */
+	private final Counter hits;
+	/**
+	 * Suggestions answered from ElasticSearch
+	 */
+	private final Counter misses;
+
+	/**
+	 * Construct a new suggester
+	 * @param repository The repository to search
+	 * @param field The model field suggested, which must have a {@code suggest} multi-field
+	 * @param maxLimit The maximum number of suggestions returned
+	 * @param ttlMillis How long suggestions are cached in milliseconds, or 0 not to cache
+	 * @param maxEntries The maximum number of prefixes cached
+	 * @param metrics The registry to record cache hits and misses in
+	 */
+	public Suggester(ElasticRepository<T> repository, String field, int maxLimit, long ttlMillis, int maxEntries, MetricsRegistry metrics) {
+		this.repository = repository;
+		this.field = field;
+		this.maxLimit = maxLimit;
+		this.ttlNanos = ttlMillis * 1000000L;
+		this.maxEntries = maxEntries;
+		this.hits = metrics.counter("suggest_cache_total", "Typeahead suggestions by cache outcome", "type", repository.getType(), "result", "hit");
+		this.misses = metrics.counter("suggest_cache_total", "Typeahead suggestions by cache outcome", "type", repository.getType(), "result", "miss");
+	}
+
+	/**
+	 * Get the maximum number of suggestions returned
+	 * @return The cap on the limit
+	 */
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Suggest entities whose field has words starting with each word of a prefix
+	 * @param prefix The text typed so far
+	 * @param limit The maximum number of suggestions, capped at the maximum limit
+	 * @return The suggestions with only their id and the field populated, empty for a blank prefix
+	 */
+	public List<T> suggest(String prefix, int limit) {
+		// Case and surrounding spaces don't change the results, so they shouldn't split the cache
+		String normalised = prefix == null ? "" : prefix.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+		if (normalised.isEmpty()) {
+			return Collections.emptyList();
+		}
+		int size = Math.max(1, Math.min(limit, maxLimit));
+		String key = size + ":" + normalised;
+		long now = System.nanoTime();
+		Entry<T> entry = cache.get(key);
+		if (entry != null && entry.expiresAt - now > 0) {
+			hits.increment();
+			return entry.suggestions;
+		}
+		misses.increment();
+		List<T> suggestions = Collections.unmodifiableList(repository.suggest(field, normalised, size));
+		if (ttlNanos > 0) {
+			if (cache.size() >= maxEntries) {
+				evict(now);
+			}
+			// A flood of distinct prefixes is not worth caching, so stop adding until entries expire
+			if (cache.size() < maxEntries) {
+				cache.put(key, new Entry<T>(suggestions, now + ttlNanos));
+			}
+		}
+		return suggestions;
+	}
+
+	/**
+	 * Remove the stale entries from the cache
+	 * @param now The current time in nanoseconds
+	 */
+	private void evict(long now) {
+		cache.values().removeIf(entry -> entry.expiresAt - now <= 0);
+	}
+
+}
@@ -0,0 +1,162 @@
+package candidatetest.main.trace;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Writes one JSON event per API request to the access logger, which {@code log4j2-spring.xml}
+ * ships to the {@code api_access} type in ElasticSearch.  The events carry enough detail
+ * (timing, path, status and user name, never credentials) to be replayed as a benchmark workload.
+ * The status end-point, polled by load balancers, is not logged
+ */
+public class AccessLogFilter extends OncePerRequestFilter {
+
+	/**
+	 * The name of the logger routed to the {@code ES_API} appender
+	 */
+	public static final String ACCESS_LOGGER = "spectre.scaramanga.actuate.trace.LoggedInMemoryTraceRepository";
+
+	/**
+	 * The access logger
+	 */
+	private static final Logger logger = LogManager.getLogger(ACCESS_LOGGER);
+
+	/**
+	 * The path of the status end-point, relative to the context path
+	 */
+	private static final String STATUS_PATH = "/api/status";
+
+	/**
+	 * Leave out health checks, which would otherwise flood the access events
+	 * @see org.springframework.web.filter.OncePerRequestFilter#shouldNotFilter(javax.servlet.http.HttpServletRequest)
+	 */
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String uri = request.getRequestURI();
+		String context = request.getContextPath();
+		return uri.length() == context.length() + STATUS_PATH.length() && uri.startsWith(context) && uri.endsWith(STATUS_PATH);
+	}
+
+	/**
+	 * Log the request once the rest of the chain has completed
+	 * @see org.springframework.web.filter.OncePerRequestFilter#doFilterInternal(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, javax.servlet.FilterChain)
+	 */
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		if (!logger.isInfoEnabled()) {
+			chain.doFilter(request, response);
+			return;
+		}
+		long timestamp = System.currentTimeMillis();
+		long start = System.nanoTime();
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			if (request.isAsyncStarted()) {
+				// Long polls complete on another thread, log them with their final status and duration
+				request.getAsyncContext().addListener(new AsyncListener() {
+					@Override
+					public void onComplete(AsyncEvent event) {
+						log(request, response, timestamp, start);
+					}
+
+					@Override
+					public void onTimeout(AsyncEvent event) {}
+
+					@Override
+					public void onError(AsyncEvent event) {}
+
+					@Override
+					public void onStartAsync(AsyncEvent event) {}
+				});
+			} else {
+				log(request, response, timestamp, start);
+			}
+		}
+	}
+
+	/**
+	 * Write the access event of a completed request
+	 * @param request The request
+	 * @param response The response
+	 * @param timestamp The time the request arrived in milliseconds since the epoch
+	 * @param start The time the request arrived in nanoseconds
+	 */
+	private static void log(HttpServletRequest request, HttpServletResponse response, long timestamp, long start) {
+		long durationMicros = (System.nanoTime() - start) / 1000;
+		StringBuilder event = new StringBuilder(256);
+		event.append("{\"timestamp\":\"").append(Instant.ofEpochMilli(timestamp)).append('"');
+		appendField(event, "method", request.getMethod());
+		appendField(event, "path", request.getRequestURI());
+		appendField(event, "query", request.getQueryString());
+		event.append(",\"status\":").append(response.getStatus());
+		appendField(event, "user", userName(request));
+		appendField(event, "remote", request.getRemoteAddr());
+		event.append(",\"durationMicros\":").append(durationMicros);
+		Object trace = request.getAttribute(TraceFilter.TRACE_ATTRIBUTE);
+		if (trace instanceof TraceRecord) {
+			((TraceRecord) trace).appendTo(event);
+		}
+		event.append('}');
+		logger.info(event);
+	}
+
+	/**
+	 * Get the user name from a basic authorization header without authenticating it, so that
+	 * failed authentications are attributed too
+	 * @param request The request
+	 * @return The user name, or null if there is no basic authorization header
+	 */
+	static String userName(HttpServletRequest request) {
+		String header = request.getHeader("Authorization");
+		if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6)) {
+			return null;
+		}
+		try {
+			String credentials = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+			int separator = credentials.indexOf(':');
+			return separator < 0 ? credentials : credentials.substring(0, separator);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Append a JSON string field, omitting it if the value is null
+	 * @param event The event being built
+	 * @param name The field name
+	 * @param value The field value
+	 */
+	static void appendField(StringBuilder event, String name, String value) {
+		if (value == null) {
+			return;
+		}
+		event.append(",\"").append(name).append("\":\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				event.append('\\').append(c);
+			} else if (c < 0x20) {
+				event.append(String.format("\\u%04x", (int) c));
+			} else {
+				event.append(c);
+			}
+		}
+		event.append('"');
+	}
+
+}
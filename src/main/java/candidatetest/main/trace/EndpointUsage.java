@@ -0,0 +1,179 @@
+package candidatetest.main.trace;
+
+import org.HdrHistogram.AbstractHistogram;
+
+import candidatetest.main.metrics.Histogram;
+
+/**
+ * The bytes allocated and the CPU time used per request by one controller method, as listed by
+ * {@code /api/admin/usage}
+ */
+public class EndpointUsage {
+
+	/**
+	 * The distribution of one resource over the requests of a handler
+	 */
+	public static class Statistics {
+
+		/**
+		 * The total over all requests
+		 */
+		private final long total;
+		/**
+		 * The mean per request
+		 */
+		private final long mean;
+		/**
+		 * The median per request
+		 */
+		private final long p50;
+		/**
+		 * The 90th percentile per request
+		 */
+		private final long p90;
+		/**
+		 * The 99th percentile per request
+		 */
+		private final long p99;
+		/**
+		 * The most used by one request
+		 */
+		private final long max;
+
+		/**
+		 * Summarise a histogram
+		 * @param histogram The histogram
+		 * @param divisor The divisor converting the recorded unit into the reported one
+		 */
+		Statistics(Histogram histogram, long divisor) {
+			AbstractHistogram snapshot = histogram.snapshot();
+			boolean empty = snapshot.getTotalCount() == 0;
+			this.total = histogram.getSum() / divisor;
+			this.mean = empty ? 0 : (long) (snapshot.getMean() / divisor);
+			this.p50 = empty ? 0 : snapshot.getValueAtPercentile(50) / divisor;
+			this.p90 = empty ? 0 : snapshot.getValueAtPercentile(90) / divisor;
+			this.p99 = empty ? 0 : snapshot.getValueAtPercentile(99) / divisor;
+			this.max = empty ? 0 : snapshot.getMaxValue() / divisor;
+		}
+
+		/**
+		 * Get the total over all requests
+		 * @return The total
+		 */
+		public long getTotal() {
+			return total;
+		}
+
+		/**
+		 * Get the mean per request
+		 * @return The mean
+		 */
+		public long getMean() {
+			return mean;
+		}
+
+		/**
+		 * Get the median per request
+		 * @return The median
+		 */
+		public long getP50() {
+			return p50;
+		}
+
+		/**
+		 * Get the 90th percentile per request
+		 * @return The 90th percentile
+		 */
+		public long getP90() {
+			return p90;
+		}
+
+		/**
+		 * Get the 99th percentile per request
+		 * @return The 99th percentile
+		 */
+		public long getP99() {
+			return p99;
+		}
+
+		/**
+		 * Get the most used by one request
+		 * @return The maximum
+		 */
+		public long getMax() {
+			return max;
+		}
+
+	}
+
+	/**
+	 * The controller method, e.g. {@code UserRestController.get}
+	 */
+	private final String handler;
+	/**
+	 * The number of requests accounted
+	 */
+	private final long count;
+	/**
+	 * The bytes allocated per request
+	 */
+	private final Statistics allocatedBytes;
+	/**
+	 * The CPU time per request in microseconds
+	 */
+	private final Statistics cpuMicros;
+
+	/**
+	 * Summarise the histograms of a handler
+	 * @param handler The handler name
+	 * @param allocatedBytes The bytes allocated per request
+	 * @param cpuNanos The CPU time per request in nanoseconds
+	 */
+	EndpointUsage(String handler, Histogram allocatedBytes, Histogram cpuNanos) {
+		this.handler = handler;
+		this.allocatedBytes = new Statistics(allocatedBytes, 1);
+		this.cpuMicros = new Statistics(cpuNanos, 1000);
+		this.count = allocatedBytes.snapshot().getTotalCount();
+	}
+
+	/**
+	 * Get the controller method
+	 * @return The handler name, or {@link ResourceAccountingFilter#UNMATCHED} for requests which reached none
+	 */
+	public String getHandler() {
+		return handler;
+	}
+
+	/**
+	 * Get the number of requests accounted
+	 * @return The request count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Get the bytes allocated per request
+	 * @return The allocation statistics in bytes
+	 */
+	public Statistics getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * Get the CPU time per request
+	 * @return The CPU time statistics in microseconds
+	 */
+	public Statistics getCpuMicros() {
+		return cpuMicros;
+	}
+
+	/**
+	 * Get the bytes allocated by all requests, by which handlers are ranked
+	 * @return The total in bytes
+	 */
+	long getTotalAllocatedBytes() {
+		return allocatedBytes.getTotal();
+	}
+
+}
@@ -0,0 +1,221 @@
+package candidatetest.main.trace;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.sun.management.ThreadMXBean;
+
+import candidatetest.main.metrics.Histogram;
+import candidatetest.main.metrics.MetricsRegistry;
+
+/**
+ * Accounts the bytes allocated and the CPU time used by the request thread for each API request, per
+ * controller method.  The thread's counters are read at the start and end of the request, so the figures
+ * include the security chain and serialisation of the response.  Work the request hands to another thread
+ * and waits for is only accounted if it is wrapped by {@link #charged(Callable)}, as password verification
+ * is.  Requests rejected before reaching a controller are accounted to {@link #UNMATCHED}.  For asynchronous
+ * requests, such as a {@code _changes} request parked until documents change, only the work done by the
+ * thread which received the request before it returned is accounted
+ */
+public class ResourceAccountingFilter extends OncePerRequestFilter {
+
+	/**
+	 * The handler name of requests which did not reach a controller method
+	 */
+	public static final String UNMATCHED = "none";
+
+	/**
+	 * The logger
+	 */
+	private static final Logger logger = LogManager.getLogger(ResourceAccountingFilter.class);
+
+	/**
+	 * The work done on other threads for the request the current thread is handling, or null outside an accounted request
+	 */
+	private static final ThreadLocal<Charge> charges = new ThreadLocal<Charge>();
+
+	/**
+	 * The JVM's thread counters, or null if they are unsupported and requests are not accounted
+	 */
+	private final ThreadMXBean threads;
+	/**
+	 * The registry in which the histograms of each handler are registered
+	 */
+	private final MetricsRegistry metrics;
+	/**
+	 * The histograms, keyed by handler name
+	 */
+	private final ConcurrentMap<String, Usage> usages = new ConcurrentHashMap<String, Usage>();
+
+	/**
+	 * The histograms of one handler
+	 */
+	private static class Usage {
+		/** The bytes allocated per request */
+		private final Histogram allocatedBytes;
+		/** The CPU time per request in nanoseconds */
+		private final Histogram cpuNanos;
+
+		/**
+		 * Register the histograms of a handler
+		 * @param metrics The registry
+		 * @param handler The handler name
+		 */
+		private Usage(MetricsRegistry metrics, String handler) {
+			this.allocatedBytes = metrics.distribution("request_allocated_bytes", "Bytes allocated by the request thread per API request", "handler", handler);
+			this.cpuNanos = metrics.timer("request_cpu_seconds", "CPU time of the request thread per API request", "handler", handler);
+		}
+	}
+
+	/**
+	 * The bytes allocated and CPU time used on other threads on behalf of one request
+	 */
+	private static class Charge {
+		/** The JVM's thread counters */
+		private final ThreadMXBean threads;
+		/** The bytes allocated */
+		private long allocatedBytes;
+		/** The CPU time in nanoseconds */
+		private long cpuNanos;
+
+		/**
+		 * Construct an empty charge
+		 * @param threads The JVM's thread counters
+		 */
+		private Charge(ThreadMXBean threads) {
+			this.threads = threads;
+		}
+
+		/**
+		 * Run a task on the current thread, adding what it allocates and the CPU time it uses to the charge
+		 * @param task The task
+		 * @return The result of the task
+		 * @throws Exception Thrown by the task
+		 */
+		private <V> V run(Callable<V> task) throws Exception {
+			long thread = Thread.currentThread().getId();
+			long allocated = threads.getThreadAllocatedBytes(thread);
+			long cpu = threads.getCurrentThreadCpuTime();
+			try {
+				return task.call();
+			} finally {
+				add(threads.getThreadAllocatedBytes(thread) - allocated, threads.getCurrentThreadCpuTime() - cpu);
+			}
+		}
+
+		/**
+		 * Add to the charge
+		 * @param bytes The bytes allocated
+		 * @param nanos The CPU time in nanoseconds
+		 */
+		private synchronized void add(long bytes, long nanos) {
+			allocatedBytes += bytes;
+			cpuNanos += nanos;
+		}
+	}
+
+	/**
+	 * Construct a new filter, enabling the thread counters if they are supported but off.  On a JVM which
+	 * does not measure per-thread allocation and CPU time the filter accounts nothing
+	 * @param metrics The registry in which the histograms are registered
+	 */
+	public ResourceAccountingFilter(MetricsRegistry metrics) {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof ThreadMXBean && ((ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+				&& bean.isCurrentThreadCpuTimeSupported()) {
+			this.threads = (ThreadMXBean) bean;
+			if (!threads.isThreadAllocatedMemoryEnabled()) {
+				threads.setThreadAllocatedMemoryEnabled(true);
+			}
+			if (!threads.isThreadCpuTimeEnabled()) {
+				threads.setThreadCpuTimeEnabled(true);
+			}
+		} else {
+			logger.warn("This JVM does not measure per-thread allocation and CPU time, requests will not be accounted");
+			this.threads = null;
+		}
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Account the request to the controller method which handled it
+	 * @see org.springframework.web.filter.OncePerRequestFilter#doFilterInternal(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, javax.servlet.FilterChain)
+	 */
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		if (threads == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+		long thread = Thread.currentThread().getId();
+		long allocated = threads.getThreadAllocatedBytes(thread);
+		long cpu = threads.getCurrentThreadCpuTime();
+		Charge charge = new Charge(threads);
+		charges.set(charge);
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			charges.remove();
+			long cpuNanos = threads.getCurrentThreadCpuTime() - cpu;
+			long allocatedBytes = threads.getThreadAllocatedBytes(thread) - allocated;
+			synchronized (charge) {
+				// Work on other threads still running after a timeout is left out
+				cpuNanos += charge.cpuNanos;
+				allocatedBytes += charge.allocatedBytes;
+			}
+			Object handler = request.getAttribute(TraceInterceptor.HANDLER_ATTRIBUTE);
+			Usage usage = usage(handler instanceof String ? (String) handler : UNMATCHED);
+			usage.allocatedBytes.record(allocatedBytes);
+			usage.cpuNanos.record(cpuNanos);
+		}
+	}
+
+	/**
+	 * Wrap a task which the current thread will hand to another thread and wait for, so that what the task
+	 * allocates and the CPU time it uses are accounted to the request the current thread is handling
+	 * @param task The task
+	 * @return The task itself outside an accounted request, or a task adding its usage to the request
+	 */
+	public static <V> Callable<V> charged(Callable<V> task) {
+		Charge charge = charges.get();
+		return charge == null ? task : () -> charge.run(task);
+	}
+
+	/**
+	 * Summarise the requests accounted so far, most allocating handler first
+	 * @return A summary per handler
+	 */
+	public List<EndpointUsage> report() {
+		List<EndpointUsage> report = new ArrayList<EndpointUsage>(usages.size());
+		usages.forEach((handler, usage) -> report.add(new EndpointUsage(handler, usage.allocatedBytes, usage.cpuNanos)));
+		report.sort(Comparator.comparingLong(EndpointUsage::getTotalAllocatedBytes).reversed());
+		return report;
+	}
+
+	/**
+	 * Get the histograms of a handler, registering them on its first request
+	 * @param handler The handler name
+	 * @return The histograms
+	 */
+	private Usage usage(String handler) {
+		Usage usage = usages.get(handler);
+		return usage != null ? usage : usages.computeIfAbsent(handler, key -> new Usage(metrics, key));
+	}
+
+}
@@ -0,0 +1,226 @@
+package candidatetest.main.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The phase timings of the request running on the current thread.  A request passes through top-level
+ * phases one after the other (the security chain, the handler, serialisation), and code within a phase
+ * records nested spans such as a repository round trip.  Each thread reuses one recorder of fixed size,
+ * so recording is a clock read and two array stores, and when no request is being traced on the thread
+ * it is a thread-local read
+ */
+public final class Trace {
+
+	/**
+	 * The most phases and spans recorded per request, later ones are counted but not kept
+	 */
+	static final int MAX_SPANS = 32;
+
+	/**
+	 * The trace of the request running on each thread, absent outside traced requests
+	 */
+	private static final ThreadLocal<Trace> current = new ThreadLocal<Trace>();
+
+	/**
+	 * The recorder each thread reuses
+	 */
+	private static final ThreadLocal<Trace> recorders = ThreadLocal.withInitial(Trace::new);
+
+	/**
+	 * The span names
+	 */
+	private final String[] names = new String[MAX_SPANS];
+	/**
+	 * The span start times in nanoseconds
+	 */
+	private final long[] starts = new long[MAX_SPANS];
+	/**
+	 * The span end times in nanoseconds, or 0 while open
+	 */
+	private final long[] ends = new long[MAX_SPANS];
+	/**
+	 * Whether each span is a top-level phase rather than nested
+	 */
+	private final boolean[] phases = new boolean[MAX_SPANS];
+	/**
+	 * The number of spans kept
+	 */
+	private int size;
+	/**
+	 * The number of spans not kept because the recorder was full
+	 */
+	private int overflow;
+	/**
+	 * The index of the open phase, or -1
+	 */
+	private int openPhase;
+	/**
+	 * The time the request started in nanoseconds
+	 */
+	private long startNanos;
+	/**
+	 * The time the request started in milliseconds since the epoch
+	 */
+	private long startMillis;
+	/**
+	 * The name of the controller method handling the request, or null before it is known
+	 */
+	private String handler;
+	/**
+	 * Whether the request was chosen by head sampling
+	 */
+	private boolean sampled;
+
+	/**
+	 * Recorders are obtained through {@link #begin(String, boolean)}
+	 */
+	private Trace() {}
+
+	/**
+	 * Start tracing the request on the current thread, opening its first phase
+	 * @param phase The name of the first phase
+	 * @param sampled Whether the request was chosen by head sampling
+	 * @return The recorder, which must be passed to {@link #end(Trace)} on the same thread
+	 */
+	static Trace begin(String phase, boolean sampled) {
+		Trace trace = recorders.get();
+		trace.size = 0;
+		trace.overflow = 0;
+		trace.openPhase = -1;
+		trace.handler = null;
+		trace.sampled = sampled;
+		trace.startMillis = System.currentTimeMillis();
+		trace.startNanos = System.nanoTime();
+		trace.open(phase, trace.startNanos);
+		current.set(trace);
+		return trace;
+	}
+
+	/**
+	 * Stop tracing the request on the current thread, closing its open phase
+	 * @param trace The recorder returned by {@link #begin(String, boolean)}
+	 * @return The time the request took in nanoseconds
+	 */
+	static long end(Trace trace) {
+		long now = System.nanoTime();
+		trace.closePhase(now);
+		current.remove();
+		return now - trace.startNanos;
+	}
+
+	/**
+	 * Close the open phase of the current request and open the next one.  Does nothing outside a traced request
+	 * @param phase The name of the next phase
+	 */
+	public static void phase(String phase) {
+		Trace trace = current.get();
+		if (trace != null) {
+			long now = System.nanoTime();
+			trace.closePhase(now);
+			trace.open(phase, now);
+		}
+	}
+
+	/**
+	 * Record a nested span of the current request which ends now.  Does nothing outside a traced request
+	 * @param name The name of the span, e.g. {@code repository.findOne}
+	 * @param startNanos The time the span started from {@link System#nanoTime()}
+	 */
+	public static void span(String name, long startNanos) {
+		Trace trace = current.get();
+		if (trace != null) {
+			int index = trace.add(name, startNanos, false);
+			if (index >= 0) {
+				trace.ends[index] = System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * Record which controller method handles the current request.  Does nothing outside a traced request
+	 * @param handler The handler name, e.g. {@code UserRestController.get}
+	 */
+	public static void handler(String handler) {
+		Trace trace = current.get();
+		if (trace != null) {
+			trace.handler = handler;
+		}
+	}
+
+	/**
+	 * Get the name of the controller method handling the request on the current thread
+	 * @return The handler name, or null outside a traced request or before the handler is known
+	 */
+	public static String currentHandler() {
+		Trace trace = current.get();
+		return trace != null ? trace.handler : null;
+	}
+
+	/**
+	 * Open a phase
+	 * @param phase The name of the phase
+	 * @param now The time the phase starts in nanoseconds
+	 */
+	private void open(String phase, long now) {
+		openPhase = add(phase, now, true);
+	}
+
+	/**
+	 * Close the open phase, if any
+	 * @param now The time the phase ends in nanoseconds
+	 */
+	private void closePhase(long now) {
+		if (openPhase >= 0) {
+			ends[openPhase] = now;
+			openPhase = -1;
+		}
+	}
+
+	/**
+	 * Add a span
+	 * @param name The span name
+	 * @param start The start time in nanoseconds
+	 * @param phase Whether the span is a top-level phase
+	 * @return The index of the span, or -1 if the recorder is full
+	 */
+	private int add(String name, long start, boolean phase) {
+		if (size == MAX_SPANS) {
+			overflow++;
+			return -1;
+		}
+		names[size] = name;
+		starts[size] = start;
+		ends[size] = 0;
+		phases[size] = phase;
+		return size++;
+	}
+
+	/**
+	 * Copy the recorded timings into an immutable record
+	 * @param id The trace id
+	 * @param method The HTTP method
+	 * @param path The request path
+	 * @param status The response status
+	 * @param durationNanos The time the request took in nanoseconds
+	 * @param reason Why the trace was kept, {@code sampled} or {@code slow}
+	 * @return The record
+	 */
+	TraceRecord toRecord(long id, String method, String path, int status, long durationNanos, String reason) {
+		List<TraceRecord.Span> spans = new ArrayList<TraceRecord.Span>(size);
+		for (int i = 0; i < size; i++) {
+			long end = ends[i] != 0 ? ends[i] : startNanos + durationNanos;
+			spans.add(new TraceRecord.Span(names[i], phases[i], (starts[i] - startNanos) / 1000, (end - starts[i]) / 1000));
+		}
+		return new TraceRecord(id, startMillis, method, path, handler, status, durationNanos / 1000, reason, spans, overflow);
+	}
+
+	/**
+	 * Test whether the request was chosen by head sampling
+	 * @return {@code true} if sampled
+	 */
+	boolean isSampled() {
+		return sampled;
+	}
+
+}
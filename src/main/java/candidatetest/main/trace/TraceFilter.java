@@ -0,0 +1,100 @@
+package candidatetest.main.trace;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import candidatetest.main.metrics.Counter;
+import candidatetest.main.metrics.MetricsRegistry;
+
+/**
+ * Records the phase timings of API requests: the security chain, the handler, serialisation of the
+ * response and spans such as password verification and repository round trips within them.  A fraction
+ * of requests is chosen up front, and any request slower than a threshold is kept whether chosen or not.
+ * Kept traces go to the {@link TraceRing} and are attached to the request for the access log.  A request
+ * which is neither chosen nor slow costs a few clock reads and allocates nothing
+ */
+public class TraceFilter extends OncePerRequestFilter {
+
+	/**
+	 * The request attribute holding the {@link TraceRecord} of a kept trace
+	 */
+	public static final String TRACE_ATTRIBUTE = TraceFilter.class.getName() + ".trace";
+
+	/**
+	 * The phase from the start of the request until a handler is chosen, mostly the security chain
+	 */
+	public static final String SECURITY_PHASE = "security";
+
+	/**
+	 * The fraction of requests traced regardless of duration
+	 */
+	private final double sampleRate;
+	/**
+	 * The duration from which requests are always kept in nanoseconds, or 0 to keep only sampled ones
+	 */
+	private final long slowNanos;
+	/**
+	 * The recent kept traces
+	 */
+	private final TraceRing ring;
+	/**
+	 * Traces kept because they were sampled
+	 */
+	private final Counter keptSampled;
+	/**
+	 * Traces kept because they were slow
+	 */
+	private final Counter keptSlow;
+
+	/**
+	 * Construct a new filter
+	 * @param sampleRate The fraction of requests traced regardless of duration, from 0 to 1
+	 * @param slowMillis The duration from which requests are always kept in milliseconds, or 0 to keep only sampled ones
+	 * @param ring The ring in which kept traces are stored
+	 * @param metrics The registry in which kept traces are counted
+	 */
+	public TraceFilter(double sampleRate, long slowMillis, TraceRing ring, MetricsRegistry metrics) {
+		this.sampleRate = sampleRate;
+		this.slowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, slowMillis));
+		this.ring = ring;
+		this.keptSampled = metrics.counter("traces_kept_total", "Request traces kept by reason", "reason", "sampled");
+		this.keptSlow = metrics.counter("traces_kept_total", "Request traces kept by reason", "reason", "slow");
+	}
+
+	/**
+	 * Trace the request if it is sampled or may turn out slow
+	 * @see org.springframework.web.filter.OncePerRequestFilter#doFilterInternal(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, javax.servlet.FilterChain)
+	 */
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		boolean sampled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+		if (!sampled && slowNanos == 0) {
+			chain.doFilter(request, response);
+			return;
+		}
+		Trace trace = Trace.begin(SECURITY_PHASE, sampled);
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			long durationNanos = Trace.end(trace);
+			String reason = trace.isSampled() ? "sampled" : slowNanos > 0 && durationNanos >= slowNanos ? "slow" : null;
+			if (reason != null) {
+				TraceRecord record = trace.toRecord(ring.nextId(), request.getMethod(), request.getRequestURI(),
+						response.getStatus(), durationNanos, reason);
+				ring.add(record);
+				request.setAttribute(TRACE_ATTRIBUTE, record);
+				(trace.isSampled() ? keptSampled : keptSlow).increment();
+			}
+		}
+	}
+
+}
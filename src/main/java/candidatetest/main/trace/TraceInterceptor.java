@@ -0,0 +1,77 @@
+package candidatetest.main.trace;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Marks the handler and completion phases of traced requests and names the controller method handling
+ * each request, for traces and for {@link ResourceAccountingFilter}
+ */
+public class TraceInterceptor extends HandlerInterceptorAdapter {
+
+	/**
+	 * The phase from choosing the handler until the response body is written
+	 */
+	public static final String HANDLER_PHASE = "handler";
+
+	/**
+	 * The phase from the handler returning until the request completes
+	 */
+	public static final String COMPLETION_PHASE = "completion";
+
+	/**
+	 * The request attribute holding the name of the controller method handling the request
+	 */
+	public static final String HANDLER_ATTRIBUTE = TraceInterceptor.class.getName() + ".handler";
+
+	/**
+	 * The handler names, built once per controller method
+	 */
+	private static final Map<Method, String> names = new ConcurrentHashMap<Method, String>();
+
+	/**
+	 * Get the name of a controller method, e.g. {@code UserRestController.get}
+	 * @param handler The handler of a request
+	 * @return The name, or null if the handler is not a controller method
+	 */
+	public static String handlerName(Object handler) {
+		if (!(handler instanceof HandlerMethod)) {
+			return null;
+		}
+		HandlerMethod method = (HandlerMethod) handler;
+		return names.computeIfAbsent(method.getMethod(), m -> method.getBeanType().getSimpleName() + "." + m.getName());
+	}
+
+	/**
+	 * Name the handler of the request and start the handler phase
+	 * @see org.springframework.web.servlet.handler.HandlerInterceptorAdapter#preHandle(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.lang.Object)
+	 */
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		String name = handlerName(handler);
+		if (name != null) {
+			request.setAttribute(HANDLER_ATTRIBUTE, name);
+		}
+		Trace.handler(name);
+		Trace.phase(HANDLER_PHASE);
+		return true;
+	}
+
+	/**
+	 * Start the completion phase
+	 * @see org.springframework.web.servlet.handler.HandlerInterceptorAdapter#postHandle(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.lang.Object, org.springframework.web.servlet.ModelAndView)
+	 */
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+		Trace.phase(COMPLETION_PHASE);
+	}
+
+}
@@ -0,0 +1,248 @@
+package candidatetest.main.trace;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The phase timings of one completed request, as kept in the trace ring and written to the access log
+ */
+public class TraceRecord {
+
+	/**
+	 * A phase or nested span of a request
+	 */
+	public static class Span {
+
+		/**
+		 * The span name
+		 */
+		private final String name;
+		/**
+		 * Whether the span is a top-level phase rather than nested within one
+		 */
+		private final boolean phase;
+		/**
+		 * The time from the start of the request to the start of the span in microseconds
+		 */
+		private final long offsetMicros;
+		/**
+		 * The duration of the span in microseconds
+		 */
+		private final long durationMicros;
+
+		/**
+		 * Construct a span
+		 * @param name The span name
+		 * @param phase Whether the span is a top-level phase
+		 * @param offsetMicros The time from the start of the request to the start of the span in microseconds
+		 * @param durationMicros The duration of the span in microseconds
+		 */
+		Span(String name, boolean phase, long offsetMicros, long durationMicros) {
+			this.name = name;
+			this.phase = phase;
+			this.offsetMicros = offsetMicros;
+			this.durationMicros = durationMicros;
+		}
+
+		/**
+		 * Get the span name
+		 * @return The name, e.g. {@code security} or {@code repository.findOne}
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Get whether the span is a top-level phase
+		 * @return {@code true} for a phase, {@code false} for a span nested within one
+		 */
+		public boolean isPhase() {
+			return phase;
+		}
+
+		/**
+		 * Get the time from the start of the request to the start of the span
+		 * @return The offset in microseconds
+		 */
+		public long getOffsetMicros() {
+			return offsetMicros;
+		}
+
+		/**
+		 * Get the duration of the span
+		 * @return The duration in microseconds
+		 */
+		public long getDurationMicros() {
+			return durationMicros;
+		}
+
+	}
+
+	/**
+	 * The trace id, increasing in the order requests completed
+	 */
+	private final long id;
+	/**
+	 * The time the request started in milliseconds since the epoch
+	 */
+	private final long startedAt;
+	/**
+	 * The HTTP method
+	 */
+	private final String method;
+	/**
+	 * The request path
+	 */
+	private final String path;
+	/**
+	 * The controller method which handled the request, or null if none did
+	 */
+	private final String handler;
+	/**
+	 * The response status
+	 */
+	private final int status;
+	/**
+	 * The time the request took in microseconds
+	 */
+	private final long durationMicros;
+	/**
+	 * Why the trace was kept
+	 */
+	private final String reason;
+	/**
+	 * The phases and spans in the order they started
+	 */
+	private final List<Span> spans;
+	/**
+	 * The number of spans not kept because the recorder was full
+	 */
+	private final int droppedSpans;
+
+	/**
+	 * Construct a record
+	 * @param id The trace id
+	 * @param startedAt The time the request started in milliseconds since the epoch
+	 * @param method The HTTP method
+	 * @param path The request path
+	 * @param handler The controller method which handled the request, or null
+	 * @param status The response status
+	 * @param durationMicros The time the request took in microseconds
+	 * @param reason Why the trace was kept, {@code sampled} or {@code slow}
+	 * @param spans The phases and spans in the order they started
+	 * @param droppedSpans The number of spans not kept
+	 */
+	TraceRecord(long id, long startedAt, String method, String path, String handler, int status, long durationMicros,
+			String reason, List<Span> spans, int droppedSpans) {
+		this.id = id;
+		this.startedAt = startedAt;
+		this.method = method;
+		this.path = path;
+		this.handler = handler;
+		this.status = status;
+		this.durationMicros = durationMicros;
+		this.reason = reason;
+		this.spans = spans;
+		this.droppedSpans = droppedSpans;
+	}
+
+	/**
+	 * Get the trace id
+	 * @return The id, increasing in the order requests completed
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Get the time the request started
+	 * @return The time in ISO-8601 format
+	 */
+	public String getTimestamp() {
+		return Instant.ofEpochMilli(startedAt).toString();
+	}
+
+	/**
+	 * Get the HTTP method
+	 * @return The method
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Get the request path
+	 * @return The path
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Get the controller method which handled the request
+	 * @return The handler name, e.g. {@code UserRestController.get}, or null if none did
+	 */
+	public String getHandler() {
+		return handler;
+	}
+
+	/**
+	 * Get the response status
+	 * @return The status
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Get the time the request took
+	 * @return The duration in microseconds
+	 */
+	public long getDurationMicros() {
+		return durationMicros;
+	}
+
+	/**
+	 * Get why the trace was kept
+	 * @return {@code sampled} if chosen by head sampling, {@code slow} if kept for its duration
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+	/**
+	 * Get the phases and spans
+	 * @return The spans in the order they started
+	 */
+	public List<Span> getSpans() {
+		return spans;
+	}
+
+	/**
+	 * Get the number of spans not kept because the request recorded too many
+	 * @return The number of spans
+	 */
+	public int getDroppedSpans() {
+		return droppedSpans;
+	}
+
+	/**
+	 * Append the trace to an access event as a {@code trace} object field
+	 * @param event The JSON event being built
+	 */
+	void appendTo(StringBuilder event) {
+		event.append(",\"trace\":{\"id\":").append(id);
+		AccessLogFilter.appendField(event, "reason", reason);
+		AccessLogFilter.appendField(event, "handler", handler);
+		event.append(",\"spans\":[");
+		for (int i = 0; i < spans.size(); i++) {
+			Span span = spans.get(i);
+			event.append(i == 0 ? "{" : ",{").append("\"phase\":").append(span.phase);
+			AccessLogFilter.appendField(event, "name", span.name);
+			event.append(",\"offsetMicros\":").append(span.offsetMicros)
+				.append(",\"durationMicros\":").append(span.durationMicros).append('}');
+		}
+		event.append("]}");
+	}
+
+}
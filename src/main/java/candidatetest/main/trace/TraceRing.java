@@ -0,0 +1,66 @@
+package candidatetest.main.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The most recent traces, overwriting the oldest.  Writers claim a position with an atomic increment
+ * and store their record there, so neither writers nor readers take a lock
+ */
+public class TraceRing {
+
+	/**
+	 * The records, indexed by id modulo the capacity
+	 */
+	private final AtomicReferenceArray<TraceRecord> records;
+	/**
+	 * The id of the next record
+	 */
+	private final AtomicLong next = new AtomicLong();
+
+	/**
+	 * Construct a ring
+	 * @param capacity The number of traces kept
+	 */
+	public TraceRing(int capacity) {
+		this.records = new AtomicReferenceArray<TraceRecord>(Math.max(1, capacity));
+	}
+
+	/**
+	 * Claim the id of the next record
+	 * @return The id
+	 */
+	long nextId() {
+		return next.getAndIncrement();
+	}
+
+	/**
+	 * Store a record, replacing the oldest
+	 * @param record The record, whose id was claimed with {@link #nextId()}
+	 */
+	void add(TraceRecord record) {
+		records.set((int) (record.getId() % records.length()), record);
+	}
+
+	/**
+	 * Get the most recent traces, newest first
+	 * @param limit The most traces to return
+	 * @param minMicros The shortest duration of the traces returned in microseconds
+	 * @return The traces
+	 */
+	public List<TraceRecord> recent(int limit, long minMicros) {
+		List<TraceRecord> recent = new ArrayList<TraceRecord>(Math.min(limit, records.length()));
+		long newest = next.get() - 1;
+		for (long id = newest; id >= 0 && id > newest - records.length() && recent.size() < limit; id--) {
+			TraceRecord record = records.get((int) (id % records.length()));
+			// A slot may still hold an older record if its writer has not stored yet, or a newer one after wrapping
+			if (record != null && record.getId() == id && record.getDurationMicros() >= minMicros) {
+				recent.add(record);
+			}
+		}
+		return recent;
+	}
+
+}
@@ -0,0 +1,542 @@
+package candidatetest.main.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkAction;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteAction;
+import org.elasticsearch.action.get.GetAction;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexAction;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.action.update.UpdateAction;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.FilterClient;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.elasticsearch.threadpool.ThreadPool;
+
+/**
+ * A client which sends document reads and writes to ElasticSearch over HTTP and passes every other
+ * action to the wrapped transport client.  Searches without aggregations, gets and bulk requests go
+ * through the asynchronous low-level REST client, which keeps a pool of keep-alive connections and
+ * has any number of requests in flight on them from a single I/O reactor.  Single index, update and
+ * delete requests are sent as bulk requests of one item.  Bulk bodies are encoded in the content type
+ * of their documents, so SMILE documents are not converted, and large bodies are sent compressed.
+ * Administrative actions, aggregations and delete-by-query stay on the transport client, as the
+ * ElasticSearch 5 client library cannot parse their REST responses.<br><br>
+ * Responses are parsed and passed to listeners on the {@code listener} thread pool, so that a
+ * listener which blocks never stalls the I/O reactor
+ */
+public class RestDocumentClient extends FilterClient {
+
+	/**
+	 * The smallest request body which is compressed
+	 */
+	private static final int COMPRESS_MIN_BYTES = 1024;
+
+	/**
+	 * The HTTP client
+	 */
+	private final RestClient rest;
+	/**
+	 * Whether large request bodies are compressed
+	 */
+	private final boolean compress;
+
+	/**
+	 * Wrap a client
+	 * @param in The transport client, which carries every action not sent over HTTP
+	 * @param rest The HTTP client, see {@link #restClient(String, int, boolean)}
+	 * @param compress Whether to compress request bodies of {@value #COMPRESS_MIN_BYTES} bytes or more
+	 */
+	public RestDocumentClient(Client in, RestClient rest, boolean compress) {
+		super(in);
+		this.rest = rest;
+		this.compress = compress;
+	}
+
+	/**
+	 * Build an HTTP client with a pool of keep-alive connections, asking for compressed responses
+	 * @param hosts Comma separated {@code host:port} pairs of the HTTP endpoints of the cluster
+	 * @param maxConnections The most connections opened to each host, and requests in flight on them
+	 * @param compress Whether to ask for compressed responses
+	 * @return The client
+	 */
+	public static RestClient restClient(String hosts, int maxConnections, boolean compress) {
+		String[] names = Strings.tokenizeToStringArray(hosts, ",");
+		HttpHost[] httpHosts = new HttpHost[names.length];
+		for (int i = 0; i < names.length; i++) {
+			httpHosts[i] = HttpHost.create(names[i]);
+		}
+		Header[] headers = compress
+			? new Header[] { new BasicHeader(HttpHeaders.ACCEPT_ENCODING, "gzip") } : new Header[0];
+		return RestClient.builder(httpHosts)
+			.setDefaultHeaders(headers)
+			.setHttpClientConfigCallback(builder -> builder
+				.setMaxConnPerRoute(maxConnections)
+				.setMaxConnTotal(maxConnections * httpHosts.length))
+			.build();
+	}
+
+	/**
+	 * Send document reads and writes over HTTP, and any other action over the transport client
+	 * @see org.elasticsearch.client.FilterClient#doExecute(org.elasticsearch.action.Action, org.elasticsearch.action.ActionRequest, org.elasticsearch.action.ActionListener)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	protected <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void doExecute(
+			Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+		try {
+			if (action == SearchAction.INSTANCE && isPlainSearch((SearchRequest) request)) {
+				sendSearch((SearchRequest) request, (ActionListener<SearchResponse>) listener);
+			} else if (action == GetAction.INSTANCE) {
+				sendGet((GetRequest) request, (ActionListener<GetResponse>) listener);
+			} else if (action == BulkAction.INSTANCE) {
+				sendBulk((BulkRequest) request, (ActionListener<BulkResponse>) listener);
+			} else if (action == IndexAction.INSTANCE || action == UpdateAction.INSTANCE || action == DeleteAction.INSTANCE) {
+				sendSingle((DocWriteRequest<?>) request, (ActionListener<DocWriteResponse>) listener);
+			} else {
+				super.doExecute(action, request, listener);
+			}
+		} catch (IOException | RuntimeException e) {
+			listener.onFailure(e);
+		}
+	}
+
+	/**
+	 * Close the HTTP client and the transport client
+	 * @see org.elasticsearch.client.FilterClient#close()
+	 */
+	@Override
+	public void close() {
+		try {
+			rest.close();
+		} catch (IOException e) {
+			// The transport client is closed regardless
+		}
+		super.close();
+	}
+
+	/**
+	 * Test whether a search only asks for hits, which is all that can be parsed from a REST response
+	 * @param request The search
+	 * @return {@code true} if the search can be sent over HTTP
+	 */
+	private static boolean isPlainSearch(SearchRequest request) {
+		SearchSourceBuilder source = request.source();
+		return source != null && source.aggregations() == null && source.suggest() == null && !source.profile()
+			&& request.scroll() == null && request.searchType() == SearchType.DEFAULT;
+	}
+
+	/**
+	 * Send a search
+	 * @param request The search
+	 * @param listener Notified with the hits
+	 * @throws IOException Thrown if the search cannot be encoded
+	 */
+	private void sendSearch(SearchRequest request, ActionListener<SearchResponse> listener) throws IOException {
+		StringBuilder endpoint = new StringBuilder("/").append(String.join(",", request.indices()));
+		if (request.types().length > 0) {
+			endpoint.append('/').append(String.join(",", request.types()));
+		}
+		endpoint.append("/_search");
+		Map<String, String> params = new HashMap<String, String>();
+		putIfSet(params, "routing", request.routing());
+		putIfSet(params, "preference", request.preference());
+		if (request.requestCache() != null) {
+			params.put("request_cache", request.requestCache().toString());
+		}
+		BytesReference body = request.source().toXContent(XContentFactory.jsonBuilder(), ToXContent.EMPTY_PARAMS).bytes();
+		perform("POST", endpoint.toString(), params, body, XContentType.JSON, listener, false, RestDocumentClient::parseSearch);
+	}
+
+	/**
+	 * Send a get
+	 * @param request The get
+	 * @param listener Notified with the document, or that it was not found
+	 */
+	private void sendGet(GetRequest request, ActionListener<GetResponse> listener) {
+		String endpoint = "/" + request.index() + "/" + (request.type() == null ? "_all" : request.type()) + "/" + request.id();
+		Map<String, String> params = new HashMap<String, String>();
+		putIfSet(params, "routing", request.routing());
+		putIfSet(params, "parent", request.parent());
+		putIfSet(params, "preference", request.preference());
+		if (!request.realtime()) {
+			params.put("realtime", "false");
+		}
+		if (request.refresh()) {
+			params.put("refresh", "true");
+		}
+		if (request.version() != Versions.MATCH_ANY) {
+			params.put("version", Long.toString(request.version()));
+			if (request.versionType() != VersionType.INTERNAL) {
+				params.put("version_type", request.versionType().name().toLowerCase());
+			}
+		}
+		if (request.fetchSourceContext() != null && !request.fetchSourceContext().fetchSource()) {
+			params.put("_source", "false");
+		}
+		perform("GET", endpoint, params, null, null, listener, true, GetResponse::fromXContent);
+	}
+
+	/**
+	 * Send a bulk request
+	 * @param request The bulk request
+	 * @param listener Notified with the item responses
+	 * @throws IOException Thrown if the request cannot be encoded
+	 */
+	private void sendBulk(BulkRequest request, ActionListener<BulkResponse> listener) throws IOException {
+		Map<String, String> params = new HashMap<String, String>();
+		if (request.getRefreshPolicy() != RefreshPolicy.NONE) {
+			params.put("refresh", request.getRefreshPolicy().getValue());
+		}
+		XContentType type = bulkContentType(request);
+		perform("POST", "/_bulk", params, encodeBulk(request, type), type, listener, false, BulkResponse::fromXContent);
+	}
+
+	/**
+	 * Send a single index, update or delete request as a bulk request of one item, failing with the
+	 * exception the transport client would raise when the item fails
+	 * @param request The write
+	 * @param listener Notified with the response of the item
+	 * @throws IOException Thrown if the request cannot be encoded
+	 */
+	private void sendSingle(DocWriteRequest<?> request, ActionListener<DocWriteResponse> listener) throws IOException {
+		BulkRequest bulk = new BulkRequest();
+		bulk.add(request);
+		// Index, update and delete requests all carry a refresh policy
+		if (request instanceof WriteRequest) {
+			bulk.setRefreshPolicy(((WriteRequest<?>) request).getRefreshPolicy());
+		}
+		sendBulk(bulk, new ActionListener<BulkResponse>() {
+			@Override
+			public void onResponse(BulkResponse response) {
+				BulkItemResponse item = response.getItems()[0];
+				if (!item.isFailed()) {
+					listener.onResponse(item.getResponse());
+					return;
+				}
+				BulkItemResponse.Failure failure = item.getFailure();
+				ShardId shard = new ShardId(failure.getIndex(), "_na_", 0);
+				if (failure.getStatus() == RestStatus.CONFLICT) {
+					listener.onFailure(new VersionConflictEngineException(shard, failure.getType(), failure.getId(), failure.getMessage()));
+				} else if (failure.getStatus() == RestStatus.NOT_FOUND && request instanceof UpdateRequest) {
+					listener.onFailure(new DocumentMissingException(shard, failure.getType(), failure.getId()));
+				} else {
+					listener.onFailure(failure.getCause());
+				}
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				listener.onFailure(e);
+			}
+		});
+	}
+
+	/**
+	 * Choose the content type of a bulk body: that of the first document, so documents encoded in
+	 * a binary content type are sent as they are
+	 * @param request The bulk request
+	 * @return The content type
+	 */
+	private static XContentType bulkContentType(BulkRequest request) {
+		for (DocWriteRequest<?> item : request.requests()) {
+			if (item instanceof IndexRequest && ((IndexRequest) item).getContentType() != null) {
+				return ((IndexRequest) item).getContentType();
+			}
+		}
+		return XContentType.JSON;
+	}
+
+	/**
+	 * Encode a bulk body, an action and optionally a document per item, each followed by the separator of the content type
+	 * @param request The bulk request
+	 * @param type The content type of the body
+	 * @return The body
+	 * @throws IOException Thrown if an item cannot be encoded
+	 */
+	private static BytesReference encodeBulk(BulkRequest request, XContentType type) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(256, (int) Math.min(Integer.MAX_VALUE, request.estimatedSizeInBytes() + 64 * request.numberOfActions())));
+		byte separator = type.xContent().streamSeparator();
+		for (DocWriteRequest<?> item : request.requests()) {
+			XContentBuilder action = XContentBuilder.builder(type.xContent());
+			action.startObject().startObject(item.opType().getLowercase());
+			action.field("_index", item.index());
+			action.field("_type", item.type());
+			if (item.id() != null) {
+				action.field("_id", item.id());
+			}
+			if (item.routing() != null) {
+				action.field("_routing", item.routing());
+			}
+			if (item.parent() != null) {
+				action.field("_parent", item.parent());
+			}
+			if (item.version() != Versions.MATCH_ANY) {
+				action.field("_version", item.version());
+				if (item.versionType() != VersionType.INTERNAL) {
+					action.field("_version_type", item.versionType().name().toLowerCase());
+				}
+			}
+			if (item instanceof UpdateRequest && ((UpdateRequest) item).retryOnConflict() > 0) {
+				action.field("_retry_on_conflict", ((UpdateRequest) item).retryOnConflict());
+			}
+			action.endObject().endObject();
+			action.bytes().writeTo(out);
+			out.write(separator);
+			if (item instanceof IndexRequest) {
+				IndexRequest index = (IndexRequest) item;
+				BytesReference source = index.source();
+				if (index.getContentType() != type) {
+					source = XContentBuilder.builder(type.xContent()).map(index.sourceAsMap()).bytes();
+				}
+				source.writeTo(out);
+				out.write(separator);
+			} else if (item instanceof UpdateRequest) {
+				XContentBuilder update = XContentBuilder.builder(type.xContent());
+				((UpdateRequest) item).toXContent(update, ToXContent.EMPTY_PARAMS);
+				update.bytes().writeTo(out);
+				out.write(separator);
+			}
+		}
+		return new BytesArray(out.toByteArray());
+	}
+
+	/**
+	 * Parse the hits of a search response
+	 * @param parser The parser of the response
+	 * @return The search response
+	 * @throws IOException Thrown if the response cannot be parsed
+	 */
+	private static SearchResponse parseSearch(XContentParser parser) throws IOException {
+		long tookMillis = 0;
+		boolean timedOut = false;
+		Boolean terminatedEarly = null;
+		int totalShards = 0;
+		int successfulShards = 0;
+		SearchHits hits = SearchHits.empty();
+		parser.nextToken();
+		while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+			String field = parser.currentName();
+			parser.nextToken();
+			switch (field) {
+				case "took": tookMillis = parser.longValue(); break;
+				case "timed_out": timedOut = parser.booleanValue(); break;
+				case "terminated_early": terminatedEarly = parser.booleanValue(); break;
+				case "hits": hits = SearchHits.fromXContent(parser); break;
+				case "_shards":
+					while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+						String shardField = parser.currentName();
+						parser.nextToken();
+						if ("total".equals(shardField)) {
+							totalShards = parser.intValue();
+						} else if ("successful".equals(shardField)) {
+							successfulShards = parser.intValue();
+						} else {
+							parser.skipChildren();
+						}
+					}
+					break;
+				default: parser.skipChildren(); break;
+			}
+		}
+		InternalSearchResponse internal = new InternalSearchResponse(hits, null, null, null, timedOut, terminatedEarly, 1);
+		return new SearchResponse(internal, null, totalShards, successfulShards, tookMillis, ShardSearchFailure.EMPTY_ARRAY);
+	}
+
+	/**
+	 * Parses the body of a response
+	 * @param <T> The type of the response
+	 */
+	@FunctionalInterface
+	private interface ResponseParser<T> {
+		/**
+		 * Parse a response
+		 * @param parser The parser of the body
+		 * @return The response
+		 * @throws IOException Thrown if the body cannot be parsed
+		 */
+		T parse(XContentParser parser) throws IOException;
+	}
+
+	/**
+	 * Send a request asynchronously and parse its response on the listener thread pool
+	 * @param <T> The type of the response
+	 * @param method The HTTP method
+	 * @param endpoint The path
+	 * @param params The query parameters
+	 * @param body The body, or null
+	 * @param type The content type of the body, or null
+	 * @param listener Notified with the parsed response
+	 * @param notFoundParses Whether a 404 carries a response to parse, as for a missing document, rather than an error
+	 * @param parser Parses the body of a successful response
+	 */
+	private <T> void perform(String method, String endpoint, Map<String, String> params, BytesReference body, XContentType type,
+			ActionListener<T> listener, boolean notFoundParses, ResponseParser<T> parser) {
+		HttpEntity entity = body == null ? null : entity(body, type);
+		rest.performRequestAsync(method, endpoint, params, entity, new ResponseListener() {
+			@Override
+			public void onSuccess(Response response) {
+				threadPool().executor(ThreadPool.Names.LISTENER).execute(() -> complete(response, listener, parser));
+			}
+
+			@Override
+			public void onFailure(Exception exception) {
+				threadPool().executor(ThreadPool.Names.LISTENER).execute(() -> {
+					if (exception instanceof ResponseException) {
+						Response response = ((ResponseException) exception).getResponse();
+						int status = response.getStatusLine().getStatusCode();
+						if (notFoundParses && status == RestStatus.NOT_FOUND.getStatus() && isFound(response)) {
+							complete(response, listener, parser);
+						} else {
+							listener.onFailure(new ElasticsearchStatusException(exception.getMessage(), RestStatus.fromCode(status), exception));
+						}
+					} else {
+						listener.onFailure(exception);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Parse a response and pass it to the listener
+	 * @param <T> The type of the response
+	 * @param response The HTTP response
+	 * @param listener Notified with the parsed response or the parse failure
+	 * @param parser Parses the body
+	 */
+	private static <T> void complete(Response response, ActionListener<T> listener, ResponseParser<T> parser) {
+		T parsed;
+		try (XContentParser content = parser(response)) {
+			parsed = parser.parse(content);
+		} catch (IOException | RuntimeException e) {
+			listener.onFailure(new ElasticsearchException("Cannot parse the response of " + response.getRequestLine(), e));
+			return;
+		}
+		listener.onResponse(parsed);
+	}
+
+	/**
+	 * Test whether a 404 response is a document lookup which found nothing, rather than an error such as a missing index
+	 * @param response The response
+	 * @return {@code true} if the body has a {@code found} field
+	 */
+	private static boolean isFound(Response response) {
+		try (XContentParser content = parser(response)) {
+			return content.map().containsKey("found");
+		} catch (IOException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Create a parser of a response body, decompressing it if necessary.  The body is buffered, so
+	 * it can be parsed more than once
+	 * @param response The response
+	 * @return The parser
+	 * @throws IOException Thrown if the body cannot be read
+	 */
+	private static XContentParser parser(Response response) throws IOException {
+		HttpEntity entity = response.getEntity();
+		Header encoding = entity.getContentEncoding();
+		if (encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
+			entity = new GzipDecompressingEntity(entity);
+		}
+		Header contentType = entity.getContentType();
+		XContentType type = contentType == null ? null : XContentType.fromMediaTypeOrFormat(contentType.getValue());
+		byte[] bytes = EntityUtils.toByteArray(entity);
+		return (type == null ? XContentType.JSON : type).xContent().createParser(NamedXContentRegistry.EMPTY, bytes);
+	}
+
+	/**
+	 * Create a request entity, compressed if enabled and the body is large enough
+	 * @param body The body
+	 * @param type The content type of the body
+	 * @return The entity
+	 */
+	private HttpEntity entity(BytesReference body, XContentType type) {
+		ContentType contentType = ContentType.create(type.mediaTypeWithoutParameters());
+		if (!compress || body.length() < COMPRESS_MIN_BYTES) {
+			return new ByteArrayEntity(BytesReference.toBytes(body), contentType);
+		}
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length() / 4);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+			body.writeTo(gzip);
+		} catch (IOException e) {
+			// Writing to memory does not fail
+			throw new IllegalStateException(e);
+		}
+		ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray(), contentType);
+		entity.setContentEncoding("gzip");
+		return entity;
+	}
+
+	/**
+	 * Add a query parameter if it has a value
+	 * @param params The query parameters
+	 * @param name The parameter name
+	 * @param value The value, or null
+	 */
+	private static void putIfSet(Map<String, String> params, String name, String value) {
+		if (value != null) {
+			params.put(name, value);
+		}
+	}
+
+}